@@ -36,6 +36,10 @@ import java.util.List;
 @RequiresApi(api = VERSION_CODES.S)
 final class Conversions {
 
+    /** Distance of the DL-TDoA measurements, which don't have one. */
+    private static final RangingMeasurement INVALID_DISTANCE =
+            createMeasurement(0.0, 0.0, false);
+
     private static RangingMeasurement createMeasurement(double value, double confidence,
             boolean valid) {
         @RangingMeasurement.Confidence int confidenceLevel;
@@ -91,7 +95,7 @@ final class Conversions {
                     dlTDoAMeasurement.getActiveRangingRounds()
             );
             // No distance measurement for DL-TDoa, make it invalid.
-            distance = createMeasurement(0.0, 0.0, false);
+            distance = INVALID_DISTANCE;
         } else {
             DistanceMeasurement distanceMeasurement = measurement.getDistanceMeasurement();
             if (distanceMeasurement == null) {
@@ -42,9 +42,9 @@ import androidx.annotation.RequiresApi;
 import com.google.uwb.support.fira.FiraOpenSessionParams;
 import com.google.uwb.support.fira.FiraParams;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
@@ -52,7 +52,9 @@ import java.util.concurrent.ExecutorService;
 @RequiresApi(api = VERSION_CODES.S)
 public class RangingController extends RangingDevice {
 
-    private final List<UwbAddress> mDynamicallyAddedPeers = new ArrayList<>();
+    /** Devices of the peers added to the session, keyed by their system API address. */
+    private final Map<android.uwb.UwbAddress, UwbDevice> mDynamicallyAddedPeers =
+            new ConcurrentHashMap<>();
 
     @Nullable
     private RangingSessionCallback mRangingSessionCallback;
@@ -113,8 +115,10 @@ public class RangingController extends RangingDevice {
     }
 
     @Override
-    protected boolean isKnownPeer(UwbAddress address) {
-        return super.isKnownPeer(address) || mDynamicallyAddedPeers.contains(address);
+    @Nullable
+    protected UwbDevice getPeerDevice(android.uwb.UwbAddress address) {
+        UwbDevice device = super.getPeerDevice(address);
+        return device != null ? device : mDynamicallyAddedPeers.get(address);
     }
 
     @Override
@@ -168,7 +172,7 @@ public class RangingController extends RangingDevice {
         if (ConfigurationManager.isUnicast(mRangingParameters.getUwbConfigId())) {
             return INVALID_API_CALL;
         }
-        if (isKnownPeer(controleeAddress) || mDynamicallyAddedPeers.contains(controleeAddress)) {
+        if (isKnownPeer(controleeAddress)) {
             return STATUS_OK;
         }
         // Reconfigure the session.
@@ -185,21 +189,16 @@ public class RangingController extends RangingDevice {
                         new UwbAddress[] {controleeAddress}, subSessionIdList, subSessionKeyInfo);
 
         RangingSessionCallback callback = mRangingSessionCallback;
+        UwbDevice device = UwbDevice.createForAddress(controleeAddress.toBytes());
         if (success) {
             if (callback != null) {
-                runOnBackendCallbackThread(
-                        () ->
-                                callback.onRangingInitialized(
-                                        UwbDevice.createForAddress(controleeAddress.toBytes())));
+                runOnBackendCallbackThread(() -> callback.onRangingInitialized(device));
             }
-            mDynamicallyAddedPeers.add(controleeAddress);
+            mDynamicallyAddedPeers.put(toSystemAddress(controleeAddress), device);
         } else {
             if (callback != null) {
                 runOnBackendCallbackThread(
-                        () ->
-                                callback.onRangingSuspended(
-                                        UwbDevice.createForAddress(controleeAddress.toBytes()),
-                                        REASON_FAILED_TO_START));
+                        () -> callback.onRangingSuspended(device, REASON_FAILED_TO_START));
             }
         }
 
@@ -224,7 +223,7 @@ public class RangingController extends RangingDevice {
         if (ConfigurationManager.isUnicast(mRangingParameters.getUwbConfigId())) {
             return INVALID_API_CALL;
         }
-        if (isKnownPeer(controleeAddress) || mDynamicallyAddedPeers.contains(controleeAddress)) {
+        if (isKnownPeer(controleeAddress)) {
             return STATUS_OK;
         }
         // Reconfigure the session.
@@ -241,21 +240,16 @@ public class RangingController extends RangingDevice {
                         new UwbAddress[] {controleeAddress}, subSessionIdList, subSessionKeyInfo);
 
         RangingSessionCallback callback = mRangingSessionCallback;
+        UwbDevice device = UwbDevice.createForAddress(controleeAddress.toBytes());
         if (success) {
             if (callback != null) {
-                runOnBackendCallbackThread(
-                        () ->
-                                callback.onRangingInitialized(
-                                        UwbDevice.createForAddress(controleeAddress.toBytes())));
+                runOnBackendCallbackThread(() -> callback.onRangingInitialized(device));
             }
-            mDynamicallyAddedPeers.add(controleeAddress);
+            mDynamicallyAddedPeers.put(toSystemAddress(controleeAddress), device);
         } else {
             if (callback != null) {
                 runOnBackendCallbackThread(
-                        () ->
-                                callback.onRangingSuspended(
-                                        UwbDevice.createForAddress(controleeAddress.toBytes()),
-                                        REASON_FAILED_TO_START));
+                        () -> callback.onRangingSuspended(device, REASON_FAILED_TO_START));
             }
         }
 
@@ -328,7 +322,7 @@ public class RangingController extends RangingDevice {
                                     UwbDevice.createForAddress(controleeAddress.toBytes()),
                                     REASON_STOP_RANGING_CALLED));
         }
-        mDynamicallyAddedPeers.remove(controleeAddress);
+        mDynamicallyAddedPeers.remove(toSystemAddress(controleeAddress));
         return STATUS_OK;
     }
 
@@ -43,6 +43,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.Hashing;
 import com.google.uwb.support.dltdoa.DlTDoARangingRoundsUpdate;
 import com.google.uwb.support.fira.FiraOpenSessionParams;
@@ -93,7 +94,7 @@ public abstract class RangingDevice {
     private Boolean mForTesting = false;
 
     @Nullable
-    private RangingRoundFailureCallback mRangingRoundFailureCallback = null;
+    private volatile RangingRoundFailureCallback mRangingRoundFailureCallback = null;
 
     private boolean mRangingReportedAllowed = false;
 
@@ -105,6 +106,14 @@ public abstract class RangingDevice {
 
     private final HashMap<String, UwbAddress> mMultiChipMap;
 
+    /**
+     * Devices of the peers in {@link #mRangingParameters}, keyed by their address as reported by
+     * the system API. Replaced as a whole, so that ranging data can be matched to its peer without
+     * holding the device monitor.
+     */
+    private volatile ImmutableMap<android.uwb.UwbAddress, UwbDevice> mPeerDevices =
+            ImmutableMap.of();
+
     RangingDevice(UwbManager manager, Executor executor,
             OpAsyncCallbackRunner<Boolean> opAsyncCallbackRunner, UwbFeatureFlags uwbFeatureFlags) {
         mUwbManager = manager;
@@ -198,6 +207,12 @@ public abstract class RangingDevice {
         } else {
             mRangingParameters = rangingParameters;
         }
+        HashMap<android.uwb.UwbAddress, UwbDevice> peerDevices = new HashMap<>();
+        for (UwbAddress peerAddress : mRangingParameters.getPeerAddresses()) {
+            peerDevices.put(toSystemAddress(peerAddress),
+                    UwbDevice.createForAddress(peerAddress.toBytes()));
+        }
+        mPeerDevices = ImmutableMap.copyOf(peerDevices);
     }
 
     /** Alive means the session is open. */
@@ -215,41 +230,62 @@ public abstract class RangingDevice {
 
     protected boolean isKnownPeer(UwbAddress address) {
         requireNonNull(mRangingParameters);
-        return mRangingParameters.getPeerAddresses().contains(address);
+        return getPeerDevice(toSystemAddress(address)) != null;
+    }
+
+    /**
+     * Gets the device of a peer from its address as reported by the system API, or null if it's
+     * not a peer of this session. Doesn't require holding the device monitor.
+     */
+    @Nullable
+    protected UwbDevice getPeerDevice(android.uwb.UwbAddress address) {
+        return mPeerDevices.get(address);
+    }
+
+    /** Converts an address to the byte order of the system API. */
+    protected android.uwb.UwbAddress toSystemAddress(UwbAddress address) {
+        return Conversions.convertUwbAddress(
+                address, mUwbFeatureFlags.isReversedByteOrderFiraParams());
+    }
+
+    private UwbAddress fromSystemAddress(android.uwb.UwbAddress address) {
+        byte[] addressBytes = address.toBytes();
+        if (mUwbFeatureFlags.isReversedByteOrderFiraParams()) {
+            addressBytes = Conversions.getReverseBytes(addressBytes);
+        }
+        return UwbAddress.fromBytes(addressBytes);
     }
 
     /**
      * Converts the {@link RangingReport} to {@link RangingPosition} and invokes the GMSCore
-     * callback.
+     * callback. Runs without holding the device monitor: the peers are looked up by the address
+     * reported by the system API, and their devices are created once per session.
      */
-    // Null-guard prevents this from being null
-    private synchronized void onRangingDataReceived(
+    private void onRangingDataReceived(
             RangingReport rangingReport, RangingSessionCallback callback) {
+        RangingRoundFailureCallback rangingRoundFailureCallback = mRangingRoundFailureCallback;
         List<RangingMeasurement> measurements = rangingReport.getMeasurements();
         for (RangingMeasurement measurement : measurements) {
-            byte[] remoteAddressBytes = measurement.getRemoteDeviceAddress().toBytes();
-            if (mUwbFeatureFlags.isReversedByteOrderFiraParams()) {
-                remoteAddressBytes = Conversions.getReverseBytes(remoteAddressBytes);
-            }
-
-
-            UwbAddress peerAddress = UwbAddress.fromBytes(remoteAddressBytes);
-            if (!isKnownPeer(peerAddress) && !Conversions.isDlTdoaMeasurement(measurement)) {
-                Log.w(TAG,
-                        String.format("Received ranging data from unknown peer %s.", peerAddress));
-                continue;
+            UwbDevice uwbDevice = getPeerDevice(measurement.getRemoteDeviceAddress());
+            if (uwbDevice == null) {
+                UwbAddress peerAddress = fromSystemAddress(measurement.getRemoteDeviceAddress());
+                if (!Conversions.isDlTdoaMeasurement(measurement)) {
+                    Log.w(TAG, String.format(
+                            "Received ranging data from unknown peer %s.", peerAddress));
+                    continue;
+                }
+                uwbDevice = UwbDevice.createForAddress(peerAddress.toBytes());
             }
 
             if (measurement.getStatus() != RangingMeasurement.RANGING_STATUS_SUCCESS
-                    && mRangingRoundFailureCallback != null) {
-                mRangingRoundFailureCallback.onRangingRoundFailed(peerAddress);
+                    && rangingRoundFailureCallback != null) {
+                rangingRoundFailureCallback.onRangingRoundFailed(uwbDevice.getAddress());
             }
 
             RangingPosition currentPosition = Conversions.convertToPosition(measurement);
             if (currentPosition == null) {
                 continue;
             }
-            UwbDevice uwbDevice = UwbDevice.createForAddress(peerAddress.toBytes());
             callback.onRangingResult(uwbDevice, currentPosition);
         }
     }
@@ -151,7 +151,7 @@ public class UwbAddress {
         if (obj instanceof UwbAddress) {
             UwbAddress that = (UwbAddress) obj;
             return Objects.equal(mAddressingMode, that.getAddressingMode())
-                    && Arrays.equals(mAddressBytes, that.toBytes());
+                    && Arrays.equals(mAddressBytes, that.mAddressBytes);
         }
 
         return false;
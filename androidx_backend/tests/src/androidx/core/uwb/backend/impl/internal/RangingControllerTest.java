@@ -29,15 +29,21 @@ import static androidx.core.uwb.backend.impl.internal.Utils.RANGE_DATA_NTF_ENABL
 import static androidx.core.uwb.backend.impl.internal.Utils.STATUS_OK;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.os.CancellationSignal;
 import android.os.PersistableBundle;
 import android.platform.test.annotations.Presubmit;
+import android.uwb.DistanceMeasurement;
+import android.uwb.RangingMeasurement;
+import android.uwb.RangingReport;
 import android.uwb.RangingSession;
 import android.uwb.UwbManager;
 
@@ -467,6 +473,110 @@ public class RangingControllerTest {
                         REASON_STOP_RANGING_CALLED);
     }
 
+    private static RangingReport createRangingReport(List<UwbAddress> peerAddresses) {
+        RangingReport.Builder builder = new RangingReport.Builder();
+        for (UwbAddress peerAddress : peerAddresses) {
+            builder.addMeasurement(
+                    new RangingMeasurement.Builder()
+                            .setRemoteDeviceAddress(
+                                    android.uwb.UwbAddress.fromBytes(peerAddress.toBytes()))
+                            .setStatus(RangingMeasurement.RANGING_STATUS_SUCCESS)
+                            .setElapsedRealtimeNanos(1000)
+                            .setRangingMeasurementMetadata(new PersistableBundle())
+                            .setDistanceMeasurement(
+                                    new DistanceMeasurement.Builder()
+                                            .setMeters(1.0)
+                                            .setErrorMeters(0.1)
+                                            .setConfidenceLevel(1.0)
+                                            .build())
+                            .build());
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testOnReportReceived_multiplePeers() {
+        mRangingController.getComplexChannel();
+
+        final RangingSessionCallback rangingSessionCallback = mock(RangingSessionCallback.class);
+        final RangingSession pfRangingSession = mock(RangingSession.class);
+        final Mutable<RangingSession.Callback> pfRangingSessionCallback = new Mutable<>();
+
+        doAnswer(
+                invocation -> {
+                    pfRangingSessionCallback.value = invocation.getArgument(2);
+                    pfRangingSessionCallback.value.onOpened(pfRangingSession);
+                    return new CancellationSignal();
+                })
+                .when(mUwbManager)
+                .openRangingSession(
+                        any(PersistableBundle.class),
+                        any(Executor.class),
+                        any(RangingSession.Callback.class));
+
+        doAnswer(
+                invocation -> {
+                    pfRangingSessionCallback.value.onStarted(new PersistableBundle());
+                    return true;
+                })
+                .when(pfRangingSession)
+                .start(any(PersistableBundle.class));
+
+        doAnswer(
+                invocation -> {
+                    pfRangingSessionCallback.value.onControleeAdded(new PersistableBundle());
+                    return true;
+                })
+                .when(pfRangingSession)
+                .addControlee(any(PersistableBundle.class));
+
+        doAnswer(
+                invocation -> {
+                    pfRangingSessionCallback.value.onControleeRemoved(new PersistableBundle());
+                    return true;
+                })
+                .when(pfRangingSession)
+                .removeControlee(any(PersistableBundle.class));
+
+        mRangingController.startRanging(rangingSessionCallback, mBackendCallbackExecutor);
+        List<UwbAddress> peerAddresses = new ArrayList<>(List.of(mRangingParamsKnownPeerAddress));
+        for (int i = 1; i < 64; i++) {
+            UwbAddress peerAddress = UwbAddress.fromLong(i);
+            mRangingController.addControleeWithSessionParams(
+                    new RangingControleeParameters(peerAddress, 0, null));
+            peerAddresses.add(peerAddress);
+        }
+        UwbAddress unknownPeerAddress = UwbAddress.fromLong(64);
+        List<UwbAddress> reportedAddresses = new ArrayList<>(peerAddresses);
+        reportedAddresses.add(unknownPeerAddress);
+
+        pfRangingSessionCallback.value.onReportReceived(createRangingReport(reportedAddresses));
+        pfRangingSessionCallback.value.onReportReceived(createRangingReport(reportedAddresses));
+
+        ArgumentCaptor<UwbDevice> deviceCaptor = ArgumentCaptor.forClass(UwbDevice.class);
+        verify(rangingSessionCallback, times(2 * peerAddresses.size()))
+                .onRangingResult(deviceCaptor.capture(), any(RangingPosition.class));
+        List<UwbDevice> devices = deviceCaptor.getAllValues();
+        for (int i = 0; i < peerAddresses.size(); i++) {
+            assertEquals(devices.get(i).getAddress(), peerAddresses.get(i));
+            // The device of a peer is created once.
+            assertSame(devices.get(i), devices.get(peerAddresses.size() + i));
+        }
+        verify(rangingSessionCallback, never())
+                .onRangingResult(
+                        eq(UwbDevice.createForAddress(unknownPeerAddress.toBytes())),
+                        any(RangingPosition.class));
+
+        UwbAddress removedPeerAddress = peerAddresses.get(1);
+        assertEquals(mRangingController.removeControlee(removedPeerAddress), STATUS_OK);
+        pfRangingSessionCallback.value.onReportReceived(
+                createRangingReport(List.of(removedPeerAddress)));
+        verify(rangingSessionCallback, times(2))
+                .onRangingResult(
+                        eq(UwbDevice.createForAddress(removedPeerAddress.toBytes())),
+                        any(RangingPosition.class));
+    }
+
     @Test
     public void testReconfigureRangingInterval() {
         UwbAddress deviceAddress = mRangingController.getLocalAddress();
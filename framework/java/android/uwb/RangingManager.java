@@ -25,8 +25,9 @@ import android.os.Process;
 import android.os.RemoteException;
 import android.util.Log;
 
-import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 
 /**
@@ -36,7 +37,9 @@ public class RangingManager extends android.uwb.IUwbRangingCallbacks.Stub {
     private final String mTag = "Uwb.RangingManager[" + this + "]";
 
     private final IUwbAdapter mAdapter;
-    private final Hashtable<SessionHandle, RangingSession> mRangingSessionTable = new Hashtable<>();
+    // Sessions keyed by session id. Callbacks look sessions up without taking the manager lock,
+    // which is only held while sessions are added or removed.
+    private final Map<Integer, RangingSession> mRangingSessionTable = new ConcurrentHashMap<>();
     private static int sNextSessionId = 1;
 
     public RangingManager(IUwbAdapter adapter) {
@@ -75,492 +78,459 @@ public class RangingManager extends android.uwb.IUwbRangingCallbacks.Stub {
             }
         }
 
+        SessionHandle sessionHandle;
+        RangingSession session;
         synchronized (this) {
-            SessionHandle sessionHandle =
-                    new SessionHandle(sNextSessionId++, attributionSource, Process.myPid());
-            RangingSession session =
-                    new RangingSession(executor, callbacks, mAdapter, sessionHandle, chipId);
-            Log.v(mTag, "openSession - sessionHandle: " + sessionHandle);
-            mRangingSessionTable.put(sessionHandle, session);
-            try {
-                mAdapter.openRanging(attributionSource,
-                        sessionHandle,
-                        this,
-                        params,
-                        chipId);
-            } catch (RemoteException e) {
-                throw e.rethrowFromSystemServer();
-            }
-
-            CancellationSignal cancellationSignal = new CancellationSignal();
-            cancellationSignal.setOnCancelListener(() -> session.close());
-            return cancellationSignal;
+            sessionHandle = new SessionHandle(sNextSessionId++, attributionSource, Process.myPid());
+            session = new RangingSession(executor, callbacks, mAdapter, sessionHandle, chipId);
+            session.setReportDeliveryPolicy(
+                    params.getInt(RangingSession.KEY_REPORT_DELIVERY_POLICY,
+                            RangingSession.REPORT_DELIVERY_POLICY_ALL),
+                    params.getInt(RangingSession.KEY_MAX_PENDING_REPORTS,
+                            RangingSession.DEFAULT_MAX_PENDING_REPORTS));
+            mRangingSessionTable.put(sessionHandle.getId(), session);
         }
+        Log.v(mTag, "openSession - sessionHandle: " + sessionHandle);
+        // The session is registered first, so callbacks for it can be delivered while the
+        // binder call is in progress.
+        try {
+            mAdapter.openRanging(attributionSource,
+                    sessionHandle,
+                    this,
+                    params,
+                    chipId);
+        } catch (RemoteException e) {
+            throw e.rethrowFromSystemServer();
+        }
+
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.setOnCancelListener(() -> session.close());
+        return cancellationSignal;
     }
 
-    private boolean hasSession(SessionHandle sessionHandle) {
-        return mRangingSessionTable.containsKey(sessionHandle);
+    /** Returns the session for the handle, or null if the handle isn't one of ours. */
+    @Nullable
+    private RangingSession getSession(SessionHandle sessionHandle) {
+        RangingSession session = mRangingSessionTable.get(sessionHandle.getId());
+        if (session == null || !session.getSessionHandle().equals(sessionHandle)) {
+            return null;
+        }
+        return session;
     }
 
     @Override
     public void onRangingOpened(SessionHandle sessionHandle) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag,
-                        "onRangingOpened - received unexpected SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingOpened();
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag,
+                    "onRangingOpened - received unexpected SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onRangingOpened();
     }
 
     @Override
     public void onRangingOpenFailed(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle parameters) {
         synchronized (this) {
-            if (!hasSession(sessionHandle)) {
+            RangingSession session = getSession(sessionHandle);
+            if (session == null) {
                 Log.w(mTag,
                         "onRangingOpenedFailed - received unexpected SessionHandle: "
                                 + sessionHandle);
                 return;
             }
 
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
             session.onRangingOpenFailed(convertToReason(reason), parameters);
-            mRangingSessionTable.remove(sessionHandle);
+            mRangingSessionTable.remove(sessionHandle.getId());
         }
     }
 
     @Override
     public void onRangingReconfigured(SessionHandle sessionHandle, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag,
-                        "onRangingReconfigured - received unexpected SessionHandle: "
-                                + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingReconfigured(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag,
+                    "onRangingReconfigured - received unexpected SessionHandle: "
+                            + sessionHandle);
+            return;
         }
+
+        session.onRangingReconfigured(parameters);
     }
 
     @Override
     public void onRangingReconfigureFailed(SessionHandle sessionHandle,
             @RangingChangeReason int reason, PersistableBundle params) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingReconfigureFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingReconfigureFailed(convertToReason(reason), params);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingReconfigureFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingReconfigureFailed(convertToReason(reason), params);
     }
 
 
     @Override
     public void onRangingStarted(SessionHandle sessionHandle, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag,
-                        "onRangingStarted - received unexpected SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingStarted(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag,
+                    "onRangingStarted - received unexpected SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onRangingStarted(parameters);
     }
 
     @Override
     public void onRangingStartFailed(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle params) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingStartFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingStartFailed(convertToReason(reason), params);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingStartFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingStartFailed(convertToReason(reason), params);
     }
 
     @Override
     public void onRangingStopped(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle params) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingStopped - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingStopped(convertToReason(reason), params);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingStopped - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingStopped(convertToReason(reason), params);
     }
 
     @Override
     public void onRangingStopFailed(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingStopFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingStopFailed(convertToReason(reason), parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingStopFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingStopFailed(convertToReason(reason), parameters);
     }
 
     @Override
     public void onRangingClosed(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle params) {
         synchronized (this) {
-            if (!hasSession(sessionHandle)) {
+            RangingSession session = getSession(sessionHandle);
+            if (session == null) {
                 Log.w(mTag, "onRangingClosed - received unexpected SessionHandle: "
                         + sessionHandle);
                 return;
             }
 
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
             session.onRangingClosed(convertToReason(reason), params);
-            mRangingSessionTable.remove(sessionHandle);
+            mRangingSessionTable.remove(sessionHandle.getId());
         }
     }
 
     @Override
     public void onRangingResult(SessionHandle sessionHandle, RangingReport result) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingResult - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingResult - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
+        }
+
+        session.onRangingResult(result);
+    }
 
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingResult(result);
+    @Override
+    public void onRangingResultBatch(SessionHandle sessionHandle, List<RangingReport> results) {
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingResultBatch - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingResultBatch(results);
     }
 
     @Override
     public void onControleeAdded(SessionHandle sessionHandle, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onControleeAdded - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onControleeAdded(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onControleeAdded - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onControleeAdded(parameters);
     }
 
     @Override
     public void onControleeAddFailed(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onControleeAddFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onControleeAddFailed(reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onControleeAddFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onControleeAddFailed(reason, parameters);
     }
 
     @Override
     public void onControleeRemoved(SessionHandle sessionHandle, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onControleeRemoved - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onControleeRemoved(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onControleeRemoved - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onControleeRemoved(parameters);
     }
 
     @Override
     public void onControleeRemoveFailed(SessionHandle sessionHandle,
             @RangingChangeReason int reason, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onControleeRemoveFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onControleeRemoveFailed(reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onControleeRemoveFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onControleeRemoveFailed(reason, parameters);
     }
 
     @Override
     public void onRangingPaused(SessionHandle sessionHandle, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingPaused - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingPaused(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingPaused - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingPaused(parameters);
     }
 
     @Override
     public void onRangingPauseFailed(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingPauseFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingPauseFailed(reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingPauseFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingPauseFailed(reason, parameters);
     }
 
     @Override
     public void onRangingResumed(SessionHandle sessionHandle, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingResumed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingResumed(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingResumed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingResumed(parameters);
     }
 
     @Override
     public void onRangingResumeFailed(SessionHandle sessionHandle, @RangingChangeReason int reason,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingResumeFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingResumeFailed(reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingResumeFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onRangingResumeFailed(reason, parameters);
     }
 
     @Override
     public void onDataSent(SessionHandle sessionHandle, UwbAddress remoteDeviceAddress,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onDataSent - received unexpected SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onDataSent(remoteDeviceAddress, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onDataSent - received unexpected SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onDataSent(remoteDeviceAddress, parameters);
     }
 
     @Override
     public void onDataSendFailed(SessionHandle sessionHandle, UwbAddress remoteDeviceAddress,
             @RangingChangeReason int reason, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onDataSendFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onDataSendFailed(remoteDeviceAddress, reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onDataSendFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onDataSendFailed(remoteDeviceAddress, reason, parameters);
     }
 
     @Override
     public void onDataTransferPhaseConfigured(SessionHandle sessionHandle,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onDataTransferPhaseConfigured - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onDataTransferPhaseConfigured(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onDataTransferPhaseConfigured - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onDataTransferPhaseConfigured(parameters);
     }
 
     @Override
     public void onDataTransferPhaseConfigFailed(SessionHandle sessionHandle,
             @RangingChangeReason int reason, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onDataTransferPhaseConfigFailed - received unknown SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onDataTransferPhaseConfigFailed(reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onDataTransferPhaseConfigFailed - received unknown SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onDataTransferPhaseConfigFailed(reason, parameters);
     }
 
     @Override
     public void onDataReceived(SessionHandle sessionHandle, UwbAddress remoteDeviceAddress,
             PersistableBundle parameters, byte[] data) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onDataReceived - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onDataReceived(remoteDeviceAddress, parameters, data);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onDataReceived - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onDataReceived(remoteDeviceAddress, parameters, data);
     }
 
     @Override
     public void onDataReceiveFailed(SessionHandle sessionHandle, UwbAddress remoteDeviceAddress,
             @RangingChangeReason int reason, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onDataReceiveFailed - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onDataReceiveFailed(remoteDeviceAddress, reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onDataReceiveFailed - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onDataReceiveFailed(remoteDeviceAddress, reason, parameters);
     }
 
     @Override
     public void onServiceDiscovered(SessionHandle sessionHandle,
             @NonNull PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onServiceDiscovered - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onServiceDiscovered(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onServiceDiscovered - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onServiceDiscovered(parameters);
     }
 
     @Override
     public void onHybridSessionControllerConfigured(SessionHandle sessionHandle,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onHybridSessionControllerConfigured - received unexpected"
-                        + "SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onHybridSessionControllerConfigured(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onHybridSessionControllerConfigured - received unexpected"
+                    + "SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onHybridSessionControllerConfigured(parameters);
     }
 
     @Override
     public void onHybridSessionControllerConfigurationFailed(SessionHandle sessionHandle,
             @RangingChangeReason int reason, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onHybridSessionControllerConfigurationFailed - received"
-                        + "unexpected SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onHybridSessionControllerConfigurationFailed(reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onHybridSessionControllerConfigurationFailed - received"
+                    + "unexpected SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onHybridSessionControllerConfigurationFailed(reason, parameters);
     }
 
     @Override
     public void onHybridSessionControleeConfigured(SessionHandle sessionHandle,
             PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onHybridSessionControleeConfigured - received unexpected"
-                        + "SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onHybridSessionControleeConfigured(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onHybridSessionControleeConfigured - received unexpected"
+                    + "SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onHybridSessionControleeConfigured(parameters);
     }
 
     @Override
     public void onHybridSessionControleeConfigurationFailed(SessionHandle sessionHandle,
             @RangingChangeReason int reason, PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onHybridSessionControleeConfigurationFailed - received"
-                        + "unexpected SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onHybridSessionControleeConfigurationFailed(reason, parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onHybridSessionControleeConfigurationFailed - received"
+                    + "unexpected SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onHybridSessionControleeConfigurationFailed(reason, parameters);
     }
 
     @Override
     public void onServiceConnected(SessionHandle sessionHandle,
             @NonNull PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onServiceConnected - received unexpected SessionHandle: "
-                        + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onServiceConnected(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onServiceConnected - received unexpected SessionHandle: "
+                    + sessionHandle);
+            return;
         }
+
+        session.onServiceConnected(parameters);
     }
 
     @Override
     public void onRangingRoundsUpdateDtTagStatus(SessionHandle sessionHandle,
             @NonNull PersistableBundle parameters) {
-        synchronized (this) {
-            if (!hasSession(sessionHandle)) {
-                Log.w(mTag, "onRangingRoundsUpdateDtTagStatus - received unexpected "
-                        + "SessionHandle: " + sessionHandle);
-                return;
-            }
-
-            RangingSession session = mRangingSessionTable.get(sessionHandle);
-            session.onRangingRoundsUpdateDtTagStatus(parameters);
+        RangingSession session = getSession(sessionHandle);
+        if (session == null) {
+            Log.w(mTag, "onRangingRoundsUpdateDtTagStatus - received unexpected "
+                    + "SessionHandle: " + sessionHandle);
+            return;
         }
+
+        session.onRangingRoundsUpdateDtTagStatus(parameters);
     }
 
     // TODO(b/211025367): Remove this conversion and use direct API values.
@@ -20,20 +20,27 @@ import android.Manifest;
 import android.annotation.FlaggedApi;
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.annotation.RequiresPermission;
 import android.annotation.SystemApi;
 import android.os.Binder;
 import android.os.Build;
 import android.os.PersistableBundle;
 import android.os.RemoteException;
+import android.util.ArraySet;
 import android.util.Log;
 
 import androidx.annotation.RequiresApi;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.modules.utils.build.SdkLevel;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 /**
@@ -60,6 +67,31 @@ public final class RangingSession implements AutoCloseable {
     private final Callback mCallback;
     private final String mChipId;
 
+    // Keys and values of the open session params that select how reports are queued for the
+    // executor. They must match the ones of the support library's FiraOpenSessionParams.
+    static final String KEY_REPORT_DELIVERY_POLICY = "report_delivery_policy";
+    static final String KEY_MAX_PENDING_REPORTS = "max_pending_reports";
+    static final String KEY_DROPPED_REPORT_COUNT = "dropped_report_count";
+    static final int REPORT_DELIVERY_POLICY_ALL = 0;
+    static final int REPORT_DELIVERY_POLICY_DROP_OLDEST = 1;
+    static final int REPORT_DELIVERY_POLICY_LATEST_PER_PEER = 2;
+    static final int DEFAULT_MAX_PENDING_REPORTS = 16;
+
+    private final Object mReportLock = new Object();
+    @GuardedBy("mReportLock")
+    private int mReportDeliveryPolicy = REPORT_DELIVERY_POLICY_ALL;
+    @GuardedBy("mReportLock")
+    private int mMaxPendingReports = DEFAULT_MAX_PENDING_REPORTS;
+    // Reports waiting for the executor, oldest first. Unused with REPORT_DELIVERY_POLICY_ALL.
+    @GuardedBy("mReportLock")
+    private final ArrayDeque<RangingReport> mPendingReports = new ArrayDeque<>();
+    // Whether mDeliverPendingReports is queued on, or running on, the executor.
+    @GuardedBy("mReportLock")
+    private boolean mPendingReportsScheduled;
+    @GuardedBy("mReportLock")
+    private long mDroppedReportCount;
+    private final Runnable mDeliverPendingReports = this::deliverPendingReports;
+
     private enum State {
         /**
          * The state of the {@link RangingSession} until
@@ -528,6 +560,30 @@ public final class RangingSession implements AutoCloseable {
         mChipId = chipId;
     }
 
+    /**
+     * Selects how reports are queued for the executor. With any policy but
+     * {@link #REPORT_DELIVERY_POLICY_ALL}, at most one delivery task is queued on the executor at
+     * a time, and at most {@code maxPendingReports} reports wait for it.
+     */
+    void setReportDeliveryPolicy(int policy, int maxPendingReports) {
+        synchronized (mReportLock) {
+            mReportDeliveryPolicy = policy;
+            mMaxPendingReports = Math.max(maxPendingReports, 1);
+        }
+    }
+
+    /** Gets the number of reports dropped because the executor didn't keep up. */
+    long getDroppedReportCount() {
+        synchronized (mReportLock) {
+            return mDroppedReportCount;
+        }
+    }
+
+    /** Gets the handle identifying this session to the UWB service. */
+    SessionHandle getSessionHandle() {
+        return mSessionHandle;
+    }
+
     /**
      * @hide
      */
@@ -1080,9 +1136,35 @@ public final class RangingSession implements AutoCloseable {
         }
 
         Log.v(mTag, "onRangingResult - sessionHandle: " + mSessionHandle);
+        if (queueReports(report, null)) {
+            return;
+        }
         executeCallback(() -> mCallback.onReportReceived(report));
     }
 
+    /**
+     * Delivers a batch of reports with a single executor hop, oldest first.
+     *
+     * @hide
+     */
+    public void onRangingResultBatch(@NonNull List<RangingReport> reports) {
+        if (!isOpen()) {
+            Log.w(mTag, "onRangingResultBatch invoked for non-open session");
+            return;
+        }
+
+        Log.v(mTag, "onRangingResultBatch - sessionHandle: " + mSessionHandle
+                + ", size: " + reports.size());
+        if (queueReports(null, reports)) {
+            return;
+        }
+        executeCallback(() -> {
+            for (RangingReport report : reports) {
+                mCallback.onReportReceived(report);
+            }
+        });
+    }
+
     /**
      * @hide
      */
@@ -1375,6 +1457,121 @@ public final class RangingSession implements AutoCloseable {
                 reason, params));
     }
 
+    /**
+     * Queues the given report, or reports, unless the delivery policy is
+     * {@link #REPORT_DELIVERY_POLICY_ALL}, and makes sure a delivery task is on the executor.
+     *
+     * @return false if the reports were not queued and must be delivered directly.
+     */
+    private boolean queueReports(@Nullable RangingReport report,
+            @Nullable List<RangingReport> reports) {
+        synchronized (mReportLock) {
+            if (mReportDeliveryPolicy == REPORT_DELIVERY_POLICY_ALL) {
+                return false;
+            }
+            if (report != null) {
+                queueReportLocked(report);
+            } else {
+                for (RangingReport r : reports) {
+                    queueReportLocked(r);
+                }
+            }
+            if (mPendingReportsScheduled) {
+                return true;
+            }
+            mPendingReportsScheduled = true;
+        }
+        // Outside the lock, the executor may run the task directly.
+        try {
+            executeCallback(mDeliverPendingReports);
+        } catch (RuntimeException e) {
+            // The task isn't on the executor; let the next report schedule it again.
+            synchronized (mReportLock) {
+                mPendingReportsScheduled = false;
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    @GuardedBy("mReportLock")
+    private void queueReportLocked(@NonNull RangingReport report) {
+        if (mReportDeliveryPolicy == REPORT_DELIVERY_POLICY_LATEST_PER_PEER) {
+            removeSupersededMeasurementsLocked(report);
+        }
+        if (mPendingReports.size() >= mMaxPendingReports) {
+            mPendingReports.pollFirst();
+            mDroppedReportCount++;
+        }
+        mPendingReports.addLast(report);
+    }
+
+    /**
+     * Removes, from the pending reports, the measurements of the remote devices that the given
+     * report has newer measurements for. Pending reports left with no measurement are dropped.
+     */
+    @GuardedBy("mReportLock")
+    private void removeSupersededMeasurementsLocked(@NonNull RangingReport report) {
+        Set<UwbAddress> remoteDevices = new ArraySet<>();
+        for (RangingMeasurement measurement : report.getMeasurements()) {
+            remoteDevices.add(measurement.getRemoteDeviceAddress());
+        }
+        // Rotate through the queue once, so that the pending reports keep their order.
+        for (int i = mPendingReports.size(); i > 0; i--) {
+            RangingReport pending = mPendingReports.pollFirst();
+            List<RangingMeasurement> measurements = pending.getMeasurements();
+            List<RangingMeasurement> kept = new ArrayList<>(measurements.size());
+            for (RangingMeasurement measurement : measurements) {
+                if (!remoteDevices.contains(measurement.getRemoteDeviceAddress())) {
+                    kept.add(measurement);
+                }
+            }
+            if (kept.isEmpty() && !measurements.isEmpty()) {
+                mDroppedReportCount++;
+                continue;
+            }
+            if (kept.size() < measurements.size()) {
+                pending = new RangingReport.Builder()
+                        .addMeasurements(kept)
+                        .addRangingReportMetadata(pending.getRangingReportMetadata())
+                        .build();
+            }
+            mPendingReports.addLast(pending);
+        }
+    }
+
+    /** Runs on the executor, and delivers reports until none are pending. */
+    private void deliverPendingReports() {
+        boolean drained = false;
+        try {
+            while (true) {
+                RangingReport report;
+                long droppedReportCount;
+                synchronized (mReportLock) {
+                    report = mPendingReports.pollFirst();
+                    if (report == null) {
+                        mPendingReportsScheduled = false;
+                        drained = true;
+                        return;
+                    }
+                    droppedReportCount = mDroppedReportCount;
+                }
+                PersistableBundle metadata = report.getRangingReportMetadata();
+                if (metadata != null && droppedReportCount > 0) {
+                    metadata.putLong(KEY_DROPPED_REPORT_COUNT, droppedReportCount);
+                }
+                mCallback.onReportReceived(report);
+            }
+        } finally {
+            if (!drained) {
+                // The callback threw. The next report schedules the delivery of the rest.
+                synchronized (mReportLock) {
+                    mPendingReportsScheduled = false;
+                }
+            }
+        }
+    }
+
     /**
      * @hide
      */
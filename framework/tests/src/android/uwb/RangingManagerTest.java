@@ -129,6 +129,33 @@ public class RangingManagerTest {
         verify(callback, times(0)).onOpened(any());
     }
 
+    @Test
+    public void testOnRangingOpened_SessionHandleFromOtherProcess() throws RemoteException {
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        RangingManager rangingManager = new RangingManager(adapter);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        ArgumentCaptor<SessionHandle> sessionHandleCaptor =
+                ArgumentCaptor.forClass(SessionHandle.class);
+        rangingManager.openSession(
+                ATTRIBUTION_SOURCE, PARAMS, EXECUTOR, callback, /* chipIds= */ null);
+        verify(adapter, times(1))
+                .openRanging(
+                        eq(ATTRIBUTION_SOURCE),
+                        sessionHandleCaptor.capture(),
+                        any(),
+                        any(),
+                        eq(/* chipId= */ null));
+        SessionHandle handle = sessionHandleCaptor.getValue();
+
+        // Same session id, but not the handle that was opened.
+        rangingManager.onRangingOpened(
+                new SessionHandle(handle.getId(), ATTRIBUTION_SOURCE, PID + 1));
+        verify(callback, times(0)).onOpened(any());
+
+        rangingManager.onRangingOpened(handle);
+        verify(callback, times(1)).onOpened(any());
+    }
+
     @Test
     public void testOnRangingOpened_MultipleSessionsRegistered() throws RemoteException {
         IUwbAdapter adapter = mock(IUwbAdapter.class);
@@ -202,6 +229,10 @@ public class RangingManagerTest {
         rangingManager.onRangingResult(handle, report);
         verify(callback, times(1)).onReportReceived(eq(report));
 
+        RangingReport batchedReport = UwbTestUtils.getRangingReports(2);
+        rangingManager.onRangingResultBatch(handle, List.of(batchedReport));
+        verify(callback, times(1)).onReportReceived(eq(batchedReport));
+
         rangingManager.onRangingReconfigured(handle, PARAMS);
         verify(callback, times(1)).onReconfigured(eq(PARAMS));
 
@@ -22,6 +22,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
@@ -30,6 +31,8 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -48,10 +51,14 @@ import com.android.modules.utils.build.SdkLevel;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Test of {@link RangingSession}.
@@ -491,6 +498,178 @@ public class RangingSessionTest {
         verify(callback, times(1)).onReportReceived(report);
     }
 
+    @Test
+    public void testOnRangingResultBatch_OnReportReceivedCalledInOrder() {
+        SessionHandle handle = new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        RangingSession session = new RangingSession(EXECUTOR, callback, adapter, handle);
+        session.onRangingStarted(PARAMS);
+
+        RangingReport first = UwbTestUtils.getRangingReports(1);
+        RangingReport second = UwbTestUtils.getRangingReports(2);
+        session.onRangingResultBatch(List.of(first, second));
+
+        InOrder inOrder = inOrder(callback);
+        inOrder.verify(callback).onReportReceived(first);
+        inOrder.verify(callback).onReportReceived(second);
+    }
+
+    @Test
+    public void testOnRangingResult_dropOldestKeepsNewestWhenExecutorIsSlow() {
+        SessionHandle handle = new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        List<Runnable> queued = new ArrayList<>();
+        RangingSession session = new RangingSession(queued::add, callback, adapter, handle);
+        session.setReportDeliveryPolicy(RangingSession.REPORT_DELIVERY_POLICY_DROP_OLDEST, 2);
+        session.onRangingStarted(PARAMS);
+        queued.remove(0).run();
+
+        RangingReport first = UwbTestUtils.getRangingReports(1);
+        RangingReport second = UwbTestUtils.getRangingReports(1);
+        RangingReport third = UwbTestUtils.getRangingReports(1);
+        session.onRangingResult(first);
+        session.onRangingResultBatch(List.of(second, third));
+
+        // A single delivery task is queued for all the reports.
+        assertThat(queued).hasSize(1);
+        queued.remove(0).run();
+
+        InOrder inOrder = inOrder(callback);
+        inOrder.verify(callback).onReportReceived(second);
+        inOrder.verify(callback).onReportReceived(third);
+        verify(callback, times(0)).onReportReceived(first);
+        assertEquals(1, session.getDroppedReportCount());
+        assertEquals(1, third.getRangingReportMetadata()
+                .getLong(RangingSession.KEY_DROPPED_REPORT_COUNT));
+    }
+
+    @Test
+    public void testOnRangingResult_latestPerPeerConflatesReports() {
+        SessionHandle handle = new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        List<Runnable> queued = new ArrayList<>();
+        RangingSession session = new RangingSession(queued::add, callback, adapter, handle);
+        session.setReportDeliveryPolicy(
+                RangingSession.REPORT_DELIVERY_POLICY_LATEST_PER_PEER, 16);
+        session.onRangingStarted(PARAMS);
+        queued.remove(0).run();
+
+        UwbAddress peerA = UwbTestUtils.getUwbAddress(true);
+        UwbAddress peerB = UwbTestUtils.getUwbAddress(false);
+        RangingReport oldA = new RangingReport.Builder()
+                .addMeasurement(UwbTestUtils.getRangingMeasurement(peerA)).build();
+        RangingReport b = new RangingReport.Builder()
+                .addMeasurement(UwbTestUtils.getRangingMeasurement(peerB)).build();
+        RangingReport newA = new RangingReport.Builder()
+                .addMeasurement(UwbTestUtils.getRangingMeasurement(peerA)).build();
+        session.onRangingResult(oldA);
+        session.onRangingResult(b);
+        session.onRangingResult(newA);
+        queued.remove(0).run();
+
+        InOrder inOrder = inOrder(callback);
+        inOrder.verify(callback).onReportReceived(b);
+        inOrder.verify(callback).onReportReceived(newA);
+        verify(callback, times(0)).onReportReceived(oldA);
+        assertEquals(1, session.getDroppedReportCount());
+        assertThat(queued).isEmpty();
+    }
+
+    @Test
+    public void testOnRangingResult_latestPerPeerKeepsLatestMeasurementOfEachPeer() {
+        SessionHandle handle = new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        List<Runnable> queued = new ArrayList<>();
+        RangingSession session = new RangingSession(queued::add, callback, adapter, handle);
+        session.setReportDeliveryPolicy(
+                RangingSession.REPORT_DELIVERY_POLICY_LATEST_PER_PEER, 16);
+        session.onRangingStarted(PARAMS);
+        queued.remove(0).run();
+
+        UwbAddress peerA = UwbTestUtils.getUwbAddress(true);
+        UwbAddress peerB = UwbTestUtils.getUwbAddress(false);
+        RangingMeasurement oldA = UwbTestUtils.getRangingMeasurement(peerA);
+        RangingMeasurement b = UwbTestUtils.getRangingMeasurement(peerB);
+        RangingReport both = new RangingReport.Builder()
+                .addMeasurement(oldA)
+                .addMeasurement(b)
+                .build();
+        RangingReport newA = new RangingReport.Builder()
+                .addMeasurement(UwbTestUtils.getRangingMeasurement(peerA)).build();
+        session.onRangingResult(both);
+        session.onRangingResult(newA);
+        queued.remove(0).run();
+
+        // Only the measurement of peer A is superseded; the one of peer B is still delivered.
+        ArgumentCaptor<RangingReport> captor = ArgumentCaptor.forClass(RangingReport.class);
+        verify(callback, times(2)).onReportReceived(captor.capture());
+        assertThat(captor.getAllValues().get(0).getMeasurements()).containsExactly(b);
+        assertThat(captor.getAllValues().get(1)).isSameInstanceAs(newA);
+        assertEquals(0, session.getDroppedReportCount());
+    }
+
+    @Test
+    public void testOnRangingResult_deliveryResumesAfterCallbackThrows() {
+        SessionHandle handle = new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        List<Runnable> queued = new ArrayList<>();
+        RangingSession session = new RangingSession(queued::add, callback, adapter, handle);
+        session.setReportDeliveryPolicy(RangingSession.REPORT_DELIVERY_POLICY_DROP_OLDEST, 16);
+        session.onRangingStarted(PARAMS);
+        queued.remove(0).run();
+
+        RangingReport first = UwbTestUtils.getRangingReports(1);
+        RangingReport second = UwbTestUtils.getRangingReports(1);
+        doThrow(new IllegalStateException()).when(callback).onReportReceived(first);
+        session.onRangingResult(first);
+        Runnable delivery = queued.remove(0);
+        assertThrows(IllegalStateException.class, delivery::run);
+
+        // The next report schedules a new delivery task.
+        session.onRangingResult(second);
+        assertThat(queued).hasSize(1);
+        queued.remove(0).run();
+        verify(callback).onReportReceived(second);
+    }
+
+    @Test
+    public void testOnRangingResult_deliveryResumesAfterExecutorRejects() {
+        SessionHandle handle = new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        List<Runnable> queued = new ArrayList<>();
+        boolean[] reject = new boolean[1];
+        Executor executor = runnable -> {
+            if (reject[0]) {
+                throw new RejectedExecutionException();
+            }
+            queued.add(runnable);
+        };
+        RangingSession session = new RangingSession(executor, callback, adapter, handle);
+        session.setReportDeliveryPolicy(RangingSession.REPORT_DELIVERY_POLICY_DROP_OLDEST, 16);
+        session.onRangingStarted(PARAMS);
+        queued.remove(0).run();
+
+        RangingReport first = UwbTestUtils.getRangingReports(1);
+        RangingReport second = UwbTestUtils.getRangingReports(1);
+        reject[0] = true;
+        assertThrows(RejectedExecutionException.class, () -> session.onRangingResult(first));
+
+        // The rejected task isn't considered scheduled, so the next report queues one.
+        reject[0] = false;
+        session.onRangingResult(second);
+        assertThat(queued).hasSize(1);
+        queued.remove(0).run();
+        InOrder inOrder = inOrder(callback);
+        inOrder.verify(callback).onReportReceived(first);
+        inOrder.verify(callback).onReportReceived(second);
+    }
+
     @Test
     public void testOnRangingResult_OnReportReceivedNotCalledWhenNotOpen() {
         SessionHandle handle = new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID);
@@ -28,13 +28,21 @@ import java.util.Optional;
 @AutoValue
 public abstract class PrecisionData {
 
-    /** Returns a list of {@link RangingData} for different ranging technologies if present. */
+    /**
+     * Returns a list of {@link RangingData} for different ranging technologies if present. In
+     * {@link PrecisionRangingConfig.DeliveryMode#STREAMING} it holds all the ranging data received
+     * since the last update, in timestamp order.
+     */
     public abstract Optional<ImmutableList<RangingData>> getRangingData();
 
     /** Returns {@link FusionData} if present. */
     public abstract Optional<FusionData> getFusionData();
 
-    /** Returns the timestamp for this data. */
+    /**
+     * Returns the timestamp for this data, in nanos of the elapsed realtime clock as returned by
+     * {@link android.os.SystemClock#elapsedRealtimeNanos}. This used to be in millis since the
+     * epoch, so it can't be compared with wall clock times.
+     */
     public abstract long getTimestamp();
 
     /** Returns a builder for {@link RangingData}. */
@@ -108,7 +108,10 @@ public interface PrecisionRanging {
         /** Callback method for reporting when precision ranging has stopped. */
         void onStopped(@StoppedReason int reason);
 
-        /** Callback for reporting precision data. */
+        /**
+         * Callback for reporting precision data. Its timestamps are in nanos of the elapsed
+         * realtime clock, not in millis since the epoch.
+         */
         void onData(PrecisionData data);
 
         /** Reason why Precision Finding was stopped. */
@@ -26,10 +26,31 @@ import com.google.common.collect.ImmutableList;
 import java.time.Duration;
 import java.util.Optional;
 
-/** Configuration for Precision Ranging. */
+/**
+ * Configuration for Precision Ranging.
+ *
+ * <p>The timestamps of the reported {@link PrecisionData} and {@link RangingData} are in nanos of
+ * the elapsed realtime clock, in both delivery modes. {@link PrecisionData#getTimestamp} used to be
+ * in millis since the epoch.
+ */
 @AutoValue
 public abstract class PrecisionRangingConfig {
 
+    /** Default capacity of the per ranging technology queue in {@link DeliveryMode#STREAMING}. */
+    public static final int DEFAULT_STREAMING_QUEUE_CAPACITY = 256;
+
+    /** How the ranging data received between two updates is reported. */
+    public enum DeliveryMode {
+        /** Only the latest ranging data of each ranging technology is reported. */
+        LATEST,
+        /**
+         * All the ranging data received since the last update is reported, in timestamp order. Up
+         * to {@link #getStreamingQueueCapacity} ranging data per ranging technology is kept between
+         * two updates, the oldest ones are dropped beyond that.
+         */
+        STREAMING,
+    }
+
     /** Returns the list of ranging technologies that were requested for this ranging session. */
     public abstract ImmutableList<RangingTechnology> getRangingTechnologiesToRangeWith();
 
@@ -39,13 +60,22 @@ public abstract class PrecisionRangingConfig {
     /**
      * Returns the max interval at which data will be reported back. If set to 0 data will be
      * reported
-     * immediately on reception. If set to non zero value, only latest received data that hasn't
-     * been
-     * yet reported will be reported, so there's a chance that some data doesn't get reported if
-     * multiple data points were received during the same update interval.
+     * immediately on reception. If set to non zero value, the data that hasn't been yet reported
+     * is reported as set by {@link #getDeliveryMode}: in {@link DeliveryMode#LATEST} there's a
+     * chance that some data doesn't get reported if multiple data points were received during the
+     * same update interval.
      */
     public abstract Duration getMaxUpdateInterval();
 
+    /** Returns how the data received during an update interval is reported. */
+    public abstract DeliveryMode getDeliveryMode();
+
+    /**
+     * Returns the max number of ranging data kept per ranging technology between two updates in
+     * {@link DeliveryMode#STREAMING}.
+     */
+    public abstract int getStreamingQueueCapacity();
+
     /**
      * Returns the timeout after which precision ranging will be stopped if no data was produced
      * since
@@ -71,7 +101,9 @@ public abstract class PrecisionRangingConfig {
 
     /** Returns a builder for {@link PrecisionRangingConfig}. */
     public static Builder builder() {
-        return new AutoValue_PrecisionRangingConfig.Builder();
+        return new AutoValue_PrecisionRangingConfig.Builder()
+                .setDeliveryMode(DeliveryMode.LATEST)
+                .setStreamingQueueCapacity(DEFAULT_STREAMING_QUEUE_CAPACITY);
     }
 
     /** Builder for {@link PrecisionRangingConfig}. */
@@ -84,6 +116,10 @@ public abstract class PrecisionRangingConfig {
 
         public abstract Builder setMaxUpdateInterval(Duration maxUpdateInterval);
 
+        public abstract Builder setDeliveryMode(DeliveryMode deliveryMode);
+
+        public abstract Builder setStreamingQueueCapacity(int streamingQueueCapacity);
+
         public abstract Builder setFusionAlgorithmDriftTimeout(Duration duration);
 
         public abstract Builder setNoUpdateTimeout(Duration duration);
@@ -101,6 +137,9 @@ public abstract class PrecisionRangingConfig {
                     !config.getRangingTechnologiesToRangeWith().isEmpty(),
                     "Ranging technologies to range with must contain at least one ranging "
                             + "technology.");
+            Preconditions.checkArgument(
+                    config.getStreamingQueueCapacity() > 0,
+                    "Streaming queue capacity must be positive.");
             Preconditions.checkArgument(
                     config.getUseFusingAlgorithm() == config.getFusionAlgorithmConfig()
                     .isPresent(),
@@ -22,6 +22,7 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import android.content.Context;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -33,7 +34,9 @@ import androidx.core.uwb.backend.impl.internal.UwbComplexChannel;
 import com.android.internal.annotations.GuardedBy;
 import com.android.ranging.generic.RangingTechnology;
 import com.android.sensor.Estimate;
+import com.android.sensor.KalmanMultiSensorFinder;
 import com.android.sensor.MultiSensorFinderListener;
+import com.android.sensor.Status;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -47,8 +50,10 @@ import dagger.assisted.Assisted;
 import dagger.assisted.AssistedFactory;
 import dagger.assisted.AssistedInject;
 
-import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -69,6 +74,9 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
      */
     private static final long DEFAULT_INTERNAL_UPDATE_INTERVAL_MS = 100;
 
+    /** Error std dev of the CS ranges fed to the fusion algorithm, which don't carry one. */
+    private static final double CS_RANGE_ERROR_STD_DEV_M = 0.5;
+
     /**
      * Frequency of the task running the periodic update calculated based on what {@link
      * PrecisionRangingConfig#getMaxUpdateInterval} is set to, or default when {@link
@@ -101,13 +109,14 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
     private Optional<PrecisionRanging.Callback> callback;
 
     /**
-     * In this instance the primary fusion algorithm is the ArCoreMultiSensorFinder algorithm. In
-     * future we could create a common interface that a fusion algorithm should conform to and then
-     * make this generic so the caller can choose which fusion algorithm to use.
+     * In this instance the fusion algorithm is the KalmanMultiSensorFinder algorithm, since the
+     * ArCoreMultiSensorFinder algorithm needs the ARCore native library. In future we could create
+     * a common interface that a fusion algorithm should conform to and then make this generic so
+     * the caller can choose which fusion algorithm to use.
      */
-//    private Optional<ArCoreMultiSensorFinder> fusionAlgorithm;
-//
-//    private Optional<MultiSensorFinderListener> fusionAlgorithmListener;
+    private final Optional<KalmanMultiSensorFinder> fusionAlgorithm;
+
+    private Optional<MultiSensorFinderListener> fusionAlgorithmListener;
 
     // TODO(b/331206299): Check after arcore is integrated.
     //private final TimeSource timeSource;
@@ -129,11 +138,25 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
      */
     private final ExecutorService internalExecutorService;
 
+    /**
+     * Ranging data received since the last update, per ranging technology. In {@link
+     * PrecisionRangingConfig.DeliveryMode#LATEST} each queue only keeps the latest ranging data.
+     */
+    @GuardedBy("lock")
+    private final Map<RangingTechnology, ArrayDeque<RangingData>> pendingRangingData;
+
+    private final int pendingRangingDataCapacity;
+
+    /** Number of ranging data replaced or dropped before it could be reported. */
     @GuardedBy("lock")
-    private Optional<RangingData> lastUwbRangingDataResult;
+    private long droppedRangingDataCount;
 
     @GuardedBy("lock")
-    private Optional<RangingData> lastCsRangingDataResult;
+    private long reportedRangingDataCount;
+
+    /** Largest number of ranging data reported in a single update. */
+    @GuardedBy("lock")
+    private int peakRangingDataBacklog;
 
     @GuardedBy("lock")
     private Optional<FusionData> lastFusionDataResult;
@@ -141,28 +164,28 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
     /**
      * Last update time is used to check if we should report new data via the callback if available.
      * It's not used as a reason to stop precision ranging, last received times are used instead for
-     * that.
+     * that. All the times are in nanos of the elapsed realtime clock, which is monotonic.
      */
-    private Instant lastUpdateTime;
+    private long lastUpdateTimeNanos;
 
     /**
      * Start time is used to check if we're in a grace period right after starting so we don't stop
      * precision ranging before giving it a chance to start producing data.
      */
-    private Instant startTime;
+    private long startTimeNanos;
 
     /**
      * Last Range data received is used to check if precision ranging should be stopped if we didn't
      * receive any data for too long, or to check if we should stop due to "drifting" in case fusion
      * algorithm is still reporting data, but we didn't feed any ranging data into for far too long.
      */
-    private Instant lastRangeDataReceivedTime;
+    private long lastRangeDataReceivedTimeNanos;
 
     /**
      * Last Fusion data received time is used to check if precision ranging should be stopped if we
      * didn't receive any data for too long.
      */
-    private Instant lastFusionDataReceivedTime;
+    private long lastFusionDataReceivedTimeNanos;
 
     /**
      * This is used to check if stop is needed in case all ranging adapters are stopped. If we
@@ -201,6 +224,22 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
                 Optional.empty());
     }
 
+    @VisibleForTesting
+    public PrecisionRangingImpl(
+            Lazy<UwbAdapter> lazyUwbAdapter,
+            Context context,
+            PrecisionRangingConfig config,
+            ScheduledExecutorService scheduledExecutorService,
+            Optional<ImmutableMap<RangingTechnology, RangingAdapter>> rangingAdapters) {
+        this(
+                lazyUwbAdapter,
+                context,
+                config,
+                scheduledExecutorService,
+                Optional.empty(),
+                rangingAdapters);
+    }
+
     @VisibleForTesting
     public PrecisionRangingImpl(
             Lazy<UwbAdapter> lazyUwbAdapter,
@@ -208,7 +247,7 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
             PrecisionRangingConfig config,
             ScheduledExecutorService scheduledExecutorService,
             //TimeSource timeSource,
-            //Optional<ArCoreMultiSensorFinder> fusionAlgorithm,
+            Optional<KalmanMultiSensorFinder> fusionAlgorithm,
             Optional<ImmutableMap<RangingTechnology, RangingAdapter>> rangingAdapters) {
         this.context = context;
         this.config = config;
@@ -219,17 +258,31 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
         rangingConfigurationsAdded = EnumSet.noneOf(RangingTechnology.class);
         rangingAdapterListeners = new HashMap<>();
         rangingAdaptersStateMap = new HashMap<>();
-        lastUpdateTime = Instant.EPOCH;
-        lastRangeDataReceivedTime = Instant.EPOCH;
-        lastFusionDataReceivedTime = Instant.EPOCH;
-        lastUwbRangingDataResult = Optional.empty();
-        lastCsRangingDataResult = Optional.empty();
+        lastUpdateTimeNanos = 0;
+        lastRangeDataReceivedTimeNanos = 0;
+        lastFusionDataReceivedTimeNanos = 0;
+        pendingRangingData = new EnumMap<>(RangingTechnology.class);
+        for (RangingTechnology technology : config.getRangingTechnologiesToRangeWith()) {
+            pendingRangingData.put(technology, new ArrayDeque<>());
+        }
+        pendingRangingDataCapacity =
+                config.getDeliveryMode() == PrecisionRangingConfig.DeliveryMode.STREAMING
+                        ? config.getStreamingQueueCapacity()
+                        : 1;
         lastFusionDataResult = Optional.empty();
         periodicUpdateIntervalMs =
                 config.getMaxUpdateInterval().isZero()
                         ? DEFAULT_INTERNAL_UPDATE_INTERVAL_MS
                         : config.getMaxUpdateInterval().toMillis();
-        //this.fusionAlgorithm = fusionAlgorithm;
+        if (fusionAlgorithm.isEmpty() && config.getUseFusingAlgorithm()) {
+            fusionAlgorithm =
+                    Optional.of(
+                            new KalmanMultiSensorFinder(
+                                    config.getFusionAlgorithmConfig().get(),
+                                    scheduledExecutorService));
+        }
+        this.fusionAlgorithm = fusionAlgorithm;
+        this.fusionAlgorithmListener = Optional.empty();
         if (rangingAdapters.isPresent()) {
             this.rangingAdapters = rangingAdapters.get();
         } else {
@@ -283,8 +336,8 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
         }
 
         //startTime = timeSource.now();
-        startTime = Instant.now();
-        Log.i(TAG, "Starting periodic update. Start time: " + startTime);
+        startTimeNanos = SystemClock.elapsedRealtimeNanos();
+        Log.i(TAG, "Starting periodic update. Start time: " + startTimeNanos);
         var unused =
                 periodicUpdateExecutorService.scheduleWithFixedDelay(
                         this::performPeriodicUpdate, 0, periodicUpdateIntervalMs, MILLISECONDS);
@@ -293,20 +346,12 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
     /* Initiates and starts fusion algorithm. */
     private void startFusingAlgorithm() {
         Log.i(TAG, "Starting fusion algorithm.");
-//        if (fusionAlgorithm.isEmpty()) {
-//            fusionAlgorithm =
-//                    Optional.of(
-//                            new ArCoreMultiSensorFinder(
-//                                    Sleeper.defaultSleeper(), timeSource, config
-//                                    .getFusionAlgorithmConfig().get()));
-//        }
-//        fusionAlgorithmListener = Optional.of(new FusionAlgorithmListener());
-//        fusionAlgorithm.get().subscribeToEstimates(fusionAlgorithmListener.get());
-//        var result = fusionAlgorithm.get().start(context);
-//        if (result != Status.OK) {
-//            Log.w(TAG,"Fusion algorithm start failed: %s", result);
-//            return;
-//        }
+        fusionAlgorithmListener = Optional.of(new FusionAlgorithmListener());
+        fusionAlgorithm.get().subscribeToEstimates(fusionAlgorithmListener.get());
+        var result = fusionAlgorithm.get().start();
+        if (result != Status.OK) {
+            Log.w(TAG, "Fusion algorithm start failed: " + result);
+        }
     }
 
     /*
@@ -334,43 +379,44 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
         // time
         // has passed since last update.
         //Instant currentTime = timeSource.now();
-        Instant currentTime = Instant.now();
+        long currentTimeNanos = SystemClock.elapsedRealtimeNanos();
         if (config.getMaxUpdateInterval().isZero()
-                || currentTime.isBefore(lastUpdateTime.plus(config.getMaxUpdateInterval()))) {
+                || currentTimeNanos - lastUpdateTimeNanos
+                        < config.getMaxUpdateInterval().toNanos()) {
             return;
         }
-        // Skip update if there's no new data to report
-        synchronized (lock) {
-            if (lastUwbRangingDataResult.isEmpty()
-                    && lastCsRangingDataResult.isEmpty()
-                    && lastFusionDataResult.isEmpty()) {
-                return;
-            }
-        }
 
         PrecisionData.Builder precisionDataBuilder = PrecisionData.builder();
-        ImmutableList.Builder<RangingData> rangingDataBuilder = ImmutableList.builder();
         synchronized (lock) {
-            if (lastUwbRangingDataResult.isPresent()) {
-                rangingDataBuilder.add(lastUwbRangingDataResult.get());
+            int backlog = 0;
+            for (ArrayDeque<RangingData> queue : pendingRangingData.values()) {
+                backlog += queue.size();
             }
-            if (lastCsRangingDataResult.isPresent()) {
-                rangingDataBuilder.add(lastCsRangingDataResult.get());
+            // Skip update if there's no new data to report
+            if (backlog == 0 && lastFusionDataResult.isEmpty()) {
+                return;
             }
-            var rangingData = rangingDataBuilder.build();
-            if (!rangingData.isEmpty()) {
-                precisionDataBuilder.setRangingData(rangingData);
+            if (backlog > 0) {
+                List<RangingData> rangingData = new ArrayList<>(backlog);
+                for (ArrayDeque<RangingData> queue : pendingRangingData.values()) {
+                    rangingData.addAll(queue);
+                    queue.clear();
+                }
+                if (config.getDeliveryMode() == PrecisionRangingConfig.DeliveryMode.STREAMING) {
+                    rangingData.sort(Comparator.comparingLong(RangingData::getTimestamp));
+                }
+                precisionDataBuilder.setRangingData(ImmutableList.copyOf(rangingData));
+                reportedRangingDataCount += backlog;
+                peakRangingDataBacklog = Math.max(peakRangingDataBacklog, backlog);
             }
             if (lastFusionDataResult.isPresent()) {
                 precisionDataBuilder.setFusionData(lastFusionDataResult.get());
             }
-            lastUwbRangingDataResult = Optional.empty();
-            lastCsRangingDataResult = Optional.empty();
             lastFusionDataResult = Optional.empty();
         }
         //lastUpdateTime = timeSource.now();
-        lastUpdateTime = Instant.now();
-        precisionDataBuilder.setTimestamp(lastUpdateTime.toEpochMilli());
+        lastUpdateTimeNanos = SystemClock.elapsedRealtimeNanos();
+        precisionDataBuilder.setTimestamp(lastUpdateTimeNanos);
         PrecisionData precisionData = precisionDataBuilder.build();
         synchronized (lock) {
             if (internalState == State.STOPPED) {
@@ -417,10 +463,10 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
         // arcore
         // data then check if drift timeout expired.
         //Instant currentTime = timeSource.now();
-        Instant currentTime = Instant.now();
+        long currentTimeNanos = SystemClock.elapsedRealtimeNanos();
         if (noActiveRanging && config.getUseFusingAlgorithm() && seenSuccessfulFusionData) {
-            if (currentTime.isAfter(
-                    lastRangeDataReceivedTime.plus(config.getFusionAlgorithmDriftTimeout()))) {
+            if (currentTimeNanos - lastRangeDataReceivedTimeNanos
+                    > config.getFusionAlgorithmDriftTimeout().toNanos()) {
                 Log.i(TAG,
                         "stopping precision ranging cause: fusion algorithm drift timeout [" +
                                 config.getFusionAlgorithmDriftTimeout().toMillis() + " ms]");
@@ -431,16 +477,14 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
 
         // If we're still inside the init timeout don't stop precision ranging for any of the
         // reasons below this.
-        if (currentTime.isBefore(startTime.plus(config.getInitTimeout()))) {
+        if (currentTimeNanos - startTimeNanos < config.getInitTimeout().toNanos()) {
             return;
         }
 
         // If we didn't receive data from any source for more than the update timeout then stop.
-        Instant lastReceivedDataTime =
-                lastRangeDataReceivedTime.isAfter(lastFusionDataReceivedTime)
-                        ? lastRangeDataReceivedTime
-                        : lastFusionDataReceivedTime;
-        if (currentTime.isAfter(lastReceivedDataTime.plus(config.getNoUpdateTimeout()))) {
+        long lastReceivedDataTimeNanos =
+                Math.max(lastRangeDataReceivedTimeNanos, lastFusionDataReceivedTimeNanos);
+        if (currentTimeNanos - lastReceivedDataTimeNanos > config.getNoUpdateTimeout().toNanos()) {
             Log.i(TAG,
                     "stopping precision ranging cause: no update timeout [" +
                             config.getNoUpdateTimeout().toMillis() + " ms]");
@@ -453,16 +497,22 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
 
     /* Feeds ranging adapter data into the fusion algorithm. */
     private void feedDataToFusionAlgorithm(RangingData rangingData) {
+        if (!config.getUseFusingAlgorithm() || fusionAlgorithm.isEmpty()) {
+            return;
+        }
         switch (rangingData.getRangingTechnology()) {
             case UWB:
-//                fusionAlgorithm
-//                        .get()
-//                        .updateWithUwbMeasurement(rangingData.getRangeDistance(), rangingData
-//                        .getTimestamp());
+                fusionAlgorithm
+                        .get()
+                        .updateWithUwbMeasurement(rangingData.getRangeDistance(), rangingData
+                        .getTimestamp());
                 break;
             case CS:
-                throw new UnsupportedOperationException(
-                        "CS support not implemented. Can't update fusion alg.");
+                fusionAlgorithm
+                        .get()
+                        .updateWithRangeMeasurement(rangingData.getRangeDistance(),
+                                CS_RANGE_ERROR_STD_DEV_M, rangingData.getTimestamp());
+                break;
         }
     }
 
@@ -504,27 +554,33 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
         }
         // stop fusion algorithm
         if (config.getUseFusingAlgorithm()) {
-//            internalExecutorService.execute(
-//                    () -> {
-//                        var status = fusionAlgorithm.get().stop();
-//                        if (status != Status.OK) {
-//                            Log.w(TAG,"Fusion alg stop failed: " + status);
-//                        }
-//                    });
+            var listener = fusionAlgorithmListener;
+            internalExecutorService.execute(
+                    () -> {
+                        var status = fusionAlgorithm.get().stop();
+                        if (status != Status.OK) {
+                            Log.w(TAG, "Fusion alg stop failed: " + status);
+                        }
+                        listener.ifPresent(fusionAlgorithm.get()::unsubscribeFromEstimates);
+                    });
         }
 
         // reset internal states and objects
         synchronized (lock) {
-            lastUwbRangingDataResult = Optional.empty();
-            lastCsRangingDataResult = Optional.empty();
+            for (ArrayDeque<RangingData> queue : pendingRangingData.values()) {
+                droppedRangingDataCount += queue.size();
+                queue.clear();
+            }
             lastFusionDataResult = Optional.empty();
+            Log.i(TAG, "Ranging data reported: " + reportedRangingDataCount + ", dropped: "
+                    + droppedRangingDataCount + ", peak backlog: " + peakRangingDataBacklog);
         }
-        lastUpdateTime = Instant.EPOCH;
-        lastRangeDataReceivedTime = Instant.EPOCH;
-        lastFusionDataReceivedTime = Instant.EPOCH;
+        lastUpdateTimeNanos = 0;
+        lastRangeDataReceivedTimeNanos = 0;
+        lastFusionDataReceivedTimeNanos = 0;
         rangingAdapterListeners.clear();
         rangingConfigurationsAdded.clear();
-        //fusionAlgorithmListener = Optional.empty();
+        fusionAlgorithmListener = Optional.empty();
         callback = Optional.empty();
         seenSuccessfulFusionData = false;
     }
@@ -640,10 +696,30 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
         return rangingAdapterListeners;
     }
 
-//    @VisibleForTesting
-//    public Optional<MultiSensorFinderListener> getFusionAlgorithmListener() {
-//        return fusionAlgorithmListener;
-//    }
+    @VisibleForTesting
+    public Optional<MultiSensorFinderListener> getFusionAlgorithmListener() {
+        return fusionAlgorithmListener;
+    }
+
+    /** Marks a ranging technology as configured without setting its parameters. */
+    @VisibleForTesting
+    void setRangingConfigurationAdded(RangingTechnology technology) {
+        rangingConfigurationsAdded.add(technology);
+    }
+
+    @VisibleForTesting
+    public long getDroppedRangingDataCount() {
+        synchronized (lock) {
+            return droppedRangingDataCount;
+        }
+    }
+
+    @VisibleForTesting
+    public int getPeakRangingDataBacklog() {
+        synchronized (lock) {
+            return peakRangingDataBacklog;
+        }
+    }
 
     /* Listener implementation for ranging adapter callback. */
     private class RangingAdapterListener implements RangingAdapter.Callback {
@@ -688,13 +764,13 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
                 }
             }
             //lastRangeDataReceivedTime = timeSource.now();
-            lastRangeDataReceivedTime = Instant.now();
+            lastRangeDataReceivedTimeNanos = SystemClock.elapsedRealtimeNanos();
             feedDataToFusionAlgorithm(rangingData);
             if (config.getMaxUpdateInterval().isZero()) {
                 PrecisionData precisionData =
                         PrecisionData.builder()
                                 .setRangingData(ImmutableList.of(rangingData))
-                                .setTimestamp(Instant.now().toEpochMilli())
+                                .setTimestamp(SystemClock.elapsedRealtimeNanos())
                                 .build();
                 synchronized (lock) {
                     if (internalState == State.STOPPED) {
@@ -702,15 +778,15 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
                     }
                     callback.get().onData(precisionData);
                 }
+                return;
             }
-            switch (rangingData.getRangingTechnology()) {
-                case UWB:
-                    synchronized (lock) {
-                        lastUwbRangingDataResult = Optional.of(rangingData);
-                    }
-                    break;
-                case CS:
-                    throw new UnsupportedOperationException("CS support not implemented.");
+            synchronized (lock) {
+                ArrayDeque<RangingData> queue = pendingRangingData.get(technology);
+                if (queue.size() == pendingRangingDataCapacity) {
+                    queue.removeFirst();
+                    droppedRangingDataCount++;
+                }
+                queue.addLast(rangingData);
             }
         }
     }
@@ -732,7 +808,7 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
             }
             FusionData fusionData = FusionData.fromFusionAlgorithmEstimate(estimate);
             if (fusionData.getArCoreState() == FusionData.ArCoreState.OK) {
-                lastFusionDataReceivedTime = Instant.now();
+                lastFusionDataReceivedTimeNanos = SystemClock.elapsedRealtimeNanos();
                 seenSuccessfulFusionData = true;
             }
             synchronized (lock) {
@@ -742,7 +818,7 @@ public final class PrecisionRangingImpl implements PrecisionRanging {
                 PrecisionData precisionData =
                         PrecisionData.builder()
                                 .setFusionData(fusionData)
-                                .setTimestamp(Instant.now().toEpochMilli())
+                                .setTimestamp(SystemClock.elapsedRealtimeNanos())
                                 .build();
                 synchronized (lock) {
                     if (internalState == State.STOPPED) {
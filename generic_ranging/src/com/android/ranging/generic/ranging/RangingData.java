@@ -33,7 +33,7 @@ public abstract class RangingData {
     /** Returns rssi. */
     public abstract int getRssi();
 
-    /** Returns timestamp in nanons. */
+    /** Returns the timestamp in nanos of the elapsed realtime clock. */
     public abstract long getTimestamp();
 
     /** Returns a builder for {@link RangingData}. */
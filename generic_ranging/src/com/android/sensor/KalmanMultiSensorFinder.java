@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sensor;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.ranging.generic.proto.ConfidenceLevel;
+import com.android.ranging.generic.proto.MultiSensorFinderConfig;
+import com.android.ranging.generic.proto.NisDivergenceDetectorConfig;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A MultiSensorFinder implementation written in Java, which fuses the range measurements of all
+ * the ranging technologies (UWB, and Channel Sounding when present) with a Kalman filter on the
+ * range and the range rate. Unlike {@link ArCoreMultiSensorFinder}, it needs no native library
+ * nor camera odometry.
+ *
+ * <p>Measurements are fused as they are received, on the caller's thread. Estimates are published
+ * on the given executor at {@code odometry_polling_rate_hz}, if a measurement was fused since the
+ * last one. A measurement whose Normalized Innovation Squared is above the {@code
+ * confidence_level} of the NIS divergence detector is rejected as an outlier; after {@code
+ * nis_buffer_size} rejections in a row the filter is considered diverged and restarts from the
+ * next measurement.
+ *
+ * <p>Ranges don't make the bearing observable, so estimates report a bearing of 0 with an error
+ * std dev of pi.
+ */
+public class KalmanMultiSensorFinder {
+    private static final String TAG = KalmanMultiSensorFinder.class.getSimpleName();
+    private static final int DEFAULT_ESTIMATE_RATE_HZ = 10;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Std dev of the change of range rate, i.e. how fast the user and the beacon accelerate. */
+    @VisibleForTesting
+    static final double ACCELERATION_STD_DEV_MPS2 = 1.0;
+    /** Variance of a UWB range when the configuration doesn't provide one. */
+    @VisibleForTesting
+    static final double DEFAULT_UWB_NOISE_VARIANCE_M2 = 0.01;
+    /** Range rate std dev of a new track, a person walking fast. */
+    private static final double INITIAL_RANGE_RATE_STD_DEV_MPS = 2.0;
+    private static final int DEFAULT_MAX_CONSECUTIVE_OUTLIERS = 10;
+
+    private final ScheduledExecutorService mExecutor;
+    private final long mEstimatePeriodNanos;
+    private final double mPositionNoiseVariance;
+    private final double mUwbNoiseVariance;
+    private final double mOutlierThreshold;
+    private final int mMaxConsecutiveOutliers;
+
+    private final Object mLock = new Object();
+    private final List<MultiSensorFinderListener> mListeners = new CopyOnWriteArrayList<>();
+    @GuardedBy("mLock")
+    @Nullable
+    private ScheduledFuture<?> mEstimateTask;
+    @GuardedBy("mLock")
+    private boolean mStarted = false;
+
+    // Filter state: range, range rate and their covariance. Kept in fields so that fusing a
+    // measurement doesn't allocate.
+    @GuardedBy("mLock")
+    private boolean mInitialized = false;
+    @GuardedBy("mLock")
+    private double mRangeM;
+    @GuardedBy("mLock")
+    private double mRangeRateMps;
+    @GuardedBy("mLock")
+    private double mP00;
+    @GuardedBy("mLock")
+    private double mP01;
+    @GuardedBy("mLock")
+    private double mP11;
+    @GuardedBy("mLock")
+    private long mLastMeasurementNanos;
+    @GuardedBy("mLock")
+    private int mConsecutiveOutliers;
+    @GuardedBy("mLock")
+    private boolean mNewMeasurementFused = false;
+    @GuardedBy("mLock")
+    private boolean mDiverged = false;
+
+    @GuardedBy("mLock")
+    private long mFusedCount;
+    @GuardedBy("mLock")
+    private long mOutlierCount;
+    @GuardedBy("mLock")
+    private long mResetCount;
+
+    /**
+     * To avoid generating garbage, estimates are published in this object. Listeners must copy
+     * what they need before returning.
+     */
+    private final Estimate mEstimate = new Estimate();
+
+    /**
+     * Constructs a KalmanMultiSensorFinder which publishes its estimates on {@code executor}.
+     */
+    public KalmanMultiSensorFinder(MultiSensorFinderConfig config,
+            ScheduledExecutorService executor) {
+        mExecutor = executor;
+        int rateHz = config.getOdometryPollingRateHz() > 0
+                ? config.getOdometryPollingRateHz() : DEFAULT_ESTIMATE_RATE_HZ;
+        mEstimatePeriodNanos = (long) (NANOS_PER_SECOND / rateHz);
+        mPositionNoiseVariance = config.getDefaultXyUpdateProcessNoiseStddevM()
+                * config.getDefaultXyUpdateProcessNoiseStddevM();
+        NisDivergenceDetectorConfig nisConfig = config.getNisDivergenceDetectorConfig();
+        mUwbNoiseVariance = nisConfig.getDefaultUwbNoiseCovariance() > 0
+                ? nisConfig.getDefaultUwbNoiseCovariance() : DEFAULT_UWB_NOISE_VARIANCE_M2;
+        mOutlierThreshold = getChiSquaredThreshold(nisConfig.getConfidenceLevel());
+        mMaxConsecutiveOutliers = nisConfig.getNisBufferSize() > 0
+                ? nisConfig.getNisBufferSize() : DEFAULT_MAX_CONSECUTIVE_OUTLIERS;
+    }
+
+    /** Returns the 1 degree of freedom chi-squared value at the given confidence level. */
+    private static double getChiSquaredThreshold(ConfidenceLevel confidenceLevel) {
+        switch (confidenceLevel) {
+            case CL_95:
+                return 3.841;
+            case CL_97P5:
+                return 5.024;
+            case CL_99:
+            default:
+                return 6.635;
+        }
+    }
+
+    /**
+     * Resets the filter, and starts publishing estimates. If already started, this method is a
+     * no-op.
+     *
+     * @return Status.OK
+     */
+    public Status start() {
+        synchronized (mLock) {
+            if (mStarted) {
+                return Status.OK;
+            }
+            resetLocked();
+            mStarted = true;
+            mEstimateTask = mExecutor.scheduleWithFixedDelay(this::publishEstimate,
+                    mEstimatePeriodNanos, mEstimatePeriodNanos, NANOSECONDS);
+        }
+        return Status.OK;
+    }
+
+    /**
+     * Stops publishing estimates; measurements are ignored until started again. If already
+     * stopped, this method is a no-op.
+     *
+     * @return Status.OK
+     */
+    public Status stop() {
+        synchronized (mLock) {
+            if (!mStarted) {
+                return Status.OK;
+            }
+            mStarted = false;
+            if (mEstimateTask != null) {
+                mEstimateTask.cancel(false);
+                mEstimateTask = null;
+            }
+            Log.i(TAG, "Stopped: fused=" + mFusedCount + " outliers=" + mOutlierCount
+                    + " resets=" + mResetCount);
+        }
+        return Status.OK;
+    }
+
+    /**
+     * Adds a UWB range measurement, with the noise of the configuration.
+     *
+     * @param rangeMeters    The range measurement from UWB.
+     * @param timestampNanos The elapsed realtime of the measurement, in nanoseconds.
+     */
+    public void updateWithUwbMeasurement(double rangeMeters, long timestampNanos) {
+        updateWithRangeMeasurement(rangeMeters, Math.sqrt(mUwbNoiseVariance), timestampNanos);
+    }
+
+    /**
+     * Adds a range measurement from any ranging technology, such as Channel Sounding.
+     *
+     * @param rangeMeters       The range measurement.
+     * @param errorStdDevMeters The error bounds on the range measurement.
+     * @param timestampNanos    The elapsed realtime of the measurement, in nanoseconds.
+     */
+    public void updateWithRangeMeasurement(
+            double rangeMeters, double errorStdDevMeters, long timestampNanos) {
+        double noiseVariance = errorStdDevMeters * errorStdDevMeters;
+        synchronized (mLock) {
+            if (!mStarted) {
+                return;
+            }
+            if (!mInitialized) {
+                initializeLocked(rangeMeters, noiseVariance, timestampNanos);
+                return;
+            }
+            // Measurements of several technologies may arrive slightly out of order; the older
+            // one is fused at the time of the newer one.
+            if (timestampNanos > mLastMeasurementNanos) {
+                predictLocked((timestampNanos - mLastMeasurementNanos) / NANOS_PER_SECOND);
+                mLastMeasurementNanos = timestampNanos;
+            }
+
+            double innovation = rangeMeters - mRangeM;
+            double innovationVariance = mP00 + noiseVariance;
+            if (innovation * innovation > mOutlierThreshold * innovationVariance) {
+                mOutlierCount++;
+                if (++mConsecutiveOutliers >= mMaxConsecutiveOutliers) {
+                    Log.w(TAG, "Filter diverged after " + mConsecutiveOutliers
+                            + " outliers, restarting.");
+                    resetLocked();
+                    mDiverged = true;
+                    mResetCount++;
+                }
+                return;
+            }
+            mConsecutiveOutliers = 0;
+
+            double gain0 = mP00 / innovationVariance;
+            double gain1 = mP01 / innovationVariance;
+            mRangeM += gain0 * innovation;
+            mRangeRateMps += gain1 * innovation;
+            double p00 = mP00;
+            double p01 = mP01;
+            mP00 = p00 - gain0 * p00;
+            mP01 = p01 - gain0 * p01;
+            mP11 = mP11 - gain1 * p01;
+            mNewMeasurementFused = true;
+            mFusedCount++;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void initializeLocked(double rangeMeters, double noiseVariance, long timestampNanos) {
+        mRangeM = rangeMeters;
+        mRangeRateMps = 0;
+        mP00 = noiseVariance;
+        mP01 = 0;
+        mP11 = INITIAL_RANGE_RATE_STD_DEV_MPS * INITIAL_RANGE_RATE_STD_DEV_MPS;
+        mLastMeasurementNanos = timestampNanos;
+        mInitialized = true;
+        mNewMeasurementFused = true;
+        mFusedCount++;
+    }
+
+    /** Propagates the state with a constant range rate, and a white noise acceleration. */
+    @GuardedBy("mLock")
+    private void predictLocked(double dtSeconds) {
+        double dt2 = dtSeconds * dtSeconds;
+        double accelerationVariance = ACCELERATION_STD_DEV_MPS2 * ACCELERATION_STD_DEV_MPS2;
+        mRangeM += mRangeRateMps * dtSeconds;
+        mP00 += 2 * dtSeconds * mP01 + dt2 * mP11
+                + accelerationVariance * dt2 * dt2 / 4 + mPositionNoiseVariance;
+        mP01 += dtSeconds * mP11 + accelerationVariance * dt2 * dtSeconds / 2;
+        mP11 += accelerationVariance * dt2;
+    }
+
+    @GuardedBy("mLock")
+    private void resetLocked() {
+        mInitialized = false;
+        mConsecutiveOutliers = 0;
+        mNewMeasurementFused = false;
+        mDiverged = false;
+    }
+
+    @VisibleForTesting
+    void publishEstimate() {
+        synchronized (mLock) {
+            if (!mStarted) {
+                return;
+            }
+            if (mDiverged) {
+                // A measurement fused since the restart is published with the next estimate.
+                mEstimate.setStatus(Status.RECOVERING);
+                mDiverged = false;
+            } else if (mNewMeasurementFused) {
+                mEstimate.setStatus(Status.OK);
+                mEstimate.setRangeM(Math.max(mRangeM, 0));
+                mEstimate.setRangeErrorStdDevM(Math.sqrt(mP00));
+                mEstimate.setBearingRad(0);
+                mEstimate.setBearingErrorStdDevRad(Math.PI);
+                mEstimate.setEstimatedBeaconPositionErrorStdDevM(Math.sqrt(mP00));
+                mEstimate.setTimestampNanos(mLastMeasurementNanos);
+                mNewMeasurementFused = false;
+            } else {
+                return;
+            }
+        }
+        // Estimates are only published from the executor, so mEstimate can't be overwritten
+        // while the listeners read it.
+        for (MultiSensorFinderListener listener : mListeners) {
+            listener.onUpdatedEstimate(mEstimate);
+        }
+    }
+
+    /**
+     * Adds a subscriber that will be notified when a new Estimate is available. The Estimate is
+     * reused for the next notification.
+     *
+     * @param listener The subscriber that will be registered.
+     */
+    public void subscribeToEstimates(MultiSensorFinderListener listener) {
+        mListeners.add(listener);
+    }
+
+    /** Removes a subscriber added by {@link #subscribeToEstimates}. */
+    public void unsubscribeFromEstimates(MultiSensorFinderListener listener) {
+        mListeners.remove(listener);
+    }
+}
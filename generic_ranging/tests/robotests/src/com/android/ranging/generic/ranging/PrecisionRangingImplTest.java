@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ranging.generic.ranging;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.android.ranging.generic.RangingTechnology;
+import com.android.ranging.generic.ranging.PrecisionRangingConfig.DeliveryMode;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link PrecisionRangingImpl}. */
+@RunWith(RobolectricTestRunner.class)
+public class PrecisionRangingImplTest {
+    private static final Duration UPDATE_INTERVAL = Duration.ofMillis(200);
+    // Long enough for precision ranging to never stop on its own during a test.
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+    /** Records the data reported by precision ranging. */
+    private static class RecordingCallback implements PrecisionRanging.Callback {
+        final List<PrecisionData> mData = new ArrayList<>();
+
+        @Override
+        public void onStarted() {}
+
+        @Override
+        public void onStopped(int reason) {}
+
+        @Override
+        public void onData(PrecisionData data) {
+            mData.add(data);
+        }
+    }
+
+    private final RangingAdapter mUwbAdapter = mock(RangingAdapter.class);
+    private final RangingAdapter mCsAdapter = mock(RangingAdapter.class);
+    private ScheduledExecutorService mExecutor;
+    private RecordingCallback mCallback;
+    private PrecisionRangingImpl mPrecisionRanging;
+    private Runnable mPeriodicUpdate;
+
+    @Before
+    public void setUp() {
+        mCallback = new RecordingCallback();
+    }
+
+    @Test
+    public void testStreaming_reportsRangingDataOfAllTechnologiesInTimestampOrder() {
+        start(config(DeliveryMode.STREAMING, UPDATE_INTERVAL, ImmutableList.of(
+                RangingTechnology.UWB, RangingTechnology.CS)).build());
+
+        onRangingData(RangingTechnology.UWB, 1);
+        onRangingData(RangingTechnology.CS, 2);
+        onRangingData(RangingTechnology.UWB, 3);
+        onRangingData(RangingTechnology.CS, 4);
+        onRangingData(RangingTechnology.UWB, 5);
+        assertThat(mCallback.mData).isEmpty();
+
+        performPeriodicUpdate();
+        assertThat(mCallback.mData).hasSize(1);
+        PrecisionData data = mCallback.mData.get(0);
+        assertThat(timestamps(data)).containsExactly(1L, 2L, 3L, 4L, 5L).inOrder();
+        assertThat(technologies(data)).containsExactly(
+                RangingTechnology.UWB, RangingTechnology.CS, RangingTechnology.UWB,
+                RangingTechnology.CS, RangingTechnology.UWB).inOrder();
+        assertThat(data.getTimestamp()).isEqualTo(SystemClock.elapsedRealtimeNanos());
+        assertThat(mPrecisionRanging.getDroppedRangingDataCount()).isEqualTo(0);
+        assertThat(mPrecisionRanging.getPeakRangingDataBacklog()).isEqualTo(5);
+
+        // Nothing new to report.
+        performPeriodicUpdate();
+        assertThat(mCallback.mData).hasSize(1);
+    }
+
+    @Test
+    public void testStreaming_dropsOldestRangingDataWhenQueueIsFull() {
+        start(config(DeliveryMode.STREAMING, UPDATE_INTERVAL, ImmutableList.of(
+                RangingTechnology.UWB))
+                .setStreamingQueueCapacity(3)
+                .build());
+
+        for (long timestamp = 1; timestamp <= 5; timestamp++) {
+            onRangingData(RangingTechnology.UWB, timestamp);
+        }
+        performPeriodicUpdate();
+
+        assertThat(mCallback.mData).hasSize(1);
+        assertThat(timestamps(mCallback.mData.get(0))).containsExactly(3L, 4L, 5L).inOrder();
+        assertThat(mPrecisionRanging.getDroppedRangingDataCount()).isEqualTo(2);
+        assertThat(mPrecisionRanging.getPeakRangingDataBacklog()).isEqualTo(3);
+
+        onRangingData(RangingTechnology.UWB, 6);
+        performPeriodicUpdate();
+
+        assertThat(timestamps(mCallback.mData.get(1))).containsExactly(6L);
+        assertThat(mPrecisionRanging.getDroppedRangingDataCount()).isEqualTo(2);
+        assertThat(mPrecisionRanging.getPeakRangingDataBacklog()).isEqualTo(3);
+    }
+
+    @Test
+    public void testLatest_reportsLatestRangingDataOfEachTechnology() {
+        ImmutableList<RangingTechnology> technologies =
+                ImmutableList.of(RangingTechnology.UWB, RangingTechnology.CS);
+        start(config(DeliveryMode.LATEST, UPDATE_INTERVAL, technologies).build());
+
+        onRangingData(RangingTechnology.UWB, 1);
+        onRangingData(RangingTechnology.CS, 2);
+        onRangingData(RangingTechnology.UWB, 3);
+        onRangingData(RangingTechnology.CS, 4);
+        performPeriodicUpdate();
+
+        assertThat(mCallback.mData).hasSize(1);
+        ImmutableList<RangingData> latest = mCallback.mData.get(0).getRangingData().get();
+        assertThat(latest).containsExactly(
+                rangingData(RangingTechnology.UWB, 3), rangingData(RangingTechnology.CS, 4));
+        assertThat(mPrecisionRanging.getDroppedRangingDataCount()).isEqualTo(2);
+        assertThat(mPrecisionRanging.getPeakRangingDataBacklog()).isEqualTo(2);
+
+        // STREAMING with a queue of one reports the same data.
+        mPrecisionRanging.stop();
+        mCallback = new RecordingCallback();
+        start(config(DeliveryMode.STREAMING, UPDATE_INTERVAL, technologies)
+                .setStreamingQueueCapacity(1)
+                .build());
+
+        onRangingData(RangingTechnology.UWB, 1);
+        onRangingData(RangingTechnology.CS, 2);
+        onRangingData(RangingTechnology.UWB, 3);
+        onRangingData(RangingTechnology.CS, 4);
+        performPeriodicUpdate();
+
+        assertThat(mCallback.mData).hasSize(1);
+        assertThat(mCallback.mData.get(0).getRangingData().get()).containsExactlyElementsIn(latest);
+        assertThat(mPrecisionRanging.getDroppedRangingDataCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testZeroUpdateInterval_reportsRangingDataImmediately() {
+        start(config(DeliveryMode.STREAMING, Duration.ZERO, ImmutableList.of(
+                RangingTechnology.UWB, RangingTechnology.CS)).build());
+
+        onRangingData(RangingTechnology.UWB, 1);
+        assertThat(mCallback.mData).hasSize(1);
+        onRangingData(RangingTechnology.CS, 2);
+        assertThat(mCallback.mData).hasSize(2);
+
+        assertThat(mCallback.mData.get(0).getRangingData().get())
+                .containsExactly(rangingData(RangingTechnology.UWB, 1));
+        assertThat(mCallback.mData.get(0).getTimestamp())
+                .isEqualTo(SystemClock.elapsedRealtimeNanos());
+        assertThat(mCallback.mData.get(1).getRangingData().get())
+                .containsExactly(rangingData(RangingTechnology.CS, 2));
+
+        // Nothing was queued for the periodic update.
+        performPeriodicUpdate();
+        assertThat(mCallback.mData).hasSize(2);
+        assertThat(mPrecisionRanging.getDroppedRangingDataCount()).isEqualTo(0);
+        assertThat(mPrecisionRanging.getPeakRangingDataBacklog()).isEqualTo(0);
+    }
+
+    private static PrecisionRangingConfig.Builder config(
+            DeliveryMode deliveryMode,
+            Duration maxUpdateInterval,
+            ImmutableList<RangingTechnology> technologies) {
+        return PrecisionRangingConfig.builder()
+                .setRangingTechnologiesToRangeWith(technologies)
+                .setUseFusingAlgorithm(false)
+                .setMaxUpdateInterval(maxUpdateInterval)
+                .setDeliveryMode(deliveryMode)
+                .setInitTimeout(TIMEOUT)
+                .setFusionAlgorithmDriftTimeout(TIMEOUT)
+                .setNoUpdateTimeout(TIMEOUT);
+    }
+
+    /** Starts precision ranging and reports all its ranging adapters as started. */
+    private void start(PrecisionRangingConfig config) {
+        // Adapter start and stop tasks are never run, the tests play the adapters' callbacks.
+        mExecutor = mock(ScheduledExecutorService.class);
+        mPrecisionRanging = new PrecisionRangingImpl(
+                /* lazyUwbAdapter= */ null,
+                mock(Context.class),
+                config,
+                mExecutor,
+                Optional.of(ImmutableMap.of(
+                        RangingTechnology.UWB, mUwbAdapter,
+                        RangingTechnology.CS, mCsAdapter)));
+        for (RangingTechnology technology : config.getRangingTechnologiesToRangeWith()) {
+            mPrecisionRanging.setRangingConfigurationAdded(technology);
+        }
+        mPrecisionRanging.start(mCallback);
+
+        ArgumentCaptor<Runnable> periodicUpdate = ArgumentCaptor.forClass(Runnable.class);
+        verify(mExecutor).scheduleWithFixedDelay(
+                periodicUpdate.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        mPeriodicUpdate = periodicUpdate.getValue();
+        for (RangingAdapter.Callback listener
+                : mPrecisionRanging.getRangingAdapterListeners().values()) {
+            listener.onStarted();
+        }
+    }
+
+    private void performPeriodicUpdate() {
+        ShadowSystemClock.advanceBy(UPDATE_INTERVAL);
+        mPeriodicUpdate.run();
+    }
+
+    private void onRangingData(RangingTechnology technology, long timestamp) {
+        mPrecisionRanging.getRangingAdapterListeners().get(technology)
+                .onRangingData(rangingData(technology, timestamp));
+    }
+
+    private static RangingData rangingData(RangingTechnology technology, long timestamp) {
+        return RangingData.builder()
+                .setRangingTechnology(technology)
+                .setRangeDistance(1.5)
+                .setRssi(-60)
+                .setTimestamp(timestamp)
+                .build();
+    }
+
+    private static List<Long> timestamps(PrecisionData data) {
+        List<Long> timestamps = new ArrayList<>();
+        for (RangingData rangingData : data.getRangingData().get()) {
+            timestamps.add(rangingData.getTimestamp());
+        }
+        return timestamps;
+    }
+
+    private static List<RangingTechnology> technologies(PrecisionData data) {
+        List<RangingTechnology> technologies = new ArrayList<>();
+        for (RangingData rangingData : data.getRangingData().get()) {
+            technologies.add(rangingData.getRangingTechnology());
+        }
+        return technologies;
+    }
+}
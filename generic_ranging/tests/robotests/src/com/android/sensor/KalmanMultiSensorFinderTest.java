@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sensor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import com.android.ranging.generic.proto.ConfidenceLevel;
+import com.android.ranging.generic.proto.MultiSensorFinderConfig;
+import com.android.ranging.generic.proto.NisDivergenceDetectorConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Unit tests for {@link KalmanMultiSensorFinder}, replaying the UWB ranges of
+ * {@code uwb_walk_trace.csv}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class KalmanMultiSensorFinderTest {
+    private static final String TRACE = "/uwb_walk_trace.csv";
+    /** Samples of the trace with a multipath error. */
+    private static final int[] OUTLIER_SAMPLES = {50, 120, 171};
+    /** First sample after the peer was carried away, while ranging was paused. */
+    private static final int FIRST_SAMPLE_AFTER_GAP = 240;
+    private static final int NIS_BUFFER_SIZE = 10;
+
+    private static final MultiSensorFinderConfig CONFIG = MultiSensorFinderConfig.newBuilder()
+            .setOdometryPollingRateHz(10)
+            .setNisDivergenceDetectorConfig(NisDivergenceDetectorConfig.newBuilder()
+                    .setConfidenceLevel(ConfidenceLevel.CL_99)
+                    .setNisBufferSize(NIS_BUFFER_SIZE)
+                    .setDefaultUwbNoiseCovariance(0.01))
+            .build();
+
+    /** A range of the trace. */
+    private static class Sample {
+        final long mTimestampNanos;
+        final double mRangeM;
+        final double mReferenceRangeM;
+
+        Sample(long timestampNanos, double rangeM, double referenceRangeM) {
+            mTimestampNanos = timestampNanos;
+            mRangeM = rangeM;
+            mReferenceRangeM = referenceRangeM;
+        }
+    }
+
+    private List<Sample> mTrace;
+    private KalmanMultiSensorFinder mFinder;
+    // Copies of the published estimates, which the finder reuses.
+    private final List<Estimate> mEstimates = new ArrayList<>();
+    // The last estimate published after each replayed sample. Rejected samples publish none.
+    private final List<Estimate> mEstimatesAfterSamples = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mTrace = readTrace();
+        mFinder = new KalmanMultiSensorFinder(CONFIG, mock(ScheduledExecutorService.class));
+        mFinder.subscribeToEstimates(estimate -> mEstimates.add(copy(estimate)));
+        mFinder.start();
+    }
+
+    private static List<Sample> readTrace() throws IOException {
+        List<Sample> trace = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                KalmanMultiSensorFinderTest.class.getResourceAsStream(TRACE),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                trace.add(new Sample(Long.parseLong(fields[0]), Double.parseDouble(fields[1]),
+                        Double.parseDouble(fields[2])));
+            }
+        }
+        return trace;
+    }
+
+    private static Estimate copy(Estimate estimate) {
+        Estimate copy = new Estimate();
+        copy.setStatus(estimate.getStatus());
+        copy.setRangeM(estimate.getRangeM());
+        copy.setRangeErrorStdDevM(estimate.getRangeErrorStdDevM());
+        copy.setTimestampNanos(estimate.getTimestampNanos());
+        return copy;
+    }
+
+    /** Feeds the samples from {@code from} to {@code to}, and publishes after each one. */
+    private void replay(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Sample sample = mTrace.get(i);
+            mFinder.updateWithUwbMeasurement(sample.mRangeM, sample.mTimestampNanos);
+            mFinder.publishEstimate();
+            mEstimatesAfterSamples.add(mEstimates.isEmpty() ? null : lastEstimate());
+        }
+    }
+
+    private Estimate lastEstimate() {
+        return mEstimates.get(mEstimates.size() - 1);
+    }
+
+    @Test
+    public void testConvergesOnWalkingPeer() {
+        replay(0, OUTLIER_SAMPLES[0]);
+
+        assertThat(mEstimates).hasSize(OUTLIER_SAMPLES[0]);
+        // After a second, the estimates follow the walk closer than the noise of the ranges.
+        for (int i = 10; i < OUTLIER_SAMPLES[0]; i++) {
+            assertThat(mEstimatesAfterSamples.get(i).getStatus()).isEqualTo(Status.OK);
+            assertThat(mEstimatesAfterSamples.get(i).getRangeM())
+                    .isWithin(0.2).of(mTrace.get(i).mReferenceRangeM);
+        }
+        assertThat(lastEstimate().getRangeErrorStdDevM())
+                .isLessThan(mEstimates.get(0).getRangeErrorStdDevM());
+        assertThat(lastEstimate().getTimestampNanos())
+                .isEqualTo(mTrace.get(OUTLIER_SAMPLES[0] - 1).mTimestampNanos);
+    }
+
+    @Test
+    public void testRejectsMultipathOutliers() {
+        replay(0, FIRST_SAMPLE_AFTER_GAP);
+
+        for (int outlier : OUTLIER_SAMPLES) {
+            // 2.5 m off in the range, but neither that estimate nor the next one is pulled
+            // toward it.
+            assertThat(mEstimatesAfterSamples.get(outlier).getRangeM())
+                    .isWithin(0.3).of(mTrace.get(outlier).mReferenceRangeM);
+            assertThat(mEstimatesAfterSamples.get(outlier + 1).getRangeM())
+                    .isWithin(0.3).of(mTrace.get(outlier + 1).mReferenceRangeM);
+        }
+        // Outliers publish no estimate.
+        assertThat(mEstimates).hasSize(FIRST_SAMPLE_AFTER_GAP - OUTLIER_SAMPLES.length);
+        for (Estimate estimate : mEstimates) {
+            assertThat(estimate.getStatus()).isEqualTo(Status.OK);
+        }
+        assertThat(lastEstimate().getRangeM())
+                .isWithin(0.15).of(mTrace.get(FIRST_SAMPLE_AFTER_GAP - 1).mReferenceRangeM);
+    }
+
+    @Test
+    public void testRestartsAfterDivergence() {
+        replay(0, mTrace.size());
+
+        int recovering = -1;
+        for (int i = 0; i < mTrace.size(); i++) {
+            if (mEstimatesAfterSamples.get(i).getStatus() == Status.RECOVERING) {
+                recovering = i;
+                break;
+            }
+        }
+        // Everything after the gap is an outlier until the filter gives up and restarts, once.
+        assertThat(recovering).isEqualTo(FIRST_SAMPLE_AFTER_GAP + NIS_BUFFER_SIZE - 1);
+        assertThat(mEstimates.stream().filter(e -> e.getStatus() == Status.RECOVERING).count())
+                .isEqualTo(1);
+        Estimate restarted = mEstimatesAfterSamples.get(recovering + 1);
+        assertThat(restarted.getStatus()).isEqualTo(Status.OK);
+        assertThat(restarted.getRangeM())
+                .isWithin(0.3).of(mTrace.get(recovering + 1).mReferenceRangeM);
+        assertThat(lastEstimate().getRangeM())
+                .isWithin(0.15).of(mTrace.get(mTrace.size() - 1).mReferenceRangeM);
+    }
+
+    @Test
+    public void testPublishEstimate_keepsMeasurementFusedAfterRestart() {
+        replay(0, FIRST_SAMPLE_AFTER_GAP);
+        mEstimates.clear();
+
+        // The filter restarts, and fuses the next range, between two estimates.
+        int firstSampleAfterRestart = FIRST_SAMPLE_AFTER_GAP + NIS_BUFFER_SIZE;
+        for (int i = FIRST_SAMPLE_AFTER_GAP; i <= firstSampleAfterRestart; i++) {
+            Sample sample = mTrace.get(i);
+            mFinder.updateWithUwbMeasurement(sample.mRangeM, sample.mTimestampNanos);
+        }
+        mFinder.publishEstimate();
+        mFinder.publishEstimate();
+
+        assertThat(mEstimates).hasSize(2);
+        assertThat(mEstimates.get(0).getStatus()).isEqualTo(Status.RECOVERING);
+        assertThat(mEstimates.get(1).getStatus()).isEqualTo(Status.OK);
+        assertThat(mEstimates.get(1).getTimestampNanos())
+                .isEqualTo(mTrace.get(firstSampleAfterRestart).mTimestampNanos);
+    }
+
+    @Test
+    public void testIgnoresMeasurementsWhenStopped() {
+        mFinder.stop();
+        replay(0, 10);
+
+        assertThat(mEstimates).isEmpty();
+    }
+}
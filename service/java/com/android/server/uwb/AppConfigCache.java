@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.uwb.params.TlvBuffer;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the app config TLVs last applied to a session on the UWBS, so that a later
+ * SET_APP_CONFIG only needs to carry the TLVs whose value changed.
+ *
+ * <p>A tag that was never applied, or whose value is unknown because a command failed, is always
+ * sent. The UWBS keeps app configs for as long as the session exists, so a cache lives as long
+ * as its session.
+ */
+public class AppConfigCache {
+    // App config tags are one byte wide, see ConfigParam#getTagBytes().
+    private static final int MAX_TAGS = 256;
+    private static final int HEADER_LENGTH = 2;
+
+    private final Object mLock = new Object();
+    // Last applied value of each tag, indexed by tag; null if unknown.
+    @GuardedBy("mLock")
+    private final byte[][] mApplied = new byte[MAX_TAGS][];
+
+    @GuardedBy("mLock")
+    private long mFullCommandCount;
+    @GuardedBy("mLock")
+    private long mFullCommandNanos;
+    @GuardedBy("mLock")
+    private long mDeltaCommandCount;
+    @GuardedBy("mLock")
+    private long mDeltaCommandNanos;
+    @GuardedBy("mLock")
+    private long mSkippedCommandCount;
+    @GuardedBy("mLock")
+    private long mFallbackCount;
+    @GuardedBy("mLock")
+    private long mBytesSent;
+    @GuardedBy("mLock")
+    private long mBytesSaved;
+
+    /**
+     * Gets the TLVs of {@code tlvBuffer} whose value differs from the applied one. Returns
+     * {@code tlvBuffer} itself if they all differ.
+     */
+    @NonNull
+    public TlvBuffer getDelta(@NonNull TlvBuffer tlvBuffer) {
+        byte[] tlvs = tlvBuffer.getByteArray();
+        byte[] delta = new byte[tlvs.length];
+        int deltaLength = 0;
+        int deltaCount = 0;
+        synchronized (mLock) {
+            int offset = 0;
+            while (offset + HEADER_LENGTH <= tlvs.length) {
+                int tag = tlvs[offset] & 0xFF;
+                int end = Math.min(offset + HEADER_LENGTH + (tlvs[offset + 1] & 0xFF),
+                        tlvs.length);
+                byte[] applied = mApplied[tag];
+                if (applied == null || !valueEquals(applied, tlvs, offset + HEADER_LENGTH, end)) {
+                    System.arraycopy(tlvs, offset, delta, deltaLength, end - offset);
+                    deltaLength += end - offset;
+                    deltaCount++;
+                }
+                offset = end;
+            }
+        }
+        if (deltaLength == tlvs.length) {
+            return tlvBuffer;
+        }
+        return new TlvBuffer(Arrays.copyOf(delta, deltaLength), deltaCount);
+    }
+
+    /** Records that the UWBS accepted the TLVs of {@code tlvBuffer}. */
+    public void onApplied(@NonNull TlvBuffer tlvBuffer) {
+        byte[] tlvs = tlvBuffer.getByteArray();
+        synchronized (mLock) {
+            int offset = 0;
+            while (offset + HEADER_LENGTH <= tlvs.length) {
+                int tag = tlvs[offset] & 0xFF;
+                int end = Math.min(offset + HEADER_LENGTH + (tlvs[offset + 1] & 0xFF),
+                        tlvs.length);
+                mApplied[tag] = Arrays.copyOfRange(tlvs, offset + HEADER_LENGTH, end);
+                offset = end;
+            }
+        }
+    }
+
+    /**
+     * Forgets all applied values, for when a command failed and the UWBS may have applied any
+     * part of it.
+     */
+    public void invalidate() {
+        synchronized (mLock) {
+            Arrays.fill(mApplied, null);
+        }
+    }
+
+    /**
+     * Records a SET_APP_CONFIG command for the dump.
+     *
+     * @param fullLength The length of the full set of TLVs.
+     * @param sentLength The length of the TLVs that were sent, 0 if the command was skipped.
+     * @param latencyNanos How long the command took.
+     */
+    public void recordCommand(int fullLength, int sentLength, long latencyNanos) {
+        synchronized (mLock) {
+            if (sentLength == 0) {
+                mSkippedCommandCount++;
+            } else if (sentLength < fullLength) {
+                mDeltaCommandCount++;
+                mDeltaCommandNanos += latencyNanos;
+            } else {
+                mFullCommandCount++;
+                mFullCommandNanos += latencyNanos;
+            }
+            mBytesSent += sentLength;
+            mBytesSaved += fullLength - sentLength;
+        }
+    }
+
+    /** Records that a delta was rejected and the full set of TLVs had to be sent. */
+    public void recordFallback() {
+        synchronized (mLock) {
+            mFallbackCount++;
+        }
+    }
+
+    @VisibleForTesting
+    long getBytesSaved() {
+        synchronized (mLock) {
+            return mBytesSaved;
+        }
+    }
+
+    @VisibleForTesting
+    long getSkippedCommandCount() {
+        synchronized (mLock) {
+            return mSkippedCommandCount;
+        }
+    }
+
+    private static boolean valueEquals(byte[] value, byte[] tlvs, int from, int to) {
+        if (value.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] != tlvs[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            long avgFullNanos = mFullCommandCount > 0 ? mFullCommandNanos / mFullCommandCount : 0;
+            long avgDeltaNanos =
+                    mDeltaCommandCount > 0 ? mDeltaCommandNanos / mDeltaCommandCount : 0;
+            // Estimated against the average full command, as the commands that weren't sent in
+            // full can't be timed.
+            long savedNanos = mSkippedCommandCount * avgFullNanos
+                    + mDeltaCommandCount * Math.max(avgFullNanos - avgDeltaNanos, 0);
+            return "AppConfigCache{"
+                    + "full=" + mFullCommandCount
+                    + ", delta=" + mDeltaCommandCount
+                    + ", skipped=" + mSkippedCommandCount
+                    + ", fallbacks=" + mFallbackCount
+                    + ", bytesSent=" + mBytesSent
+                    + ", bytesSaved=" + mBytesSaved
+                    + ", avgFullUs=" + avgFullNanos / 1000
+                    + ", avgDeltaUs=" + avgDeltaNanos / 1000
+                    + ", estSavedUs=" + savedNanos / 1000
+                    + '}';
+        }
+    }
+}
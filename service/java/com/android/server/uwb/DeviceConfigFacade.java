@@ -82,6 +82,9 @@ public class DeviceConfigFacade {
 
     // Config parameters related to Rx/Tx data packets.
     private int mRxDataMaxPacketsToStore;
+    // Config parameters related to reordering of ranging data notifications.
+    private int mRangingDataReorderWindow;
+    private int mRangingDataReorderMaxDelayMs;
     // Flag to enable unlimited background ranging.
     private boolean mBackgroundRangingEnabled;
     // Flag to disable error streak timer when a session is ongoing.
@@ -102,6 +105,8 @@ public class DeviceConfigFacade {
     private boolean mPersistentCacheUseForCountryCodeEnabled;
     private boolean mHwIdleTurnOffEnabled;
     private boolean mIsAntennaModeConfigSupported;
+    private boolean mAppConfigDeltaEnabled;
+    private int mSessionConfigTemplateCacheSize;
 
     public DeviceConfigFacade(Handler handler, Context context) {
         mContext = context;
@@ -254,6 +259,18 @@ public class DeviceConfigFacade {
                 mContext.getResources().getInteger(R.integer.rx_data_max_packets_to_store)
         );
 
+        // Ranging data notification reordering.
+        mRangingDataReorderWindow = DeviceConfig.getInt(
+                DeviceConfig.NAMESPACE_UWB,
+                "ranging_data_reorder_window",
+                mContext.getResources().getInteger(R.integer.ranging_data_reorder_window)
+        );
+        mRangingDataReorderMaxDelayMs = DeviceConfig.getInt(
+                DeviceConfig.NAMESPACE_UWB,
+                "ranging_data_reorder_max_delay_ms",
+                mContext.getResources().getInteger(R.integer.ranging_data_reorder_max_delay_ms)
+        );
+
         mBackgroundRangingEnabled = DeviceConfig.getBoolean(
                 DeviceConfig.NAMESPACE_UWB,
                 "background_ranging_enabled",
@@ -321,6 +338,18 @@ public class DeviceConfigFacade {
                 mContext.getResources().getBoolean(R.bool.is_antenna_mode_config_supported)
         );
 
+        mAppConfigDeltaEnabled = DeviceConfig.getBoolean(
+                DeviceConfig.NAMESPACE_UWB,
+                "app_config_delta_enabled",
+                mContext.getResources().getBoolean(R.bool.app_config_delta_enabled)
+        );
+
+        mSessionConfigTemplateCacheSize = DeviceConfig.getInt(
+                DeviceConfig.NAMESPACE_UWB,
+                "session_config_template_cache_size",
+                mContext.getResources().getInteger(R.integer.session_config_template_cache_size)
+        );
+
         // A little parsing and cleanup:
         mFrontAzimuthRadiansPerSecond = (float) Math.toRadians(frontAzimuthDegreesPerSecond);
         mBackAzimuthRadiansPerSecond = (float) Math.toRadians(backAzimuthDegreesPerSecond);
@@ -543,6 +572,22 @@ public class DeviceConfigFacade {
         return mRxDataMaxPacketsToStore;
     }
 
+    /**
+     * Gets the number of sequence counter values, past the next expected one, for which ranging
+     * data notifications are held to restore their order. 0 or 1 disables reordering.
+     */
+    public int getRangingDataReorderWindow() {
+        return mRangingDataReorderWindow;
+    }
+
+    /**
+     * Gets how long a ranging data notification may be held waiting for the notifications that
+     * precede it.
+     */
+    public int getRangingDataReorderMaxDelayMs() {
+        return mRangingDataReorderMaxDelayMs;
+    }
+
     /**
      * Returns whether background ranging is enabled or not.
      * If enabled:
@@ -630,4 +675,20 @@ public class DeviceConfigFacade {
      * Returns whether antenna mode configuration is supported or not.
      */
     public boolean isAntennaModeConfigSupported() { return mIsAntennaModeConfigSupported; }
+
+    /**
+     * Returns whether SET_APP_CONFIG only carries the app configs that changed since they were
+     * last applied to the session.
+     */
+    public boolean isAppConfigDeltaEnabled() {
+        return mAppConfigDeltaEnabled;
+    }
+
+    /**
+     * Gets how many encoded FiRa session configs are kept as templates for sessions opened with
+     * the same params.
+     */
+    public int getSessionConfigTemplateCacheSize() {
+        return mSessionConfigTemplateCacheSize;
+    }
 }
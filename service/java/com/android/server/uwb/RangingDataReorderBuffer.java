@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+import android.os.Handler;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.uwb.data.UwbRangingData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts the RANGE_DATA_NTFs of a session back in sequence counter order and drops duplicates.
+ *
+ * <p>A notification that arrives ahead of its predecessors is held in a window of the configured
+ * size until the missing notifications arrive. If they don't arrive within the configured delay,
+ * or the window overflows, they are given up on and counted as a gap. Notifications older than
+ * the last delivered one, and copies of a held notification, are dropped.
+ *
+ * <p>The sequence counter is 32 bits wide and may wrap. A jump of more than a few windows in
+ * either direction (for example the chip restarting the counter) resynchronizes the buffer
+ * instead of being treated as a gap.
+ */
+public class RangingDataReorderBuffer {
+    /** Receives the notifications, in sequence counter order. */
+    public interface Delivery {
+        /**
+         * Called with each notification that passed the reorder stage.
+         * @param rangingData The notification.
+         */
+        void deliver(@NonNull UwbRangingData rangingData);
+    }
+
+    // How many windows the sequence counter may jump before the buffer resynchronizes.
+    private static final int RESYNC_WINDOWS = 4;
+
+    private final int mWindowSize;
+    private final long mMaxDelayMs;
+    private final Handler mHandler;
+    private final Delivery mDelivery;
+    private final Runnable mTimeoutRunnable = this::onTimeout;
+
+    private final Object mLock = new Object();
+    // Held notifications, indexed by the low bits of their sequence counter. The length is a power
+    // of two so that the index stays continuous when the counter wraps.
+    @GuardedBy("mLock")
+    private final UwbRangingData[] mSlots;
+    @GuardedBy("mLock")
+    private int mHeldCount;
+    @GuardedBy("mLock")
+    private boolean mHasNextSeq;
+    @GuardedBy("mLock")
+    private long mNextSeq;
+    @GuardedBy("mLock")
+    private boolean mTimeoutPending;
+
+    @GuardedBy("mLock")
+    private long mDeliveredCount;
+    @GuardedBy("mLock")
+    private long mReorderedCount;
+    @GuardedBy("mLock")
+    private long mDroppedCount;
+    @GuardedBy("mLock")
+    private long mGapCount;
+    @GuardedBy("mLock")
+    private long mResyncCount;
+
+    /**
+     * @param windowSize How many sequence counter values past the next expected one may be held.
+     * @param maxDelayMs How long a notification may be held waiting for its predecessors.
+     * @param handler The handler that runs the hold timeout.
+     * @param delivery Receives each notification.
+     */
+    public RangingDataReorderBuffer(int windowSize, long maxDelayMs, @NonNull Handler handler,
+            @NonNull Delivery delivery) {
+        mWindowSize = windowSize;
+        mMaxDelayMs = maxDelayMs;
+        mHandler = handler;
+        mDelivery = delivery;
+        mSlots = new UwbRangingData[Integer.highestOneBit(Math.max(windowSize - 1, 1)) << 1];
+    }
+
+    /** Adds a notification, delivering it and any held successors if it is the next expected. */
+    public void add(@NonNull UwbRangingData rangingData) {
+        synchronized (mLock) {
+            long seq = rangingData.getSequenceCounter() & 0xFFFFFFFFL;
+            if (!mHasNextSeq) {
+                mHasNextSeq = true;
+                mNextSeq = seq;
+            }
+            long expectedSeq = mNextSeq;
+            int offset = seqOffset(seq);
+            if (offset < -mWindowSize * RESYNC_WINDOWS || offset > mWindowSize * RESYNC_WINDOWS) {
+                mResyncCount++;
+                releaseAllLocked(mDelivery);
+                mNextSeq = seq;
+                offset = 0;
+            } else if (offset < 0) {
+                mDroppedCount++;
+                return;
+            } else if (offset >= mWindowSize) {
+                // Slide the window so that this notification fits in it.
+                releaseUntilLocked(seq - mWindowSize + 1, mDelivery);
+                drainLocked();
+                offset = seqOffset(seq);
+            }
+
+            if (offset == 0) {
+                deliverLocked(rangingData, mDelivery);
+                mNextSeq = nextSeq(mNextSeq);
+                drainLocked();
+            } else {
+                int slot = slotIndex(seq);
+                if (mSlots[slot] != null) {
+                    mDroppedCount++;
+                    return;
+                }
+                mSlots[slot] = rangingData;
+                mHeldCount++;
+            }
+            // Only restart the timeout when the oldest held notification changed, otherwise a
+            // steady stream would keep postponing it.
+            updateTimeoutLocked(mNextSeq != expectedSeq);
+        }
+    }
+
+    /**
+     * Removes all held notifications and forgets the expected sequence counter, so the next
+     * notification starts a new sequence. The notifications are returned instead of delivered,
+     * so that the caller can hand them over without holding the lock.
+     *
+     * @return The held notifications, in sequence counter order.
+     */
+    @NonNull
+    public List<UwbRangingData> drain() {
+        List<UwbRangingData> drained = new ArrayList<>();
+        synchronized (mLock) {
+            releaseAllLocked(drained::add);
+            mHasNextSeq = false;
+            updateTimeoutLocked(false);
+        }
+        return drained;
+    }
+
+    @VisibleForTesting
+    int getHeldCount() {
+        synchronized (mLock) {
+            return mHeldCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getReorderedCount() {
+        synchronized (mLock) {
+            return mReorderedCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getGapCount() {
+        synchronized (mLock) {
+            return mGapCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getResyncCount() {
+        synchronized (mLock) {
+            return mResyncCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "RangingDataReorderBuffer{"
+                    + "window=" + mWindowSize
+                    + ", maxDelayMs=" + mMaxDelayMs
+                    + ", held=" + mHeldCount
+                    + ", delivered=" + mDeliveredCount
+                    + ", reordered=" + mReorderedCount
+                    + ", dropped=" + mDroppedCount
+                    + ", gaps=" + mGapCount
+                    + ", resyncs=" + mResyncCount
+                    + '}';
+        }
+    }
+
+    private void onTimeout() {
+        synchronized (mLock) {
+            mTimeoutPending = false;
+            if (mHeldCount == 0) {
+                return;
+            }
+            // Give up on the missing notifications in front of the oldest held one.
+            while (mSlots[slotIndex(mNextSeq)] == null) {
+                mGapCount++;
+                mNextSeq = nextSeq(mNextSeq);
+            }
+            drainLocked();
+            updateTimeoutLocked(true);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void updateTimeoutLocked(boolean restart) {
+        if (mHeldCount == 0 || restart) {
+            mHandler.removeCallbacks(mTimeoutRunnable);
+            mTimeoutPending = false;
+        }
+        if (mHeldCount > 0 && !mTimeoutPending) {
+            mHandler.postDelayed(mTimeoutRunnable, mMaxDelayMs);
+            mTimeoutPending = true;
+        }
+    }
+
+    /** Delivers the held notifications that directly follow the last delivered one. */
+    @GuardedBy("mLock")
+    private void drainLocked() {
+        while (mHeldCount > 0) {
+            int slot = slotIndex(mNextSeq);
+            UwbRangingData held = mSlots[slot];
+            if (held == null) {
+                return;
+            }
+            mSlots[slot] = null;
+            mHeldCount--;
+            mReorderedCount++;
+            deliverLocked(held, mDelivery);
+            mNextSeq = nextSeq(mNextSeq);
+        }
+    }
+
+    /** Moves the expected sequence counter up to {@code seq}, releasing what is held before it. */
+    @GuardedBy("mLock")
+    private void releaseUntilLocked(long seq, Delivery delivery) {
+        while (seqOffset(seq) > 0) {
+            int slot = slotIndex(mNextSeq);
+            UwbRangingData held = mSlots[slot];
+            if (held == null) {
+                mGapCount++;
+            } else {
+                mSlots[slot] = null;
+                mHeldCount--;
+                mReorderedCount++;
+                deliverLocked(held, delivery);
+            }
+            mNextSeq = nextSeq(mNextSeq);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void releaseAllLocked(Delivery delivery) {
+        while (mHeldCount > 0) {
+            releaseUntilLocked(nextSeq(mNextSeq), delivery);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void deliverLocked(UwbRangingData rangingData, Delivery delivery) {
+        mDeliveredCount++;
+        // Deliver while holding the lock so a timeout can't reorder the notifications.
+        delivery.deliver(rangingData);
+    }
+
+    /** Signed distance from the next expected sequence counter, modulo 2^32. */
+    @GuardedBy("mLock")
+    private int seqOffset(long seq) {
+        return (int) (seq - mNextSeq);
+    }
+
+    private int slotIndex(long seq) {
+        return (int) (seq & (mSlots.length - 1));
+    }
+
+    private static long nextSeq(long seq) {
+        return (seq + 1) & 0xFFFFFFFFL;
+    }
+}
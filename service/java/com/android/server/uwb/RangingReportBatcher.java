@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+import android.os.Handler;
+import android.uwb.RangingReport;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects ranging reports of a session and hands them over in batches, so that a session ranging
+ * at a high rate costs one binder transaction per batch instead of one per report.
+ *
+ * <p>A batch is delivered when it holds the configured number of reports, when the oldest report
+ * has waited for the configured delay, or when {@link #flush()} is called. Reports are always
+ * delivered in the order they were added.
+ */
+public class RangingReportBatcher {
+    /** Receives the batched reports. */
+    public interface Delivery {
+        /**
+         * Called with a batch of reports, oldest first.
+         * @param reports The reports. Owned by the callee.
+         */
+        void deliver(@NonNull List<RangingReport> reports);
+    }
+
+    private final int mMaxBatchSize;
+    private final long mMaxDelayMs;
+    private final Handler mHandler;
+    private final Delivery mDelivery;
+    private final Runnable mFlushRunnable = this::flush;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private ArrayList<RangingReport> mPending;
+
+    /**
+     * @param maxBatchSize The number of reports that triggers a delivery.
+     * @param maxDelayMs How long the oldest report may wait before a delivery is forced. Must be
+     *                   positive, so that a partial batch is never held indefinitely.
+     * @param handler The handler that runs delayed deliveries.
+     * @param delivery Receives each batch.
+     */
+    public RangingReportBatcher(int maxBatchSize, long maxDelayMs, @NonNull Handler handler,
+            @NonNull Delivery delivery) {
+        if (maxDelayMs <= 0) {
+            throw new IllegalArgumentException("maxDelayMs must be positive: " + maxDelayMs);
+        }
+        mMaxBatchSize = maxBatchSize;
+        mMaxDelayMs = maxDelayMs;
+        mHandler = handler;
+        mDelivery = delivery;
+        mPending = new ArrayList<>(maxBatchSize);
+    }
+
+    /** Adds a report, delivering the batch if it is full. */
+    public void add(@NonNull RangingReport report) {
+        synchronized (mLock) {
+            mPending.add(report);
+            if (mPending.size() >= mMaxBatchSize) {
+                flushLocked();
+            } else if (mPending.size() == 1) {
+                mHandler.postDelayed(mFlushRunnable, mMaxDelayMs);
+            }
+        }
+    }
+
+    /** Delivers all pending reports now. Does nothing if there are none. */
+    public void flush() {
+        synchronized (mLock) {
+            flushLocked();
+        }
+    }
+
+    @VisibleForTesting
+    int getPendingCount() {
+        synchronized (mLock) {
+            return mPending.size();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void flushLocked() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPending.isEmpty()) {
+            return;
+        }
+        List<RangingReport> batch = mPending;
+        mPending = new ArrayList<>(mMaxBatchSize);
+        // Deliver while holding the lock so batches can't be reordered by a concurrent flush.
+        mDelivery.deliver(batch);
+    }
+}
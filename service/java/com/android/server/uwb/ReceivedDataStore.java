@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.uwb.UwbSessionManager.ReceivedDataInfo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Stores the application data packets received in an OWR-for-AoA session, until the device points
+ * at the advertiser which sent them.
+ *
+ * <p>The packets of each advertiser are kept in a ring buffer in sequence number order, which
+ * holds its last {@code rx_data_max_packets_to_store} packets. The store holds the packets of at
+ * most {@link #MAX_ADVERTISERS} advertisers and {@link #MAX_PAYLOAD_BYTES} bytes of payload; the
+ * least recently heard advertiser is evicted when it's full. An advertiser that has not been heard
+ * from, by a packet or an OWR-AoA measurement, for longer than the advertise time threshold can't
+ * be pointed at anymore, so its packets are dropped as well.
+ *
+ * <p>Every advertiser heard from is remembered until the store is cleared, whether it still has
+ * packets or not, so that its advertise target can be removed when the session stops.
+ */
+public class ReceivedDataStore {
+    @VisibleForTesting
+    static final int MAX_ADVERTISERS = 32;
+    @VisibleForTesting
+    static final int MAX_PAYLOAD_BYTES = 64 * 1024;
+
+    private final IntSupplier mMaxPacketsPerAdvertiser;
+    private final IntSupplier mExpiryMs;
+    private final LongSupplier mElapsedRealtimeMs;
+
+    private final Object mLock = new Object();
+    // Ordered from the least to the most recently heard advertiser.
+    @GuardedBy("mLock")
+    private final LinkedHashMap<Long, PacketRing> mRings = new LinkedHashMap<>();
+    @GuardedBy("mLock")
+    private final Set<Long> mHeardMacAddresses = new HashSet<>();
+    @GuardedBy("mLock")
+    private int mPacketCount;
+    @GuardedBy("mLock")
+    private int mPayloadBytes;
+    @GuardedBy("mLock")
+    private int mPeakPacketCount;
+    @GuardedBy("mLock")
+    private int mPeakPayloadBytes;
+
+    @GuardedBy("mLock")
+    private long mStoredCount;
+    @GuardedBy("mLock")
+    private long mDeliveredCount;
+    @GuardedBy("mLock")
+    private long mDuplicateDropCount;
+    // Packets dropped for a higher sequence number of the same advertiser.
+    @GuardedBy("mLock")
+    private long mOverflowDropCount;
+    @GuardedBy("mLock")
+    private long mExpiredDropCount;
+    // Packets dropped with the least recently heard advertiser.
+    @GuardedBy("mLock")
+    private long mEvictedDropCount;
+
+    /**
+     * Creates a ReceivedDataStore.
+     * @param maxPacketsPerAdvertiser read when the first packet of an advertiser is stored
+     * @param expiryMs time after which the packets of an advertiser which isn't heard, by a packet
+     * or a measurement, are dropped
+     * @param elapsedRealtimeMs clock of the expiry
+     */
+    public ReceivedDataStore(@NonNull IntSupplier maxPacketsPerAdvertiser,
+            @NonNull IntSupplier expiryMs, @NonNull LongSupplier elapsedRealtimeMs) {
+        mMaxPacketsPerAdvertiser = maxPacketsPerAdvertiser;
+        mExpiryMs = expiryMs;
+        mElapsedRealtimeMs = elapsedRealtimeMs;
+    }
+
+    /**
+     * Stores a packet. If a packet with the same sequence number is already stored for the
+     * advertiser, or the ring buffer of the advertiser is full of higher sequence numbers, this is
+     * a no-op.
+     */
+    public void add(@NonNull ReceivedDataInfo info) {
+        long nowMs = mElapsedRealtimeMs.getAsLong();
+        int payloadLength = info.payload != null ? info.payload.length : 0;
+        synchronized (mLock) {
+            evictExpiredLocked(nowMs);
+            mHeardMacAddresses.add(info.address);
+
+            // Re-insert the ring, to keep the map ordered by when the advertisers were last heard.
+            PacketRing ring = mRings.remove(info.address);
+            if (ring == null) {
+                int capacity = mMaxPacketsPerAdvertiser.getAsInt();
+                if (capacity <= 0) {
+                    mOverflowDropCount++;
+                    return;
+                }
+                ring = new PacketRing(capacity);
+            }
+            ring.mLastHeardMs = nowMs;
+            mRings.put(info.address, ring);
+
+            int result = ring.insert(info);
+            if (result == PacketRing.DUPLICATE) {
+                mDuplicateDropCount++;
+                return;
+            }
+            if (result == PacketRing.TOO_OLD) {
+                mOverflowDropCount++;
+                return;
+            }
+            if (result == PacketRing.REPLACED_OLDEST) {
+                mOverflowDropCount++;
+                mPacketCount--;
+                mPayloadBytes -= ring.mLastDroppedBytes;
+            }
+            mStoredCount++;
+            mPacketCount++;
+            mPayloadBytes += payloadLength;
+
+            evictLeastRecentlyHeardLocked(ring);
+            mPeakPacketCount = Math.max(mPeakPacketCount, mPacketCount);
+            mPeakPayloadBytes = Math.max(mPeakPayloadBytes, mPayloadBytes);
+        }
+    }
+
+    /**
+     * Records an OWR-AoA measurement of an advertiser, which keeps its packets from expiring.
+     */
+    public void onMeasurement(long macAddress) {
+        long nowMs = mElapsedRealtimeMs.getAsLong();
+        synchronized (mLock) {
+            evictExpiredLocked(nowMs);
+            mHeardMacAddresses.add(macAddress);
+            PacketRing ring = mRings.remove(macAddress);
+            if (ring != null) {
+                ring.mLastHeardMs = nowMs;
+                mRings.put(macAddress, ring);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the packets of an advertiser, in sequence number order.
+     */
+    @NonNull
+    public List<ReceivedDataInfo> drain(long macAddress) {
+        synchronized (mLock) {
+            evictExpiredLocked(mElapsedRealtimeMs.getAsLong());
+            PacketRing ring = mRings.remove(macAddress);
+            if (ring == null) {
+                return List.of();
+            }
+            List<ReceivedDataInfo> infos = ring.toList();
+            mPacketCount -= ring.mSize;
+            mPayloadBytes -= ring.mPayloadBytes;
+            mDeliveredCount += ring.mSize;
+            return infos;
+        }
+    }
+
+    /** Returns the addresses of the advertisers with stored packets. */
+    @NonNull
+    public Set<Long> getMacAddresses() {
+        synchronized (mLock) {
+            return new HashSet<>(mRings.keySet());
+        }
+    }
+
+    /**
+     * Returns the addresses of all the advertisers heard from since the store was last cleared,
+     * including those whose packets were drained, expired or evicted.
+     */
+    @NonNull
+    public Set<Long> getHeardMacAddresses() {
+        synchronized (mLock) {
+            return new HashSet<>(mHeardMacAddresses);
+        }
+    }
+
+    /** Drops all the stored packets, and forgets the advertisers heard from. */
+    public void clear() {
+        synchronized (mLock) {
+            mRings.clear();
+            mHeardMacAddresses.clear();
+            mPacketCount = 0;
+            mPayloadBytes = 0;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void evictExpiredLocked(long nowMs) {
+        long expiryMs = mExpiryMs.getAsInt();
+        Iterator<PacketRing> it = mRings.values().iterator();
+        while (it.hasNext()) {
+            PacketRing ring = it.next();
+            if (nowMs - ring.mLastHeardMs <= expiryMs) {
+                // The remaining advertisers were heard more recently.
+                break;
+            }
+            it.remove();
+            mExpiredDropCount += ring.mSize;
+            mPacketCount -= ring.mSize;
+            mPayloadBytes -= ring.mPayloadBytes;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void evictLeastRecentlyHeardLocked(PacketRing current) {
+        Iterator<PacketRing> it = mRings.values().iterator();
+        while ((mRings.size() > MAX_ADVERTISERS || mPayloadBytes > MAX_PAYLOAD_BYTES)
+                && it.hasNext()) {
+            PacketRing ring = it.next();
+            if (ring == current) {
+                break;
+            }
+            it.remove();
+            mEvictedDropCount += ring.mSize;
+            mPacketCount -= ring.mSize;
+            mPayloadBytes -= ring.mPayloadBytes;
+        }
+        // A single advertiser over the payload limit loses its oldest packets.
+        while (mPayloadBytes > MAX_PAYLOAD_BYTES && current.mSize > 1) {
+            mPayloadBytes -= current.removeOldest();
+            mPacketCount--;
+            mOverflowDropCount++;
+        }
+    }
+
+    @VisibleForTesting
+    int getPacketCount() {
+        synchronized (mLock) {
+            return mPacketCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getExpiredDropCount() {
+        synchronized (mLock) {
+            return mExpiredDropCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getEvictedDropCount() {
+        synchronized (mLock) {
+            return mEvictedDropCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "ReceivedDataStore{"
+                    + "advertisers=" + mRings.size()
+                    + ", packets=" + mPacketCount
+                    + ", bytes=" + mPayloadBytes
+                    + ", peakPackets=" + mPeakPacketCount
+                    + ", peakBytes=" + mPeakPayloadBytes
+                    + ", stored=" + mStoredCount
+                    + ", delivered=" + mDeliveredCount
+                    + ", duplicates=" + mDuplicateDropCount
+                    + ", overflowDrops=" + mOverflowDropCount
+                    + ", expiredDrops=" + mExpiredDropCount
+                    + ", evictedDrops=" + mEvictedDropCount
+                    + '}';
+        }
+    }
+
+    /** Packets of one advertiser, in a ring buffer sorted by sequence number. */
+    private static class PacketRing {
+        static final int STORED = 0;
+        static final int REPLACED_OLDEST = 1;
+        static final int DUPLICATE = 2;
+        static final int TOO_OLD = 3;
+
+        final ReceivedDataInfo[] mPackets;
+        int mHead;
+        int mSize;
+        int mPayloadBytes;
+        int mLastDroppedBytes;
+        long mLastHeardMs;
+
+        PacketRing(int capacity) {
+            mPackets = new ReceivedDataInfo[capacity];
+        }
+
+        private int index(int position) {
+            return (mHead + position) % mPackets.length;
+        }
+
+        int insert(ReceivedDataInfo info) {
+            // Packets mostly arrive in order, so look for the position from the end.
+            int position = mSize;
+            while (position > 0 && mPackets[index(position - 1)].sequenceNum > info.sequenceNum) {
+                position--;
+            }
+            if (position > 0 && mPackets[index(position - 1)].sequenceNum == info.sequenceNum) {
+                return DUPLICATE;
+            }
+            int result = STORED;
+            if (mSize == mPackets.length) {
+                if (position == 0) {
+                    return TOO_OLD;
+                }
+                mLastDroppedBytes = removeOldest();
+                position--;
+                result = REPLACED_OLDEST;
+            }
+            for (int i = mSize; i > position; i--) {
+                mPackets[index(i)] = mPackets[index(i - 1)];
+            }
+            mPackets[index(position)] = info;
+            mSize++;
+            mPayloadBytes += info.payload != null ? info.payload.length : 0;
+            return result;
+        }
+
+        /** Removes the packet with the lowest sequence number, and returns its payload length. */
+        int removeOldest() {
+            ReceivedDataInfo oldest = mPackets[mHead];
+            mPackets[mHead] = null;
+            mHead = index(1);
+            mSize--;
+            int bytes = oldest.payload != null ? oldest.payload.length : 0;
+            mPayloadBytes -= bytes;
+            return bytes;
+        }
+
+        List<ReceivedDataInfo> toList() {
+            List<ReceivedDataInfo> infos = new ArrayList<>(mSize);
+            for (int i = 0; i < mSize; i++) {
+                infos.add(mPackets[index(i)]);
+            }
+            return infos;
+        }
+    }
+}
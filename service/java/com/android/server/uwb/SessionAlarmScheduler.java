@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+import android.app.AlarmManager;
+import android.os.Handler;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Multiplexes the timers of a UWB session (the ranging error streak of the session or of each
+ * controlee, and the non-privileged app in the background) onto a single AlarmManager alarm set
+ * for the earliest deadline.
+ *
+ * <p>Timers are started and stopped in process only: stopping a timer doesn't cancel the alarm,
+ * which is re-armed for the next deadline (if any) when it fires. This way a ranging result which
+ * flaps between success and error costs no call to the alarm service, at the price of a wakeup
+ * once per timeout in the worst case.
+ */
+public class SessionAlarmScheduler {
+    private final AlarmManager mAlarmManager;
+    private final Handler mHandler;
+    private final LongSupplier mElapsedRealtimeMs;
+    private final AlarmManager.OnAlarmListener mAlarmListener = this::onAlarm;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final Map<Object, Timer> mTimers = new HashMap<>();
+    // Trigger time of the alarm, or Long.MAX_VALUE if it isn't armed.
+    @GuardedBy("mLock")
+    private long mArmedDeadlineMs = Long.MAX_VALUE;
+
+    // Timers started and stopped, i.e. the alarms which were set and cancelled one per timer.
+    @GuardedBy("mLock")
+    private long mTimerStartCount;
+    @GuardedBy("mLock")
+    private long mTimerStopCount;
+    // Alarms actually set and cancelled.
+    @GuardedBy("mLock")
+    private long mAlarmSetCount;
+    @GuardedBy("mLock")
+    private long mAlarmCancelCount;
+    // Alarms which fired with no timer expired.
+    @GuardedBy("mLock")
+    private long mIdleWakeupCount;
+
+    private static class Timer {
+        final String mTag;
+        final long mDeadlineMs;
+        final Runnable mOnExpired;
+
+        Timer(String tag, long deadlineMs, Runnable onExpired) {
+            mTag = tag;
+            mDeadlineMs = deadlineMs;
+            mOnExpired = onExpired;
+        }
+    }
+
+    /**
+     * Creates a SessionAlarmScheduler.
+     * @param alarmManager alarm manager which wakes up the device for the earliest deadline
+     * @param handler handler on which the expired timers are run
+     * @param elapsedRealtimeMs clock of the deadlines, in the ELAPSED_REALTIME base
+     */
+    public SessionAlarmScheduler(@NonNull AlarmManager alarmManager, @NonNull Handler handler,
+            @NonNull LongSupplier elapsedRealtimeMs) {
+        mAlarmManager = alarmManager;
+        mHandler = handler;
+        mElapsedRealtimeMs = elapsedRealtimeMs;
+    }
+
+    /**
+     * Starts a timer which runs {@code onExpired} in {@code timeoutMs}, unless a timer is already
+     * started for {@code key}.
+     *
+     * @param tag tag of the alarm, while this timer has the earliest deadline
+     * @return true if the timer was started
+     */
+    public boolean startIfNotSet(@NonNull Object key, @NonNull String tag, long timeoutMs,
+            @NonNull Runnable onExpired) {
+        synchronized (mLock) {
+            if (mTimers.containsKey(key)) {
+                return false;
+            }
+            Timer timer = new Timer(tag, mElapsedRealtimeMs.getAsLong() + timeoutMs, onExpired);
+            mTimers.put(key, timer);
+            mTimerStartCount++;
+            if (timer.mDeadlineMs < mArmedDeadlineMs) {
+                // Setting an alarm with the same listener replaces the armed one.
+                setAlarmLocked(timer);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops the timer of {@code key}, if started. The alarm is left armed.
+     *
+     * @return true if a timer was stopped
+     */
+    public boolean stopIfSet(@NonNull Object key) {
+        synchronized (mLock) {
+            if (mTimers.remove(key) == null) {
+                return false;
+            }
+            mTimerStopCount++;
+            return true;
+        }
+    }
+
+    /** Returns whether a timer is started for {@code key}. */
+    public boolean isSet(@NonNull Object key) {
+        synchronized (mLock) {
+            return mTimers.containsKey(key);
+        }
+    }
+
+    /** Returns the keys of the started timers which are instances of {@code keyClass}. */
+    @NonNull
+    public <K> List<K> getKeys(@NonNull Class<K> keyClass) {
+        synchronized (mLock) {
+            List<K> keys = new ArrayList<>();
+            for (Object key : mTimers.keySet()) {
+                if (keyClass.isInstance(key)) {
+                    keys.add(keyClass.cast(key));
+                }
+            }
+            return keys;
+        }
+    }
+
+    /** Stops all the timers and cancels the alarm. */
+    public void stopAll() {
+        synchronized (mLock) {
+            mTimerStopCount += mTimers.size();
+            mTimers.clear();
+            if (mArmedDeadlineMs != Long.MAX_VALUE) {
+                mAlarmManager.cancel(mAlarmListener);
+                mAlarmCancelCount++;
+                mArmedDeadlineMs = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void onAlarm() {
+        List<Runnable> expired = new ArrayList<>();
+        synchronized (mLock) {
+            // The alarm never fires before its trigger time, so anything due by then is expired.
+            long nowMs = Math.max(mElapsedRealtimeMs.getAsLong(),
+                    mArmedDeadlineMs != Long.MAX_VALUE ? mArmedDeadlineMs : 0);
+            mArmedDeadlineMs = Long.MAX_VALUE;
+            Timer earliest = null;
+            Iterator<Timer> it = mTimers.values().iterator();
+            while (it.hasNext()) {
+                Timer timer = it.next();
+                if (timer.mDeadlineMs <= nowMs) {
+                    expired.add(timer.mOnExpired);
+                    it.remove();
+                } else if (earliest == null || timer.mDeadlineMs < earliest.mDeadlineMs) {
+                    earliest = timer;
+                }
+            }
+            if (expired.isEmpty()) {
+                mIdleWakeupCount++;
+            }
+            if (earliest != null) {
+                setAlarmLocked(earliest);
+            }
+        }
+        for (Runnable onExpired : expired) {
+            onExpired.run();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void setAlarmLocked(Timer timer) {
+        mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, timer.mDeadlineMs,
+                timer.mTag, mAlarmListener, mHandler);
+        mArmedDeadlineMs = timer.mDeadlineMs;
+        mAlarmSetCount++;
+    }
+
+    @VisibleForTesting
+    long getAlarmSetCount() {
+        synchronized (mLock) {
+            return mAlarmSetCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getAlarmCancelCount() {
+        synchronized (mLock) {
+            return mAlarmCancelCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "SessionAlarmScheduler{"
+                    + "timers=" + mTimers.size()
+                    + ", timerStarts=" + mTimerStartCount
+                    + ", timerStops=" + mTimerStopCount
+                    + ", alarmSets=" + mAlarmSetCount
+                    + ", alarmCancels=" + mAlarmCancelCount
+                    + ", idleWakeups=" + mIdleWakeupCount
+                    + '}';
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.PersistableBundle;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.uwb.params.FiraEncoder;
+import com.android.server.uwb.params.TlvBuffer;
+
+import com.google.uwb.support.fira.FiraOpenSessionParams;
+import com.google.uwb.support.fira.FiraProtocolVersion;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Caches the encoded app configs of recently opened FiRa sessions, so that a session opened
+ * with the same params as an earlier one, except for its session specific fields, doesn't need
+ * to encode all of them again.
+ *
+ * <p>The templates are keyed by a 64 bit hash of
+ * {@link FiraOpenSessionParams#toSessionTemplateBundle()}, and keep that bundle so that a hash
+ * collision is a miss rather than the template of other params. On a hit, the session specific
+ * app configs are encoded alone and patched into a copy of the template, which gives the same
+ * bytes as encoding all the params. The templates are stored with the values of their session
+ * specific app configs zeroed, so that session keys don't outlive their session.
+ */
+public class SessionConfigTemplateCache {
+    private static final int HEADER_LENGTH = 2;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Object mLock = new Object();
+    // Least recently used first.
+    @GuardedBy("mLock")
+    private final LinkedHashMap<Long, Template> mTemplates =
+            new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+    @GuardedBy("mLock")
+    private long mHitCount;
+    @GuardedBy("mLock")
+    private long mMissCount;
+    @GuardedBy("mLock")
+    private long mEvictionCount;
+
+    /** The encoded app configs of some params, and what they were encoded from. */
+    private static final class Template {
+        final String mProtocolVersion;
+        final boolean mAntennaModeConfigSupported;
+        final PersistableBundle mTemplateBundle;
+        final TlvBuffer mTlvBuffer;
+
+        Template(String protocolVersion, boolean antennaModeConfigSupported,
+                PersistableBundle templateBundle, TlvBuffer tlvBuffer) {
+            mProtocolVersion = protocolVersion;
+            mAntennaModeConfigSupported = antennaModeConfigSupported;
+            mTemplateBundle = templateBundle;
+            mTlvBuffer = tlvBuffer;
+        }
+
+        boolean matches(String protocolVersion, boolean antennaModeConfigSupported,
+                PersistableBundle templateBundle) {
+            return mProtocolVersion.equals(protocolVersion)
+                    && mAntennaModeConfigSupported == antennaModeConfigSupported
+                    && bundlesEqual(mTemplateBundle, templateBundle);
+        }
+    }
+
+    /**
+     * Gets the encoded app configs of {@code params}, from a template if there is one.
+     *
+     * @param maxTemplates How many templates may be kept.
+     */
+    @NonNull
+    public TlvBuffer getTlvBuffer(@NonNull FiraEncoder encoder,
+            @NonNull FiraOpenSessionParams params,
+            @NonNull FiraProtocolVersion protocolVersion,
+            boolean antennaModeConfigSupported, int maxTemplates) {
+        String version = protocolVersion.toString();
+        PersistableBundle templateBundle = params.toSessionTemplateBundle();
+        long key = getKey(version, antennaModeConfigSupported, templateBundle);
+        Template template;
+        synchronized (mLock) {
+            template = mTemplates.get(key);
+        }
+        if (template != null
+                && template.matches(version, antennaModeConfigSupported, templateBundle)) {
+            TlvBuffer tlvBuffer = patch(template.mTlvBuffer,
+                    encoder.getSessionSpecificTlvBuffer(params, protocolVersion));
+            if (tlvBuffer != null) {
+                synchronized (mLock) {
+                    mHitCount++;
+                }
+                return tlvBuffer;
+            }
+        }
+
+        TlvBuffer tlvBuffer = encoder.getTlvBuffer(params, protocolVersion);
+        synchronized (mLock) {
+            mMissCount++;
+            mTemplates.put(key, new Template(version, antennaModeConfigSupported, templateBundle,
+                    withoutSessionValues(tlvBuffer)));
+            Iterator<Map.Entry<Long, Template>> it = mTemplates.entrySet().iterator();
+            while (mTemplates.size() > maxTemplates && it.hasNext()) {
+                it.next();
+                it.remove();
+                mEvictionCount++;
+            }
+        }
+        return tlvBuffer;
+    }
+
+    @VisibleForTesting
+    long getHitCount() {
+        synchronized (mLock) {
+            return mHitCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getMissCount() {
+        synchronized (mLock) {
+            return mMissCount;
+        }
+    }
+
+    @VisibleForTesting
+    List<TlvBuffer> getTemplates() {
+        synchronized (mLock) {
+            List<TlvBuffer> templates = new ArrayList<>();
+            for (Template template : mTemplates.values()) {
+                templates.add(template.mTlvBuffer);
+            }
+            return templates;
+        }
+    }
+
+    /** Dumps the template count and the hit and miss counters. */
+    public void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("SessionConfigTemplateCache: templates=" + mTemplates.size()
+                    + " hits=" + mHitCount
+                    + " misses=" + mMissCount
+                    + " evictions=" + mEvictionCount);
+        }
+    }
+
+    /** Picks the slot of a template. Templates whose keys collide replace each other. */
+    @VisibleForTesting
+    long getKey(String protocolVersion, boolean antennaModeConfigSupported,
+            PersistableBundle templateBundle) {
+        long hash = hashString(FNV_OFFSET_BASIS, protocolVersion);
+        hash = fnv(hash, antennaModeConfigSupported ? 1 : 0);
+        return fnv(hash, hashBundle(templateBundle));
+    }
+
+    /** Whether {@code a} and {@code b} have the same entries, comparing arrays by content. */
+    @SuppressWarnings("deprecation")
+    private static boolean bundlesEqual(PersistableBundle a, PersistableBundle b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (String key : a.keySet()) {
+            if (!b.containsKey(key)) {
+                return false;
+            }
+            Object value = a.get(key);
+            Object other = b.get(key);
+            if (value instanceof PersistableBundle && other instanceof PersistableBundle) {
+                if (!bundlesEqual((PersistableBundle) value, (PersistableBundle) other)) {
+                    return false;
+                }
+            } else if (!Objects.deepEquals(value, other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the entries of {@code bundle}. The entry hashes are summed, so equal bundles give
+     * equal hashes whatever the iteration order of their keys.
+     */
+    @SuppressWarnings("deprecation")
+    private static long hashBundle(PersistableBundle bundle) {
+        long sum = 0;
+        for (String key : bundle.keySet()) {
+            sum += mix(hashValue(hashString(FNV_OFFSET_BASIS, key), bundle.get(key)));
+        }
+        return mix(fnv(sum, bundle.size()));
+    }
+
+    private static long hashValue(long hash, @Nullable Object value) {
+        if (value instanceof PersistableBundle) {
+            return fnv(fnv(hash, 1), hashBundle((PersistableBundle) value));
+        } else if (value instanceof int[]) {
+            hash = fnv(hash, 2);
+            for (int v : (int[]) value) {
+                hash = fnv(hash, v);
+            }
+        } else if (value instanceof long[]) {
+            hash = fnv(hash, 3);
+            for (long v : (long[]) value) {
+                hash = fnv(hash, v);
+            }
+        } else if (value instanceof double[]) {
+            hash = fnv(hash, 4);
+            for (double v : (double[]) value) {
+                hash = fnv(hash, Double.doubleToLongBits(v));
+            }
+        } else if (value instanceof boolean[]) {
+            hash = fnv(hash, 5);
+            for (boolean v : (boolean[]) value) {
+                hash = fnv(hash, v ? 1 : 0);
+            }
+        } else if (value instanceof String[]) {
+            hash = fnv(hash, 6);
+            for (String v : (String[]) value) {
+                hash = hashString(hash, v);
+            }
+        } else if (value instanceof Integer || value instanceof Long) {
+            hash = fnv(fnv(hash, 7), ((Number) value).longValue());
+        } else if (value instanceof Double) {
+            hash = fnv(fnv(hash, 8), Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Boolean) {
+            hash = fnv(fnv(hash, 9), (Boolean) value ? 1 : 0);
+        } else {
+            hash = hashString(fnv(hash, 10), String.valueOf(value));
+        }
+        return hash;
+    }
+
+    private static long hashString(long hash, @Nullable String value) {
+        if (value == null) {
+            return fnv(hash, -1);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = fnv(hash, value.charAt(i));
+        }
+        return fnv(hash, value.length());
+    }
+
+    private static long fnv(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    /** Spreads the bits of {@code hash}, see the SplitMix64 finalizer. */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /** Copies {@code tlvBuffer} with the values of its session specific app configs zeroed. */
+    private static TlvBuffer withoutSessionValues(TlvBuffer tlvBuffer) {
+        byte[] tlvs = tlvBuffer.getByteArray().clone();
+        int offset = 0;
+        while (offset + HEADER_LENGTH <= tlvs.length) {
+            int end = getTlvEnd(tlvs, offset);
+            if (FiraEncoder.isSessionSpecificTag(tlvs[offset] & 0xFF)) {
+                Arrays.fill(tlvs, offset + HEADER_LENGTH, end, (byte) 0);
+            }
+            offset = end;
+        }
+        return new TlvBuffer(tlvs, tlvBuffer.getNoOfParams());
+    }
+
+    /**
+     * Replaces the session specific app configs of {@code template} with those of
+     * {@code sessionTlvs}, keeping their order.
+     *
+     * @return null if the two don't have the same session specific app configs.
+     */
+    @Nullable
+    private static TlvBuffer patch(TlvBuffer template, TlvBuffer sessionTlvs) {
+        byte[] templateBytes = template.getByteArray();
+        byte[] sessionBytes = sessionTlvs.getByteArray();
+        byte[] patched = new byte[templateBytes.length - getSessionTlvsLength(templateBytes)
+                + sessionBytes.length];
+        int patchedLength = 0;
+        int patchedCount = 0;
+        int offset = 0;
+        while (offset + HEADER_LENGTH <= templateBytes.length) {
+            int tag = templateBytes[offset] & 0xFF;
+            int end = getTlvEnd(templateBytes, offset);
+            int from = offset;
+            int to = end;
+            byte[] source = templateBytes;
+            if (FiraEncoder.isSessionSpecificTag(tag)) {
+                from = findTlv(sessionBytes, tag);
+                if (from < 0) {
+                    return null;
+                }
+                to = getTlvEnd(sessionBytes, from);
+                source = sessionBytes;
+                patchedCount++;
+            }
+            if (patchedLength + to - from > patched.length) {
+                return null;
+            }
+            System.arraycopy(source, from, patched, patchedLength, to - from);
+            patchedLength += to - from;
+            offset = end;
+        }
+        if (patchedCount != sessionTlvs.getNoOfParams() || patchedLength != patched.length) {
+            return null;
+        }
+        return new TlvBuffer(patched, template.getNoOfParams());
+    }
+
+    private static int getSessionTlvsLength(byte[] tlvs) {
+        int length = 0;
+        int offset = 0;
+        while (offset + HEADER_LENGTH <= tlvs.length) {
+            int end = getTlvEnd(tlvs, offset);
+            if (FiraEncoder.isSessionSpecificTag(tlvs[offset] & 0xFF)) {
+                length += end - offset;
+            }
+            offset = end;
+        }
+        return length;
+    }
+
+    private static int findTlv(byte[] tlvs, int tag) {
+        int offset = 0;
+        while (offset + HEADER_LENGTH <= tlvs.length) {
+            if ((tlvs[offset] & 0xFF) == tag) {
+                return offset;
+            }
+            offset = getTlvEnd(tlvs, offset);
+        }
+        return -1;
+    }
+
+    private static int getTlvEnd(byte[] tlvs, int offset) {
+        return Math.min(offset + HEADER_LENGTH + (tlvs[offset + 1] & 0xFF), tlvs.length);
+    }
+}
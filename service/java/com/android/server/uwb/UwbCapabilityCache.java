@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.uwb.data.UwbDeviceInfoResponse;
+
+import com.google.uwb.support.generic.GenericSpecificationParams;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the specification params (FiRa, CCC, Aliro and Radar) and the CORE_GET_DEVICE_INFO
+ * response of each UWB chip, so that they are served without a round trip to the UWBS.
+ *
+ * <p>The specification params of a chip are fetched on first use, and dropped when the chips are
+ * initialized again, when a chip reports an error or when the country code changes, since the
+ * UWBS may then report other capabilities.
+ */
+public class UwbCapabilityCache {
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final Map<String, GenericSpecificationParams> mChipIdToSpecificationParamsMap =
+            new HashMap<>();
+    @GuardedBy("mLock")
+    private Map<String, UwbDeviceInfoResponse> mChipIdToDeviceInfoResponseMap = new HashMap<>();
+    // Incremented on every invalidation, so a fetch which raced with it isn't cached.
+    @GuardedBy("mLock")
+    private long mGeneration;
+    @GuardedBy("mLock")
+    private long mHitCount;
+    @GuardedBy("mLock")
+    private long mMissCount;
+
+    /** Gets the cached specification params of {@code chipId}, null if they need to be fetched. */
+    @Nullable
+    public GenericSpecificationParams getSpecificationParams(@NonNull String chipId) {
+        synchronized (mLock) {
+            GenericSpecificationParams specificationParams =
+                    mChipIdToSpecificationParamsMap.get(chipId);
+            if (specificationParams != null) {
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+            return specificationParams;
+        }
+    }
+
+    /** Gets the generation to pass to {@link #putSpecificationParams} once fetched. */
+    public long getGeneration() {
+        synchronized (mLock) {
+            return mGeneration;
+        }
+    }
+
+    /**
+     * Caches the specification params of {@code chipId}, unless the cache was invalidated since
+     * {@code generation} was read.
+     */
+    public void putSpecificationParams(@NonNull String chipId,
+            @NonNull GenericSpecificationParams specificationParams, long generation) {
+        synchronized (mLock) {
+            if (generation == mGeneration) {
+                mChipIdToSpecificationParamsMap.put(chipId, specificationParams);
+            }
+        }
+    }
+
+    /** Drops the specification params of every chip. */
+    public void invalidateSpecificationParams() {
+        synchronized (mLock) {
+            mChipIdToSpecificationParamsMap.clear();
+            mGeneration++;
+        }
+    }
+
+    /** Drops the specification params of {@code chipId}. */
+    public void invalidateSpecificationParams(@NonNull String chipId) {
+        synchronized (mLock) {
+            mChipIdToSpecificationParamsMap.remove(chipId);
+            mGeneration++;
+        }
+    }
+
+    /** Gets the CORE_GET_DEVICE_INFO response of {@code chipId}. */
+    @Nullable
+    public UwbDeviceInfoResponse getDeviceInfoResponse(@NonNull String chipId) {
+        synchronized (mLock) {
+            return mChipIdToDeviceInfoResponseMap.get(chipId);
+        }
+    }
+
+    /**
+     * Sets the CORE_GET_DEVICE_INFO responses of the chips which were just initialized, which
+     * also drops their specification params.
+     */
+    public void onChipsInitialized(
+            @NonNull Map<String, UwbDeviceInfoResponse> chipIdToDeviceInfoResponseMap) {
+        synchronized (mLock) {
+            mChipIdToDeviceInfoResponseMap = chipIdToDeviceInfoResponseMap;
+            mChipIdToSpecificationParamsMap.clear();
+            mGeneration++;
+        }
+    }
+
+    @VisibleForTesting
+    long getHitCount() {
+        synchronized (mLock) {
+            return mHitCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getMissCount() {
+        synchronized (mLock) {
+            return mMissCount;
+        }
+    }
+
+    /** Dumps the cached chips and the hit and miss counters. */
+    public void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("UwbCapabilityCache: chips=" + mChipIdToSpecificationParamsMap.keySet()
+                    + " hits=" + mHitCount
+                    + " misses=" + mMissCount
+                    + " invalidations=" + mGeneration);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import android.annotation.NonNull;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived executor for UCI commands which must run off the UWB service thread.
+ *
+ * <p>Each chip gets its own single worker thread with a bounded queue, so commands for one chip
+ * are executed in submission order and never wait behind commands for another chip. The worker
+ * thread is released after a period of inactivity and recreated on demand.
+ */
+public class UwbCommandExecutor {
+    private static final String TAG = "UwbCommandExecutor";
+
+    @VisibleForTesting
+    static final int DEFAULT_QUEUE_CAPACITY = 32;
+    private static final long IDLE_KEEP_ALIVE_MS = 30_000;
+
+    private final int mQueueCapacity;
+    private final Map<String, ChipExecutor> mChipExecutors = new ConcurrentHashMap<>();
+
+    public UwbCommandExecutor() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    @VisibleForTesting
+    UwbCommandExecutor(int queueCapacity) {
+        mQueueCapacity = queueCapacity;
+    }
+
+    /**
+     * Runs the task on the executor owned by {@code chipId} and waits for its result.
+     *
+     * <p>If the task does not complete within {@code timeoutMs}, it is cancelled (interrupting the
+     * worker if it already started) and a {@link TimeoutException} is thrown. If the chip queue is
+     * full, an {@link ExecutionException} wrapping a {@link RejectedExecutionException} is thrown.
+     */
+    public int execute(@NonNull String chipId, @NonNull FutureTask<Integer> task, int timeoutMs)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        ChipExecutor chipExecutor =
+                mChipExecutors.computeIfAbsent(chipId, id -> new ChipExecutor(id, mQueueCapacity));
+        return chipExecutor.execute(task, timeoutMs);
+    }
+
+    /** Stops all worker threads. Pending commands are discarded. */
+    public void shutdown() {
+        for (ChipExecutor chipExecutor : mChipExecutors.values()) {
+            chipExecutor.mExecutor.shutdownNow();
+        }
+        mChipExecutors.clear();
+    }
+
+    @VisibleForTesting
+    Stats getStats(@NonNull String chipId) {
+        ChipExecutor chipExecutor = mChipExecutors.get(chipId);
+        return chipExecutor == null ? null : chipExecutor.mStats;
+    }
+
+    /**
+     * Dump the command executor counters.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("---- Dump of UwbCommandExecutor ----");
+        for (ChipExecutor chipExecutor : mChipExecutors.values()) {
+            pw.println("chipId=" + chipExecutor.mChipId
+                    + " queueDepth=" + chipExecutor.mExecutor.getQueue().size()
+                    + " " + chipExecutor.mStats);
+        }
+        pw.println("---- Dump of UwbCommandExecutor ----");
+    }
+
+    /** Counters for a single chip executor. */
+    @VisibleForTesting
+    static class Stats {
+        final AtomicLong mSubmitted = new AtomicLong();
+        final AtomicLong mCompleted = new AtomicLong();
+        final AtomicLong mTimedOut = new AtomicLong();
+        final AtomicLong mRejected = new AtomicLong();
+        final AtomicLong mMaxQueueDepth = new AtomicLong();
+        final AtomicLong mTotalWaitNanos = new AtomicLong();
+        final AtomicLong mMaxWaitNanos = new AtomicLong();
+        final AtomicLong mTotalExecNanos = new AtomicLong();
+        final AtomicLong mMaxExecNanos = new AtomicLong();
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        @Override
+        public String toString() {
+            long completed = mCompleted.get();
+            return "submitted=" + mSubmitted.get()
+                    + " completed=" + completed
+                    + " timedOut=" + mTimedOut.get()
+                    + " rejected=" + mRejected.get()
+                    + " maxQueueDepth=" + mMaxQueueDepth.get()
+                    + " avgWaitUs=" + (completed == 0 ? 0
+                            : TimeUnit.NANOSECONDS.toMicros(mTotalWaitNanos.get() / completed))
+                    + " maxWaitUs=" + TimeUnit.NANOSECONDS.toMicros(mMaxWaitNanos.get())
+                    + " avgExecUs=" + (completed == 0 ? 0
+                            : TimeUnit.NANOSECONDS.toMicros(mTotalExecNanos.get() / completed))
+                    + " maxExecUs=" + TimeUnit.NANOSECONDS.toMicros(mMaxExecNanos.get());
+        }
+    }
+
+    private static class ChipExecutor {
+        private final String mChipId;
+        private final ThreadPoolExecutor mExecutor;
+        private final Stats mStats = new Stats();
+
+        ChipExecutor(String chipId, int queueCapacity) {
+            mChipId = chipId;
+            mExecutor = new ThreadPoolExecutor(1, 1, IDLE_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    r -> new Thread(r, "UwbCmd-" + chipId));
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        int execute(FutureTask<Integer> task, int timeoutMs)
+                throws InterruptedException, TimeoutException, ExecutionException {
+            final long enqueueNanos = System.nanoTime();
+            try {
+                mExecutor.execute(() -> {
+                    long startNanos = System.nanoTime();
+                    long waitNanos = startNanos - enqueueNanos;
+                    task.run();
+                    long execNanos = System.nanoTime() - startNanos;
+                    mStats.mCompleted.incrementAndGet();
+                    mStats.mTotalWaitNanos.addAndGet(waitNanos);
+                    mStats.mTotalExecNanos.addAndGet(execNanos);
+                    Stats.updateMax(mStats.mMaxWaitNanos, waitNanos);
+                    Stats.updateMax(mStats.mMaxExecNanos, execNanos);
+                });
+            } catch (RejectedExecutionException e) {
+                mStats.mRejected.incrementAndGet();
+                Log.e(TAG, "Command queue full for chip " + mChipId);
+                throw new ExecutionException(e);
+            }
+            mStats.mSubmitted.incrementAndGet();
+            Stats.updateMax(mStats.mMaxQueueDepth, mExecutor.getQueue().size());
+            try {
+                return task.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                mStats.mTimedOut.incrementAndGet();
+                task.cancel(true);
+                throw e;
+            }
+        }
+    }
+}
@@ -15,13 +15,16 @@
  */
 package com.android.server.uwb;
 
+import android.annotation.Nullable;
 import android.util.Log;
 import android.util.Pair;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.uwb.data.UwbConfigStatusData;
 import com.android.server.uwb.data.UwbTlvData;
 import com.android.server.uwb.data.UwbUciConstants;
 import com.android.server.uwb.jni.NativeUwbManager;
+import com.android.server.uwb.params.FiraEncoder;
 import com.android.server.uwb.params.TlvBuffer;
 import com.android.server.uwb.params.TlvDecoder;
 import com.android.server.uwb.params.TlvDecoderBuffer;
@@ -29,13 +32,18 @@ import com.android.server.uwb.params.TlvEncoder;
 
 import com.google.uwb.support.base.Params;
 import com.google.uwb.support.base.ProtocolVersion;
+import com.google.uwb.support.fira.FiraOpenSessionParams;
+import com.google.uwb.support.fira.FiraProtocolVersion;
 import com.google.uwb.support.radar.RadarParams;
 
+import java.io.PrintWriter;
+
 public class UwbConfigurationManager {
     private static final String TAG = "UwbConfManager";
 
     private final NativeUwbManager mNativeUwbManager;
     private final UwbInjector mUwbInjector;
+    private final SessionConfigTemplateCache mTemplateCache = new SessionConfigTemplateCache();
 
     public UwbConfigurationManager(NativeUwbManager nativeUwbManager, UwbInjector uwbInjector) {
         mNativeUwbManager = nativeUwbManager;
@@ -47,6 +55,17 @@ public class UwbConfigurationManager {
      */
     public int setAppConfigurations(int sessionId, Params params, String chipId,
                                     ProtocolVersion protocolVersion) {
+        return setAppConfigurations(sessionId, params, chipId, protocolVersion, null);
+    }
+
+    /**
+     * Set app configurations. With an {@code appConfigCache}, only the app configs that changed
+     * since they were last applied to the session are sent, and the full set is sent again if
+     * the UWBS rejects them.
+     */
+    public int setAppConfigurations(int sessionId, Params params, String chipId,
+                                    ProtocolVersion protocolVersion,
+                                    @Nullable AppConfigCache appConfigCache) {
         int status = UwbUciConstants.STATUS_CODE_FAILED;
         TlvBuffer tlvBuffer = null;
 
@@ -57,8 +76,59 @@ public class UwbConfigurationManager {
             return status;
         }
 
-        tlvBuffer = encoder.getTlvBuffer(params, protocolVersion);
+        tlvBuffer = encode(encoder, params, protocolVersion);
+        if (appConfigCache == null) {
+            return sendAppConfigurations(sessionId, params, tlvBuffer, chipId);
+        }
 
+        TlvBuffer deltaTlvBuffer = appConfigCache.getDelta(tlvBuffer);
+        status = sendAppConfigurations(sessionId, params, deltaTlvBuffer, chipId, appConfigCache,
+                tlvBuffer.getByteArray().length);
+        if (status == UwbUciConstants.STATUS_CODE_OK) {
+            return status;
+        }
+        if (deltaTlvBuffer != tlvBuffer) {
+            Log.w(TAG, "setAppConfigurations: changed app configs failed with status " + status
+                    + ", sending all of them");
+            appConfigCache.recordFallback();
+            status = sendAppConfigurations(sessionId, params, tlvBuffer, chipId, appConfigCache,
+                    tlvBuffer.getByteArray().length);
+        }
+        return status;
+    }
+
+    private TlvBuffer encode(TlvEncoder encoder, Params params, ProtocolVersion protocolVersion) {
+        if (encoder instanceof FiraEncoder && params instanceof FiraOpenSessionParams
+                && protocolVersion instanceof FiraProtocolVersion) {
+            DeviceConfigFacade deviceConfigFacade = mUwbInjector.getDeviceConfigFacade();
+            int maxTemplates = deviceConfigFacade.getSessionConfigTemplateCacheSize();
+            if (maxTemplates > 0) {
+                return mTemplateCache.getTlvBuffer((FiraEncoder) encoder,
+                        (FiraOpenSessionParams) params, (FiraProtocolVersion) protocolVersion,
+                        deviceConfigFacade.isAntennaModeConfigSupported(), maxTemplates);
+            }
+        }
+        return encoder.getTlvBuffer(params, protocolVersion);
+    }
+
+    private int sendAppConfigurations(int sessionId, Params params, TlvBuffer tlvBuffer,
+            String chipId, AppConfigCache appConfigCache, int fullLength) {
+        long startNanos = mUwbInjector.getElapsedSinceBootNanos();
+        int status = sendAppConfigurations(sessionId, params, tlvBuffer, chipId);
+        appConfigCache.recordCommand(fullLength, tlvBuffer.getByteArray().length,
+                mUwbInjector.getElapsedSinceBootNanos() - startNanos);
+        if (status == UwbUciConstants.STATUS_CODE_OK) {
+            appConfigCache.onApplied(tlvBuffer);
+        } else {
+            // The UWBS may have applied part of the app configs.
+            appConfigCache.invalidate();
+        }
+        return status;
+    }
+
+    private int sendAppConfigurations(int sessionId, Params params, TlvBuffer tlvBuffer,
+            String chipId) {
+        int status;
         if (tlvBuffer.getNoOfParams() != 0) {
             byte[] tlvByteArray = tlvBuffer.getByteArray();
             UwbConfigStatusData appConfig;
@@ -85,6 +155,20 @@ public class UwbConfigurationManager {
         return status;
     }
 
+    @VisibleForTesting
+    SessionConfigTemplateCache getTemplateCache() {
+        return mTemplateCache;
+    }
+
+    /**
+     * Dump the session config template cache counters.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("---- Dump of UwbConfigurationManager ----");
+        mTemplateCache.dump(pw);
+        pw.println("---- Dump of UwbConfigurationManager ----");
+    }
+
     /**
      * Retrieve app configurations from UWBS.
      */
@@ -90,15 +90,6 @@ public class UwbControlee implements AutoCloseable {
         }
         RangingMeasurement rawMeasurement = rmBuilder.build();
 
-        if (rawMeasurement.getStatus() != RangingMeasurement.RANGING_STATUS_SUCCESS) {
-            if (getTime() - mPredictionTimeoutMilli > mLastMeasurementInstant) {
-                // It's been some time since we last got a good report. Stop reporting values.
-                return;
-            }
-        } else {
-            mLastMeasurementInstant = getTime();
-        }
-
         // Gather az/el/dist
         AngleOfArrivalMeasurement aoaMeasurement = rawMeasurement.getAngleOfArrivalMeasurement();
         DistanceMeasurement distMeasurement = rawMeasurement.getDistanceMeasurement();
@@ -111,7 +102,6 @@ public class UwbControlee implements AutoCloseable {
         double azimuthFom = 1;
         double elevationFom = 1;
         double distanceFom = 1;
-        long nowMs = mUwbInjector.getElapsedSinceBootMillis();
         if (aoaMeasurement != null) {
             if (aoaMeasurement.getAzimuth() != null
                     && aoaMeasurement.getAzimuth().getConfidenceLevel() > 0) {
@@ -138,10 +128,8 @@ public class UwbControlee implements AutoCloseable {
         sv.elevationFom = elevationFom;
         sv.distanceFom = distanceFom;
 
-        // Give to the engine.
-        mEngine.add(sv, nowMs);
-
-        SphericalVector.Annotated engineResult = mEngine.compute(nowMs);
+        SphericalVector.Annotated engineResult = filterPosition(
+                rawMeasurement.getStatus() == RangingMeasurement.RANGING_STATUS_SUCCESS, sv);
         if (engineResult == null) {
             // Bail early - the engine didn't compute a result, so just leave the builder alone.
             return;
@@ -151,6 +139,42 @@ public class UwbControlee implements AutoCloseable {
         updateBuilder(rmBuilder, rawMeasurement, engineResult);
     }
 
+    /**
+     * Feeds a raw position to the filter engine and computes the filtered position. Unlike
+     * {@link #filterMeasurement(RangingMeasurement.Builder)}, this works directly on the values
+     * reported by the UWBS, so callers can build each {@link RangingMeasurement} only once.
+     *
+     * @param isSuccess Whether the ranging status of the measurement was successful.
+     * @param raw The raw position. Only the components flagged as present are used.
+     * @return The filtered position, or null if the filter engine is not configured, did not
+     * produce a result, or it has been too long since the last successful measurement.
+     */
+    @Nullable
+    public SphericalVector.Annotated filterPosition(
+            boolean isSuccess, @NonNull SphericalVector.Annotated raw) {
+        if (mEngine == null) {
+            return null;
+        }
+        if (!isSuccess) {
+            if (getTime() - mPredictionTimeoutMilli > mLastMeasurementInstant) {
+                // It's been some time since we last got a good report. Stop reporting values.
+                return null;
+            }
+        } else {
+            mLastMeasurementInstant = getTime();
+        }
+
+        // Give to the engine.
+        long nowMs = mUwbInjector.getElapsedSinceBootMillis();
+        mEngine.add(raw, nowMs);
+        return mEngine.compute(nowMs);
+    }
+
+    /** Returns true if this controlee has a filter engine. */
+    public boolean hasFilterEngine() {
+        return mEngine != null;
+    }
+
     private long getTime() {
         if (mUwbInjector == null) {
             return 0; // Can happen during testing; no time tracking will be supported.
@@ -57,6 +57,7 @@ import com.android.server.uwb.correction.pose.GyroPoseSource;
 import com.android.server.uwb.correction.pose.IPoseSource;
 import com.android.server.uwb.correction.pose.IntegPoseSource;
 import com.android.server.uwb.correction.pose.RotationPoseSource;
+import com.android.server.uwb.correction.pose.SharedPoseDelta;
 import com.android.server.uwb.correction.pose.SixDofPoseSource;
 import com.android.server.uwb.correction.primers.AoaPrimer;
 import com.android.server.uwb.correction.primers.BackAzimuthPrimer;
@@ -73,10 +74,7 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -114,6 +112,7 @@ public class UwbInjector {
     private final UwbMultichipData mUwbMultichipData;
     private final SystemBuildProperties mSystemBuildProperties;
     private final UwbDiagnostics mUwbDiagnostics;
+    private final UwbCommandExecutor mUwbCommandExecutor;
     private IPoseSource mDefaultPoseSource;
     private final ReentrantLock mPoseLock = new ReentrantLock();
     private int mPoseSourceRefCount = 0;
@@ -139,6 +138,7 @@ public class UwbInjector {
                 new AtomicFile(new File(getDeviceProtectedDataDir(),
                         UwbSettingsStore.FILE_NAME)), this);
         mUwbMultichipData = new UwbMultichipData(mContext);
+        mUwbCommandExecutor = new UwbCommandExecutor();
         mUciLogModeStore = new UciLogModeStore(mUwbSettingsStore);
         mNativeUwbManager = new NativeUwbManager(this, mUciLogModeStore, mUwbMultichipData);
         mUwbCountryCode =
@@ -490,14 +490,21 @@ public class UwbInjector {
     /* Helps to mock the executor for tests */
     public int runTaskOnSingleThreadExecutor(FutureTask<Integer> task, int timeoutMs)
             throws InterruptedException, TimeoutException, ExecutionException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.submit(task);
-        try {
-            return task.get(timeoutMs, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException e) {
-            executor.shutdownNow();
-            throw e;
-        }
+        return runTaskOnSingleThreadExecutor(task, timeoutMs,
+                mUwbMultichipData.getDefaultChipId());
+    }
+
+    /**
+     * Runs the task on the long-lived command executor of the given chip and waits for the
+     * result.
+     */
+    public int runTaskOnSingleThreadExecutor(FutureTask<Integer> task, int timeoutMs,
+            String chipId) throws InterruptedException, TimeoutException, ExecutionException {
+        return mUwbCommandExecutor.execute(chipId, task, timeoutMs);
+    }
+
+    public UwbCommandExecutor getUwbCommandExecutor() {
+        return mUwbCommandExecutor;
     }
 
     public boolean isMulticastListNtfV2Supported() {
@@ -584,6 +591,19 @@ public class UwbInjector {
      * @return A fully configured filter engine, or null if filtering is disabled.
      */
     public UwbFilterEngine createFilterEngine(IPoseSource poseSource) {
+        return createFilterEngine(poseSource, null);
+    }
+
+    /**
+     * Creates a filter engine using the given pose source.
+     *
+     * @param poseSource The pose source, or null for no pose processing.
+     * @param sharedPoseDelta Shared by all the engines that use {@code poseSource}, so that they
+     * compute each pose change only once. May be null.
+     * @return A fully configured filter engine, or null if filtering is disabled.
+     */
+    public UwbFilterEngine createFilterEngine(IPoseSource poseSource,
+            SharedPoseDelta sharedPoseDelta) {
         DeviceConfigFacade cfg = getDeviceConfigFacade();
         if (!cfg.isEnableFilters()) {
             return null;
@@ -610,6 +630,7 @@ public class UwbInjector {
 
             if (poseSource != null) {
                 builder.setPoseSource(poseSource);
+                builder.setSharedPoseDelta(sharedPoseDelta);
             }
 
             // Order is important.
@@ -38,11 +38,21 @@ import com.google.uwb.support.fira.FiraParams;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A class to collect and report UWB metrics.
+ *
+ * <p>The per-notification paths ({@link #logRangingResult} and the data packet counters) don't
+ * take {@code mLock}: they look up the session in a copy-on-write map and only update atomic
+ * counters and histograms. The session lifecycle events, which are rare, still run under the
+ * lock.
  */
 public class UwbMetrics {
     private static final String TAG = "UwbMetrics";
@@ -50,6 +60,8 @@ public class UwbMetrics {
     private static final int MAX_STATE_CHANGES = 20;
     private static final int MAX_RANGING_SESSIONS = 128;
     private static final int MAX_RANGING_REPORTS = 1024;
+    private static final int MAX_CONTROLEES_PER_SESSION = 16;
+    private static final long UNKNOWN_MAC_ADDRESS = -1;
     public static final int INVALID_DISTANCE = 0xFFFF;
     private static final int ONE_SECOND_IN_MS = 1000;
     private static final int TEN_SECOND_IN_MS = 10 * 1000;
@@ -63,10 +75,12 @@ public class UwbMetrics {
     private final UwbInjector mUwbInjector;
     private final Deque<UwbStateChangeInfo> mUwbStateChangeInfoList = new ArrayDeque<>();
     private final Deque<RangingSessionStats> mRangingSessionList = new ArrayDeque<>();
-    private final SparseArray<RangingSessionStats> mOpenedSessionMap = new SparseArray<>();
+    // Copy-on-write, so it can be read without holding mLock. Replaced under mLock, and never
+    // modified once published: see publishOpenedSessionMap().
+    private volatile SparseArray<RangingSessionStats> mOpenedSessionMap = new SparseArray<>();
     private final Deque<RangingReportEvent> mRangingReportList = new ArrayDeque<>();
     private int mNumApps = 0;
-    private long mLastRangingDataLogTimeMs;
+    private final AtomicLong mLastRangingDataLogTimeMs = new AtomicLong();
     private final Object mLock = new Object();
 
     public class UwbStateChangeInfo {
@@ -103,14 +117,14 @@ public class UwbMetrics {
         private int mSessionId;
         private int mChannel = 9;
         private long mInitTimeWallClockMs;
-        private long mStartTimeSinceBootMs;
+        private volatile long mStartTimeSinceBootMs;
         private int mInitLatencyMs;
         private int mInitStatus;
         private int mRangingStatus;
         private int mActiveDuration;
-        private int mRangingCount;
-        private int mValidRangingCount;
-        private boolean mHasValidRangingSinceStart;
+        private final LongAdder mRangingCount = new LongAdder();
+        private final LongAdder mValidRangingCount = new LongAdder();
+        private final AtomicBoolean mHasValidRangingSinceStart = new AtomicBoolean();
         private int mStartCount;
         private int mStartFailureCount;
         private int mStartNoValidReportCount;
@@ -121,13 +135,16 @@ public class UwbMetrics {
         private boolean mIsOutOfBand = true;
         private int mRangingIntervalMs;
         private int mParallelSessionCount;
-        private int mRxPacketCount;
-        private int mTxPacketCount;
-        private int mRxErrorCount;
-        private int mTxErrorCount;
-        private int mRxToUpperLayerCount;
-        private int mRangingType = UwbStatsLog
+        private final LongAdder mRxPacketCount = new LongAdder();
+        private final LongAdder mTxPacketCount = new LongAdder();
+        private final LongAdder mRxErrorCount = new LongAdder();
+        private final LongAdder mTxErrorCount = new LongAdder();
+        private final LongAdder mRxToUpperLayerCount = new LongAdder();
+        private volatile int mRangingType = UwbStatsLog
                 .UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__TYPE_UNKNOWN;
+        // Copy-on-write, appended to under the lock of this object.
+        private volatile ControleeStats[] mControleeStats = new ControleeStats[0];
+        private final LongAdder mDroppedControleeCount = new LongAdder();
         private int mFilterConfigValue = composeFilterConfigValue();
         private AttributionSource mAttributionSource;
 
@@ -139,6 +156,37 @@ public class UwbMetrics {
             mParallelSessionCount = parallelSessionCount;
         }
 
+        /**
+         * Returns the stats of the given controlee, creating them if needed. Returns null if the
+         * session already tracks too many controlees.
+         */
+        private ControleeStats getControleeStats(long macAddress) {
+            ControleeStats[] controleeStats = mControleeStats;
+            for (ControleeStats stats : controleeStats) {
+                if (stats.mMacAddress == macAddress) {
+                    return stats;
+                }
+            }
+            synchronized (this) {
+                controleeStats = mControleeStats;
+                for (ControleeStats stats : controleeStats) {
+                    if (stats.mMacAddress == macAddress) {
+                        return stats;
+                    }
+                }
+                if (controleeStats.length >= MAX_CONTROLEES_PER_SESSION) {
+                    mDroppedControleeCount.increment();
+                    return null;
+                }
+                ControleeStats stats = new ControleeStats(macAddress);
+                ControleeStats[] newControleeStats =
+                        Arrays.copyOf(controleeStats, controleeStats.length + 1);
+                newControleeStats[controleeStats.length] = stats;
+                mControleeStats = newControleeStats;
+                return stats;
+            }
+        }
+
         private int composeFilterConfigValue() {
             DeviceConfigFacade cfg = mUwbInjector.getDeviceConfigFacade();
             int filter_enabled = cfg.isEnableFilters() ? 1 : 0;
@@ -255,8 +303,8 @@ public class UwbMetrics {
                 sb.append(", sessionId=").append(mSessionId);
                 sb.append(", initLatencyMs=").append(mInitLatencyMs);
                 sb.append(", activeDurationMs=").append(mActiveDuration);
-                sb.append(", rangingCount=").append(mRangingCount);
-                sb.append(", validRangingCount=").append(mValidRangingCount);
+                sb.append(", rangingCount=").append(mRangingCount.sum());
+                sb.append(", validRangingCount=").append(mValidRangingCount.sum());
                 sb.append(", startCount=").append(mStartCount);
                 sb.append(", startFailureCount=").append(mStartFailureCount);
                 sb.append(", startNoValidReportCount=").append(mStartNoValidReportCount);
@@ -269,17 +317,115 @@ public class UwbMetrics {
                 sb.append(", packageName=").append(mAttributionSource.getPackageName());
                 sb.append(", rangingIntervalMs=").append(mRangingIntervalMs);
                 sb.append(", parallelSessionCount=").append(mParallelSessionCount);
-                sb.append(", rxPacketCount=").append(mRxPacketCount);
-                sb.append(", txPacketCount=").append(mTxPacketCount);
-                sb.append(", rxErrorCount=").append(mRxErrorCount);
-                sb.append(", txErrorCount=").append(mTxErrorCount);
-                sb.append(", rxToUpperLayerCount=").append(mRxToUpperLayerCount);
+                sb.append(", rxPacketCount=").append(mRxPacketCount.sum());
+                sb.append(", txPacketCount=").append(mTxPacketCount.sum());
+                sb.append(", rxErrorCount=").append(mRxErrorCount.sum());
+                sb.append(", txErrorCount=").append(mTxErrorCount.sum());
+                sb.append(", rxToUpperLayerCount=").append(mRxToUpperLayerCount.sum());
                 sb.append(", rangingType=").append(mRangingType);
+                if (mDroppedControleeCount.sum() > 0) {
+                    sb.append(", droppedControleeCount=").append(mDroppedControleeCount.sum());
+                }
+                for (ControleeStats stats : mControleeStats) {
+                    sb.append("\n    ").append(stats);
+                }
                 return sb.toString();
             }
         }
     }
 
+    /**
+     * A histogram with fixed width buckets, which can be updated concurrently without locking.
+     * Values below the range are counted in the first bucket, values above it in the last one.
+     */
+    private static class Histogram {
+        private final int mMin;
+        private final int mBucketWidth;
+        private final AtomicLongArray mBuckets;
+
+        Histogram(int min, int max, int bucketWidth) {
+            mMin = min;
+            mBucketWidth = bucketWidth;
+            mBuckets = new AtomicLongArray((max - min) / bucketWidth);
+        }
+
+        void add(int value) {
+            int bucket = Math.floorDiv(value - mMin, mBucketWidth);
+            mBuckets.incrementAndGet(Math.max(0, Math.min(bucket, mBuckets.length() - 1)));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < mBuckets.length(); i++) {
+                long count = mBuckets.get(i);
+                if (count == 0) {
+                    continue;
+                }
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(mMin + i * mBucketWidth).append(':').append(count);
+            }
+            return sb.append('}').toString();
+        }
+    }
+
+    /**
+     * Aggregated measurements of a single controlee (or controller) in a ranging session.
+     */
+    private static class ControleeStats {
+        private final long mMacAddress;
+        private final LongAdder mMeasurementCount = new LongAdder();
+        private final LongAdder mValidMeasurementCount = new LongAdder();
+        private final LongAdder mNlosCount = new LongAdder();
+        private final Histogram mDistanceCm = new Histogram(0, 2000, 50);
+        private final Histogram mAzimuthDegree = new Histogram(-180, 180, 10);
+        private final Histogram mElevationDegree = new Histogram(-90, 90, 10);
+        private final Histogram mRssiDbm = new Histogram(-120, 0, 10);
+
+        ControleeStats(long macAddress) {
+            mMacAddress = macAddress;
+        }
+
+        void add(boolean isStatusOk, int nlos, int distanceCm, float azimuthDegree,
+                int azimuthFom, float elevationDegree, int elevationFom, int rssiDbm) {
+            mMeasurementCount.increment();
+            if (!isStatusOk) {
+                return;
+            }
+            mValidMeasurementCount.increment();
+            if (nlos == 1) {
+                mNlosCount.increment();
+            }
+            if (distanceCm != INVALID_DISTANCE) {
+                mDistanceCm.add(distanceCm);
+            }
+            if (azimuthFom > 0) {
+                mAzimuthDegree.add((int) azimuthDegree);
+            }
+            if (elevationFom > 0) {
+                mElevationDegree.add((int) elevationDegree);
+            }
+            if (rssiDbm != RangingMeasurement.RSSI_UNKNOWN) {
+                mRssiDbm.add(rssiDbm);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "controlee=" + (mMacAddress == UNKNOWN_MAC_ADDRESS
+                            ? "unknown" : Long.toHexString(mMacAddress))
+                    + ", measurementCount=" + mMeasurementCount.sum()
+                    + ", validMeasurementCount=" + mValidMeasurementCount.sum()
+                    + ", nlosCount=" + mNlosCount.sum()
+                    + ", distanceCm=" + mDistanceCm
+                    + ", azimuthDegree=" + mAzimuthDegree
+                    + ", elevationDegree=" + mElevationDegree
+                    + ", rssiDbm=" + mRssiDbm;
+        }
+    }
+
     private class RangingReportEvent {
         private int mSessionId;
         private int mNlos;
@@ -296,7 +442,6 @@ public class UwbMetrics {
         private int mFilteredElevationDegree;
         private int mFilteredElevationFom;
         private long mWallClockMillis = mUwbInjector.getWallClockMillis();;
-        private boolean mIsStatusOk;
 
         RangingReportEvent(UwbTwoWayMeasurement measurement) {
             mNlos = convertNlos(measurement.getNLoS());
@@ -307,7 +452,6 @@ public class UwbMetrics {
             mElevationFom = measurement.getAoaElevationFom();
             mRssiDbm = measurement.getRssi();
             mRangingType = UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__TWO_WAY;
-            mIsStatusOk = measurement.isStatusCodeOk();
         }
 
         RangingReportEvent(UwbDlTDoAMeasurement measurement) {
@@ -318,7 +462,6 @@ public class UwbMetrics {
             mElevationFom = measurement.getAoaElevationFom();
             mRssiDbm = measurement.getRssi();
             mRangingType = UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__DL_TDOA;
-            mIsStatusOk = measurement.getStatus() == UwbUciConstants.STATUS_CODE_OK;
         }
 
         RangingReportEvent(UwbOwrAoaMeasurement measurement) {
@@ -328,7 +471,6 @@ public class UwbMetrics {
             mElevationDegree = (int) measurement.getAoaElevation();
             mElevationFom = measurement.getAoaElevationFom();
             mRangingType = UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__OWR_AOA;
-            mIsStatusOk = measurement.getRangingStatus() == UwbUciConstants.STATUS_CODE_OK;
         }
 
         private void addFilteredResults(RangingMeasurement filteredRangingMeasurement) {
@@ -421,7 +563,9 @@ public class UwbMetrics {
             session.parseParams(uwbSession.getParams());
             session.convertInitStatus(status);
             mRangingSessionList.add(session);
-            mOpenedSessionMap.put(uwbSession.getSessionId(), session);
+            SparseArray<RangingSessionStats> openedSessionMap = mOpenedSessionMap.clone();
+            openedSessionMap.put(uwbSession.getSessionId(), session);
+            publishOpenedSessionMap(openedSessionMap);
             if (status != UwbUciConstants.STATUS_CODE_OK) {
                 Log.wtf(TAG, "Session init failed with status " + status);
                 takBugReportSessionInitError("UWB Bugreport: session init failed reason " + status);
@@ -455,7 +599,7 @@ public class UwbMetrics {
             if (status != UwbUciConstants.STATUS_CODE_OK) {
                 session.mStartFailureCount++;
                 session.mStartTimeSinceBootMs = 0;
-                session.mHasValidRangingSinceStart = false;
+                session.mHasValidRangingSinceStart.set(false);
                 return;
             }
             session.mStartTimeSinceBootMs = mUwbInjector.getElapsedSinceBootMillis();
@@ -480,10 +624,9 @@ public class UwbMetrics {
             if (session.mStartTimeSinceBootMs == 0) {
                 return;
             }
-            if (!session.mHasValidRangingSinceStart) {
+            if (!session.mHasValidRangingSinceStart.getAndSet(false)) {
                 session.mStartNoValidReportCount++;
             }
-            session.mHasValidRangingSinceStart = false;
             session.mActiveDuration += (int) (mUwbInjector.getElapsedSinceBootMillis()
                     - session.mStartTimeSinceBootMs);
             session.mStartTimeSinceBootMs = 0;
@@ -506,29 +649,43 @@ public class UwbMetrics {
             if (session.mStartTimeSinceBootMs != 0) {
                 session.mActiveDuration += (int) (mUwbInjector.getElapsedSinceBootMillis()
                         - session.mStartTimeSinceBootMs);
-                if (!session.mHasValidRangingSinceStart) {
+                if (!session.mHasValidRangingSinceStart.getAndSet(false)) {
                     session.mStartNoValidReportCount++;
                 }
                 session.mStartTimeSinceBootMs = 0;
-                session.mHasValidRangingSinceStart = false;
             }
 
+            int rangingCount = (int) session.mRangingCount.sum();
+            int validRangingCount = (int) session.mValidRangingCount.sum();
             UwbStatsLog.write(UwbStatsLog.UWB_SESSION_CLOSED, uwbSession.getProfileType(),
                     session.mStsType, session.mIsInitiator,
                     session.mIsController, session.mIsDiscoveredByFramework, session.mIsOutOfBand,
                     session.mActiveDuration, getDurationBucket(session.mActiveDuration),
-                    session.mRangingCount, session.mValidRangingCount,
-                    getCountBucket(session.mRangingCount),
-                    getCountBucket(session.mValidRangingCount),
+                    rangingCount, validRangingCount,
+                    getCountBucket(rangingCount),
+                    getCountBucket(validRangingCount),
                     session.mStartCount,
                     session.mStartFailureCount,
                     session.mStartNoValidReportCount,
-                    session.mRxPacketCount, session.mTxPacketCount, session.mRxErrorCount,
-                    session.mTxErrorCount, session.mRxToUpperLayerCount, session.mRangingType);
-            mOpenedSessionMap.delete(uwbSession.getSessionId());
+                    (int) session.mRxPacketCount.sum(), (int) session.mTxPacketCount.sum(),
+                    (int) session.mRxErrorCount.sum(), (int) session.mTxErrorCount.sum(),
+                    (int) session.mRxToUpperLayerCount.sum(), session.mRangingType);
+            SparseArray<RangingSessionStats> openedSessionMap = mOpenedSessionMap.clone();
+            openedSessionMap.delete(uwbSession.getSessionId());
+            publishOpenedSessionMap(openedSessionMap);
         }
     }
 
+    /**
+     * Publishes a new opened session map. SparseArray#delete() only marks the entry as deleted,
+     * and the next size() or valueAt() compacts the array in place. Compact it while it's still
+     * private, so the lock-free readers never see it change. Called with mLock held.
+     */
+    private void publishOpenedSessionMap(SparseArray<RangingSessionStats> openedSessionMap) {
+        openedSessionMap.size();
+        mOpenedSessionMap = openedSessionMap;
+    }
+
     private int getDurationBucket(int durationMs) {
         if (durationMs <= ONE_SECOND_IN_MS) {
             return UwbStatsLog.UWB_SESSION_CLOSED__DURATION_BUCKET__WITHIN_ONE_SEC;
@@ -573,68 +730,150 @@ public class UwbMetrics {
 
     /**
      * Log the ranging measurement result
+     *
+     * <p>Every measurement of the notification is added to the histograms of its controlee. Only
+     * one notification per logging interval is turned into a {@link RangingReportEvent} and
+     * written to StatsLog.
      */
     public void logRangingResult(int profileType, UwbRangingData rawRangingData,
             RangingMeasurement filteredRangingMeasurement) {
-        synchronized (mLock) {
-            int rangingMeasuresType = rawRangingData.getRangingMeasuresType();
-            if (!SUPPORTED_RANGING_MEASUREMENT_TYPES.contains(rangingMeasuresType)
-                    || rawRangingData.getNoOfRangingMeasures() < 1) {
-                return;
-            }
+        int rangingMeasuresType = rawRangingData.getRangingMeasuresType();
+        if (!SUPPORTED_RANGING_MEASUREMENT_TYPES.contains(rangingMeasuresType)
+                || rawRangingData.getNoOfRangingMeasures() < 1) {
+            return;
+        }
 
-            int sessionId = (int) rawRangingData.getSessionId();
-            RangingSessionStats session = mOpenedSessionMap.get(sessionId);
-            if (session == null) {
-                return;
-            }
-            session.mRangingCount++;
+        int sessionId = (int) rawRangingData.getSessionId();
+        RangingSessionStats session = mOpenedSessionMap.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        session.mRangingCount.increment();
 
-            RangingReportEvent report = getRangingReport(rangingMeasuresType, rawRangingData);
-            if (report == null) {
-                return;
-            }
-            report.mSessionId = sessionId;
-            session.mRangingType = report.mRangingType;
+        boolean isStatusOk = addMeasurements(session, rangingMeasuresType, rawRangingData);
+        if (!isStatusOk) {
+            return;
+        }
 
-            if (!report.mIsStatusOk) {
-                return;
-            }
-            report.addFilteredResults(filteredRangingMeasurement);
+        session.mValidRangingCount.increment();
+        if (!session.mHasValidRangingSinceStart.get()
+                && session.mHasValidRangingSinceStart.compareAndSet(false, true)) {
+            writeFirstValidRangingResultSinceStart(profileType, session);
+        }
 
-            session.mValidRangingCount++;
-            if (!session.mHasValidRangingSinceStart) {
-                session.mHasValidRangingSinceStart = true;
-                writeFirstValidRangingResultSinceStart(profileType, session);
-            }
+        long currTimeMs = mUwbInjector.getElapsedSinceBootMillis();
+        long lastLogTimeMs = mLastRangingDataLogTimeMs.get();
+        if ((currTimeMs - lastLogTimeMs) < mUwbInjector.getDeviceConfigFacade()
+                .getRangingResultLogIntervalMs()
+                || !mLastRangingDataLogTimeMs.compareAndSet(lastLogTimeMs, currTimeMs)) {
+            return;
+        }
 
+        RangingReportEvent report = getRangingReport(rangingMeasuresType, rawRangingData);
+        if (report == null) {
+            return;
+        }
+        report.mSessionId = sessionId;
+        report.addFilteredResults(filteredRangingMeasurement);
+        synchronized (mLock) {
             while (mRangingReportList.size() >= MAX_RANGING_REPORTS) {
                 mRangingReportList.removeFirst();
             }
             mRangingReportList.add(report);
+        }
 
-            long currTimeMs = mUwbInjector.getElapsedSinceBootMillis();
-            if ((currTimeMs - mLastRangingDataLogTimeMs) < mUwbInjector.getDeviceConfigFacade()
-                    .getRangingResultLogIntervalMs()) {
-                return;
-            }
-            mLastRangingDataLogTimeMs = currTimeMs;
-
-            boolean isDistanceValid = report.mDistanceCm != INVALID_DISTANCE;
-            boolean isAzimuthValid = report.mAzimuthFom > 0;
-            boolean isElevationValid = report.mElevationFom > 0;
-            int distance50Cm = isDistanceValid ? report.mDistanceCm / 50 : 0;
-            int azimuth10Degree = isAzimuthValid ? report.mAzimuthDegree / 10 : 0;
-            int elevation10Degree = isElevationValid ? report.mElevationDegree / 10 : 0;
-            UwbStatsLog.write(UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED,
-                    profileType, report.mNlos,
-                    isDistanceValid, report.mDistanceCm, distance50Cm, report.mRssiDbm,
-                    isAzimuthValid, report.mAzimuthDegree, azimuth10Degree, report.mAzimuthFom,
-                    isElevationValid, report.mElevationDegree, elevation10Degree,
-                    report.mElevationFom, session.mRangingType, report.mFilteredDistanceCm,
-                    report.mFilteredAzimuthDegree, report.mFilteredAzimuthFom,
-                    report.mFilteredElevationDegree, report.mFilteredElevationFom);
+        boolean isDistanceValid = report.mDistanceCm != INVALID_DISTANCE;
+        boolean isAzimuthValid = report.mAzimuthFom > 0;
+        boolean isElevationValid = report.mElevationFom > 0;
+        int distance50Cm = isDistanceValid ? report.mDistanceCm / 50 : 0;
+        int azimuth10Degree = isAzimuthValid ? report.mAzimuthDegree / 10 : 0;
+        int elevation10Degree = isElevationValid ? report.mElevationDegree / 10 : 0;
+        UwbStatsLog.write(UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED,
+                profileType, report.mNlos,
+                isDistanceValid, report.mDistanceCm, distance50Cm, report.mRssiDbm,
+                isAzimuthValid, report.mAzimuthDegree, azimuth10Degree, report.mAzimuthFom,
+                isElevationValid, report.mElevationDegree, elevation10Degree,
+                report.mElevationFom, report.mRangingType, report.mFilteredDistanceCm,
+                report.mFilteredAzimuthDegree, report.mFilteredAzimuthFom,
+                report.mFilteredElevationDegree, report.mFilteredElevationFom);
+    }
+
+    /**
+     * Adds every measurement of the notification to the session histograms, and returns whether
+     * the status of the first measurement is OK, which decides if the ranging round counts as
+     * valid.
+     */
+    private boolean addMeasurements(RangingSessionStats session, int rangingMeasuresType,
+            UwbRangingData rangingData) {
+        boolean isFirstStatusOk = false;
+        switch (rangingMeasuresType) {
+            case UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY:
+                session.mRangingType =
+                        UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__TWO_WAY;
+                UwbTwoWayMeasurement[] uwbTwoWayMeasurements =
+                        rangingData.getRangingTwoWayMeasures();
+                for (int i = 0; i < uwbTwoWayMeasurements.length; i++) {
+                    UwbTwoWayMeasurement measurement = uwbTwoWayMeasurements[i];
+                    boolean isStatusOk = measurement.isStatusCodeOk();
+                    isFirstStatusOk |= i == 0 && isStatusOk;
+                    ControleeStats stats =
+                            session.getControleeStats(toMacAddressKey(measurement.getMacAddress()));
+                    if (stats != null) {
+                        stats.add(isStatusOk, measurement.getNLoS(), measurement.getDistance(),
+                                measurement.getAoaAzimuth(), measurement.getAoaAzimuthFom(),
+                                measurement.getAoaElevation(), measurement.getAoaElevationFom(),
+                                measurement.getRssi());
+                    }
+                }
+                break;
+            case UwbUciConstants.RANGING_MEASUREMENT_TYPE_DL_TDOA:
+                session.mRangingType =
+                        UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__DL_TDOA;
+                UwbDlTDoAMeasurement[] uwbDlTDoAMeasurements =
+                        rangingData.getUwbDlTDoAMeasurements();
+                for (int i = 0; i < uwbDlTDoAMeasurements.length; i++) {
+                    UwbDlTDoAMeasurement measurement = uwbDlTDoAMeasurements[i];
+                    boolean isStatusOk = measurement.getStatus() == UwbUciConstants.STATUS_CODE_OK;
+                    isFirstStatusOk |= i == 0 && isStatusOk;
+                    ControleeStats stats =
+                            session.getControleeStats(toMacAddressKey(measurement.getMacAddress()));
+                    if (stats != null) {
+                        stats.add(isStatusOk, measurement.getNLoS(), INVALID_DISTANCE,
+                                measurement.getAoaAzimuth(), measurement.getAoaAzimuthFom(),
+                                measurement.getAoaElevation(), measurement.getAoaElevationFom(),
+                                measurement.getRssi());
+                    }
+                }
+                break;
+            case UwbUciConstants.RANGING_MEASUREMENT_TYPE_OWR_AOA:
+                session.mRangingType =
+                        UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__OWR_AOA;
+                UwbOwrAoaMeasurement measurement = rangingData.getRangingOwrAoaMeasure();
+                isFirstStatusOk =
+                        measurement.getRangingStatus() == UwbUciConstants.STATUS_CODE_OK;
+                ControleeStats stats =
+                        session.getControleeStats(toMacAddressKey(measurement.getMacAddress()));
+                if (stats != null) {
+                    stats.add(isFirstStatusOk, measurement.getNLoS(), INVALID_DISTANCE,
+                            measurement.getAoaAzimuth(), measurement.getAoaAzimuthFom(),
+                            measurement.getAoaElevation(), measurement.getAoaElevationFom(),
+                            RangingMeasurement.RSSI_UNKNOWN);
+                }
+                break;
         }
+        return isFirstStatusOk;
+    }
+
+    /** Packs a MAC address into a long without allocating, for use as a lookup key. */
+    private static long toMacAddressKey(byte[] macAddress) {
+        if (macAddress == null) {
+            return UNKNOWN_MAC_ADDRESS;
+        }
+        long key = 0;
+        for (int i = macAddress.length - 1; i >= 0; i--) {
+            key = (key << 8) | (macAddress[i] & 0xFF);
+        }
+        return key;
     }
 
     private void writeFirstValidRangingResultSinceStart(int profileType,
@@ -675,48 +914,42 @@ public class UwbMetrics {
     /**
      * Log Rx data packet count
      */
-    public synchronized void logDataRx(UwbSession uwbSession, int status) {
-        synchronized (mLock) {
-            RangingSessionStats session = mOpenedSessionMap.get(uwbSession.getSessionId());
-            if (session == null) {
-                return;
-            }
-            if (status == UwbUciConstants.STATUS_CODE_OK) {
-                session.mRxPacketCount++;
-            } else {
-                session.mRxErrorCount++;
-            }
+    public void logDataRx(UwbSession uwbSession, int status) {
+        RangingSessionStats session = mOpenedSessionMap.get(uwbSession.getSessionId());
+        if (session == null) {
+            return;
+        }
+        if (status == UwbUciConstants.STATUS_CODE_OK) {
+            session.mRxPacketCount.increment();
+        } else {
+            session.mRxErrorCount.increment();
         }
     }
 
     /**
      * Log Tx data packet count
      */
-    public synchronized void logDataTx(UwbSession uwbSession, int status) {
-        synchronized (mLock) {
-            RangingSessionStats session = mOpenedSessionMap.get(uwbSession.getSessionId());
-            if (session == null) {
-                return;
-            }
-            if (status == UwbUciConstants.STATUS_CODE_OK) {
-                session.mTxPacketCount++;
-            } else {
-                session.mTxErrorCount++;
-            }
+    public void logDataTx(UwbSession uwbSession, int status) {
+        RangingSessionStats session = mOpenedSessionMap.get(uwbSession.getSessionId());
+        if (session == null) {
+            return;
+        }
+        if (status == UwbUciConstants.STATUS_CODE_OK) {
+            session.mTxPacketCount.increment();
+        } else {
+            session.mTxErrorCount.increment();
         }
     }
 
     /**
      * Log count of Rx data packets sent to upper layer
      */
-    public synchronized void logDataToUpperLayer(UwbSession uwbSession, int packetCount) {
-        synchronized (mLock) {
-            RangingSessionStats session = mOpenedSessionMap.get(uwbSession.getSessionId());
-            if (session == null) {
-                return;
-            }
-            session.mRxToUpperLayerCount += packetCount;
+    public void logDataToUpperLayer(UwbSession uwbSession, int packetCount) {
+        RangingSessionStats session = mOpenedSessionMap.get(uwbSession.getSessionId());
+        if (session == null) {
+            return;
         }
+        session.mRxToUpperLayerCount.add(packetCount);
     }
 
     private int mNumDeviceInitSuccess = 0;
@@ -778,8 +1011,9 @@ public class UwbMetrics {
                 pw.println(stats.toString());
             }
             pw.println("-- mOpenedSessionMap --");
-            for (int i = 0; i < mOpenedSessionMap.size(); i++) {
-                pw.println(mOpenedSessionMap.valueAt(i).toString());
+            SparseArray<RangingSessionStats> openedSessionMap = mOpenedSessionMap;
+            for (int i = 0; i < openedSessionMap.size(); i++) {
+                pw.println(openedSessionMap.valueAt(i).toString());
             }
             pw.println("-- mRangingReportList --");
             for (RangingReportEvent event: mRangingReportList) {
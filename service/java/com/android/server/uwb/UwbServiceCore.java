@@ -137,14 +137,12 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
             mChipIdToStateMap;
 
     private final UwbClientHwState mUwbClientHwState = new UwbClientHwState();
-    private Map<String, UwbDeviceInfoResponse> mChipIdToDeviceInfoResponseMap = new HashMap<>();
+    private final UwbCapabilityCache mCapabilityCache = new UwbCapabilityCache();
     private @StateChangeReason int mLastAdapterStateChangedReason = StateChangeReason.UNKNOWN;
     private @AdapterStateCallback.State int mLastAdapterStateNotification = -1;
     private  IUwbVendorUciCallback mCallBack = null;
     private IUwbOemExtensionCallback mOemExtensionCallback = null;
     private final Handler mHandler;
-    private GenericSpecificationParams mCachedSpecificationParams;
-    private boolean mNeedCachedSpecParamsUpdate = true;
     private boolean mSetEnabled = false;
     private final Set<InitializationFailureListener> mListeners = new ArraySet<>();
 
@@ -399,6 +397,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
 
             if ((byte) deviceState == UwbUciConstants.DEVICE_STATE_ERROR) {
                 Log.wtf(TAG, "Error device status received. Restarting...");
+                mCapabilityCache.invalidateSpecificationParams(chipId);
                 mUwbMetrics.incrementDeviceStatusErrorCount();
                 takBugReportAfterDeviceError("UWB Bugreport: restarting UWB due to device error");
                 mUwbTask.execute(TASK_RESTART);
@@ -512,7 +511,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                 countryCode,
                 Optional.of(setCountryCodeStatus));
         Log.d(TAG, "Resetting cached specifications");
-        mNeedCachedSpecParamsUpdate = true;
+        mCapabilityCache.invalidateSpecificationParams();
     }
 
     public void registerAdapterStateCallbacks(IUwbAdapterStateCallbacks adapterStateCallbacks)
@@ -559,16 +558,16 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
     }
 
     /**
-     * Get cached specification params
+     * Get cached specification params of the given chip, fetched from the UWBS on a cache miss.
      */
     public GenericSpecificationParams getCachedSpecificationParams(String chipId) {
-        if (mCachedSpecificationParams != null && !mNeedCachedSpecParamsUpdate) {
-            return mCachedSpecificationParams;
+        GenericSpecificationParams specificationParams =
+                mCapabilityCache.getSpecificationParams(chipId);
+        if (specificationParams != null) {
+            return specificationParams;
         }
         // If nothing in cache, populate it.
-        getSpecificationInfo(chipId);
-        mNeedCachedSpecParamsUpdate = false;
-        return mCachedSpecificationParams;
+        return fetchSpecificationParams(chipId);
     }
 
     /**
@@ -576,7 +575,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
      */
     @Nullable
     public UwbDeviceInfoResponse getCachedDeviceInfoResponse(String chipId) {
-        return mChipIdToDeviceInfoResponseMap.get(chipId);
+        return mCapabilityCache.getDeviceInfoResponse(chipId);
     }
 
     /**
@@ -586,6 +585,24 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         if (!isUwbEnabled()) {
             throw new IllegalStateException("Uwb is not enabled");
         }
+        GenericSpecificationParams specificationParams = getCachedSpecificationParams(chipId);
+        if (specificationParams == null) {
+            return new PersistableBundle();
+        }
+        return specificationParams.toBundle();
+    }
+
+    /**
+     * Fetch the specification params of the given chip from the UWBS, and cache them.
+     *
+     * @return null if they could not be retrieved.
+     */
+    @Nullable
+    private GenericSpecificationParams fetchSpecificationParams(String chipId) {
+        if (!isUwbEnabled()) {
+            throw new IllegalStateException("Uwb is not enabled");
+        }
+        long generation = mCapabilityCache.getGeneration();
         Trace.beginSection("UWB#getSpecificationInfo");
         // TODO(b/211445008): Consolidate to a single uwb thread.
         Pair<Integer, GenericSpecificationParams> specificationParams =
@@ -596,7 +613,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         if (specificationParams.first != UwbUciConstants.STATUS_CODE_OK
                 || specificationParams.second == null)  {
             Log.e(TAG, "Failed to retrieve specification params");
-            return new PersistableBundle();
+            return null;
         }
         if (specificationParams.second.getFiraSpecificationParams() != null) {
             FiraSpecificationParams firaSpecificationParams =
@@ -604,13 +621,13 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                             specificationParams.second.getFiraSpecificationParams())
                             .setBackgroundRangingSupport(mUwbInjector.getDeviceConfigFacade()
                                     .isBackgroundRangingEnabled())
-                            .setUciVersionSupported(getCachedDeviceInfoResponse(
-                                    mUwbInjector.getMultichipData().getDefaultChipId()).mUciVersion)
+                            .setUciVersionSupported(
+                                    getCachedDeviceInfoResponse(chipId).mUciVersion)
                             .build();
             specificationParams.second.setFiraSpecificationParams(firaSpecificationParams);
         }
-        mCachedSpecificationParams = specificationParams.second;
-        return specificationParams.second.toBundle();
+        mCapabilityCache.putSpecificationParams(chipId, specificationParams.second, generation);
+        return specificationParams.second;
     }
 
     /**
@@ -1014,7 +1031,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         int status = UwbUciConstants.STATUS_CODE_FAILED;
         try {
             status = mUwbInjector.runTaskOnSingleThreadExecutor(sendVendorCmdTask,
-                    SEND_VENDOR_CMD_TIMEOUT_MS);
+                    SEND_VENDOR_CMD_TIMEOUT_MS, chipId);
         } catch (TimeoutException e) {
             Log.i(TAG, "Failed to send vendor command - status : TIMEOUT");
         } catch (InterruptedException e) {
@@ -1161,7 +1178,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                             listener.onFailure();
                         }
                     } else {
-                        mChipIdToDeviceInfoResponseMap = result;
+                        mCapabilityCache.onChipsInitialized(result);
 
                         Log.i(TAG, "Initialization success");
                         /* TODO : keep it until MW, FW fix b/196943897 */
@@ -1371,6 +1388,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         pw.println("mUwbClientHwState = " + mUwbClientHwState);
         pw.println("mLastAdapterStateChangedReason = " + mLastAdapterStateChangedReason);
         pw.println("mLastAdapterStateNotification = " + mLastAdapterStateNotification);
+        mCapabilityCache.dump(pw);
         pw.println("---- Dump of UwbServiceCore ----");
     }
 
@@ -158,6 +158,10 @@ public class UwbServiceImpl extends IUwbAdapter.Stub {
         pw.println();
         mUwbInjector.getUwbSessionManager().dump(fd, pw, args);
         pw.println();
+        mUwbInjector.getUwbCommandExecutor().dump(pw);
+        pw.println();
+        mUwbInjector.getNativeUwbManager().dump(pw);
+        pw.println();
         mUwbInjector.getUwbCountryCode().dump(fd, pw, args);
         pw.println();
         mUwbInjector.getUwbConfigStore().dump(fd, pw, args);
@@ -65,6 +65,7 @@ import com.android.server.uwb.advertisement.UwbAdvertiseManager;
 import com.android.server.uwb.correction.UwbFilterEngine;
 import com.android.server.uwb.correction.pose.ApplicationPoseSource;
 import com.android.server.uwb.correction.pose.IPoseSource;
+import com.android.server.uwb.correction.pose.SharedPoseDelta;
 import com.android.server.uwb.data.DtTagUpdateRangingRoundsStatus;
 import com.android.server.uwb.data.UwbDeviceInfoResponse;
 import com.android.server.uwb.data.UwbDlTDoAMeasurement;
@@ -81,6 +82,7 @@ import com.android.server.uwb.proto.UwbStatsLog;
 import com.android.server.uwb.util.ArrayUtils;
 import com.android.server.uwb.util.DataTypeConversionUtil;
 import com.android.server.uwb.util.LruList;
+import com.android.server.uwb.util.RateLimitedLog;
 import com.android.server.uwb.util.UwbUtil;
 
 import com.google.uwb.support.aliro.AliroOpenRangingParams;
@@ -128,8 +130,6 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -148,6 +148,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
     private static final int UWB_HUS_CONTROLLER_PHASE_LIST_SHORT_MAC_ADDRESS_SIZE = 11;
     private static final int UWB_HUS_CONTROLLER_PHASE_LIST_EXTENDED_MAC_ADDRESS_SIZE = 17;
     private static final int UWB_HUS_CONTROLEE_PHASE_LIST_SIZE = 5;
+    // Bounds the filter engines a DL-TDoA session creates for the anchors it hears from.
+    private static final int MAX_DL_TDOA_FILTERED_ANCHORS = 32;
 
     @VisibleForTesting
     public static final int SESSION_OPEN_RANGING = 1;
@@ -177,6 +179,10 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
     final ConcurrentHashMap<SessionHandle, UwbSession> mSessionTable = new ConcurrentHashMap();
     // Used for storing recently closed sessions for debugging purposes.
     final LruList<UwbSession> mDbgRecentlyClosedSessions = new LruList<>(5);
+    // Logs of every data packet, rate limited since there may be hundreds per second.
+    private final RateLimitedLog mDataPathLog =
+            new RateLimitedLog("UwbSessionManager data path", /* maxMessagesPerWindow= */ 5,
+                    /* windowMs= */ 1000, /* ringBufferSize= */ 32);
     final ConcurrentHashMap<Integer, List<UwbSession>> mNonPrivilegedUidToFiraSessionsTable =
             new ConcurrentHashMap();
     final ConcurrentHashMap<Integer, Integer> mSessionTokenMap = new ConcurrentHashMap<>();
@@ -334,26 +340,37 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         long sessionId = rangingData.getSessionId();
         UwbSession uwbSession = getUwbSession((int) sessionId);
         if (uwbSession != null) {
-            // TODO: b/268065070 Include UWB logs for both filtered and unfiltered data.
-            mSessionNotificationManager.onRangingResult(uwbSession, rangingData);
-            processRangeData(rangingData, uwbSession);
-            handleRangingResultErrorStreakTimers(rangingData, uwbSession);
+            RangingDataReorderBuffer reorderBuffer = uwbSession.getRangingDataReorderBuffer();
+            if (reorderBuffer != null) {
+                reorderBuffer.add(rangingData);
+            } else {
+                handleRangeData(uwbSession, rangingData);
+            }
         } else {
             Log.i(TAG, "Session is not initialized or Ranging Data is Null");
         }
         Trace.endSection();
     }
 
+    private void handleRangeData(UwbSession uwbSession, UwbRangingData rangingData) {
+        // TODO: b/268065070 Include UWB logs for both filtered and unfiltered data.
+        mSessionNotificationManager.onRangingResult(uwbSession, rangingData);
+        processRangeData(rangingData, uwbSession);
+        handleRangingResultErrorStreakTimers(rangingData, uwbSession);
+    }
+
     /* Notification of received data over UWB to Application*/
     @Override
     public void onDataReceived(
             long sessionId, int status, long sequenceNum, byte[] address, byte[] data) {
-        Log.d(TAG, "onDataReceived(): Received data packet - "
-                + "Address: " + UwbUtil.toHexString(address)
-                + ", Data: " + UwbUtil.toHexString(data)
-                + ", sessionId: " + sessionId
-                + ", status: " + status
-                + ", sequenceNum: " + sequenceNum);
+        if (mDataPathLog.isLoggable("onDataReceived")) {
+            // The peer address and payload are kept out of the log, which is also dumped.
+            mDataPathLog.d(TAG, "onDataReceived", "onDataReceived(): Received data packet - "
+                    + "Data length: " + (data == null ? 0 : data.length)
+                    + ", sessionId: " + sessionId
+                    + ", status: " + status
+                    + ", sequenceNum: " + sequenceNum);
+        }
 
         UwbSession uwbSession = getUwbSession((int) sessionId);
         if (uwbSession == null) {
@@ -397,11 +414,14 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
     @Override
     public void onDataSendStatus(
             long sessionId, int dataTransferStatus, long sequenceNum, int txCount) {
-        Log.d(TAG, "onDataSendStatus(): Received data send status - "
-                + ", sessionId: " + sessionId
-                + ", status: " + dataTransferStatus
-                + ", sequenceNum: " + sequenceNum
-                + ", txCount: " + txCount);
+        if (mDataPathLog.isLoggable("onDataSendStatus")) {
+            mDataPathLog.d(TAG, "onDataSendStatus",
+                    "onDataSendStatus(): Received data send status - "
+                    + ", sessionId: " + sessionId
+                    + ", status: " + dataTransferStatus
+                    + ", sequenceNum: " + sequenceNum
+                    + ", txCount: " + txCount);
+        }
 
         UwbSession uwbSession = getUwbSession((int) sessionId);
         if (uwbSession == null) {
@@ -599,7 +619,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
 
         int status = mConfigurationManager.setAppConfigurations(uwbSession.getSessionId(),
                 uwbSession.getParams(), uwbSession.getChipId(),
-                getUwbsFiraProtocolVersion(uwbSession.getChipId()));
+                getUwbsFiraProtocolVersion(uwbSession.getChipId()),
+                uwbSession.getAppConfigCache());
         if (status == UwbUciConstants.STATUS_CODE_OK
                 && mUwbInjector.getUwbServiceCore().isOemExtensionCbRegistered()) {
             try {
@@ -907,6 +928,9 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             Log.i(TAG, "OwR Aoa UwbSession: Invalid MacAddress for remote device");
             return;
         }
+        long macAddress = macAddressByteArrayToLong(macAddressBytes);
+        // The advertiser is still in range, so keep its stored data from expiring.
+        uwbSession.onOwrAoaMeasurement(macAddress);
 
         boolean advertisePointingResult = mAdvertiseManager.isPointedTarget(macAddressBytes);
         if (mUwbInjector.getUwbServiceCore().isOemExtensionCbRegistered()) {
@@ -929,7 +953,6 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         if (advertisePointingResult) {
             // Use a loop to notify all the received application data payload(s) (in sequence number
             // order) for this OWR AOA ranging session.
-            long macAddress = macAddressByteArrayToLong(macAddressBytes);
             UwbAddress uwbAddress = UwbAddress.fromBytes(macAddressBytes);
 
             List<ReceivedDataInfo> receivedDataInfoList = uwbSession.getAllReceivedDataInfo(
@@ -1470,7 +1493,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         try {
             status = mUwbInjector.runTaskOnSingleThreadExecutor(
                 sessionsetHybridControllerConfigTask,
-                    IUwbAdapter.SESSION_CONFIGURATION_THRESHOLD_MS);
+                    IUwbAdapter.SESSION_CONFIGURATION_THRESHOLD_MS, uwbSession.getChipId());
         } catch (TimeoutException e) {
             Log.e(TAG, "Failed to set session hybrid controller config : TIMEOUT");
             mSessionNotificationManager.onHybridSessionControllerConfigurationFailed(
@@ -1554,7 +1577,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         try {
             status = mUwbInjector.runTaskOnSingleThreadExecutor(
                 sessionsetHybridControleeConfigTask,
-                    IUwbAdapter.SESSION_CONFIGURATION_THRESHOLD_MS);
+                    IUwbAdapter.SESSION_CONFIGURATION_THRESHOLD_MS, uwbSession.getChipId());
         } catch (TimeoutException e) {
             Log.e(TAG, "Failed to set session hybrid controlee config : TIMEOUT");
             mSessionNotificationManager.onHybridSessionControleeConfigurationFailed(
@@ -1650,7 +1673,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         int status = UwbUciConstants.STATUS_CODE_FAILED;
         try {
             status = mUwbInjector.runTaskOnSingleThreadExecutor(sessionDataTransferPhaseConfigTask,
-                    IUwbAdapter.SESSION_DATA_TRANSFER_PHASE_CONFIG_THRESHOLD_MS);
+                    IUwbAdapter.SESSION_DATA_TRANSFER_PHASE_CONFIG_THRESHOLD_MS,
+                    uwbSession.getChipId());
         } catch (TimeoutException e) {
             Log.e(TAG, "Failed to set session data transfer phase config : TIMEOUT");
             mSessionNotificationManager.onDataTransferPhaseConfigFailed(uwbSession, status);
@@ -1926,7 +1950,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
                 status = mUwbInjector.runTaskOnSingleThreadExecutor(initSessionTask,
-                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS);
+                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to initialize session - status : TIMEOUT");
             } catch (InterruptedException e) {
@@ -1960,7 +1984,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                                 status = mConfigurationManager.setAppConfigurations(
                                         uwbSession.getSessionId(),
                                         uwbSession.getParams(), uwbSession.getChipId(),
-                                        getUwbsFiraProtocolVersion(uwbSession.getChipId()));
+                                        getUwbsFiraProtocolVersion(uwbSession.getChipId()),
+                                        uwbSession.getAppConfigCache());
                                 uwbSession.resetAbsoluteInitiationTime();
                                 if (status != UwbUciConstants.STATUS_CODE_OK) {
                                     mSessionNotificationManager.onRangingStartFailed(
@@ -2039,7 +2064,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
                 status = mUwbInjector.runTaskOnSingleThreadExecutor(startRangingTask,
-                        IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS);
+                        IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Start Ranging - status : TIMEOUT");
                 mSessionNotificationManager.onRangingStartFailed(
@@ -2094,7 +2119,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             }
             Log.v(TAG, "Stop timeout: " + timeoutMs);
             try {
-                status = mUwbInjector.runTaskOnSingleThreadExecutor(stopRangingTask, timeoutMs);
+                status = mUwbInjector.runTaskOnSingleThreadExecutor(stopRangingTask, timeoutMs,
+                        uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Stop Ranging - status : TIMEOUT");
                 mSessionNotificationManager.onRangingStopFailed(
@@ -2351,7 +2377,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                                 //  not controlee list changes
                                 status = mConfigurationManager.setAppConfigurations(
                                         uwbSession.getSessionId(), param, uwbSession.getChipId(),
-                                        getUwbsFiraProtocolVersion(uwbSession.getChipId()));
+                                        getUwbsFiraProtocolVersion(uwbSession.getChipId()),
+                                        uwbSession.getAppConfigCache());
                                     // send suspendRangingCallbacks only on suspend ranging
                                     // reconfigure
                                 Integer suspendRangingRounds = rangingReconfigureParams
@@ -2375,7 +2402,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
                 status = mUwbInjector.runTaskOnSingleThreadExecutor(cmdTask,
-                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS);
+                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Reconfigure - status : TIMEOUT");
             } catch (InterruptedException e) {
@@ -2425,7 +2452,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
                 status = mUwbInjector.runTaskOnSingleThreadExecutor(deInitTask,
-                        IUwbAdapter.RANGING_SESSION_CLOSE_THRESHOLD_MS);
+                        IUwbAdapter.RANGING_SESSION_CLOSE_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Stop Ranging - status : TIMEOUT");
             } catch (InterruptedException | ExecutionException e) {
@@ -2521,7 +2548,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
                 status = mUwbInjector.runTaskOnSingleThreadExecutor(sendDataTask,
-                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS);
+                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Send data - status : TIMEOUT");
                 mSessionNotificationManager.onDataSendFailed(uwbSession,
@@ -2591,6 +2618,9 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         public static final long RANGING_RESULT_ERROR_NO_TIMEOUT = 0;
         private static final String RANGING_RESULT_ERROR_STREAK_TIMER_TAG =
                 "UwbSessionRangingResultError";
+        // Keys of the session wide timers in mAlarmScheduler.
+        private static final String RANGING_RESULT_ERROR_STREAK_TIMER_KEY = "errorStreak";
+        private static final String NON_PRIVILEGED_BG_APP_TIMER_KEY = "nonPrivilegedBgApp";
         private static final long NON_PRIVILEGED_BG_APP_TIMEOUT_MS = 120_000;
         @VisibleForTesting
         public static final String NON_PRIVILEGED_BG_APP_TIMER_TAG =
@@ -2634,31 +2664,22 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         private final int mProfileType;
 
         /**
-         * Keeps track of per-controlee error streak timers for ranging sessions with multiple
-         * controlees.
+         * Error streak timers (per-session, or per-controlee for two-way ranging sessions) and
+         * non-privileged background app timer, which share a single alarm. Per-controlee timers
+         * are keyed by the controlee address.
          */
-        @VisibleForTesting
-        public Map<UwbAddress, AlarmManager.OnAlarmListener>
-                mMulticastRangingErrorStreakTimerListeners;
-        /**
-         * Per-session error streak timer for all session modes except for two-way ranging.
-         */
-        private AlarmManager.OnAlarmListener mRangingResultErrorStreakTimerListener;
-        private AlarmManager.OnAlarmListener mNonPrivilegedBgAppTimerListener;
+        private final SessionAlarmScheduler mAlarmScheduler;
         private int mOperationType = OPERATION_TYPE_INIT_SESSION;
         private final String mChipId;
         private boolean mHasNonPrivilegedFgAppOrService = false;
         private long mRangingErrorStreakTimeoutMs = RANGING_RESULT_ERROR_NO_TIMEOUT;
-        // Use a Map<RemoteMacAddress, SortedMap<SequenceNumber, ReceivedDataInfo>> to store all
-        // the Application payload data packets received in this (active) UWB Session.
-        // - The outer key (RemoteMacAddress) is used to identify the Advertiser device that sends
-        //   the data (there can be multiple advertisers in the same UWB session).
-        // - The inner key (SequenceNumber) is used to ensure we don't store duplicate packets,
-        //   and notify them to the higher layers in-order.
-        // TODO(b/270068278): Change the type of SequenceNumber from Long to Integer everywhere.
-        private final ConcurrentHashMap<Long, SortedMap<Long, ReceivedDataInfo>>
-                mReceivedDataInfoMap;
+        // Stores the Application payload data packets received in this (active) UWB Session, per
+        // Advertiser device (there can be multiple advertisers in the same UWB session), until
+        // they are notified to the higher layers in sequence number order.
+        private final ReceivedDataStore mReceivedDataStore;
         private IPoseSource mPoseSource;
+        // Shared by the filter engines of this session, which all use mPoseSource.
+        private final SharedPoseDelta mSharedPoseDelta = new SharedPoseDelta();
         // Application data repetition count
         private int mDataRepetitionCount;
         // Hybrid session
@@ -2680,6 +2701,22 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         // Keeps track of all controlees in the session.
         public Map<UwbAddress, UwbControlee> mControlees;
 
+        // Filters the angles reported for each DL-TDoA anchor. Anchors are not controlees, so
+        // they are tracked separately, as they are first heard from.
+        private final Map<UwbAddress, UwbControlee> mDlTDoAAnchors = new ConcurrentHashMap<>();
+
+        // Batches ranging reports for sessions that opted in; null otherwise.
+        @Nullable
+        private final RangingReportBatcher mRangingReportBatcher;
+
+        // Restores the sequence counter order of RANGE_DATA_NTFs when enabled; null otherwise.
+        @Nullable
+        private final RangingDataReorderBuffer mRangingDataReorderBuffer;
+
+        // App configs last applied to the UWBS, when only changed ones are sent; null otherwise.
+        @Nullable
+        private final AppConfigCache mAppConfigCache;
+
         UwbSession(AttributionSource attributionSource, SessionHandle sessionHandle, int sessionId,
                 byte sessionType, String protocolName, Params params,
                 IUwbRangingCallbacks iUwbRangingCallbacks, String chipId) {
@@ -2742,17 +2779,46 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                 this.mDataRepetitionCount = firaParams.getDataRepetitionCount();
                 this.mDeviceType = firaParams.getDeviceType();
                 this.mScheduleMode = firaParams.getScheduledMode();
+                if (firaParams.getRangingReportBatchSize() > 1) {
+                    this.mRangingReportBatcher = new RangingReportBatcher(
+                            firaParams.getRangingReportBatchSize(),
+                            firaParams.getRangingReportBatchDelayMs(),
+                            new Handler(mLooper),
+                            reports -> mSessionNotificationManager.onRangingResultBatch(
+                                    this, reports));
+                } else {
+                    this.mRangingReportBatcher = null;
+                }
             } else {
                 this.mRangingRoundUsage = -1;
                 this.mDataRepetitionCount = 0;
                 this.mDeviceType = -1;
                 this.mScheduleMode = -1;
+                this.mRangingReportBatcher = null;
+            }
+
+            int reorderWindow =
+                    mUwbInjector.getDeviceConfigFacade().getRangingDataReorderWindow();
+            if (reorderWindow > 1) {
+                this.mRangingDataReorderBuffer = new RangingDataReorderBuffer(reorderWindow,
+                        mUwbInjector.getDeviceConfigFacade().getRangingDataReorderMaxDelayMs(),
+                        new Handler(mLooper),
+                        rangingData -> handleRangeData(this, rangingData));
+            } else {
+                this.mRangingDataReorderBuffer = null;
             }
+            this.mAppConfigCache = mUwbInjector.getDeviceConfigFacade().isAppConfigDeltaEnabled()
+                    ? new AppConfigCache() : null;
 
-            this.mReceivedDataInfoMap = new ConcurrentHashMap<>();
+            DeviceConfigFacade deviceConfigFacade = mUwbInjector.getDeviceConfigFacade();
+            this.mReceivedDataStore = new ReceivedDataStore(
+                    deviceConfigFacade::getRxDataMaxPacketsToStore,
+                    deviceConfigFacade::getAdvertiseTimeThresholdMillis,
+                    mUwbInjector::getElapsedSinceBootMillis);
             this.mDataSndSequenceNumber = 0;
             this.mSendDataInfoMap = new ConcurrentHashMap<>();
-            this.mMulticastRangingErrorStreakTimerListeners = new ConcurrentHashMap<>();
+            this.mAlarmScheduler = new SessionAlarmScheduler(mAlarmManager, mEventTask,
+                    mUwbInjector::getElapsedSinceBootMillis);
         }
 
         /**
@@ -2838,7 +2904,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          * @return The list of controlee addresses that have active ranging error streak timers.
          */
         public List<UwbAddress> getControleesWithOngoingRangingErrorStreak() {
-            return new ArrayList<>(mMulticastRangingErrorStreakTimerListeners.keySet());
+            return mAlarmScheduler.getKeys(UwbAddress.class);
         }
 
         /**
@@ -2846,53 +2912,31 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          * same advertiser and with the same sequence number, this is a no-op.
          */
         public void addReceivedDataInfo(ReceivedDataInfo receivedDataInfo) {
-            SortedMap<Long, ReceivedDataInfo> innerMap = mReceivedDataInfoMap.get(
-                    receivedDataInfo.address);
-            if (innerMap == null) {
-                innerMap = new TreeMap<>();
-                mReceivedDataInfoMap.put(receivedDataInfo.address, innerMap);
-            }
-
-            // Check if the sorted InnerMap has reached the max number of Rx packets we want to
-            // store; if so we drop the smallest (sequence number) packet between the new received
-            // packet and the stored packets.
-            int maxRxPacketsToStore =
-                    mUwbInjector.getDeviceConfigFacade().getRxDataMaxPacketsToStore();
-            if (innerMap.size() < maxRxPacketsToStore) {
-                innerMap.putIfAbsent(receivedDataInfo.sequenceNum, receivedDataInfo);
-            } else if (innerMap.size() == maxRxPacketsToStore) {
-                Long smallestStoredSequenceNumber = innerMap.firstKey();
-                if (smallestStoredSequenceNumber < receivedDataInfo.sequenceNum
-                        && !innerMap.containsKey(receivedDataInfo.sequenceNum)) {
-                    innerMap.remove(smallestStoredSequenceNumber);
-                    innerMap.putIfAbsent(receivedDataInfo.sequenceNum, receivedDataInfo);
-                }
-            }
+            // When the advertiser already has the max number of Rx packets we want to store, the
+            // smallest (sequence number) packet between the new received packet and the stored
+            // packets is dropped.
+            mReceivedDataStore.add(receivedDataInfo);
+        }
+
+        /**
+         * Records an OWR-AoA measurement from the given remote device, so that the data it sent
+         * is kept, and its advertise target is removed when the session stops.
+         */
+        public void onOwrAoaMeasurement(long macAddress) {
+            mReceivedDataStore.onMeasurement(macAddress);
         }
 
         /**
           * Return all the ReceivedDataInfo from the given remote device, in sequence number order.
-          * This method also removes the returned packets from the Map, so the same packet will
+          * This method also removes the returned packets from the store, so the same packet will
           * not be returned again (in a future call).
           */
         public List<ReceivedDataInfo> getAllReceivedDataInfo(long macAddress) {
-            SortedMap<Long, ReceivedDataInfo> innerMap = mReceivedDataInfoMap.get(macAddress);
-            if (innerMap == null) {
-                // No stored ReceivedDataInfo(s) for the address.
-                return List.of();
-            }
-
-            List<ReceivedDataInfo> receivedDataInfoList = new ArrayList<>(innerMap.values());
-            innerMap.clear();
-            return receivedDataInfoList;
+            return mReceivedDataStore.drain(macAddress);
         }
 
         private void clearReceivedDataInfo() {
-            for (long macAddress : getRemoteMacAddressList()) {
-                SortedMap<Long, ReceivedDataInfo> innerMap = mReceivedDataInfoMap.get(macAddress);
-                innerMap.clear();
-            }
-            mReceivedDataInfoMap.clear();
+            mReceivedDataStore.clear();
         }
 
         /**
@@ -2952,6 +2996,22 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             return result;
         }
 
+        /**
+         * Fetches the {@link UwbControlee} used to filter the measurements of a DL-TDoA anchor,
+         * creating it the first time the anchor is heard from.
+         * @param address The UWB address of the anchor.
+         * @return The matching {@link UwbControlee}, or null if too many anchors are tracked.
+         */
+        @Nullable
+        public UwbControlee getOrCreateDlTDoAAnchor(UwbAddress address) {
+            UwbControlee anchor = mDlTDoAAnchors.get(address);
+            if (anchor == null && mDlTDoAAnchors.size() < MAX_DL_TDOA_FILTERED_ANCHORS) {
+                anchor = new UwbControlee(address, createDlTDoAFilterEngine(), mUwbInjector);
+                mDlTDoAAnchors.put(address, anchor);
+            }
+            return anchor;
+        }
+
         /**
          * Removes a Controlee from the session. This should only be called to reflect
          *  the state of the native UWB interface.
@@ -2989,6 +3049,24 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             return this.mChipId;
         }
 
+        /** Gets the ranging report batcher, or null if the session doesn't batch reports. */
+        @Nullable
+        public RangingReportBatcher getRangingReportBatcher() {
+            return mRangingReportBatcher;
+        }
+
+        /** Gets the ranging data reorder buffer, or null if reordering is disabled. */
+        @Nullable
+        public RangingDataReorderBuffer getRangingDataReorderBuffer() {
+            return mRangingDataReorderBuffer;
+        }
+
+        /** Gets the applied app configs, or null if all app configs are always sent. */
+        @Nullable
+        public AppConfigCache getAppConfigCache() {
+            return mAppConfigCache;
+        }
+
         public SessionHandle getSessionHandle() {
             return this.mSessionHandle;
         }
@@ -3325,8 +3403,12 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             return this.mNeedsQueryUwbsTimestamp;
         }
 
+        /**
+         * Gets the addresses of all the remote devices heard from in this session, by data or an
+         * OWR-AoA measurement, whether their data was delivered or not.
+         */
         public Set<Long> getRemoteMacAddressList() {
-            return mReceivedDataInfoMap.keySet();
+            return mReceivedDataStore.getHeardMacAddresses();
         }
 
         public boolean isDataDeliveryPermissionCheckNeeded() {
@@ -3391,29 +3473,21 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          */
         public void startRangingResultErrorStreakTimerIfNotSet() {
             // Start a timer on first failure to detect continuous failures.
-            if (mRangingResultErrorStreakTimerListener == null) {
-                mRangingResultErrorStreakTimerListener = () -> {
-                    Log.w(TAG, "Continuous errors or no ranging results detected for "
-                            + mRangingErrorStreakTimeoutMs + " ms."
-                            + " Stopping session");
-                    stopRangingInternal(mSessionHandle, true /* triggeredBySystemPolicy */);
-                };
+            if (mAlarmScheduler.startIfNotSet(RANGING_RESULT_ERROR_STREAK_TIMER_KEY,
+                    RANGING_RESULT_ERROR_STREAK_TIMER_TAG, mRangingErrorStreakTimeoutMs, () -> {
+                        Log.w(TAG, "Continuous errors or no ranging results detected for "
+                                + mRangingErrorStreakTimeoutMs + " ms."
+                                + " Stopping session");
+                        stopRangingInternal(mSessionHandle, true /* triggeredBySystemPolicy */);
+                    })) {
                 Log.v(TAG, "Starting error timer for "
                         + mRangingErrorStreakTimeoutMs + " ms.");
-                mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                        mUwbInjector.getElapsedSinceBootMillis()
-                                + mRangingErrorStreakTimeoutMs,
-                        RANGING_RESULT_ERROR_STREAK_TIMER_TAG,
-                        mRangingResultErrorStreakTimerListener, mEventTask);
             }
         }
 
         public void stopRangingResultErrorStreakTimerIfSet() {
-            // Cancel error streak timer on any success.
-            if (mRangingResultErrorStreakTimerListener != null) {
-                mAlarmManager.cancel(mRangingResultErrorStreakTimerListener);
-                mRangingResultErrorStreakTimerListener = null;
-            }
+            // Stop error streak timer on any success.
+            mAlarmScheduler.stopIfSet(RANGING_RESULT_ERROR_STREAK_TIMER_KEY);
         }
 
         private void removeControleeDueToErrorStreakTimeout(UwbAddress address) {
@@ -3440,29 +3514,22 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                         + " that is not in the session.");
                 return;
             }
-            if (mMulticastRangingErrorStreakTimerListeners.containsKey(address)) {
-                return;
+            if (mAlarmScheduler.startIfNotSet(address, RANGING_RESULT_ERROR_STREAK_TIMER_TAG,
+                    mRangingErrorStreakTimeoutMs, () -> {
+                        Log.w(TAG, "Continuous errors or no ranging results detected from"
+                                + " controlee " + address + " for "
+                                + mRangingErrorStreakTimeoutMs + " ms.");
+                        if (mControlees.size() == 1) {
+                            Log.w(TAG, "No active controlees, stopping session");
+                            stopRangingInternal(mSessionHandle,
+                                    true /* triggeredBySystemPolicy */);
+                        } else {
+                            removeControleeDueToErrorStreakTimeout(address);
+                        }
+                    })) {
+                Log.v(TAG, "Starting error timer for controlee " + address + " for "
+                        + mRangingErrorStreakTimeoutMs + " ms.");
             }
-            Log.v(TAG, "Starting error timer for controlee " + address + " for "
-                    + mRangingErrorStreakTimeoutMs + " ms.");
-
-            AlarmManager.OnAlarmListener onAlarm = () -> {
-                Log.w(TAG, "Continuous errors or no ranging results detected from controlee "
-                        + address + " for " + mRangingErrorStreakTimeoutMs + " ms.");
-                if (mControlees.size() == 1) {
-                    Log.w(TAG, "No active controlees, stopping session");
-                    stopRangingInternal(mSessionHandle, true /* triggeredBySystemPolicy */);
-                } else {
-                    removeControleeDueToErrorStreakTimeout(address);
-                }
-            };
-
-            mMulticastRangingErrorStreakTimerListeners.put(address, onAlarm);
-            mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                    mUwbInjector.getElapsedSinceBootMillis() + mRangingErrorStreakTimeoutMs,
-                    RANGING_RESULT_ERROR_STREAK_TIMER_TAG,
-                    onAlarm,
-                    mEventTask);
         }
 
         /**
@@ -3477,11 +3544,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                         + "that is not in the session");
                 return;
             }
-            if (!mMulticastRangingErrorStreakTimerListeners.containsKey(address)) {
-                return;
-            }
-            mAlarmManager.cancel(mMulticastRangingErrorStreakTimerListeners.get(address));
-            mMulticastRangingErrorStreakTimerListeners.remove(address);
+            mAlarmScheduler.stopIfSet(address);
         }
 
         /**
@@ -3490,35 +3553,23 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          */
         private void startNonPrivilegedBgAppTimerIfNotSet() {
             // Start a timer when the non-privileged app goes into the background.
-            if (mNonPrivilegedBgAppTimerListener == null) {
-                mNonPrivilegedBgAppTimerListener = () -> {
-                    Log.w(TAG, "Non-privileged app in background for longer than timeout - "
-                            + " Stopping session");
-                    stopRangingInternal(mSessionHandle, true /* triggeredBySystemPolicy */);
-                };
-                mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                        mUwbInjector.getElapsedSinceBootMillis()
-                                + NON_PRIVILEGED_BG_APP_TIMEOUT_MS,
-                        NON_PRIVILEGED_BG_APP_TIMER_TAG,
-                        mNonPrivilegedBgAppTimerListener, mEventTask);
-            }
+            mAlarmScheduler.startIfNotSet(NON_PRIVILEGED_BG_APP_TIMER_KEY,
+                    NON_PRIVILEGED_BG_APP_TIMER_TAG, NON_PRIVILEGED_BG_APP_TIMEOUT_MS, () -> {
+                        Log.w(TAG, "Non-privileged app in background for longer than timeout - "
+                                + " Stopping session");
+                        stopRangingInternal(mSessionHandle, true /* triggeredBySystemPolicy */);
+                    });
         }
 
         private void stopNonPrivilegedBgAppTimerIfSet() {
             // Stop the timer when the non-privileged app goes into the foreground.
-            if (mNonPrivilegedBgAppTimerListener != null) {
-                mAlarmManager.cancel(mNonPrivilegedBgAppTimerListener);
-                mNonPrivilegedBgAppTimerListener = null;
-            }
+            mAlarmScheduler.stopIfSet(NON_PRIVILEGED_BG_APP_TIMER_KEY);
         }
 
         private void stopTimers() {
-            // Reset any stored error streak or non-privileged background app timestamps.
-            stopRangingResultErrorStreakTimerIfSet();
-            for (UwbAddress address : getControleesWithOngoingRangingErrorStreak()) {
-                stopRangingResultErrorStreakTimerIfSet(address);
-            }
-            stopNonPrivilegedBgAppTimerIfSet();
+            // Reset any stored error streak or non-privileged background app timers, and cancel
+            // their alarm.
+            mAlarmScheduler.stopAll();
         }
 
         public void reconfigureFiraSessionOnFgStateChange() {
@@ -3581,7 +3632,23 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                 }
             }
 
-            return mUwbInjector.createFilterEngine(mPoseSource);
+            return mUwbInjector.createFilterEngine(mPoseSource, mSharedPoseDelta);
+        }
+
+        /**
+         * Creates a filter engine for a DL-TDoA anchor. DL-TDoA carries no distance, and pose
+         * changes can't be compensated without one: the estimate would be moved as if the anchor
+         * were at the origin, which drives its angles toward 0. So the engine gets no pose source.
+         */
+        private UwbFilterEngine createDlTDoAFilterEngine() {
+            if (mParams instanceof FiraOpenSessionParams) {
+                FiraOpenSessionParams firaParams = (FiraOpenSessionParams) mParams;
+                if (firaParams.getFilterType() == FILTER_TYPE_NONE) {
+                    return null; /* Bail early. App requested no engine. */
+                }
+            }
+
+            return mUwbInjector.createFilterEngine(null, null);
         }
 
         /** Updates the pose information if an ApplicationPoseSource is being used. */
@@ -3620,6 +3687,10 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          * Cleans up resources held by this object.
          */
         public void close() {
+            for (UwbControlee anchor : mDlTDoAAnchors.values()) {
+                anchor.close();
+            }
+            mDlTDoAAnchors.clear();
             if (this.mAcquiredDefaultPose) {
                 for (UwbControlee controlee : mControlees.values()) {
                     controlee.close();
@@ -3650,6 +3721,11 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                     + ", Protocol: " + getProtocolName()
                     + ", State: " + getSessionState()
                     + ", Data Send Sequence Number: " + mDataSndSequenceNumber
+                    + (mRangingDataReorderBuffer != null
+                            ? ", " + mRangingDataReorderBuffer : "")
+                    + (mAppConfigCache != null ? ", " + mAppConfigCache : "")
+                    + ", " + mAlarmScheduler
+                    + ", " + mReceivedDataStore
                     + ", Params: " + getParams()
                     + ", AttributionSource: " + getAttributionSource()
                     + " }";
@@ -3695,6 +3771,11 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                         .flatMap(Collection::stream)
                         .collect(Collectors.toList());
         pw.println("Non Privileged Fira Session Ids: " + nonPrivilegedSessionIds);
+        mDataPathLog.dump(pw);
+        mSessionNotificationManager.dump(pw);
+        UwbFilterEngine.dumpLog(pw);
+        mAdvertiseManager.dump(pw);
+        mConfigurationManager.dump(pw);
         pw.println("---- Dump of UwbSessionManager ----");
     }
 
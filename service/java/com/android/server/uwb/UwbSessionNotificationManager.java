@@ -16,6 +16,7 @@
 package com.android.server.uwb;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.os.PersistableBundle;
 import android.os.RemoteException;
 import android.util.Log;
@@ -31,6 +32,7 @@ import android.uwb.UwbAddress;
 
 import com.android.modules.utils.build.SdkLevel;
 import com.android.server.uwb.UwbSessionManager.UwbSession;
+import com.android.server.uwb.correction.math.SphericalVector;
 import com.android.server.uwb.data.UwbDlTDoAMeasurement;
 import com.android.server.uwb.data.UwbOwrAoaMeasurement;
 import com.android.server.uwb.data.UwbRadarData;
@@ -39,6 +41,7 @@ import com.android.server.uwb.data.UwbRangingData;
 import com.android.server.uwb.data.UwbTwoWayMeasurement;
 import com.android.server.uwb.data.UwbUciConstants;
 import com.android.server.uwb.params.TlvUtil;
+import com.android.server.uwb.util.RateLimitedLog;
 import com.android.server.uwb.util.UwbUtil;
 
 import com.google.uwb.support.aliro.AliroParams;
@@ -56,6 +59,7 @@ import com.google.uwb.support.radar.RadarData;
 import com.google.uwb.support.radar.RadarParams;
 import com.google.uwb.support.radar.RadarSweepData;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -63,6 +67,11 @@ import java.util.Objects;
 public class UwbSessionNotificationManager {
     private static final String TAG = "UwbSessionNotiManager";
     private final UwbInjector mUwbInjector;
+    // Logs of every ranging result, rate limited since they may come at up to 100Hz per session.
+    private final RateLimitedLog mRangingResultLog =
+            new RateLimitedLog("UwbSessionNotificationManager ranging result",
+                    /* maxMessagesPerWindow= */ 5, /* windowMs= */ 1000,
+                    /* ringBufferSize= */ 32);
 
     public UwbSessionNotificationManager(@NonNull UwbInjector uwbInjector) {
         mUwbInjector = uwbInjector;
@@ -84,7 +93,8 @@ public class UwbSessionNotificationManager {
         RangingReport rangingReport = null;
         try {
             rangingReport = getRangingReport(rangingData, uwbSession.getProtocolName(),
-                    uwbSession.getParams(), mUwbInjector.getElapsedSinceBootNanos(), uwbSession);
+                    uwbSession.getParams(), mUwbInjector.getElapsedSinceBootNanos(), uwbSession,
+                    mUwbInjector.getUwbServiceCore().isOemExtensionCbRegistered());
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "getRangingReport Failed.");
             e.printStackTrace();
@@ -112,15 +122,57 @@ public class UwbSessionNotificationManager {
                 e.printStackTrace();
             }
         }
+        RangingReportBatcher batcher = uwbSession.getRangingReportBatcher();
+        if (batcher != null) {
+            batcher.add(rangingReport);
+            return;
+        }
         try {
             uwbRangingCallbacks.onRangingResult(sessionHandle, rangingReport);
-            Log.i(TAG, "IUwbRangingCallbacks - onRangingResult");
+            if (mRangingResultLog.isLoggable("onRangingResult")) {
+                mRangingResultLog.i(TAG, "onRangingResult",
+                        "IUwbRangingCallbacks - onRangingResult");
+            }
         } catch (Exception e) {
             Log.e(TAG, "IUwbRangingCallbacks - onRangingResult : Failed");
             e.printStackTrace();
         }
     }
 
+    /** Delivers a batch of ranging reports collected by the session's batcher. */
+    public void onRangingResultBatch(UwbSession uwbSession, List<RangingReport> rangingReports) {
+        SessionHandle sessionHandle = uwbSession.getSessionHandle();
+        IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
+        try {
+            uwbRangingCallbacks.onRangingResultBatch(sessionHandle, rangingReports);
+            if (mRangingResultLog.isLoggable("onRangingResultBatch")) {
+                mRangingResultLog.i(TAG, "onRangingResultBatch",
+                        "IUwbRangingCallbacks - onRangingResultBatch, size: "
+                                + rangingReports.size());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "IUwbRangingCallbacks - onRangingResultBatch : Failed");
+            e.printStackTrace();
+        }
+    }
+
+    /** Delivers any held or batched ranging reports, so none arrive after a stop or close. */
+    private void flushRangingReports(UwbSession uwbSession) {
+        // Held notifications go through the batcher, so they are released first. They skip the
+        // error streak timers and OWR AoA handling of UwbSessionManager, which must not be rearmed
+        // by a session that is stopping, and are delivered without the reorder buffer's lock.
+        RangingDataReorderBuffer reorderBuffer = uwbSession.getRangingDataReorderBuffer();
+        if (reorderBuffer != null) {
+            for (UwbRangingData rangingData : reorderBuffer.drain()) {
+                onRangingResult(uwbSession, rangingData);
+            }
+        }
+        RangingReportBatcher batcher = uwbSession.getRangingReportBatcher();
+        if (batcher != null) {
+            batcher.flush();
+        }
+    }
+
     public void onRangingOpened(UwbSession uwbSession) {
         SessionHandle sessionHandle = uwbSession.getSessionHandle();
         IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
@@ -196,6 +248,7 @@ public class UwbSessionNotificationManager {
 
     private void onRangingStoppedInternal(UwbSession uwbSession, int reason,
             PersistableBundle params)  {
+        flushRangingReports(uwbSession);
         SessionHandle sessionHandle = uwbSession.getSessionHandle();
         IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
         mUwbInjector.finishUwbRangingPermissionForDataDelivery(uwbSession.getAttributionSource());
@@ -399,6 +452,7 @@ public class UwbSessionNotificationManager {
     }
 
     public void onRangingClosed(UwbSession uwbSession, int status) {
+        flushRangingReports(uwbSession);
         SessionHandle sessionHandle = uwbSession.getSessionHandle();
         IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
         try {
@@ -416,6 +470,7 @@ public class UwbSessionNotificationManager {
 
     public void onRangingClosedWithApiReasonCode(
             UwbSession uwbSession, @RangingChangeReason int reasonCode) {
+        flushRangingReports(uwbSession);
         SessionHandle sessionHandle = uwbSession.getSessionHandle();
         IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
         try {
@@ -664,7 +719,8 @@ public class UwbSessionNotificationManager {
 
     private static RangingReport getRangingReport(
             @NonNull UwbRangingData rangingData, String protocolName,
-            Params sessionParams, long elapsedRealtimeNanos, UwbSession uwbSession) {
+            Params sessionParams, long elapsedRealtimeNanos, UwbSession uwbSession,
+            boolean isOemExtensionCbRegistered) {
         if (rangingData.getRangingMeasuresType() != UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY
                 && rangingData.getRangingMeasuresType()
                     != UwbUciConstants.RANGING_MEASUREMENT_TYPE_OWR_AOA
@@ -677,11 +733,14 @@ public class UwbSessionNotificationManager {
         boolean isDestAoaAzimuthEnabled = false;
         boolean isDestAoaElevationEnabled = false;
         long sessionId = 0;
+        // The OEM extension may inspect the raw notification, so always attach it in that case.
+        boolean includeRawNtfData = isOemExtensionCbRegistered;
 
         // For FIRA sessions, check if AOA is enabled for the session or not.
         if (protocolName.equals(FiraParams.PROTOCOL_NAME)) {
             FiraOpenSessionParams openSessionParams = (FiraOpenSessionParams) sessionParams;
             sessionId = openSessionParams.getSessionId();
+            includeRawNtfData |= openSessionParams.isRawNtfDataReportingEnabled();
             switch (openSessionParams.getAoaResultRequest()) {
                 case FiraParams.AOA_RESULT_REQUEST_MODE_NO_AOA_REPORT:
                     isAoaAzimuthEnabled = false;
@@ -717,7 +776,7 @@ public class UwbSessionNotificationManager {
         //  RangingReport.equals() does not compare it.
         PersistableBundle rangingReportMetadata = new RangingReportMetadata.Builder()
                 .setSessionId(sessionId)
-                .setRawNtfData(rangingData.getRawNtfData())
+                .setRawNtfData(includeRawNtfData ? rangingData.getRawNtfData() : null)
                 .build()
                 .toBundle();
         RangingReport.Builder rangingReportBuilder = new RangingReport.Builder()
@@ -728,58 +787,98 @@ public class UwbSessionNotificationManager {
             List<RangingMeasurement> rangingMeasurements = new ArrayList<>();
             UwbTwoWayMeasurement[] uwbTwoWayMeasurement = rangingData.getRangingTwoWayMeasures();
             for (int i = 0; i < rangingData.getNoOfRangingMeasures(); ++i) {
-                int rangingStatus = uwbTwoWayMeasurement[i].convertStatusCode();
+                UwbTwoWayMeasurement measurement = uwbTwoWayMeasurement[i];
+                int rangingStatus = measurement.convertStatusCode();
+                boolean isStatusOk = measurement.isStatusCodeOk();
 
+                UwbAddress addr = getComputedMacAddress(measurement.getMacAddress());
                 RangingMeasurement.Builder rangingMeasurementBuilder = buildRangingMeasurement(
-                        uwbTwoWayMeasurement[i].getMacAddress(), rangingStatus,
-                        elapsedRealtimeNanos, uwbTwoWayMeasurement[i].getNLoS());
-                int rssi = uwbTwoWayMeasurement[i].getRssi();
+                        addr, rangingStatus, elapsedRealtimeNanos, measurement.getNLoS());
+                // TODO: No ranging measurement metadata defined, added for future usage
+                rangingMeasurementBuilder.setRangingMeasurementMetadata(PersistableBundle.EMPTY);
+                int rssi = measurement.getRssi();
                 if (rssi < 0) {
                     rangingMeasurementBuilder.setRssiDbm(rssi);
                 }
 
-                if (uwbTwoWayMeasurement[i].isStatusCodeOk()) {
+                // Read the raw values straight from the notification, so that the filter does
+                // not need an intermediate RangingMeasurement.
+                float azimuth = UwbUtil.degreeToRadian(measurement.getAoaAzimuth());
+                double azimuthFom = measurement.getAoaAzimuthFom() / (double) 100;
+                float elevation = UwbUtil.degreeToRadian(measurement.getAoaElevation());
+                double elevationFom = measurement.getAoaElevationFom() / (double) 100;
+                double distance = measurement.getDistance() / (double) 100;
+                double distanceFom = 1;
+                boolean hasAzimuth = isStatusOk && isAoaAzimuthEnabled;
+                boolean hasElevation = hasAzimuth && isAoaElevationEnabled;
+
+                UwbControlee controlee = uwbSession.getControlee(addr);
+                SphericalVector.Annotated filtered = null;
+                if (controlee != null && controlee.hasFilterEngine()) {
+                    // Angles with no confidence are not given to the filter.
+                    boolean filterAzimuth = hasAzimuth && azimuthFom > 0;
+                    boolean filterElevation = hasElevation && elevationFom > 0;
+                    SphericalVector.Annotated raw = SphericalVector.fromRadians(
+                            filterAzimuth ? azimuth : 0,
+                            filterElevation ? elevation : 0,
+                            isStatusOk ? (float) distance : 0)
+                            .toAnnotated(filterAzimuth, filterElevation, isStatusOk);
+                    raw.azimuthFom = filterAzimuth ? azimuthFom : 1;
+                    raw.elevationFom = filterElevation ? elevationFom : 1;
+                    raw.distanceFom = distanceFom;
+                    filtered = controlee.filterPosition(isStatusOk, raw);
+                }
+                if (filtered != null) {
+                    // Switch to success - error statuses cannot have any values.
+                    rangingMeasurementBuilder.setStatus(RangingMeasurement.RANGING_STATUS_SUCCESS);
+                    azimuth = filtered.azimuth;
+                    azimuthFom = filtered.azimuthFom;
+                    elevation = filtered.elevation;
+                    elevationFom = filtered.elevationFom;
+                    distance = filtered.distance;
+                    distanceFom = filtered.distanceFom;
+                }
+
+                if (isStatusOk || filtered != null) {
                     // Distance measurement is mandatory
                     rangingMeasurementBuilder.setDistanceMeasurement(
-                            buildDistanceMeasurement(uwbTwoWayMeasurement[i].getDistance()));
+                            new DistanceMeasurement.Builder()
+                                    .setMeters(distance)
+                                    .setErrorMeters(0)
+                                    // TODO: Need to fetch distance FOM once it is added to UCI
+                                    //  spec.
+                                    .setConfidenceLevel(distanceFom)
+                                    .build());
+                }
 
+                if (isStatusOk) {
                     // Aoa measurement is optional based on configuration.
-                    AngleOfArrivalMeasurement angleOfArrivalMeasurement =
-                            computeAngleOfArrivalMeasurement(
-                                    isAoaAzimuthEnabled, isAoaElevationEnabled,
-                                    uwbTwoWayMeasurement[i].getAoaAzimuth(),
-                                    uwbTwoWayMeasurement[i].getAoaAzimuthFom(),
-                                    uwbTwoWayMeasurement[i].getAoaElevation(),
-                                    uwbTwoWayMeasurement[i].getAoaElevationFom());
-                    if (angleOfArrivalMeasurement != null) {
+                    if (hasAzimuth) {
+                        AngleOfArrivalMeasurement.Builder aoaBuilder =
+                                new AngleOfArrivalMeasurement.Builder(
+                                        new AngleMeasurement(azimuth, 0, azimuthFom));
+                        if (hasElevation) {
+                            aoaBuilder.setAltitude(
+                                    new AngleMeasurement(elevation, 0, elevationFom));
+                        }
                         rangingMeasurementBuilder.setAngleOfArrivalMeasurement(
-                                angleOfArrivalMeasurement);
+                                aoaBuilder.build());
                     }
 
                     // Dest AngleOfArrivalMeasurement
                     AngleOfArrivalMeasurement destinationAngleOfArrivalMeasurement =
                             computeAngleOfArrivalMeasurement(
                                     isDestAoaAzimuthEnabled, isDestAoaElevationEnabled,
-                                    uwbTwoWayMeasurement[i].getAoaDestAzimuth(),
-                                    uwbTwoWayMeasurement[i].getAoaDestAzimuthFom(),
-                                    uwbTwoWayMeasurement[i].getAoaDestElevation(),
-                                    uwbTwoWayMeasurement[i].getAoaDestElevationFom());
+                                    measurement.getAoaDestAzimuth(),
+                                    measurement.getAoaDestAzimuthFom(),
+                                    measurement.getAoaDestElevation(),
+                                    measurement.getAoaDestElevationFom());
                     if (destinationAngleOfArrivalMeasurement != null) {
                         rangingMeasurementBuilder.setDestinationAngleOfArrivalMeasurement(
                                 destinationAngleOfArrivalMeasurement);
                     }
                 }
 
-                // TODO: No ranging measurement metadata defined, added for future usage
-                PersistableBundle rangingMeasurementMetadata = new PersistableBundle();
-                rangingMeasurementBuilder.setRangingMeasurementMetadata(rangingMeasurementMetadata);
-
-                UwbAddress addr = getComputedMacAddress(uwbTwoWayMeasurement[i].getMacAddress());
-                UwbControlee controlee = uwbSession.getControlee(addr);
-                if (controlee != null) {
-                    controlee.filterMeasurement(rangingMeasurementBuilder);
-                }
-
                 rangingMeasurements.add(rangingMeasurementBuilder.build());
             }
 
@@ -825,12 +924,16 @@ public class UwbSessionNotificationManager {
                 }
                 if (rangingStatus == FiraParams.STATUS_CODE_OK) {
                     AngleOfArrivalMeasurement angleOfArrivalMeasurement =
-                            computeAngleOfArrivalMeasurement(
-                                    isAoaAzimuthEnabled, isAoaElevationEnabled,
-                                    uwbDlTDoAMeasurements[i].getAoaAzimuth(),
-                                    uwbDlTDoAMeasurements[i].getAoaAzimuthFom(),
-                                    uwbDlTDoAMeasurements[i].getAoaElevation(),
-                                    uwbDlTDoAMeasurements[i].getAoaElevationFom());
+                            filterDlTDoAAngleOfArrival(uwbSession, uwbDlTDoAMeasurements[i],
+                                    isAoaAzimuthEnabled, isAoaElevationEnabled);
+                    if (angleOfArrivalMeasurement == null) {
+                        angleOfArrivalMeasurement = computeAngleOfArrivalMeasurement(
+                                isAoaAzimuthEnabled, isAoaElevationEnabled,
+                                uwbDlTDoAMeasurements[i].getAoaAzimuth(),
+                                uwbDlTDoAMeasurements[i].getAoaAzimuthFom(),
+                                uwbDlTDoAMeasurements[i].getAoaElevation(),
+                                uwbDlTDoAMeasurements[i].getAoaElevationFom());
+                    }
                     if (angleOfArrivalMeasurement != null) {
                         rangingMeasurementBuilder.setAngleOfArrivalMeasurement(
                                 angleOfArrivalMeasurement);
@@ -864,6 +967,50 @@ public class UwbSessionNotificationManager {
         return rangingReportBuilder.build();
     }
 
+    /**
+     * Filters the angles measured for a DL-TDoA anchor, with the filter engine of that anchor.
+     * DL-TDoA reports carry no distance, so only the angles are filtered.
+     *
+     * @return The filtered angle of arrival, or null if there's no filter engine for the anchor,
+     * or no angle to filter.
+     */
+    @Nullable
+    private static AngleOfArrivalMeasurement filterDlTDoAAngleOfArrival(UwbSession uwbSession,
+            UwbDlTDoAMeasurement measurement, boolean isAoaAzimuthEnabled,
+            boolean isAoaElevationEnabled) {
+        if (!isAoaAzimuthEnabled || uwbSession == null) {
+            return null;
+        }
+        UwbControlee anchor = uwbSession.getOrCreateDlTDoAAnchor(
+                getComputedMacAddress(measurement.getMacAddress()));
+        if (anchor == null || !anchor.hasFilterEngine()) {
+            return null;
+        }
+        double azimuthFom = measurement.getAoaAzimuthFom() / (double) 100;
+        double elevationFom = measurement.getAoaElevationFom() / (double) 100;
+        // Angles with no confidence are not given to the filter.
+        boolean filterAzimuth = azimuthFom > 0;
+        boolean filterElevation = isAoaElevationEnabled && elevationFom > 0;
+        SphericalVector.Annotated raw = SphericalVector.fromRadians(
+                filterAzimuth ? UwbUtil.degreeToRadian(measurement.getAoaAzimuth()) : 0,
+                filterElevation ? UwbUtil.degreeToRadian(measurement.getAoaElevation()) : 0,
+                0)
+                .toAnnotated(filterAzimuth, filterElevation, false);
+        raw.azimuthFom = filterAzimuth ? azimuthFom : 1;
+        raw.elevationFom = filterElevation ? elevationFom : 1;
+        SphericalVector.Annotated filtered = anchor.filterPosition(true, raw);
+        if (filtered == null) {
+            return null;
+        }
+        AngleOfArrivalMeasurement.Builder aoaBuilder = new AngleOfArrivalMeasurement.Builder(
+                new AngleMeasurement(filtered.azimuth, 0, filtered.azimuthFom));
+        if (isAoaElevationEnabled) {
+            aoaBuilder.setAltitude(
+                    new AngleMeasurement(filtered.elevation, 0, filtered.elevationFom));
+        }
+        return aoaBuilder.build();
+    }
+
     private static AngleOfArrivalMeasurement computeAngleOfArrivalMeasurement(
             boolean isAoaAzimuthEnabled, boolean isAoaElevationEnabled, float aoaAzimuth,
             int aoaAzimuthFom, float aoaElevation, int aoaElevationFom) {
@@ -891,26 +1038,28 @@ public class UwbSessionNotificationManager {
 
     private static RangingMeasurement.Builder buildRangingMeasurement(
             byte[] macAddress, int rangingStatus, long elapsedRealtimeNanos, int los) {
+        return buildRangingMeasurement(getComputedMacAddress(macAddress), rangingStatus,
+                elapsedRealtimeNanos, los);
+    }
+
+    private static RangingMeasurement.Builder buildRangingMeasurement(
+            UwbAddress address, int rangingStatus, long elapsedRealtimeNanos, int los) {
         return new RangingMeasurement.Builder()
-                .setRemoteDeviceAddress(getComputedMacAddress(macAddress))
+                .setRemoteDeviceAddress(address)
                 .setStatus(rangingStatus)
                 .setElapsedRealtimeNanos(elapsedRealtimeNanos)
                 .setLineOfSight(los);
     }
 
-    private static DistanceMeasurement buildDistanceMeasurement(int distance) {
-        return new DistanceMeasurement.Builder()
-                .setMeters(distance / (double) 100)
-                .setErrorMeters(0)
-                // TODO: Need to fetch distance FOM once it is added to UCI spec.
-                .setConfidenceLevel(1)
-                .build();
-    }
-
     private static UwbAddress getComputedMacAddress(byte[] address) {
         if (!SdkLevel.isAtLeastU()) {
             return UwbAddress.fromBytes(TlvUtil.getReverseBytes(address));
         }
         return UwbAddress.fromBytes(address);
     }
+
+    /** Dumps the last ranging results logged. */
+    public void dump(PrintWriter pw) {
+        mRangingResultLog.dump(pw);
+    }
 }
@@ -19,20 +19,40 @@ import static com.android.server.uwb.util.DataTypeConversionUtil.macAddressByteA
 
 import androidx.annotation.Nullable;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.uwb.DeviceConfigFacade;
 import com.android.server.uwb.UwbInjector;
 import com.android.server.uwb.data.UwbOwrAoaMeasurement;
 
-import java.util.ArrayList;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
+/**
+ * Tracks the One-way Ranging AoA Measurements received from advertising devices, to decide if the
+ * current device is pointing at them.
+ *
+ * <p>The table holds at most {@link #MAX_ADVERTISE_TARGETS} devices. Devices that have not been
+ * heard from for longer than the advertise time threshold are evicted, as is the least recently
+ * updated device when the table is full.
+ */
 public class UwbAdvertiseManager {
     private static final String TAG = "UwbAdvertiseManager";
 
-    private final ConcurrentHashMap<Long, UwbAdvertiseTarget> mAdvertiseTargetMap =
-            new ConcurrentHashMap<>();
+    @VisibleForTesting
+    static final int MAX_ADVERTISE_TARGETS = 128;
+
+    // Ordered from the least to the most recently updated target.
+    @GuardedBy("this")
+    private final LinkedHashMap<Long, UwbAdvertiseTarget> mAdvertiseTargetMap =
+            new LinkedHashMap<>();
+    @GuardedBy("this")
+    private long mExpiredEvictionCount;
+    @GuardedBy("this")
+    private long mCapacityEvictionCount;
+    @GuardedBy("this")
+    private int mPeakTableSize;
 
     private final UwbInjector mUwbInjector;
     private final DeviceConfigFacade mDeviceConfigFacade;
@@ -46,8 +66,9 @@ public class UwbAdvertiseManager {
      * Check if the current device is pointing at the remote device, from which we have received
      * One-way Ranging AoA Measurement(s).
      */
-    public boolean isPointedTarget(byte[] macAddressBytes) {
-        UwbAdvertiseTarget uwbAdvertiseTarget = getAdvertiseTarget(
+    public synchronized boolean isPointedTarget(byte[] macAddressBytes) {
+        evictExpiredAdvertiseTargets(mUwbInjector.getElapsedSinceBootMillis());
+        UwbAdvertiseTarget uwbAdvertiseTarget = mAdvertiseTargetMap.get(
                 macAddressByteArrayToLong(macAddressBytes));
         if (uwbAdvertiseTarget == null) {
             return false;
@@ -56,31 +77,42 @@ public class UwbAdvertiseManager {
         if (!uwbAdvertiseTarget.isWithinCriterionAngle()) {
             return false;
         }
-        if (!isWithinCriterionVariance(uwbAdvertiseTarget)) {
-            return false;
-        }
-
-        if (!isWithinTimeThreshold(uwbAdvertiseTarget)) {
-            return false;
-        }
-        return true;
+        return isWithinCriterionVariance(uwbAdvertiseTarget);
     }
 
     /**
      * Store a One-way Ranging AoA Measurement from the remote device in a UWB ranging session.
      */
-    public void updateAdvertiseTarget(UwbOwrAoaMeasurement uwbOwrAoaMeasurement) {
-        // First check if there exists a stale UwbAdvertiseTarget for the device, and remove it.
-        checkAndRemoveStaleAdvertiseTarget(uwbOwrAoaMeasurement.mMacAddress);
+    public synchronized void updateAdvertiseTarget(UwbOwrAoaMeasurement uwbOwrAoaMeasurement) {
+        long currentTime = mUwbInjector.getElapsedSinceBootMillis();
+        long macAddress = macAddressByteArrayToLong(uwbOwrAoaMeasurement.getMacAddress());
 
-        // Now store the new measurement for the device.
-        updateAdvertiseTargetInfo(uwbOwrAoaMeasurement);
+        // First drop the devices that went stale, which includes this device if its stored
+        // measurements are too old.
+        evictExpiredAdvertiseTargets(currentTime);
+
+        // Re-insert the target, to keep the map ordered by the last update.
+        UwbAdvertiseTarget advertiseTarget = mAdvertiseTargetMap.remove(macAddress);
+        if (advertiseTarget == null) {
+            if (mAdvertiseTargetMap.size() >= MAX_ADVERTISE_TARGETS) {
+                Iterator<UwbAdvertiseTarget> it = mAdvertiseTargetMap.values().iterator();
+                it.next();
+                it.remove();
+                mCapacityEvictionCount++;
+            }
+            advertiseTarget = new UwbAdvertiseTarget(macAddress);
+        }
+        mAdvertiseTargetMap.put(macAddress, advertiseTarget);
+        mPeakTableSize = Math.max(mPeakTableSize, mAdvertiseTargetMap.size());
+
+        advertiseTarget.addMeasurement(uwbOwrAoaMeasurement);
+        advertiseTarget.updateLastMeasuredTime(currentTime);
     }
 
     /**
      * Remove all the stored AdvertiseTarget data for the given device.
      */
-    public void removeAdvertiseTarget(long macAddress) {
+    public synchronized void removeAdvertiseTarget(long macAddress) {
         mAdvertiseTargetMap.remove(macAddress);
     }
 
@@ -100,74 +132,94 @@ public class UwbAdvertiseManager {
         return true;
     }
 
-    private void checkAndRemoveStaleAdvertiseTarget(byte[] macAddressBytes) {
-        long macAddress = macAddressByteArrayToLong(macAddressBytes);
-        UwbAdvertiseTarget uwbAdvertiseTarget = getAdvertiseTarget(macAddress);
-        if (uwbAdvertiseTarget == null) {
-            return;
-        }
-
-        if (!isWithinTimeThreshold(uwbAdvertiseTarget)) {
-            removeAdvertiseTarget(macAddress);
-        }
-    }
-
-    private boolean isWithinTimeThreshold(UwbAdvertiseTarget uwbAdvertiseTarget) {
-        long currentTime = mUwbInjector.getElapsedSinceBootMillis();
-        if (currentTime - uwbAdvertiseTarget.getLastUpdatedTime()
-                > mDeviceConfigFacade.getAdvertiseTimeThresholdMillis()) {
-            return false;
+    @GuardedBy("this")
+    private void evictExpiredAdvertiseTargets(long currentTime) {
+        long threshold = mDeviceConfigFacade.getAdvertiseTimeThresholdMillis();
+        Iterator<UwbAdvertiseTarget> it = mAdvertiseTargetMap.values().iterator();
+        while (it.hasNext()) {
+            if (currentTime - it.next().getLastUpdatedTime() <= threshold) {
+                // The remaining targets were updated more recently.
+                break;
+            }
+            it.remove();
+            mExpiredEvictionCount++;
         }
-        return true;
     }
 
-    private UwbAdvertiseTarget updateAdvertiseTargetInfo(
-            UwbOwrAoaMeasurement uwbOwrAoaMeasurement) {
-        long currentTime = mUwbInjector.getElapsedSinceBootMillis();
-        long macAddress = macAddressByteArrayToLong(uwbOwrAoaMeasurement.getMacAddress());
-
-        UwbAdvertiseTarget advertiseTarget = getOrAddAdvertiseTarget(macAddress);
-        advertiseTarget.calculateAoaVariance(uwbOwrAoaMeasurement);
-        advertiseTarget.updateLastMeasuredTime(currentTime);
-
-        return advertiseTarget;
+    @VisibleForTesting
+    @Nullable
+    public synchronized UwbAdvertiseTarget getAdvertiseTarget(long macAddress) {
+        return mAdvertiseTargetMap.get(macAddress);
     }
 
     @VisibleForTesting
-    @Nullable
-    public UwbAdvertiseTarget getAdvertiseTarget(long macAddress) {
-        return isAdvertiseTargetExist(macAddress) ? mAdvertiseTargetMap.get(macAddress) : null;
+    synchronized int getAdvertiseTargetCount() {
+        return mAdvertiseTargetMap.size();
     }
 
-    private UwbAdvertiseTarget getOrAddAdvertiseTarget(long macAddress) {
-        UwbAdvertiseTarget uwbAdvertiseTarget;
-        if (isAdvertiseTargetExist(macAddress)) {
-            uwbAdvertiseTarget = mAdvertiseTargetMap.get(macAddress);
-        } else {
-            uwbAdvertiseTarget = addAdvertiseTarget(macAddress);
-        }
-        return uwbAdvertiseTarget;
+    @VisibleForTesting
+    synchronized long getExpiredEvictionCount() {
+        return mExpiredEvictionCount;
     }
 
-    private boolean isAdvertiseTargetExist(long macAddress) {
-        return mAdvertiseTargetMap.containsKey(macAddress);
+    @VisibleForTesting
+    synchronized long getCapacityEvictionCount() {
+        return mCapacityEvictionCount;
     }
 
-    private UwbAdvertiseTarget addAdvertiseTarget(long macAddress) {
-        UwbAdvertiseTarget advertiseTarget = new UwbAdvertiseTarget(macAddress);
-        mAdvertiseTargetMap.put(macAddress, advertiseTarget);
-        return advertiseTarget;
+    /**
+     * Dump the advertise target table.
+     */
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("---- Dump of UwbAdvertiseManager ----");
+        pw.println("Advertise targets: " + mAdvertiseTargetMap.size()
+                + " (peak " + mPeakTableSize + ", max " + MAX_ADVERTISE_TARGETS + ")");
+        pw.println("Expired evictions: " + mExpiredEvictionCount);
+        pw.println("Capacity evictions: " + mCapacityEvictionCount);
+        for (UwbAdvertiseTarget uwbAdvertiseTarget : mAdvertiseTargetMap.values()) {
+            pw.println(uwbAdvertiseTarget);
+        }
+        pw.println("---- Dump of UwbAdvertiseManager ----");
     }
 
     /**
      * Stored Owr Aoa Measurements for the remote devices. The data should be cleared when the
      * UWB session is closed.
+     *
+     * <p>The most recent measurements are kept in ring buffers. The mean and variance of the
+     * configured sub-range of the window are updated as the window slides, and the largest
+     * absolute angle in the window is tracked with a monotonic queue, so that checking a target
+     * doesn't need to look at every stored measurement.
      */
     @VisibleForTesting
     public class UwbAdvertiseTarget {
         private final long mMacAddress;
-        private final ArrayList<Double> mRecentAoaAzimuth = new ArrayList<>();
-        private final ArrayList<Double> mRecentAoaElevation = new ArrayList<>();
+
+        // Window configuration; the target is reset if the configuration changes.
+        private int mArraySize;
+        private int mVarianceStart;
+        private int mVarianceEnd;
+
+        // Ring buffers of the recent measurements. The n-th measurement ever added is stored
+        // at slot n % mArraySize.
+        private double[] mRecentAoaAzimuth;
+        private double[] mRecentAoaElevation;
+        private double[] mRecentMaxAbsAoa;
+        private long mAddedCount;
+        private int mCount;
+
+        // Indices of the measurements that may still become the largest absolute angle in the
+        // window, with decreasing angles. Also a ring buffer.
+        private long[] mMaxAbsQueue;
+        private int mMaxAbsQueueHead;
+        private int mMaxAbsQueueSize;
+
+        // Running mean and sum of squared differences over the variance sub-range.
+        private double mMeanOfAzimuth;
+        private double mM2OfAzimuth;
+        private double mMeanOfElevation;
+        private double mM2OfElevation;
+
         private double mVarianceOfAzimuth;
         private double mVarianceOfElevation;
         private long mLastMeasuredTime;
@@ -178,61 +230,136 @@ public class UwbAdvertiseManager {
             mIsVarianceCalculated = false;
         }
 
-        private void calculateAoaVariance(UwbOwrAoaMeasurement owrAoaMeasurement) {
-            double aoaAzimuth = owrAoaMeasurement.getAoaAzimuth();
-            double aoaElevation = owrAoaMeasurement.getAoaElevation();
-
-            mRecentAoaAzimuth.add(aoaAzimuth);
-            mRecentAoaElevation.add(aoaElevation);
-
+        private void addMeasurement(UwbOwrAoaMeasurement owrAoaMeasurement) {
             int arraySizeToCheck = mDeviceConfigFacade.getAdvertiseArraySizeToCheck();
             int arrayStartIndex = mDeviceConfigFacade.getAdvertiseArrayStartIndexToCalVariance();
             int arrayEndIndex = mDeviceConfigFacade.getAdvertiseArrayEndIndexToCalVariance();
+            if (mRecentAoaAzimuth == null || arraySizeToCheck != mArraySize
+                    || arrayStartIndex != mVarianceStart || arrayEndIndex != mVarianceEnd) {
+                reset(arraySizeToCheck, arrayStartIndex, arrayEndIndex);
+            }
 
-            if (mRecentAoaAzimuth.size() > arraySizeToCheck) {
-                mRecentAoaAzimuth.remove(0);
-                mRecentAoaElevation.remove(0);
+            double aoaAzimuth = owrAoaMeasurement.getAoaAzimuth();
+            double aoaElevation = owrAoaMeasurement.getAoaElevation();
+            double maxAbsAoa = Math.max(Math.abs(aoaAzimuth), Math.abs(aoaElevation));
+
+            boolean wasFull = mCount == mArraySize;
+            long oldest = mAddedCount - mCount;
+            // The measurements that leave and enter the variance sub-range when the window slides.
+            long leaving = oldest + mVarianceStart;
+            long entering = oldest + mVarianceEnd;
+            double leavingAzimuth = 0;
+            double leavingElevation = 0;
+            if (wasFull) {
+                leavingAzimuth = mRecentAoaAzimuth[slot(leaving)];
+                leavingElevation = mRecentAoaElevation[slot(leaving)];
+                if (mMaxAbsQueueSize > 0 && mMaxAbsQueue[mMaxAbsQueueHead] == oldest) {
+                    mMaxAbsQueueHead = (mMaxAbsQueueHead + 1) % mArraySize;
+                    mMaxAbsQueueSize--;
+                }
+                mCount--;
             }
 
-            if (mRecentAoaAzimuth.size() == arraySizeToCheck) {
-                double[] azimuthArr =
-                        mRecentAoaAzimuth
-                                .subList(arrayStartIndex, arrayEndIndex)
-                                .stream()
-                                .mapToDouble(Double::doubleValue)
-                                .toArray();
-                mVarianceOfAzimuth = getVariance(azimuthArr);
-                double[] elevationArr =
-                        mRecentAoaElevation
-                                .subList(arrayStartIndex, arrayEndIndex)
-                                .stream()
-                                .mapToDouble(Double::doubleValue)
-                                .toArray();
-                mVarianceOfElevation = getVariance(elevationArr);
-                mIsVarianceCalculated = true;
-            } else {
+            long index = mAddedCount++;
+            mRecentAoaAzimuth[slot(index)] = aoaAzimuth;
+            mRecentAoaElevation[slot(index)] = aoaElevation;
+            mRecentMaxAbsAoa[slot(index)] = maxAbsAoa;
+            mCount++;
+
+            while (mMaxAbsQueueSize > 0
+                    && mRecentMaxAbsAoa[slot(mMaxAbsQueue[maxAbsQueueSlot(mMaxAbsQueueSize - 1)])]
+                            <= maxAbsAoa) {
+                mMaxAbsQueueSize--;
+            }
+            mMaxAbsQueue[maxAbsQueueSlot(mMaxAbsQueueSize)] = index;
+            mMaxAbsQueueSize++;
+
+            if (mCount < mArraySize) {
                 mIsVarianceCalculated = false;
+                return;
+            }
+            if (!wasFull || mAddedCount % mArraySize == 0) {
+                // Start over once per window length, so rounding errors can't build up.
+                recalculateVariance();
+            } else if (mVarianceEnd > mVarianceStart) {
+                int n = mVarianceEnd - mVarianceStart;
+                double enteringAzimuth = mRecentAoaAzimuth[slot(entering)];
+                double enteringElevation = mRecentAoaElevation[slot(entering)];
+
+                double meanOfAzimuth = mMeanOfAzimuth + (enteringAzimuth - leavingAzimuth) / n;
+                mM2OfAzimuth += (enteringAzimuth - leavingAzimuth)
+                        * (enteringAzimuth - meanOfAzimuth + leavingAzimuth - mMeanOfAzimuth);
+                mMeanOfAzimuth = meanOfAzimuth;
+
+                double meanOfElevation =
+                        mMeanOfElevation + (enteringElevation - leavingElevation) / n;
+                mM2OfElevation += (enteringElevation - leavingElevation)
+                        * (enteringElevation - meanOfElevation
+                                + leavingElevation - mMeanOfElevation);
+                mMeanOfElevation = meanOfElevation;
             }
+            mVarianceOfAzimuth = getVariance(mM2OfAzimuth);
+            mVarianceOfElevation = getVariance(mM2OfElevation);
+            mIsVarianceCalculated = true;
         }
 
-        private boolean isWithinCriterionAngle(double aoa) {
-            return Math.abs(aoa) <= mDeviceConfigFacade.getAdvertiseAoaCriteriaAngle();
+        private void reset(int arraySize, int varianceStart, int varianceEnd) {
+            mArraySize = Math.max(arraySize, 1);
+            mVarianceStart = Math.min(Math.max(varianceStart, 0), mArraySize);
+            mVarianceEnd = Math.min(Math.max(varianceEnd, mVarianceStart), mArraySize);
+            mRecentAoaAzimuth = new double[mArraySize];
+            mRecentAoaElevation = new double[mArraySize];
+            mRecentMaxAbsAoa = new double[mArraySize];
+            mMaxAbsQueue = new long[mArraySize];
+            mMaxAbsQueueHead = 0;
+            mMaxAbsQueueSize = 0;
+            mAddedCount = 0;
+            mCount = 0;
+            mIsVarianceCalculated = false;
+        }
+
+        private int slot(long index) {
+            return (int) (index % mArraySize);
+        }
+
+        private int maxAbsQueueSlot(int position) {
+            return (mMaxAbsQueueHead + position) % mArraySize;
+        }
+
+        /** Computes the mean and variance of the sub-range from scratch, using Welford's method. */
+        private void recalculateVariance() {
+            long oldest = mAddedCount - mCount;
+            mMeanOfAzimuth = 0;
+            mM2OfAzimuth = 0;
+            mMeanOfElevation = 0;
+            mM2OfElevation = 0;
+            int n = 0;
+            for (int i = mVarianceStart; i < mVarianceEnd; i++) {
+                n++;
+                double azimuth = mRecentAoaAzimuth[slot(oldest + i)];
+                double delta = azimuth - mMeanOfAzimuth;
+                mMeanOfAzimuth += delta / n;
+                mM2OfAzimuth += delta * (azimuth - mMeanOfAzimuth);
+
+                double elevation = mRecentAoaElevation[slot(oldest + i)];
+                delta = elevation - mMeanOfElevation;
+                mMeanOfElevation += delta / n;
+                mM2OfElevation += delta * (elevation - mMeanOfElevation);
+            }
+        }
+
+        private double getVariance(double m2) {
+            int n = mVarianceEnd - mVarianceStart;
+            if (n < 2) return Double.NaN;
+            return Math.max(m2, 0) / n;
         }
 
         private boolean isWithinCriterionAngle() {
-            Optional<Double> outsideCriterionAngle;
-
-            // Check if any stored AoaAzimuth value is outside the criterion angle range.
-            outsideCriterionAngle = mRecentAoaAzimuth.stream()
-                    .filter(x -> !isWithinCriterionAngle(x))
-                    .findFirst();
-            if (outsideCriterionAngle.isPresent()) return false;
-
-            // Check if any stored AoaElevation value is outside the criterion angle range.
-            outsideCriterionAngle = mRecentAoaElevation.stream()
-                    .filter(x -> !isWithinCriterionAngle(x))
-                    .findFirst();
-            return !outsideCriterionAngle.isPresent();
+            // Check if any stored AoaAzimuth or AoaElevation value is outside the criterion
+            // angle range.
+            return mMaxAbsQueueSize == 0
+                    || mRecentMaxAbsAoa[slot(mMaxAbsQueue[mMaxAbsQueueHead])]
+                            <= mDeviceConfigFacade.getAdvertiseAoaCriteriaAngle();
         }
 
         // TODO(b/246678053): Can we receive measurements that are out of order (in terms of the
@@ -259,27 +386,13 @@ public class UwbAdvertiseManager {
             return mIsVarianceCalculated;
         }
 
-        private double getAverage(double[] array) {
-            double sum = 0.0;
-
-            for (int i = 0; i < array.length; i++) sum += array[i];
-
-            return sum / array.length;
-        }
-
-        private double getVariance(double[] array) {
-            if (array.length < 2) return Double.NaN;
-
-            double sum = 0.0;
-            double ret;
-            double avg = getAverage(array);
-
-            for (int i = 0; i < array.length; i++) {
-                sum += Math.pow(array[i] - avg, 2);
+        private String recentValuesToString(double[] values) {
+            StringBuilder sb = new StringBuilder("[");
+            for (long i = mAddedCount - mCount; i < mAddedCount; i++) {
+                if (sb.length() > 1) sb.append(", ");
+                sb.append(values[slot(i)]);
             }
-            ret = (double) sum / array.length;
-
-            return ret;
+            return sb.append("]").toString();
         }
 
         @Override
@@ -291,9 +404,10 @@ public class UwbAdvertiseManager {
                     + ", mVarOfElevation : "
                     + mVarianceOfElevation
                     + ", mRecentAoaAzimuth : "
-                    + mRecentAoaAzimuth
+                    + (mRecentAoaAzimuth == null ? "[]" : recentValuesToString(mRecentAoaAzimuth))
                     + ", mRecentAoaElevation : "
-                    + mRecentAoaElevation;
+                    + (mRecentAoaElevation == null
+                            ? "[]" : recentValuesToString(mRecentAoaElevation));
         }
     }
 }
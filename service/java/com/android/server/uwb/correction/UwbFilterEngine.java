@@ -16,7 +16,6 @@
 package com.android.server.uwb.correction;
 
 import android.os.Build;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -26,8 +25,11 @@ import com.android.server.uwb.correction.math.Pose;
 import com.android.server.uwb.correction.math.SphericalVector;
 import com.android.server.uwb.correction.pose.IPoseSource;
 import com.android.server.uwb.correction.pose.PoseEventListener;
+import com.android.server.uwb.correction.pose.SharedPoseDelta;
 import com.android.server.uwb.correction.primers.IPrimer;
+import com.android.server.uwb.util.RateLimitedLog;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -41,7 +43,12 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
     @NonNull private final List<IPrimer> mPrimers;
     @Nullable private final IPositionFilter mFilter;
     @Nullable private final IPoseSource mPoseSource;
+    @Nullable private final SharedPoseDelta mSharedPoseDelta;
     private static final boolean sDebug;
+    // Shared by all the engines, so the measurements of every session count towards the limit.
+    private static final RateLimitedLog sBigLog =
+            new RateLimitedLog(BIG_LOG_TAG, /* maxMessagesPerWindow= */ 5, /* windowMs= */ 1000,
+                    /* ringBufferSize= */ 32);
 
     static {
         sDebug = (Build.TYPE != null && Build.TYPE.equals("userdebug"))
@@ -60,9 +67,11 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
     private UwbFilterEngine(
             @NonNull List<IPrimer> primers,
             @Nullable IPoseSource poseSource,
+            @Nullable SharedPoseDelta sharedPoseDelta,
             @Nullable IPositionFilter filter) {
         this.mPrimers = primers;
         this.mPoseSource = poseSource;
+        this.mSharedPoseDelta = sharedPoseDelta;
         this.mFilter = filter;
         if (poseSource != null) {
             // A listener must be registered in order for the poseSource to start.
@@ -76,12 +85,13 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
      * @param timeMs The time at which the UWB value was received, in ms since boot.
      */
     public void add(@NonNull SphericalVector.Annotated position, long timeMs) {
-        StringBuilder bigLog = sDebug ? new StringBuilder(position.toString()) : null;
         Objects.requireNonNull(position);
+        StringBuilder bigLog = sDebug && sBigLog.isLoggable(BIG_LOG_TAG)
+                ? new StringBuilder(position.toString()) : null;
 
         SphericalVector prediction = compute(timeMs);
 
-        if (sDebug) {
+        if (bigLog != null) {
             bigLog.append("(Prediction ");
             bigLog.append(prediction);
             bigLog.append(")");
@@ -108,7 +118,7 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
             ).toAnnotated().copyFomFrom(position);
         }
         if (mFilter != null) {
-            mFilter.updatePose(mPoseSource, timeMs);
+            updateFilterPose(timeMs);
             mFilter.add(mLastInputState, timeMs);
             if (bigLog != null) {
                 bigLog.append(" : filtered=")
@@ -116,7 +126,7 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
             }
         }
         if (bigLog != null) {
-            Log.d(BIG_LOG_TAG, bigLog.toString());
+            sBigLog.d(BIG_LOG_TAG, BIG_LOG_TAG, bigLog.toString());
         }
     }
 
@@ -128,12 +138,20 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
     @Nullable
     public SphericalVector.Annotated compute(long timeMs) {
         if (mFilter != null) {
-            mFilter.updatePose(mPoseSource, timeMs);
+            updateFilterPose(timeMs);
             return mFilter.compute(timeMs);
         }
         return mLastInputState;
     }
 
+    private void updateFilterPose(long timeMs) {
+        if (mSharedPoseDelta != null) {
+            mFilter.updatePose(mPoseSource, mSharedPoseDelta, timeMs);
+        } else {
+            mFilter.updatePose(mPoseSource, timeMs);
+        }
+    }
+
     /**
      * Gets the current device pose.
      */
@@ -175,12 +193,18 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
         // oversampling, this might be a good place to call compute() and produce a result.
     }
 
+    /** Dumps the last measurements logged by the engines, on userdebug builds. */
+    public static void dumpLog(PrintWriter pw) {
+        sBigLog.dump(pw);
+    }
+
     /**
      * Builder for a {@link UwbFilterEngine}.
      */
     public static class Builder {
         @Nullable private IPositionFilter mFilter;
         @Nullable private IPoseSource mPoseSource;
+        @Nullable private SharedPoseDelta mSharedPoseDelta;
         @NonNull private final ArrayList<IPrimer> mPrimers = new ArrayList<>();
 
         /**
@@ -205,6 +229,18 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
             return this;
         }
 
+        /**
+         * Sets a {@link SharedPoseDelta} to compute pose changes with. Engines using the same pose
+         * source, such as the engines of all the controlees in a session, should share one so the
+         * pose change is computed once for all of them. If not set, each engine computes its own.
+         * @param sharedPoseDelta The shared pose delta.
+         * @return This builder.
+         */
+        public Builder setSharedPoseDelta(SharedPoseDelta sharedPoseDelta) {
+            this.mSharedPoseDelta = sharedPoseDelta;
+            return this;
+        }
+
         /**
          * Adds a primer to the list of primers the engine will use. The primers will execute
          * in the order in which this is called.
@@ -222,7 +258,7 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
          * @return the constructed UWB filter engine.
          */
         public UwbFilterEngine build() {
-            return new UwbFilterEngine(mPrimers, mPoseSource, mFilter);
+            return new UwbFilterEngine(mPrimers, mPoseSource, mSharedPoseDelta, mFilter);
         }
     }
 }
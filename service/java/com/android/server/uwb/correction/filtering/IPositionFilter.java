@@ -21,6 +21,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.server.uwb.correction.pose.IPoseSource;
+import com.android.server.uwb.correction.pose.SharedPoseDelta;
 
 /**
  * Interface for a filter that operates on a UwbPosition.
@@ -46,4 +47,15 @@ public interface IPositionFilter {
       * @param poseSource The pose source from which to get the latest pose.
      */
     void updatePose(@Nullable IPoseSource poseSource, long timeMs);
+
+    /**
+     * Updates the filter history to account for changes to the pose, getting the pose change from
+     * a {@link SharedPoseDelta} that may be shared with other filters using the same pose source.
+     * @param poseSource The pose source from which to get the latest pose.
+     * @param sharedPoseDelta Computes the relative transform between two poses.
+     */
+    default void updatePose(@Nullable IPoseSource poseSource,
+            @NonNull SharedPoseDelta sharedPoseDelta, long timeMs) {
+        updatePose(poseSource, timeMs);
+    }
 }
@@ -17,26 +17,39 @@ package com.android.server.uwb.correction.filtering;
 
 import androidx.annotation.NonNull;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
-
 /**
  * A Median, Average filter.  The filter has an adjustable median window and
  * the configured percentage of non-outliers are averaged.
+ *
+ * <p>Samples are kept in primitive ring buffers, together with an index of the buffer slots
+ * sorted by value. The index is updated incrementally as samples enter and leave the window, so
+ * adding a sample does not sort or allocate.
  */
 public class MedAvgFilter implements IFilter {
     private static final int MAX_FILTER = 255;
 
     private int mWindowSize;
     private float mCut;
+
+    // Ring buffer of samples, indexed by slot. mHead is the slot of the oldest sample.
+    private float[] mValues;
+    private long[] mTimes;
+    private double[] mFoms;
+    /** Insertion order of each slot; breaks ties between equal values like a stable sort. */
+    private long[] mSeqs;
+    private int mHead;
+    private int mCount;
+    private long mNextSeq;
+
+    /** Slots of the window, sorted by value and then by insertion order. */
+    private int[] mSortedSlots;
+
+    // Scratch space for the ordering used by the median cut and average.
+    protected int[] mOrderSlots;
+    protected float[] mOrderValues;
+
     @NonNull
-    private final ArrayDeque<Sample> mWindow = new ArrayDeque<>();
-    @NonNull
-    private Sample mResult = new Sample(0F, 0, 0);
+    private final Sample mResult = new Sample(0F, 0, 0);
 
     /**
      * Creates a new instance of the MedAvgFilter class.
@@ -59,7 +72,8 @@ public class MedAvgFilter implements IFilter {
 
     /**
      * Sets the size of the median window; how many samples are considered when producing a filtered
-     * result. Must be between 1 and {@link #MAX_FILTER}.
+     * result. Must be between 1 and {@link #MAX_FILTER}. If the window shrinks, the oldest
+     * samples are discarded.
      * @param value The number of samples to set as the maximum window size.
      */
     public void setWindowSize(int value) {
@@ -67,7 +81,33 @@ public class MedAvgFilter implements IFilter {
             throw new IllegalArgumentException(
                     "Value is out of range; must be between 1 and " + MAX_FILTER + " inclusive.");
         }
+        float[] values = new float[value];
+        long[] times = new long[value];
+        double[] foms = new double[value];
+        long[] seqs = new long[value];
+        // Keep the newest samples that fit in the new window.
+        int keep = Math.min(mCount, value);
+        for (int i = 0; i < keep; i++) {
+            int slot = slotAt(mCount - keep + i);
+            values[i] = mValues[slot];
+            times[i] = mTimes[slot];
+            foms[i] = mFoms[slot];
+            seqs[i] = mSeqs[slot];
+        }
+        mValues = values;
+        mTimes = times;
+        mFoms = foms;
+        mSeqs = seqs;
+        mHead = 0;
+        mCount = keep;
         mWindowSize = value;
+        mSortedSlots = new int[value];
+        mOrderSlots = new int[value];
+        mOrderValues = new float[value];
+        for (int i = 0; i < keep; i++) {
+            mSortedSlots[i] = i;
+        }
+        resort();
     }
 
     /**
@@ -96,7 +136,8 @@ public class MedAvgFilter implements IFilter {
     /**
      * Gets a sample object with the result from the last computation. The sample's time is
      * the average time of the samples that created the result, effectively describing the
-     * latency introduced by the filter.
+     * latency introduced by the filter. The returned object is updated in place by later calls
+     * to {@link #add(float, long, double)} and {@link #compensate(float)}.
      * @return The result from the last computation.
      */
     @NonNull
@@ -113,11 +154,21 @@ public class MedAvgFilter implements IFilter {
      */
     @Override
     public void add(float value, long timeMs, double fom) {
-        mWindow.addLast(new Sample(value, timeMs, fom));
-        while (mWindow.size() > mWindowSize) {
-            mWindow.removeFirst();
+        if (mCount == mWindowSize) {
+            // Slide the window.
+            removeSorted(mHead);
+            mHead = (mHead + 1) % mWindowSize;
+            mCount--;
         }
-        mResult = compute();
+        int slot = slotAt(mCount);
+        mValues[slot] = value;
+        mTimes[slot] = timeMs;
+        mFoms[slot] = fom;
+        mSeqs[slot] = mNextSeq++;
+        insertSorted(slot);
+        mCount++;
+        onSampleChanged(slot);
+        compute();
     }
 
     /**
@@ -125,8 +176,13 @@ public class MedAvgFilter implements IFilter {
      * @param selector The interface containing the function that selects the new sample values.
      */
     protected void remap(RemapFunction selector) {
-        mWindow.forEach(s -> s.value = selector.run(s.value));
-        mResult = new Sample(selector.run(mResult.value), mResult.timeMs, mResult.fom);
+        for (int i = 0; i < mCount; i++) {
+            int slot = slotAt(i);
+            mValues[slot] = normalize(selector.run(mValues[slot]));
+            onSampleChanged(slot);
+        }
+        mResult.value = normalize(selector.run(mResult.value));
+        resort();
     }
 
     /**
@@ -137,31 +193,156 @@ public class MedAvgFilter implements IFilter {
      */
     @Override
     public void compensate(float shift) {
-        remap(s -> s + shift);
+        for (int i = 0; i < mCount; i++) {
+            int slot = slotAt(i);
+            mValues[slot] = normalize(mValues[slot] + shift);
+            onSampleChanged(slot);
+        }
+        mResult.value = normalize(mResult.value + shift);
+        resort();
+    }
+
+    /**
+     * Maps a value back into the range of the filter. Used after values are averaged or shifted.
+     * @param value The value to normalize.
+     * @return The normalized value.
+     */
+    protected float normalize(float value) {
+        return value;
+    }
+
+    /**
+     * Called after the value of a slot was written.
+     * @param slot The slot that changed.
+     */
+    protected void onSampleChanged(int slot) {
+    }
+
+    /**
+     * Fills {@link #mOrderSlots} and {@link #mOrderValues} with the window in the order used for
+     * the median cut, and with the values to average. The default is the window sorted by value.
+     */
+    protected void orderWindow() {
+        for (int i = 0; i < mCount; i++) {
+            int slot = mSortedSlots[i];
+            mOrderSlots[i] = slot;
+            mOrderValues[i] = mValues[slot];
+        }
+    }
+
+    /** Gets the number of samples in the window. */
+    protected int getCount() {
+        return mCount;
+    }
+
+    /** Gets the slot of the i-th oldest sample. */
+    protected int slotAt(int i) {
+        return (mHead + i) % mValues.length;
+    }
+
+    /** Gets the value stored in a slot. */
+    protected float valueOf(int slot) {
+        return mValues[slot];
+    }
+
+    /** Gets the slots of the window, sorted by value and then by age. */
+    protected int[] getSortedSlots() {
+        return mSortedSlots;
     }
 
     /**
-     * Performs the median and average component and returns a new sample.
-     * The sample's instant indicates the sourced data's center time, approximating how much
+     * Sorts part of an ordering by value, breaking ties by age so the result is the same as a
+     * stable sort of the window. This is an insertion sort, which is linear on a nearly sorted
+     * ordering.
+     */
+    protected void sortOrder(int[] slots, float[] values, int count) {
+        for (int i = 1; i < count; i++) {
+            int slot = slots[i];
+            float value = values[i];
+            int j = i - 1;
+            while (j >= 0 && compare(values[j], slots[j], value, slot) > 0) {
+                slots[j + 1] = slots[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            slots[j + 1] = slot;
+            values[j + 1] = value;
+        }
+    }
+
+    private int compare(float valueA, int slotA, float valueB, int slotB) {
+        int c = Float.compare(valueA, valueB);
+        return c != 0 ? c : Long.compare(mSeqs[slotA], mSeqs[slotB]);
+    }
+
+    private void insertSorted(int slot) {
+        // The new sample is the newest, so it goes after all samples of equal value.
+        float value = mValues[slot];
+        int lo = 0;
+        int hi = mCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Float.compare(mValues[mSortedSlots[mid]], value) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        System.arraycopy(mSortedSlots, lo, mSortedSlots, lo + 1, mCount - lo);
+        mSortedSlots[lo] = slot;
+    }
+
+    private void removeSorted(int slot) {
+        float value = mValues[slot];
+        int lo = 0;
+        int hi = mCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Float.compare(mValues[mSortedSlots[mid]], value) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        while (mSortedSlots[lo] != slot) {
+            lo++;
+        }
+        System.arraycopy(mSortedSlots, lo + 1, mSortedSlots, lo, mCount - lo - 1);
+    }
+
+    private void resort() {
+        for (int i = 0; i < mCount; i++) {
+            mOrderValues[i] = mValues[mSortedSlots[i]];
+        }
+        sortOrder(mSortedSlots, mOrderValues, mCount);
+    }
+
+    /**
+     * Performs the median and average component and updates the result.
+     * The result's instant indicates the sourced data's center time, approximating how much
      * latency was introduced by the filter.
      */
-    private Sample compute() {
-        int count = mWindow.size();
+    private void compute() {
+        int count = mCount;
         if (count == 0) {
             throw new IllegalStateException("The filter is empty.");
         }
         if (count == 1) {
-            return mWindow.getFirst();
+            int slot = mHead;
+            mResult.value = mValues[slot];
+            mResult.timeMs = mTimes[slot];
+            mResult.fom = mFoms[slot];
+            return;
         }
-        List<Sample> sorted = sortSamples(mWindow);
+        orderWindow();
 
         if (mCut == 1F) {
             // 100% of a median cut is just an average.
 
-            // Note that this comes AFTER the sort. MedAvgRotationFilterFilter's averaging routine
-            // requires that samples are sorted, as it sorts in a special way to respect angle
-            // rollover.
-            return averageSamples(sorted);
+            // Note that this comes AFTER the ordering. MedAvgRotationFilter's averaging requires
+            // that samples are sorted, as it sorts in a special way to respect angle rollover.
+            averageSamples(0, count);
+            return;
         }
 
         int throwAway = Math.round(count * (1 - mCut) / 2);
@@ -170,57 +351,46 @@ public class MedAvgFilter implements IFilter {
             throwAway--;
         }
 
-        return averageSamples(sorted.subList(throwAway, count - throwAway));
-    }
-
-    /**
-     * Creates a new, sorted list containing the provided samples. Sorting is based on the sample
-     * value.
-     * @param list A list of samples to sort.
-     * @return A new list, of the same samples, sorted by value.
-     */
-    protected List<Sample> sortSamples(Collection<Sample> list) {
-        ArrayList<Sample> sorted = new ArrayList<>(list);
-        Collections.sort(sorted);
-        return sorted;
+        averageSamples(throwAway, count - throwAway);
     }
 
     /**
-     * Averages a list of samples.
-     * @param samples The list of samples.
-     * @return A sample containing the average value and time of the samples in the list.
+     * Averages a range of the ordered samples into the result. If every sample in the range has
+     * zero confidence, the result is left unchanged.
+     * @param from The first index in the ordering, inclusive.
+     * @param to The last index in the ordering, exclusive.
      */
-    protected Sample averageSamples(Collection<Sample> samples) {
-        if (samples.size() == 0 || samples.stream().anyMatch(Objects::isNull)) {
-            return null; // Average can't be computed.
-        }
-        float valueSum = 0F;
-        double fomSum = 0.0;
-        long instantSum = 0;
-
+    private void averageSamples(int from, int to) {
         // Using a relevant epoch keeps the values small and therefore decreases the risk of
         //  overflow.
-        long instantEpoch = samples.stream().findFirst().get().timeMs;
+        long instantEpoch = mTimes[mOrderSlots[from]];
 
-        // If the FOM of all values is 1, fomWeight will be the size of the array.
-        float fomWeight = (float) samples.stream().mapToDouble(s -> s.fom).sum();
+        // If the FOM of all values is 1, fomWeight will be the size of the range.
+        double fomTotal = 0.0;
+        for (int i = from; i < to; i++) {
+            fomTotal += mFoms[mOrderSlots[i]];
+        }
+        float fomWeight = (float) fomTotal;
 
         if (fomWeight == 0) {
             // Every reading has 0 confidence. Can't produce an average. Also, this shouldn't
             // happen because FOM = 0 readings should be ignored by the engine.
-            return null;
+            return;
         }
-        for (Sample s: samples) {
+        float valueSum = 0F;
+        double fomSum = 0.0;
+        long instantSum = 0;
+        for (int i = from; i < to; i++) {
             // Sum up all samples to be averaged, multiplied by their confidence weight.
-            valueSum += s.value * (float) s.fom;
-            instantSum += (long) ((s.timeMs - instantEpoch) * s.fom);
-            fomSum += s.fom * s.fom;
-        }
-        return new Sample(
-            valueSum / fomWeight,
-            instantEpoch + (long) (instantSum / fomWeight),
-            fomSum / fomWeight
-        );
+            int slot = mOrderSlots[i];
+            double fom = mFoms[slot];
+            valueSum += mOrderValues[i] * (float) fom;
+            instantSum += (long) ((mTimes[slot] - instantEpoch) * fom);
+            fomSum += fom * fom;
+        }
+        mResult.value = normalize(valueSum / fomWeight);
+        mResult.timeMs = instantEpoch + (long) (instantSum / fomWeight);
+        mResult.fom = fomSum / fomWeight;
     }
 
     /**
@@ -22,13 +22,6 @@ import static java.lang.Math.atan2;
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 
-import com.android.server.uwb.correction.math.MathHelper;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * A median and average filter that operates identically to {@link MedAvgFilter}, but uses the
  * radians circular number system, wherein numbers refer to points on a circle such that +PI and
@@ -36,69 +29,94 @@ import java.util.List;
  * their linear numerical values.
  */
 public class MedAvgRotationFilter extends MedAvgFilter {
+    // Sine and cosine of each slot's value, so the directional average doesn't recompute them.
+    private double[] mSin;
+    private double[] mCos;
 
     public MedAvgRotationFilter(int windowSize, float cut) {
         super(windowSize, cut);
     }
 
+    @Override
+    public void setWindowSize(int value) {
+        // Validates the value and moves the samples before the arrays are resized to match.
+        super.setWindowSize(value);
+        mSin = new double[value];
+        mCos = new double[value];
+        for (int i = 0; i < getCount(); i++) {
+            onSampleChanged(slotAt(i));
+        }
+    }
+
     /**
-     * Creates a naive average of the given samples. Both the value and instant of the samples are
-     * averaged. This will probably not produce a desired result if the samples are normalized to
-     * roll over at +/-PI rad. Use {@link #sortSamples(Collection)} to shift the roll over to a more
-     * desired location.
+     * Normalizes averaged and shifted values within +/-PI.
      *
-     * @param samples The list of samples.
-     * @return The average of the samples, normalized within +/-PI.
+     * @param value The value to normalize.
+     * @return The value, normalized within +/-PI.
      */
     @Override
-    protected Sample averageSamples(Collection<Sample> samples) {
-        Sample result = super.averageSamples(samples);
-        result.value = MathHelper.normalizeRadians(result.value);
-        return result;
+    protected float normalize(float value) {
+        return normalizeRadians(value);
     }
 
     /**
-     * Rewrites all sample values based on the selector.
+     * Rewrites all sample values based on the selector. Results are normalized within +/-PI.
      *
      * @param selector The interface containing the remapping function.
      */
+    @Override
     public void remap(RemapFunction selector) {
-        super.remap(v -> MathHelper.normalizeRadians(selector.run(v)));
+        super.remap(selector);
+    }
+
+    @Override
+    protected void onSampleChanged(int slot) {
+        float value = valueOf(slot);
+        mSin[slot] = sin(value);
+        mCos[slot] = cos(value);
     }
 
     /**
-     * Creates a new sorted list of angles based on the input list. 2pi is added to some angles to
-     * ensure that the sorted result is also in a clockwise order, and the numerical average
-     * will equal the directional average.
-     * The input angles must be between ±pi, but some output angles will exceed pi.
+     * Orders the window such that angles are in a clockwise order around the directional average,
+     * so that the numerical average will equal the directional average. 2pi is added to some
+     * angles to achieve this; the input angles must be between ±pi, but some output angles will
+     * exceed pi.
      */
-    protected List<Sample> sortSamples(Collection<Sample> list) {
-        List<Sample> result = new ArrayList<>(list);
-        int size = result.size();
-        if (size < 2) {
-            return result;
-        }
+    @Override
+    protected void orderWindow() {
+        int count = getCount();
 
         // Get the direction of all the positions on the unit circles; the directional average.
-        float avgAngle = (float) atan2(
-                result.stream().mapToDouble(sample -> sin(sample.value)).sum(),
-                result.stream().mapToDouble(sample -> cos(sample.value)).sum()
-        );
+        double sinSum = 0.0;
+        double cosSum = 0.0;
+        for (int i = 0; i < count; i++) {
+            int slot = slotAt(i);
+            sinSum += mSin[slot];
+            cosSum += mCos[slot];
+        }
+        float avgAngle = (float) atan2(sinSum, cosSum);
 
         // All output values must be between avgAngle ± π. Compute the lowest allowed angle:
         float lowestAngle = normalizeRadians(avgAngle - F_PI);
 
-        // Wrap around any angles that are below our allowed angle by adding 2π.
-        int index;
-        for (index = 0; index < size; index++) {
-            Sample sample = result.get(index);
-            if (sample.value < lowestAngle) {
-                result.set(index, new Sample(sample.value + 2 * F_PI, sample.timeMs, sample.fom));
-            }
+        // The window is already sorted, so the angles below the allowed angle are a prefix of it.
+        // Wrap them around by adding 2π, which moves them after the remaining angles.
+        int[] sorted = getSortedSlots();
+        int wrapped = 0;
+        while (wrapped < count && valueOf(sorted[wrapped]) < lowestAngle) {
+            wrapped++;
+        }
+        int out = 0;
+        for (int i = wrapped; i < count; i++) {
+            mOrderSlots[out] = sorted[i];
+            mOrderValues[out++] = valueOf(sorted[i]);
+        }
+        for (int i = 0; i < wrapped; i++) {
+            mOrderSlots[out] = sorted[i];
+            mOrderValues[out++] = valueOf(sorted[i]) + 2 * F_PI;
         }
 
-        // Sort the result.
-        Collections.sort(result);
-        return result;
+        // Rounding can leave wrapped angles equal to the highest unwrapped angles; settle ties.
+        sortOrder(mOrderSlots, mOrderValues, count);
     }
 }
@@ -23,6 +23,7 @@ import com.android.server.uwb.correction.math.SphericalVector;
 import com.android.server.uwb.correction.math.SphericalVector.Annotated;
 import com.android.server.uwb.correction.math.Vector3;
 import com.android.server.uwb.correction.pose.IPoseSource;
+import com.android.server.uwb.correction.pose.SharedPoseDelta;
 
 import java.util.Objects;
 
@@ -117,6 +118,28 @@ public class PositionFilterImpl implements IPositionFilter {
         mLastPose = newPose;
     }
 
+    /**
+     * Updates the filter history to account for changes to the pose, like
+     * {@link #updatePose(IPoseSource, long)}, but gets the pose change from a
+     * {@link SharedPoseDelta}, so that filters tracking the same pose source don't each compute
+     * it.
+     *
+     * @param poseSource The pose source that has the new pose.
+     * @param sharedPoseDelta Computes the relative transform between two poses.
+     */
+    @Override
+    public void updatePose(@Nullable IPoseSource poseSource,
+            @NonNull SharedPoseDelta sharedPoseDelta, long timeMs) {
+        if (poseSource == null) {
+            return;
+        }
+        Pose newPose = poseSource.getPose();
+        if (mLastPose != null && newPose != null && newPose != mLastPose) {
+            updatePoseFromDelta(sharedPoseDelta.getDelta(mLastPose, newPose), compute(timeMs));
+        }
+        mLastPose = newPose;
+    }
+
     /**
      * Applies compensations to the azimuth, elevation and distance filters based on how the
      * pose changed, and how the last-known position of the tag would be affected.
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.correction.pose;
+
+import androidx.annotation.NonNull;
+
+import com.android.server.uwb.correction.math.Pose;
+
+/**
+ * Computes the relative transform between two poses of a pose source, and remembers the last one.
+ *
+ * <p>All the filters of a session share the session's pose source, so in each ranging round they
+ * all ask for the transform between the same two poses. Sharing one instance of this class
+ * between those filters means the transform is computed once per round instead of once per
+ * filter.
+ */
+public class SharedPoseDelta {
+    private Pose mFrom;
+    private Pose mTo;
+    private Pose mDelta;
+
+    /**
+     * Gets the transform that converts a point relative to the {@code from} pose into a point
+     * relative to the {@code to} pose.
+     *
+     * @param from The earlier pose.
+     * @param to The new pose.
+     * @return {@code Pose.compose(to.inverted(), from)}, reused if it was already computed for
+     * the same pose instances.
+     */
+    @NonNull
+    public synchronized Pose getDelta(@NonNull Pose from, @NonNull Pose to) {
+        if (from != mFrom || to != mTo) {
+            mDelta = Pose.compose(to.inverted(), from);
+            mFrom = from;
+            mTo = to;
+        }
+        return mDelta;
+    }
+}
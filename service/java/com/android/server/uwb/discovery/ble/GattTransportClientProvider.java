@@ -27,6 +27,7 @@ import android.content.AttributionSource;
 import android.content.Context;
 import android.content.ContextParams;
 import android.util.Log;
+import android.util.SparseArray;
 
 import androidx.annotation.WorkerThread;
 
@@ -41,9 +42,9 @@ import com.android.server.uwb.discovery.info.FiraConnectorMessage;
 import com.android.server.uwb.discovery.info.SecureComponentInfo;
 import com.android.server.uwb.discovery.info.TransportClientInfo;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.concurrent.Executor;
 
 /**
@@ -61,6 +62,10 @@ import java.util.concurrent.Executor;
 public class GattTransportClientProvider extends TransportClientProvider {
     private static final String TAG = GattTransportClientProvider.class.getSimpleName();
 
+    // Largest ATT_MTU allowed by the Bluetooth Core spec, requested once connected so that each
+    // data packet carries as much of the message as the link allows.
+    private static final int MAX_ATT_MTU = 517;
+
     private final Executor mCallbackExecutor;
     private final Context mContext;
     private TransportClientCallback mTransportClientCallback;
@@ -74,6 +79,8 @@ public class GattTransportClientProvider extends TransportClientProvider {
     private boolean mCapabilitiesWritten;
     private boolean mNotificationEnabled;
     private boolean mIsProcessing;
+    private boolean mMtuRequested;
+    private boolean mInDataPacketInFlight;
 
     private BluetoothGattCharacteristic mInControlPointCharacteristic;
     private BluetoothGattCharacteristic mOutControlPointCharacteristic;
@@ -81,10 +88,10 @@ public class GattTransportClientProvider extends TransportClientProvider {
 
     private BluetoothGattDescriptor mOutControlPointCccdDescriptor;
 
-    /* Queue of Fira Connector Data Packets from the mOutControlPointCharacteristic that are
-     * incomplete to be constructed as FiRa Connector Message.
+    /* FiRa Connector Messages from the mOutControlPointCharacteristic whose data packets are
+     * still being received, keyed by SECID.
      */
-    private ArrayDeque<FiraConnectorDataPacket> mIncompleteOutDataPacketQueue;
+    private final SparseArray<MessageReassembly> mOutMessageReassemblies = new SparseArray<>();
 
     /* Queue of Fira Connector Message wrapped as MessagePacket to be sent via the
      * mInControlPointCharacteristic.
@@ -213,7 +220,7 @@ public class GattTransportClientProvider extends TransportClientProvider {
                     } else if (characteristic
                             .getUuid()
                             .equals(mInControlPointCharacteristic.getUuid())) {
-                        mCallbackExecutor.execute(() -> processInDataPacket());
+                        mCallbackExecutor.execute(() -> onInDataPacketWritten());
                     }
                 }
 
@@ -280,7 +287,6 @@ public class GattTransportClientProvider extends TransportClientProvider {
         // Using FiRa defined default connector capabilities.
         mCapabilities = new FiraConnectorCapabilities.Builder().build();
 
-        mIncompleteOutDataPacketQueue = new ArrayDeque();
         mInMessageQueue = new ArrayDeque();
     }
 
@@ -322,11 +328,13 @@ public class GattTransportClientProvider extends TransportClientProvider {
         mBluetoothGatt.disconnect();
 
         // Clear in/out message queue.
-        mIncompleteOutDataPacketQueue.clear();
+        mOutMessageReassemblies.clear();
         mInMessageQueue.clear();
+        mInDataPacketInFlight = false;
 
         mStarted = false;
         mConnected = false;
+        mMtuRequested = false;
         mServiceDiscovered = false;
         mCapabilitiesWritten = false;
         mNotificationEnabled = false;
@@ -347,8 +355,8 @@ public class GattTransportClientProvider extends TransportClientProvider {
         }
         mInMessageQueue.add(new MessagePacket(secid, ByteBuffer.wrap(messageBytes)));
 
-        // No existing meesage in progress, sent this message immediately.
-        if (mInMessageQueue.size() == 1) {
+        // No data packet waiting for its write callback, sent this message immediately.
+        if (!mInDataPacketInFlight) {
             return processInDataPacket();
         }
         return true;
@@ -372,9 +380,22 @@ public class GattTransportClientProvider extends TransportClientProvider {
         return writeCapabilitiesCharacteristic();
     }
 
+    /**
+     * Called when the remote GATT server acknowledged the last data packet written to {@link
+     * mInControlPointCharacteristic}. The next data packet is written straight away, whichever
+     * message it belongs to, so the link doesn't idle between messages.
+     */
+    private void onInDataPacketWritten() {
+        mInDataPacketInFlight = false;
+        if (!mInMessageQueue.isEmpty()) {
+            processInDataPacket();
+        }
+    }
+
     /**
      * Process the next in control data packet from the queue. Write new data packet to {@link
-     * mInControlPointCharacteristic}.
+     * mInControlPointCharacteristic}. Only one data packet is written at a time since the
+     * characteristic is written with response.
      *
      * @return indicate if next in data packet was process successfully.
      */
@@ -406,6 +427,8 @@ public class GattTransportClientProvider extends TransportClientProvider {
         if (!byteBuffer.hasRemaining()) {
             mInMessageQueue.pop();
         }
+        // Set ahead of the write, as its callback may run before writeCharacteristic returns.
+        mInDataPacketInFlight = true;
         final int status =
                 mBluetoothGatt.writeCharacteristic(
                         mInControlPointCharacteristic,
@@ -413,6 +436,7 @@ public class GattTransportClientProvider extends TransportClientProvider {
                         BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
         if (status != BluetoothStatusCodes.SUCCESS) {
             Log.w(TAG, "processInDataPacket failed due to fail to writeCharacteristic.");
+            mInDataPacketInFlight = false;
             terminateOnError(TerminationReason.CHARACTERSTIC_WRITE_FAILURE);
             return false;
         }
@@ -443,33 +467,63 @@ public class GattTransportClientProvider extends TransportClientProvider {
                             + " constructed from bytes.");
             return false;
         }
-        if (!mIncompleteOutDataPacketQueue.isEmpty()
-                && latestDataPacket.secid != mIncompleteOutDataPacketQueue.peek().secid) {
-            Log.w(
-                    TAG,
-                    "processOutDataPacket failed due to latest FiraConnectorDataPacket's SECID"
-                            + " doesn't match previous data packet.");
-            super.sentAdminErrorMessage(ErrorType.TOO_MANY_CONCURRENT_FRAGMENTED_MESSAGE_SESSIONS);
-            return false;
+        int secid = latestDataPacket.secid;
+        byte[] payload = latestDataPacket.payload;
+        MessageReassembly reassembly = mOutMessageReassemblies.get(secid);
+        if (reassembly == null) {
+            if (mOutMessageReassemblies.size()
+                    >= mCapabilities.maxConcurrentFragmentedMessageSessionSupported) {
+                Log.w(
+                        TAG,
+                        "processOutDataPacket failed due to latest FiraConnectorDataPacket's SECID"
+                                + " exceeds the concurrent fragmented message sessions.");
+                super.sentAdminErrorMessage(
+                        ErrorType.TOO_MANY_CONCURRENT_FRAGMENTED_MESSAGE_SESSIONS);
+                return false;
+            }
+            if (latestDataPacket.lastChainingPacket) {
+                // Message not fragmented, no need to copy it into a reassembly buffer.
+                return onOutMessageReceived(secid, payload, payload.length);
+            }
+            reassembly = new MessageReassembly(mCapabilities.maxMessageBufferSize);
+            mOutMessageReassemblies.put(secid, reassembly);
+        }
+        if (!reassembly.mOverflowed) {
+            if (reassembly.mLength + payload.length > reassembly.mBuffer.length) {
+                Log.w(TAG, "processOutDataPacket failed due to message length overflow.");
+                super.sentAdminErrorMessage(ErrorType.MESSAGE_LENGTH_OVERFLOW);
+                // Drop the remaining data packets of this message.
+                reassembly.mOverflowed = true;
+            } else {
+                System.arraycopy(
+                        payload,
+                        /*srcPos=*/ 0,
+                        reassembly.mBuffer,
+                        reassembly.mLength,
+                        payload.length);
+                reassembly.mLength += payload.length;
+            }
         }
-        mIncompleteOutDataPacketQueue.add(latestDataPacket);
         if (!latestDataPacket.lastChainingPacket) {
-            return true;
+            return !reassembly.mOverflowed;
         }
-        // All data packets of the message has been received. Constructing the message.
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        for (FiraConnectorDataPacket dataPacket : mIncompleteOutDataPacketQueue) {
-            byteStream.write(dataPacket.payload, /*off=*/ 0, dataPacket.payload.length);
+        mOutMessageReassemblies.remove(secid);
+        if (reassembly.mOverflowed) {
+            return false;
         }
-        mIncompleteOutDataPacketQueue.clear();
+        // All data packets of the message has been received. Constructing the message.
+        return onOutMessageReceived(secid, reassembly.mBuffer, reassembly.mLength);
+    }
 
-        if (byteStream.size() > mCapabilities.maxMessageBufferSize) {
+    private boolean onOutMessageReceived(int secid, byte[] buffer, int length) {
+        if (length > mCapabilities.maxMessageBufferSize) {
             Log.w(TAG, "processOutDataPacket failed due to message length overflow.");
             super.sentAdminErrorMessage(ErrorType.MESSAGE_LENGTH_OVERFLOW);
             return false;
         }
-
-        FiraConnectorMessage message = FiraConnectorMessage.fromBytes(byteStream.toByteArray());
+        FiraConnectorMessage message =
+                FiraConnectorMessage.fromBytes(
+                        length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
         if (message == null) {
             Log.w(
                     TAG,
@@ -478,7 +532,7 @@ public class GattTransportClientProvider extends TransportClientProvider {
             return false;
         }
 
-        super.onMessageReceived(latestDataPacket.secid, message);
+        super.onMessageReceived(secid, message);
         return true;
     }
 
@@ -503,6 +557,14 @@ public class GattTransportClientProvider extends TransportClientProvider {
                         + ")");
 
         if (mConnected) {
+            if (!mMtuRequested) {
+                // The MTU exchange is queued ahead of the service discovery by the stack, and
+                // onMtuChanged updates the capabilities before they are written.
+                mMtuRequested = true;
+                if (!mBluetoothGatt.requestMtu(MAX_ATT_MTU)) {
+                    Log.w(TAG, "startProcessing failed to request MTU, keeping the default.");
+                }
+            }
             if (!mServiceDiscovered) {
                 mBluetoothGatt.discoverServices();
             } else if (!mCapabilitiesWritten) {
@@ -578,6 +640,18 @@ public class GattTransportClientProvider extends TransportClientProvider {
         }
     }
 
+    /** Data packets of a FiRa Connector Message received so far for one SECID. */
+    private static class MessageReassembly {
+        // Pre-sized to the max message buffer size, so a message never needs to grow it.
+        final byte[] mBuffer;
+        int mLength;
+        boolean mOverflowed;
+
+        MessageReassembly(int maxMessageBufferSize) {
+            mBuffer = new byte[maxMessageBufferSize];
+        }
+    }
+
     @Override
     protected void terminateOnError(TerminationReason reason) {
         Log.e(TAG, "GattTransportClientProvider terminated with reason:" + reason);
@@ -34,15 +34,29 @@ import com.android.server.uwb.data.UwbVendorUciResponse;
 import com.android.server.uwb.info.UwbPowerStats;
 import com.android.server.uwb.multchip.UwbMultichipData;
 
+import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Keep
 public class NativeUwbManager {
     private static final String TAG = NativeUwbManager.class.getSimpleName();
 
-    public final Object mNativeLock = new Object();
+    private static final String DEFAULT_CHIP_LOCK_KEY = "";
+
+    /**
+     * Guards the native dispatcher lifecycle. Held exclusively while the dispatcher is created or
+     * destroyed and shared by all per-chip commands.
+     */
+    private final ReentrantReadWriteLock mLifecycleLock = new ReentrantReadWriteLock();
+    /** Serializes the commands sent to a single chip. */
+    private final Map<String, ChipLock> mChipLocks = new ConcurrentHashMap<>();
     private final UwbInjector mUwbInjector;
     private final UciLogModeStore mUciLogModeStore;
     private final UwbMultichipData mUwbMultichipData;
@@ -61,8 +75,11 @@ public class NativeUwbManager {
 
     protected void loadLibrary() {
         System.loadLibrary("uwb_uci_jni_rust");
-        synchronized (mNativeLock) {
+        mLifecycleLock.writeLock().lock();
+        try {
             nativeInit();
+        } finally {
+            mLifecycleLock.writeLock().unlock();
         }
     }
 
@@ -138,7 +155,8 @@ public class NativeUwbManager {
     public Map<String, UwbDeviceInfoResponse> doInitialize() {
         UwbDeviceInfoResponse deviceInfoResponse = null;
         Map<String, UwbDeviceInfoResponse> chipIdToDeviceInfoResponseMap = new HashMap<>();
-        synchronized (mNativeLock) {
+        mLifecycleLock.writeLock().lock();
+        try {
             mDispatcherPointer = nativeDispatcherNew(mUwbMultichipData.getChipIds().toArray());
             for (String chipId : mUwbMultichipData.getChipIds()) {
                 deviceInfoResponse = nativeDoInitialize(chipId);
@@ -149,6 +167,8 @@ public class NativeUwbManager {
                 chipIdToDeviceInfoResponseMap.put(chipId, deviceInfoResponse);
             }
             nativeSetLogMode(mUciLogModeStore.getMode());
+        } finally {
+            mLifecycleLock.writeLock().unlock();
         }
         return chipIdToDeviceInfoResponseMap;
     }
@@ -159,13 +179,16 @@ public class NativeUwbManager {
      * @return : If this returns true, UWB is off
      */
     public boolean doDeinitialize() {
-        synchronized (mNativeLock) {
+        mLifecycleLock.writeLock().lock();
+        try {
             for (String chipId : mUwbMultichipData.getChipIds()) {
                 nativeDoDeinitialize(chipId);
             }
 
             nativeDispatcherDestroy();
             mDispatcherPointer = 0L;
+        } finally {
+            mLifecycleLock.writeLock().unlock();
         }
         return true;
     }
@@ -185,8 +208,11 @@ public class NativeUwbManager {
      * Retrieves power related stats
      */
     public UwbPowerStats getPowerStats(String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeGetPowerStats(chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -201,8 +227,11 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte initSession(int sessionId, byte sessionType, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSessionInit(sessionId, sessionType, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -214,8 +243,11 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte deInitSession(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSessionDeInit(sessionId, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -227,8 +259,11 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte deviceReset(byte resetConfig, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeDeviceReset(resetConfig, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -239,8 +274,11 @@ public class NativeUwbManager {
      * @return : Number of UWB sessions present in the UWBS.
      */
     public byte getSessionCount(String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeGetSessionCount(chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -252,8 +290,11 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Session State
      */
     public byte getSessionState(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeGetSessionState(sessionId, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -265,8 +306,11 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte startRanging(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeRangingStart(sessionId, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -278,8 +322,11 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte stopRanging(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeRangingStop(sessionId, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -294,9 +341,12 @@ public class NativeUwbManager {
      */
     public UwbConfigStatusData setAppConfigurations(int sessionId, int noOfParams,
             int appConfigParamLen, byte[] appConfigParams, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSetAppConfigurations(sessionId, noOfParams, appConfigParamLen,
                     appConfigParams, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -311,9 +361,12 @@ public class NativeUwbManager {
      */
     public UwbConfigStatusData setRadarAppConfigurations(int sessionId, int noOfParams,
             int appConfigParamLen, byte[] appConfigParams, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSetRadarAppConfigurations(sessionId, noOfParams, appConfigParamLen,
                     appConfigParams, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -328,9 +381,12 @@ public class NativeUwbManager {
      */
     public UwbTlvData getAppConfigurations(int sessionId, int noOfParams, int appConfigParamLen,
             byte[] appConfigIds, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeGetAppConfigurations(sessionId, noOfParams, appConfigParamLen,
                     appConfigIds, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -341,8 +397,11 @@ public class NativeUwbManager {
      * @return :  {@link UwbTlvData} : All tlvs that are to be decoded
      */
     public UwbTlvData getCapsInfo(String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeGetCapsInfo(chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -365,11 +424,14 @@ public class NativeUwbManager {
     public UwbMulticastListUpdateStatus controllerMulticastListUpdate(int sessionId, int action,
             int noOfControlee, byte[] addresses, int[] subSessionIds, byte[] subSessionKeyList,
             String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeControllerMulticastListUpdate(sessionId, (byte) action,
                     (byte) noOfControlee, addresses, subSessionIds, subSessionKeyList, chipId,
                     mUwbInjector.isMulticastListNtfV2Supported(),
                     mUwbInjector.isMulticastListRspV2Supported());
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -381,15 +443,19 @@ public class NativeUwbManager {
     public byte setCountryCode(byte[] countryCode) {
         Log.i(TAG, "setCountryCode: " + new String(countryCode));
 
-        synchronized (mNativeLock) {
-            for (String chipId : mUwbMultichipData.getChipIds()) {
-                byte status = nativeSetCountryCode(countryCode, chipId);
-                if (status != UwbUciConstants.STATUS_CODE_OK) {
-                    return status;
-                }
+        for (String chipId : mUwbMultichipData.getChipIds()) {
+            ChipLock lock = acquireChipLock(chipId);
+            byte status;
+            try {
+                status = nativeSetCountryCode(countryCode, chipId);
+            } finally {
+                releaseChipLock(lock);
+            }
+            if (status != UwbUciConstants.STATUS_CODE_OK) {
+                return status;
             }
-            return UwbUciConstants.STATUS_CODE_OK;
         }
+        return UwbUciConstants.STATUS_CODE_OK;
     }
 
     /**
@@ -399,16 +465,22 @@ public class NativeUwbManager {
      * @return true if the log mode is set successfully, false otherwise.
      */
     public boolean setLogMode(String logModeStr) {
-        synchronized (mNativeLock) {
+        mLifecycleLock.writeLock().lock();
+        try {
             return nativeSetLogMode(mUciLogModeStore.getMode());
+        } finally {
+            mLifecycleLock.writeLock().unlock();
         }
     }
 
     @NonNull
     public UwbVendorUciResponse sendRawVendorCmd(int mt, int gid, int oid, byte[] payload,
             String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSendRawVendorCmd(mt, gid, oid, payload, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -426,8 +498,11 @@ public class NativeUwbManager {
      */
     public byte sendData(
             int sessionId, byte[] address, short sequenceNum, byte[] appData, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSendData(sessionId, address, sequenceNum, appData, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -446,9 +521,12 @@ public class NativeUwbManager {
     public byte setDataTransferPhaseConfig(int sessionId, byte dtpcmRepetition,
             byte dataTransferControl, byte dtpmlSize, byte[] macAddress, byte[] slotBitmap,
             String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSessionDataTransferPhaseConfig(sessionId, dtpcmRepetition,
                 dataTransferControl, dtpmlSize, macAddress, slotBitmap, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -473,9 +551,12 @@ public class NativeUwbManager {
      */
     public DtTagUpdateRangingRoundsStatus sessionUpdateDtTagRangingRounds(int sessionId,
             int noOfRangingRounds, byte[] rangingRoundIndexes, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSessionUpdateDtTagRangingRounds(sessionId, noOfRangingRounds,
                     rangingRoundIndexes, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -487,8 +568,11 @@ public class NativeUwbManager {
      * @return : Max application data size that can be sent by UWBS.
      */
     public int queryMaxDataSizeBytes(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeQueryDataSize(sessionId, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -498,8 +582,11 @@ public class NativeUwbManager {
      * @return :  uwb device timestamp
      */
     public long queryUwbsTimestamp(String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeQueryUwbTimestamp(chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -511,8 +598,11 @@ public class NativeUwbManager {
      * @return : session token generated for the session.
      */
     public int getSessionToken(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeGetSessionToken(sessionId, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -529,9 +619,12 @@ public class NativeUwbManager {
      */
     public byte setHybridSessionControllerConfiguration(int sessionId, byte messageControl,
             int numberOfPhases, byte[] updateTime, byte[] phaseList, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSetHybridSessionControllerConfigurations(sessionId, messageControl,
                 numberOfPhases, updateTime, phaseList, chipId);
+        } finally {
+            releaseChipLock(lock);
         }
     }
 
@@ -546,9 +639,65 @@ public class NativeUwbManager {
      */
     public byte setHybridSessionControleeConfiguration(int sessionId, int numberOfPhases,
             byte[] phaseList, String chipId) {
-        synchronized (mNativeLock) {
+        ChipLock lock = acquireChipLock(chipId);
+        try {
             return nativeSetHybridSessionControleeConfigurations(sessionId, numberOfPhases,
                 phaseList, chipId);
+        } finally {
+            releaseChipLock(lock);
+        }
+    }
+
+    private ChipLock acquireChipLock(String chipId) {
+        ChipLock chipLock = mChipLocks.computeIfAbsent(
+                chipId == null ? DEFAULT_CHIP_LOCK_KEY : chipId, id -> new ChipLock());
+        mLifecycleLock.readLock().lock();
+        if (!chipLock.mLock.tryLock()) {
+            long startNanos = System.nanoTime();
+            chipLock.mLock.lock();
+            long waitNanos = System.nanoTime() - startNanos;
+            chipLock.mContendedCount.incrementAndGet();
+            chipLock.mTotalWaitNanos.addAndGet(waitNanos);
+            long max = chipLock.mMaxWaitNanos.get();
+            while (waitNanos > max && !chipLock.mMaxWaitNanos.compareAndSet(max, waitNanos)) {
+                max = chipLock.mMaxWaitNanos.get();
+            }
+        }
+        chipLock.mAcquireCount.incrementAndGet();
+        return chipLock;
+    }
+
+    private void releaseChipLock(ChipLock chipLock) {
+        chipLock.mLock.unlock();
+        mLifecycleLock.readLock().unlock();
+    }
+
+    /**
+     * Dump the native lock contention counters.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("---- Dump of NativeUwbManager ----");
+        for (Map.Entry<String, ChipLock> entry : mChipLocks.entrySet()) {
+            pw.println("chipId=" + entry.getKey() + " " + entry.getValue());
+        }
+        pw.println("---- Dump of NativeUwbManager ----");
+    }
+
+    private static class ChipLock {
+        final ReentrantLock mLock = new ReentrantLock();
+        final AtomicLong mAcquireCount = new AtomicLong();
+        final AtomicLong mContendedCount = new AtomicLong();
+        final AtomicLong mTotalWaitNanos = new AtomicLong();
+        final AtomicLong mMaxWaitNanos = new AtomicLong();
+
+        @Override
+        public String toString() {
+            long contended = mContendedCount.get();
+            return "acquired=" + mAcquireCount.get()
+                    + " contended=" + contended
+                    + " avgWaitUs=" + (contended == 0 ? 0
+                            : TimeUnit.NANOSECONDS.toMicros(mTotalWaitNanos.get() / contended))
+                    + " maxWaitUs=" + TimeUnit.NANOSECONDS.toMicros(mMaxWaitNanos.get());
         }
     }
 
@@ -112,9 +112,10 @@ public class AliroDecoder extends TlvDecoder {
         long uwbTime0;
         // Backwards compatibility with vendors who were using Google defined
         // UWB_TIME0 TLV param.
-        try {
+        if (tlvs.hasTag(ConfigParam.UWB_TIME0)
+                && tlvs.getLength(ConfigParam.UWB_TIME0) == Long.BYTES) {
             uwbTime0 = tlvs.getLong(ConfigParam.UWB_TIME0);
-        } catch (IllegalArgumentException e) {
+        } else {
             uwbTime0 = tlvs.getLong(ConfigParam.UWB_INITIATION_TIME);
         }
 
@@ -193,12 +194,12 @@ public class AliroDecoder extends TlvDecoder {
             }
         }
 
-        try {
+        if (tlvs.hasTag(CCC_PRIORITIZED_CHANNEL_LIST)) {
             byte[] prioritizedChannels = tlvs.getByteArray(CCC_PRIORITIZED_CHANNEL_LIST);
             for (byte prioritizedChannel : prioritizedChannels) {
                 builder.addChannel(prioritizedChannel);
             }
-        } catch (IllegalArgumentException e) {
+        } else {
             Log.w(TAG, "CCC_PRIORITIZED_CHANNEL_LIST not found");
             byte channels = tlvs.getByte(CCC_SUPPORTED_CHANNELS);
             if (isBitSet(channels, CCC_CHANNEL_5)) {
@@ -111,9 +111,10 @@ public class CccDecoder extends TlvDecoder {
         long uwbTime0;
         // Backwards compatibility with vendors who were using Google defined
         // UWB_TIME0 TLV param.
-        try {
+        if (tlvs.hasTag(ConfigParam.UWB_TIME0)
+                && tlvs.getLength(ConfigParam.UWB_TIME0) == Long.BYTES) {
             uwbTime0 = tlvs.getLong(ConfigParam.UWB_TIME0);
-        } catch (IllegalArgumentException e) {
+        } else {
             uwbTime0 = tlvs.getLong(ConfigParam.UWB_INITIATION_TIME);
         }
 
@@ -148,9 +149,9 @@ public class CccDecoder extends TlvDecoder {
             builder.addPulseShapeCombo(CccPulseShapeCombo.fromBytes(pulse_shape_combos, i));
         }
         int supportedRanMultiplier;
-        try {
+        if (tlvs.getLength(CCC_SUPPORTED_RAN_MULTIPLIER) == Integer.BYTES) {
             supportedRanMultiplier = tlvs.getInt(CCC_SUPPORTED_RAN_MULTIPLIER);
-        } catch (IllegalArgumentException e) {
+        } else {
             Log.w(TAG, "CCC_SUPPORTED_RAN_MULTIPLIER not a 4 byte value");
             // Try for single byte
             supportedRanMultiplier = tlvs.getByte(CCC_SUPPORTED_RAN_MULTIPLIER);
@@ -199,12 +200,12 @@ public class CccDecoder extends TlvDecoder {
             }
         }
 
-        try {
+        if (tlvs.hasTag(CCC_PRIORITIZED_CHANNEL_LIST)) {
             byte[] prioritizedChannels = tlvs.getByteArray(CCC_PRIORITIZED_CHANNEL_LIST);
             for (byte prioritizedChannel : prioritizedChannels) {
                 builder.addChannel(prioritizedChannel);
             }
-        } catch (IllegalArgumentException e) {
+        } else {
             Log.w(TAG, "CCC_PRIORITIZED_CHANNEL_LIST not found");
             byte channels = tlvs.getByte(CCC_SUPPORTED_CHANNELS);
             if (isBitSet(channels, CCC_CHANNEL_5)) {
@@ -194,8 +194,8 @@ public class FiraDecoder extends TlvDecoder {
     private FiraSpecificationParams getFiraSpecificationParamsFromTlvBuffer(TlvDecoderBuffer tlvs,
                     ProtocolVersion protocolVersion) {
         FiraSpecificationParams.Builder builder = new FiraSpecificationParams.Builder();
-        byte[] versionCheck = tlvs.getByteArray(SUPPORTED_FIRA_PHY_VERSION_RANGE_VER_2_0);
-        if (versionCheck.length == 1) {
+        int versionCheckLength = tlvs.getLength(SUPPORTED_FIRA_PHY_VERSION_RANGE_VER_2_0);
+        if (versionCheckLength == 1) {
             // FiRa Version 1.0
             byte[] phyVersions = tlvs.getByteArray(SUPPORTED_FIRA_PHY_VERSION_RANGE_VER_1_0);
             builder.setMinPhyVersionSupported(FiraProtocolVersion.fromBytes(phyVersions, 0));
@@ -451,7 +451,7 @@ public class FiraDecoder extends TlvDecoder {
             } catch (IllegalArgumentException e) {
                 Log.w(TAG, "SUPPORTED_MAX_DATA_PACKET_PAYLOAD_SIZE not found.");
             }
-        } else if (versionCheck.length == 4) {
+        } else if (versionCheckLength == 4) {
             // FiRa Version 2.0
             byte[] phyVersions = tlvs.getByteArray(SUPPORTED_FIRA_PHY_VERSION_RANGE_VER_2_0);
             builder.setMinPhyVersionSupported(FiraProtocolVersion.fromBytes(phyVersions, 0));
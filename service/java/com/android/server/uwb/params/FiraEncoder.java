@@ -62,6 +62,57 @@ public class FiraEncoder extends TlvEncoder {
         return null;
     }
 
+    /**
+     * Whether the app config {@code tag} is encoded from one of the fields left out of
+     * {@link FiraOpenSessionParams#toSessionTemplateBundle()}.
+     */
+    public static boolean isSessionSpecificTag(int tag) {
+        return tag == ConfigParam.UWB_INITIATION_TIME
+                || tag == ConfigParam.SESSION_TIME_BASE
+                || tag == ConfigParam.SESSION_KEY
+                || tag == ConfigParam.SUBSESSION_KEY;
+    }
+
+    /**
+     * Encodes only the session specific app configs of {@code params}, see
+     * {@link #isSessionSpecificTag(int)}. They are encoded as in {@link #getTlvBuffer}.
+     */
+    public TlvBuffer getSessionSpecificTlvBuffer(FiraOpenSessionParams params,
+            FiraProtocolVersion uwbsFiraProtocolVersion) {
+        TlvBuffer.Builder tlvBufferBuilder = new TlvBuffer.Builder();
+        int deviceRole = params.getDeviceRole();
+        if (uwbsFiraProtocolVersion.getMajor() >= 2) {
+            if (deviceRole != FiraParams.RANGING_DEVICE_DT_TAG) {
+                tlvBufferBuilder.putLong(ConfigParam.UWB_INITIATION_TIME,
+                        params.getAbsoluteInitiationTime() > 0
+                                ? params.getAbsoluteInitiationTime()
+                                : params.getInitiationTime());
+            }
+            if (params.getDeviceType() == FiraParams.RANGING_DEVICE_TYPE_CONTROLLER
+                    && UwbUtil.isBitSet(params.getReferenceTimeBase(),
+                            FiraParams.SESSION_TIME_BASE_REFERENCE_FEATURE_ENABLED)) {
+                tlvBufferBuilder.putByteArray(ConfigParam.SESSION_TIME_BASE,
+                        getSessionTimeBase(params));
+            }
+        } else if (deviceRole != FiraParams.RANGING_DEVICE_DT_TAG) {
+            tlvBufferBuilder.putInt(ConfigParam.UWB_INITIATION_TIME,
+                    Math.toIntExact(params.getInitiationTime()));
+        }
+
+        int stsConfig = params.getStsConfig();
+        if (stsConfig == FiraParams.STS_CONFIG_PROVISIONED_FOR_CONTROLEE_INDIVIDUAL_KEY
+                && params.getDeviceType() == FiraParams.RANGING_DEVICE_TYPE_CONTROLEE
+                && params.getSubsessionKey() != null) {
+            tlvBufferBuilder.putByteArray(ConfigParam.SUBSESSION_KEY, params.getSubsessionKey());
+        }
+        if ((stsConfig == FiraParams.STS_CONFIG_PROVISIONED
+                || stsConfig == FiraParams.STS_CONFIG_PROVISIONED_FOR_CONTROLEE_INDIVIDUAL_KEY)
+                && params.getSessionKey() != null) {
+            tlvBufferBuilder.putByteArray(ConfigParam.SESSION_KEY, params.getSessionKey());
+        }
+        return tlvBufferBuilder.build();
+    }
+
     private static boolean hasAoaBoundInRangeDataNtfConfig(int rangeDataNtfConfig) {
         return rangeDataNtfConfig == RANGE_DATA_NTF_CONFIG_ENABLE_AOA_LEVEL_TRIG
                 || rangeDataNtfConfig == RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_LEVEL_TRIG
@@ -16,10 +16,10 @@
 
 package com.android.server.uwb.params;
 
-import com.android.server.uwb.config.ConfigParam;
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /***
@@ -28,7 +28,18 @@ import java.util.Arrays;
  */
 public class TlvBuffer {
     private static final String TAG = "TlvBuffer";
-    private static final int MAX_BUFFER_SIZE = 512;
+    private static final int MAX_VALUE_LENGTH = 0xFF;
+    private static final int INITIAL_BUFFER_SIZE = 128;
+    // Scratch buffers larger than this are left to the GC rather than pooled.
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final Object sPoolLock = new Object();
+    @GuardedBy("sPoolLock")
+    private static final byte[][] sPooledBuffers = new byte[MAX_POOLED_BUFFERS][];
+    @GuardedBy("sPoolLock")
+    private static int sPooledBufferCount;
+
     private final ByteBuffer mBuffer;
     private final int mNoOfParams;
 
@@ -45,19 +56,56 @@ public class TlvBuffer {
         return mNoOfParams;
     }
 
-    public static final class Builder {
-        ByteBuffer mBuffer = ByteBuffer.allocate(MAX_BUFFER_SIZE);
-        int mNoOfParams = 0;
-        ByteOrder mOrder = ByteOrder.BIG_ENDIAN;
+    private static byte[] obtainScratchBuffer(int minSize) {
+        synchronized (sPoolLock) {
+            for (int i = sPooledBufferCount - 1; i >= 0; i--) {
+                byte[] buffer = sPooledBuffers[i];
+                if (buffer.length >= minSize) {
+                    sPooledBuffers[i] = sPooledBuffers[--sPooledBufferCount];
+                    sPooledBuffers[sPooledBufferCount] = null;
+                    return buffer;
+                }
+            }
+        }
+        return new byte[Math.max(minSize, INITIAL_BUFFER_SIZE)];
+    }
 
-        public TlvBuffer.Builder putOrder(ByteOrder order) {
-            mOrder = order;
-            return this;
+    /**
+     * Returns a scratch buffer to the pool. Its first {@code usedLength} bytes are cleared first,
+     * so that values such as session keys don't outlive the builder that wrote them.
+     */
+    private static void recycleScratchBuffer(byte[] buffer, int usedLength) {
+        if (buffer.length > MAX_POOLED_BUFFER_SIZE) return;
+        Arrays.fill(buffer, 0, usedLength, (byte) 0);
+        synchronized (sPoolLock) {
+            if (sPooledBufferCount < MAX_POOLED_BUFFERS) {
+                sPooledBuffers[sPooledBufferCount++] = buffer;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static int getPooledBufferCount() {
+        synchronized (sPoolLock) {
+            return sPooledBufferCount;
         }
+    }
+
+    /**
+     * Builds a {@link TlvBuffer}, writing the values in place in a scratch buffer that grows as
+     * needed. The scratch buffer is returned to a small pool by {@link #build()}, so that the next
+     * builder can reuse it.
+     */
+    public static final class Builder {
+        // Null until the first value is put, and once the scratch buffer has been recycled.
+        byte[] mBuffer;
+        int mPosition = 0;
+        boolean mIsScratchBuffer;
+        int mNoOfParams = 0;
 
         public TlvBuffer.Builder putByte(int tagType, byte b) {
             addHeader(tagType, Byte.BYTES);
-            this.mBuffer.put(b);
+            mBuffer[mPosition++] = b;
             this.mNoOfParams++;
             return this;
         }
@@ -68,15 +116,16 @@ public class TlvBuffer {
         }
 
         public TlvBuffer.Builder putByteArray(int tagType, int length, byte[] bArray) {
-            addHeader(tagType, length);
-            this.mBuffer.put(bArray);
+            addHeader(tagType, length, bArray.length);
+            System.arraycopy(bArray, 0, mBuffer, mPosition, bArray.length);
+            mPosition += bArray.length;
             this.mNoOfParams++;
             return this;
         }
 
         public TlvBuffer.Builder putShort(int tagType, short data) {
             addHeader(tagType, Short.BYTES);
-            this.mBuffer.put(TlvUtil.getLeBytes(data));
+            putLittleEndian(data, Short.BYTES);
             this.mNoOfParams++;
             return this;
         }
@@ -89,7 +138,7 @@ public class TlvBuffer {
         public TlvBuffer.Builder putShortArray(int tagType, int length, short[] sArray) {
             addHeader(tagType, length * Short.BYTES);
             for (int i = 0; i < length; i++) {
-                this.mBuffer.put(TlvUtil.getLeBytes(sArray[i]));
+                putLittleEndian(sArray[i], Short.BYTES);
             }
             this.mNoOfParams++;
             return this;
@@ -97,26 +146,71 @@ public class TlvBuffer {
 
         public TlvBuffer.Builder putInt(int tagType, int data) {
             addHeader(tagType, Integer.BYTES);
-            this.mBuffer.put(TlvUtil.getLeBytes(data));
+            putLittleEndian(data, Integer.BYTES);
             this.mNoOfParams++;
             return this;
         }
 
         public TlvBuffer.Builder putLong(int tagType, long data) {
             addHeader(tagType, Long.BYTES);
-            this.mBuffer.put(TlvUtil.getLeBytes(data));
+            putLittleEndian(data, Long.BYTES);
             this.mNoOfParams++;
             return this;
         }
 
         public TlvBuffer build() {
-            return new TlvBuffer(Arrays.copyOf(this.mBuffer.array(), this.mBuffer.position()),
-                    this.mNoOfParams);
+            byte[] tlvArray = mBuffer == null
+                    ? new byte[0] : Arrays.copyOf(mBuffer, mPosition);
+            if (mIsScratchBuffer) {
+                recycleScratchBuffer(mBuffer, mPosition);
+                mIsScratchBuffer = false;
+            }
+            // Any value put after this grows into a new buffer, so the built array is never
+            // written to again.
+            mBuffer = tlvArray;
+            return new TlvBuffer(tlvArray, this.mNoOfParams);
         }
 
         private void addHeader(int tagType, int length) {
-            mBuffer.put(ConfigParam.getTagBytes(tagType));
-            mBuffer.put((byte) length);
+            addHeader(tagType, length, length);
+        }
+
+        /**
+         * Adds the header of a value of {@code length} bytes, and makes room for the
+         * {@code valueSize} bytes that will actually be written.
+         */
+        private void addHeader(int tagType, int length, int valueSize) {
+            if (length > MAX_VALUE_LENGTH) {
+                throw new IllegalArgumentException(
+                        "Value of tag " + tagType + " too long: " + length);
+            }
+            ensureCapacity(2 + valueSize);
+            // 1 byte tags, as ConfigParam#getTagBytes.
+            mBuffer[mPosition++] = (byte) tagType;
+            mBuffer[mPosition++] = (byte) length;
+        }
+
+        private void putLittleEndian(long data, int size) {
+            for (int i = 0; i < size; i++) {
+                mBuffer[mPosition++] = (byte) (data >> (8 * i));
+            }
+        }
+
+        private void ensureCapacity(int size) {
+            int minCapacity = mPosition + size;
+            if (mBuffer == null) {
+                mBuffer = obtainScratchBuffer(minCapacity);
+                mIsScratchBuffer = true;
+                return;
+            }
+            if (minCapacity <= mBuffer.length) return;
+            byte[] buffer = obtainScratchBuffer(Math.max(minCapacity, mBuffer.length * 2));
+            System.arraycopy(mBuffer, 0, buffer, 0, mPosition);
+            if (mIsScratchBuffer) {
+                recycleScratchBuffer(mBuffer, mPosition);
+            }
+            mBuffer = buffer;
+            mIsScratchBuffer = true;
         }
     }
 }
@@ -16,32 +16,35 @@
 
 package com.android.server.uwb.params;
 
-import android.annotation.Nullable;
-import android.util.ArrayMap;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
-import com.android.server.uwb.config.ConfigParam;
 import com.android.server.uwb.util.UwbUtil;
 
-import java.nio.BufferUnderflowException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 
 /***
  * This assumes little endian data and 1 byte tags. This is intended for handling UCI interface
  * data.
+ *
+ * <p>The values are read in place from the parsed array: {@link #parse()} only indexes where the
+ * value of each tag starts, and the getters of primitive types read them from there.
  * @see com.android.server.uwb.secure.iso7816.TlvParser
  */
 public class TlvDecoderBuffer {
     private static final String TAG = "TlvDecoderBuffer";
-    private final ByteBuffer mBuffer;
+    private static final int HEADER_LENGTH = 2;
+    private static final int MAX_TAGS = 256;
+    private final byte[] mTlvArray;
     private final int mNumParams;
-    private final Map<Byte, Tlv> mTlvs = new ArrayMap<>();
+    // Offset of the value of each tag in mTlvArray, indexed by tag. A value never starts before
+    // its header, so 0 means that the tag is not present.
+    private final int[] mValueOffsets = new int[MAX_TAGS];
+    private int mNumTlvs;
 
     @VisibleForTesting
     public static class Tlv {
@@ -79,13 +82,13 @@ public class TlvDecoderBuffer {
     }
 
     public TlvDecoderBuffer(byte[] tlvArray, int noOfParams) {
-        mBuffer = ByteBuffer.wrap(tlvArray);
+        mTlvArray = tlvArray;
         mNumParams = noOfParams;
     }
 
     @VisibleForTesting
     public byte[] getByteArray() {
-        return mBuffer.array();
+        return mTlvArray;
     }
 
     @VisibleForTesting
@@ -95,105 +98,106 @@ public class TlvDecoderBuffer {
 
     @VisibleForTesting
     public Collection<Tlv> getTlvs() {
-        return mTlvs.values();
+        List<Tlv> tlvs = new ArrayList<>(mNumTlvs);
+        for (int tag = 0; tag < MAX_TAGS; tag++) {
+            int offset = mValueOffsets[tag];
+            if (offset != 0) {
+                byte length = mTlvArray[offset - 1];
+                tlvs.add(new Tlv((byte) tag, length, getByteArray(tag)));
+            }
+        }
+        return tlvs;
     }
 
     public boolean parse() {
-        if (mBuffer.capacity() == 0) return false;
-        while (mBuffer.hasRemaining()) {
-            try {
-                byte tagType = mBuffer.get();
-                byte length = mBuffer.get();
-                byte[] value = new byte[length];
-                mBuffer.get(value);
-                Log.i(TAG, "Parsed TLV: " + new Tlv(tagType, length, value));
-                mTlvs.put(tagType, new Tlv(tagType, length, value));
-            } catch (BufferUnderflowException e) {
-                Log.e(TAG, "Failed to parse buffer at position: " + mBuffer.position(), e);
+        if (mTlvArray.length == 0) return false;
+        Arrays.fill(mValueOffsets, 0);
+        mNumTlvs = 0;
+        int offset = 0;
+        while (offset < mTlvArray.length) {
+            if (offset + HEADER_LENGTH > mTlvArray.length) {
+                Log.e(TAG, "Failed to parse buffer at position: " + mTlvArray.length);
                 return false;
             }
+            int tag = mTlvArray[offset] & 0xFF;
+            int valueOffset = offset + HEADER_LENGTH;
+            int end = valueOffset + (mTlvArray[offset + 1] & 0xFF);
+            if (end > mTlvArray.length) {
+                Log.e(TAG, "Failed to parse buffer at position: " + valueOffset);
+                return false;
+            }
+            if (mValueOffsets[tag] == 0) {
+                mNumTlvs++;
+            }
+            mValueOffsets[tag] = valueOffset;
+            offset = end;
         }
-        if (mNumParams != mTlvs.size()) {
-            Log.e(TAG, "Num TLVs parsed does not equal the num params, tlvs: " + mTlvs.size()
+        Log.i(TAG, "Parsed " + mNumTlvs + " TLVs: " + UwbUtil.toHexString(mTlvArray));
+        if (mNumParams != mNumTlvs) {
+            Log.e(TAG, "Num TLVs parsed does not equal the num params, tlvs: " + mNumTlvs
                     + ", num params: " + mNumParams);
             return false;
         }
         return true;
     }
 
-    @Nullable
-    private Tlv getTlv(int tagType) {
-        byte[] tagTypeByte = ConfigParam.getTagBytes(tagType);
-        if (tagTypeByte.length > 1) {
-            throw new IllegalArgumentException("Invalid tagType: " + Arrays.toString(tagTypeByte));
-        }
-        Tlv tlv = mTlvs.get(tagTypeByte[0]);
-        if (tlv == null) {
+    /** Returns whether the parsed TLVs contain {@code tagType}. */
+    public boolean hasTag(int tagType) {
+        return mValueOffsets[tagType & 0xFF] != 0;
+    }
+
+    /** Returns the length of the value of {@code tagType}. */
+    public int getLength(int tagType) {
+        return mTlvArray[getValueOffset(tagType) - 1] & 0xFF;
+    }
+
+    private int getValueOffset(int tagType) {
+        int offset = mValueOffsets[tagType & 0xFF];
+        if (offset == 0) {
             throw new IllegalArgumentException("Tag type: " + tagType + " not present");
         }
-        return tlv;
+        return offset;
     }
 
-    public Byte getByte(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Byte.BYTES) {
+    private int getValueOffset(int tagType, int expectedLength, String typeName) {
+        int offset = getValueOffset(tagType);
+        int length = mTlvArray[offset - 1] & 0xFF;
+        if (length != expectedLength) {
             throw new IllegalArgumentException(
-                    "Mismatch in value type, expected byte found len: " + tlv.length);
+                    "Mismatch in value type, expected " + typeName + " found len: " + length);
         }
-        try {
-            return ByteBuffer.wrap(tlv.value).get();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
+        return offset;
+    }
+
+    private long getLittleEndian(int offset, int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (mTlvArray[offset + i] & 0xFF);
         }
+        return value;
+    }
+
+    public Byte getByte(int tagType) {
+        return mTlvArray[getValueOffset(tagType, Byte.BYTES, "byte")];
     }
 
     public Short getShort(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Short.BYTES) {
-            throw new IllegalArgumentException(
-                    "Mismatch in value type, expected short found len: " + tlv.length);
-        }
-        try {
-            return ByteBuffer.wrap(tlv.value).order(ByteOrder.LITTLE_ENDIAN).getShort();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return (short) getLittleEndian(getValueOffset(tagType, Short.BYTES, "short"),
+                Short.BYTES);
     }
 
     public Integer getInt(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Integer.BYTES) {
-            throw new IllegalArgumentException(
-                    "Mismatch in value type, expected int found len: " + tlv.length);
-        }
-        try {
-            return ByteBuffer.wrap(tlv.value).order(ByteOrder.LITTLE_ENDIAN).getInt();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return (int) getLittleEndian(getValueOffset(tagType, Integer.BYTES, "int"),
+                Integer.BYTES);
     }
 
     public Long getLong(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Long.BYTES) {
-            throw new IllegalArgumentException(
-                    "Mismatch in value long, expected int found len: " + tlv.length);
-        }
-        try {
-            return ByteBuffer.wrap(tlv.value).order(ByteOrder.LITTLE_ENDIAN).getLong();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return getLittleEndian(getValueOffset(tagType, Long.BYTES, "long"), Long.BYTES);
     }
 
+    /** Returns a copy of the value of {@code tagType}. */
     public byte[] getByteArray(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        byte[] value = new byte[tlv.length];
-        try {
-            ByteBuffer.wrap(tlv.value).get(value);
-            return value;
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        int offset = getValueOffset(tagType);
+        return Arrays.copyOfRange(mTlvArray, offset, offset + (mTlvArray[offset - 1] & 0xFF));
     }
 }
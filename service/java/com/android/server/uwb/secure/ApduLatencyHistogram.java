@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.secure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the exchanges with the SE, one per APDU instruction (INS) plus one for
+ * opening the channel, so that the time spent setting up a secure session can be broken down.
+ *
+ * <p>Bucket {@code i} counts the exchanges which took less than {@code 2^i} ms, the last bucket
+ * counts the slower ones.
+ */
+@WorkerThread
+public class ApduLatencyHistogram {
+    @VisibleForTesting
+    static final int BUCKET_COUNT = 10;
+    private static final int OPEN_CHANNEL_INDEX = 256;
+
+    // Indexed by the unsigned INS, or OPEN_CHANNEL_INDEX. Null until the first exchange.
+    private final long[][] mBuckets = new long[OPEN_CHANNEL_INDEX + 1][];
+    private final long[] mTotalNanos = new long[OPEN_CHANNEL_INDEX + 1];
+
+    /** Records the latency of an APDU with the instruction {@code ins}. */
+    public void recordApdu(byte ins, long latencyNanos) {
+        record(ins & 0xFF, latencyNanos);
+    }
+
+    /** Records the latency of opening the channel to the FiRa applet. */
+    public void recordOpenChannel(long latencyNanos) {
+        record(OPEN_CHANNEL_INDEX, latencyNanos);
+    }
+
+    private void record(int index, long latencyNanos) {
+        if (mBuckets[index] == null) {
+            mBuckets[index] = new long[BUCKET_COUNT];
+        }
+        mBuckets[index][getBucket(latencyNanos)]++;
+        mTotalNanos[index] += latencyNanos;
+    }
+
+    @VisibleForTesting
+    static int getBucket(long latencyNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        int bucket = 0;
+        while (bucket < BUCKET_COUNT - 1 && millis >= (1L << bucket)) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /** Returns the number of APDUs recorded with the instruction {@code ins}. */
+    @VisibleForTesting
+    long getApduCount(byte ins) {
+        return getCount(ins & 0xFF);
+    }
+
+    @VisibleForTesting
+    long getOpenChannelCount() {
+        return getCount(OPEN_CHANNEL_INDEX);
+    }
+
+    private long getCount(int index) {
+        long count = 0;
+        if (mBuckets[index] != null) {
+            for (long bucketCount : mBuckets[index]) {
+                count += bucketCount;
+            }
+        }
+        return count;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ApduLatencyHistogram:");
+        for (int index = 0; index <= OPEN_CHANNEL_INDEX; index++) {
+            if (mBuckets[index] == null) continue;
+            sb.append(index == OPEN_CHANNEL_INDEX
+                    ? " [open channel" : String.format(" [INS %02X", index));
+            sb.append(" n=").append(getCount(index))
+                    .append(" totalMs=").append(TimeUnit.NANOSECONDS.toMillis(mTotalNanos[index]));
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                long bucketCount = mBuckets[index][bucket];
+                if (bucketCount == 0) continue;
+                sb.append(bucket < BUCKET_COUNT - 1 ? " <" : " >=")
+                        .append(1L << (bucket < BUCKET_COUNT - 1 ? bucket : bucket - 1))
+                        .append("ms:").append(bucketCount);
+            }
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+}
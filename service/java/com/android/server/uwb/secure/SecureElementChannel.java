@@ -34,19 +34,23 @@ import com.android.server.uwb.secure.omapi.OmapiConnection.InitCompletionCallbac
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Random;
 
 /** Manages the Secure Element and allows communications with the FiRa applet. */
 @WorkerThread
 public class SecureElementChannel {
     private static final String LOG_TAG = "SecureElementChannel";
     private static final int MAX_SE_OPERATION_RETRIES = 3;
-    private static final int DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS = 10;
+    private static final int INITIAL_RETRY_DELAY_MILLIS = 10;
+    private static final int MAX_RETRY_DELAY_MILLIS = 80;
 
     private static final StatusWord SW_TEMPORARILY_UNAVAILABLE =
             StatusWord.SW_CONDITIONS_NOT_SATISFIED;
 
     private final OmapiConnection mOmapiConnection;
     private final boolean mRemoveDelayBetweenRetriesForTest;
+    private final Random mRandom = new Random();
+    private final ApduLatencyHistogram mApduLatencyHistogram = new ApduLatencyHistogram();
 
     private boolean mIsOpened = false;
 
@@ -98,7 +102,12 @@ public class SecureElementChannel {
     public ResponseApdu openChannelWithResponse() throws IOException {
         ResponseApdu responseApdu = ResponseApdu.fromStatusWord(SW_TEMPORARILY_UNAVAILABLE);
         for (int i = 0; i < MAX_SE_OPERATION_RETRIES; i++) {
+            if (i > 0) {
+                threadSleep(getRetryDelayMillis(i - 1, mRandom));
+            }
+            long startNanos = System.nanoTime();
             responseApdu = mOmapiConnection.openChannel();
+            mApduLatencyHistogram.recordOpenChannel(System.nanoTime() - startNanos);
 
             if (!shouldRetryOpenChannel(responseApdu)) {
                 break;
@@ -108,8 +117,6 @@ public class SecureElementChannel {
                     "Open channel failed because SE is temporarily unavailable. "
                             + "Total attempts so far: "
                             + (i + 1));
-
-            threadSleep(DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS);
         }
 
         if (responseApdu.getStatusWord() == StatusWord.SW_NO_ERROR.toInt()) {
@@ -144,6 +151,7 @@ public class SecureElementChannel {
             return false;
         }
         mIsOpened = false;
+        logi(mApduLatencyHistogram.toString());
         return true;
     }
 
@@ -166,7 +174,12 @@ public class SecureElementChannel {
             return responseApdu;
         }
         for (int i = 0; i < MAX_SE_OPERATION_RETRIES; i++) {
+            if (i > 0) {
+                threadSleep(getRetryDelayMillis(i - 1, mRandom));
+            }
+            long startNanos = System.nanoTime();
             responseApdu = mOmapiConnection.transmit(command);
+            mApduLatencyHistogram.recordApdu(command.getIns(), System.nanoTime() - startNanos);
             if (responseApdu.getStatusWord() != SW_TEMPORARILY_UNAVAILABLE.toInt()) {
                 return responseApdu;
             }
@@ -174,12 +187,29 @@ public class SecureElementChannel {
                     "Transmit failed because SE is temporarily unavailable. "
                             + "Total attempts so far: "
                             + (i + 1));
-            threadSleep(DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS);
         }
         logw("All transmit attempts for SE failed!");
         return responseApdu;
     }
 
+    /**
+     * Gets the delay before the retry following the failed attempt {@code attempt}, counted from
+     * 0. The delay doubles with each attempt up to {@link #MAX_RETRY_DELAY_MILLIS}, and a random
+     * part of up to half of it is taken off, so that retries from several sessions spread out.
+     */
+    @VisibleForTesting
+    static long getRetryDelayMillis(int attempt, @NonNull Random random) {
+        long delayMillis = Math.min((long) INITIAL_RETRY_DELAY_MILLIS << Math.min(attempt, 16),
+                MAX_RETRY_DELAY_MILLIS);
+        return delayMillis - random.nextInt((int) (delayMillis / 2) + 1);
+    }
+
+    @VisibleForTesting
+    @NonNull
+    ApduLatencyHistogram getApduLatencyHistogram() {
+        return mApduLatencyHistogram;
+    }
+
     private void threadSleep(long millis) {
         if (!mRemoveDelayBetweenRetriesForTest) {
             try {
@@ -190,6 +220,10 @@ public class SecureElementChannel {
         }
     }
 
+    private void logi(String dbgMsg) {
+        Log.i(LOG_TAG, dbgMsg);
+    }
+
     private void logw(String dbgMsg) {
         Log.w(LOG_TAG, dbgMsg);
     }
@@ -66,16 +66,7 @@ public class ControleeInfo {
     }
 
     private static boolean isPresent(TlvDecoderBuffer tlvDecoderBuffer, int tagType) {
-        try {
-            tlvDecoderBuffer.getByte(tagType);
-        } catch (IllegalArgumentException e) {
-            try {
-                tlvDecoderBuffer.getByteArray(tagType);
-            } catch (IllegalArgumentException e1) {
-                return false;
-            }
-        }
-        return true;
+        return tlvDecoderBuffer.hasTag(tagType);
     }
 
     /**
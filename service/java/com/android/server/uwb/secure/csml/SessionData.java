@@ -90,16 +90,7 @@ public class SessionData {
     }
 
     private static boolean isPresent(TlvDecoderBuffer tlvDecoderBuffer, int tagType) {
-        try {
-            tlvDecoderBuffer.getByte(tagType);
-        } catch (IllegalArgumentException e) {
-            try {
-                tlvDecoderBuffer.getByteArray(tagType);
-            } catch (IllegalArgumentException e1) {
-                return false;
-            }
-        }
-        return true;
+        return tlvDecoderBuffer.hasTag(tagType);
     }
 
     /** Converts {@link SessionData} from the TLV data payload. */
@@ -336,16 +336,7 @@ public class UwbCapability {
     }
 
     private static boolean isPresent(TlvDecoderBuffer tlvDecoderBuffer, int tagType) {
-        try {
-            tlvDecoderBuffer.getByte(tagType);
-        } catch (IllegalArgumentException e) {
-            try {
-                tlvDecoderBuffer.getByteArray(tagType);
-            } catch (IllegalArgumentException e1) {
-                return false;
-            }
-        }
-        return true;
+        return tlvDecoderBuffer.hasTag(tagType);
     }
 
     private static byte getRangingMethod(@NonNull FiraSpecificationParams firaSpecificationParams) {
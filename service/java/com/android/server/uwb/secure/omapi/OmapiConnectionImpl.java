@@ -46,6 +46,11 @@ import java.util.concurrent.Executor;
 public class OmapiConnectionImpl implements OmapiConnection {
     private static final String LOG_TAG = "OmapiConnectionImpl";
 
+    // Name of the reader the FiRa applet was last selected on. A connection is made for each
+    // secure session, this lets the later ones skip selecting the applet on every reader to find
+    // it. Cleared when selecting the applet on that reader fails.
+    @Nullable private static volatile String sFiRaAppletReaderName;
+
     private final Context mContext;
     private final Executor mSyncExecutor = (runnable) -> runnable.run();
 
@@ -176,6 +181,7 @@ public class OmapiConnectionImpl implements OmapiConnection {
                 mChannel = session.openLogicalChannel(FIRA_APPLET_AID);
             } catch (SecurityException | NoSuchElementException | UnsupportedOperationException e) {
                 logw("Exception trying to talk to DCK Applet");
+                clearFiRaAppletReaderNameIfCurrent();
                 throw new IOException(e);
             }
             logi("Logical channel opened for AID: "
@@ -187,13 +193,29 @@ public class OmapiConnectionImpl implements OmapiConnection {
         }
 
         if (response == null || response.length == 0) {
+            clearFiRaAppletReaderNameIfCurrent();
             throw new IOException("Null response received from channel open.");
         }
 
         ResponseApdu responseApdu = ResponseApdu.fromResponse(response);
+        if (responseApdu.getStatusWord() != SW_NO_ERROR.toInt()) {
+            clearFiRaAppletReaderNameIfCurrent();
+        }
         return responseApdu;
     }
 
+    private void clearFiRaAppletReaderNameIfCurrent() {
+        if (mReader != null && mReader.getName().equals(sFiRaAppletReaderName)) {
+            logi("Forgetting the FiRa applet reader: " + sFiRaAppletReaderName);
+            sFiRaAppletReaderName = null;
+        }
+    }
+
+    @VisibleForTesting
+    static void clearFiRaAppletReaderName() {
+        sFiRaAppletReaderName = null;
+    }
+
     @Nullable
     private Session getSession() throws IOException {
         if (mSession == null) {
@@ -215,14 +237,27 @@ public class OmapiConnectionImpl implements OmapiConnection {
             if (seService == null) {
                 logw("SEService not connected. Cannot get Reader without SEService.");
             } else {
-                for (Reader r : seService.getReaders()) {
-                    if (r.getName().startsWith("eSE")) {
-                        if (checkFiRaAppletPresence(r)) {
+                Reader[] readers = seService.getReaders();
+                String fiRaAppletReaderName = sFiRaAppletReaderName;
+                if (fiRaAppletReaderName != null) {
+                    for (Reader r : readers) {
+                        if (r.getName().equals(fiRaAppletReaderName)) {
                             mReader = r;
                             break;
                         }
                     }
                 }
+                if (mReader == null) {
+                    for (Reader r : readers) {
+                        if (r.getName().startsWith("eSE")) {
+                            if (checkFiRaAppletPresence(r)) {
+                                mReader = r;
+                                sFiRaAppletReaderName = r.getName();
+                                break;
+                            }
+                        }
+                    }
+                }
                 if (mReader == null) {
                     logw("Unable to find or select applet.");
                     throw new IOException("FiRa applet not found");
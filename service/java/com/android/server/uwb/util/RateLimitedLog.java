@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.util;
+
+import android.annotation.NonNull;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rate limited logging for the hot paths of the UWB service, such as the data packets and the
+ * ranging results, which also keeps the last logged messages for dumpsys.
+ *
+ * <p>Callers check {@link #isLoggable} before formatting the message, so a message which is
+ * suppressed costs no string building:
+ * <pre>
+ * if (mLog.isLoggable("onDataReceived")) {
+ *     mLog.d(TAG, "onDataReceived", "onDataReceived(): " + UwbUtil.toHexString(data));
+ * }
+ * </pre>
+ * Each key may log {@code maxMessagesPerWindow} messages per window, the count of messages
+ * suppressed in between is appended to the next one logged.
+ */
+public class RateLimitedLog {
+    private final String mName;
+    private final int mMaxMessagesPerWindow;
+    private final long mWindowMs;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final Map<String, KeyState> mKeyStates = new HashMap<>();
+    @GuardedBy("mLock")
+    private final long[] mRingTimesMs;
+    @GuardedBy("mLock")
+    private final String[] mRingMessages;
+    @GuardedBy("mLock")
+    private int mRingNext;
+    @GuardedBy("mLock")
+    private int mRingCount;
+    @GuardedBy("mLock")
+    private long mSuppressedCount;
+
+    private static class KeyState {
+        long mWindowStartMs;
+        int mMessagesInWindow;
+        int mSuppressedSinceLogged;
+    }
+
+    /**
+     * Creates a RateLimitedLog.
+     * @param name name printed in the dump
+     * @param maxMessagesPerWindow messages which may be logged per key in each window
+     * @param windowMs length of the window
+     * @param ringBufferSize number of last logged messages kept for the dump
+     */
+    public RateLimitedLog(@NonNull String name, int maxMessagesPerWindow, long windowMs,
+            int ringBufferSize) {
+        mName = name;
+        mMaxMessagesPerWindow = maxMessagesPerWindow;
+        mWindowMs = windowMs;
+        mRingTimesMs = new long[ringBufferSize];
+        mRingMessages = new String[ringBufferSize];
+    }
+
+    /**
+     * Returns whether a message for {@code key} may be logged now. If so, the caller must log it
+     * with {@link #d} or {@link #i}, otherwise it is counted as suppressed.
+     */
+    public boolean isLoggable(@NonNull String key) {
+        return isLoggable(key, SystemClock.elapsedRealtime());
+    }
+
+    @VisibleForTesting
+    boolean isLoggable(@NonNull String key, long nowMs) {
+        synchronized (mLock) {
+            KeyState state = mKeyStates.get(key);
+            if (state == null) {
+                state = new KeyState();
+                state.mWindowStartMs = nowMs;
+                mKeyStates.put(key, state);
+            } else if (nowMs - state.mWindowStartMs >= mWindowMs) {
+                state.mWindowStartMs = nowMs;
+                state.mMessagesInWindow = 0;
+            }
+            if (state.mMessagesInWindow >= mMaxMessagesPerWindow) {
+                state.mSuppressedSinceLogged++;
+                mSuppressedCount++;
+                return false;
+            }
+            state.mMessagesInWindow++;
+            return true;
+        }
+    }
+
+    /** Logs a debug message for {@code key}, after {@link #isLoggable} returned true. */
+    public void d(@NonNull String tag, @NonNull String key, @NonNull String message) {
+        Log.d(tag, record(tag, key, message, SystemClock.elapsedRealtime()));
+    }
+
+    /** Logs an info message for {@code key}, after {@link #isLoggable} returned true. */
+    public void i(@NonNull String tag, @NonNull String key, @NonNull String message) {
+        Log.i(tag, record(tag, key, message, SystemClock.elapsedRealtime()));
+    }
+
+    /** Adds the message to the ring buffer, and returns it with the suppressed count if any. */
+    @VisibleForTesting
+    String record(String tag, String key, String message, long nowMs) {
+        synchronized (mLock) {
+            KeyState state = mKeyStates.get(key);
+            if (state != null && state.mSuppressedSinceLogged > 0) {
+                message = message + " (" + state.mSuppressedSinceLogged + " suppressed)";
+                state.mSuppressedSinceLogged = 0;
+            }
+            if (mRingMessages.length > 0) {
+                mRingTimesMs[mRingNext] = nowMs;
+                mRingMessages[mRingNext] = tag + ": " + message;
+                mRingNext = (mRingNext + 1) % mRingMessages.length;
+                mRingCount = Math.min(mRingCount + 1, mRingMessages.length);
+            }
+            return message;
+        }
+    }
+
+    @VisibleForTesting
+    long getSuppressedCount() {
+        synchronized (mLock) {
+            return mSuppressedCount;
+        }
+    }
+
+    /** Dumps the last logged messages, oldest first. */
+    public void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println(mName + " log: suppressed=" + mSuppressedCount
+                    + " last " + mRingCount + " messages:");
+            int index = (mRingNext - mRingCount + mRingMessages.length)
+                    % Math.max(mRingMessages.length, 1);
+            for (int i = 0; i < mRingCount; i++) {
+                pw.println("  " + mRingTimesMs[index] + "ms " + mRingMessages[index]);
+                index = (index + 1) % mRingMessages.length;
+            }
+        }
+    }
+}
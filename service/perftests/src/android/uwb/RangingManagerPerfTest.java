@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.uwb;
+
+import android.content.AttributionSource;
+import android.os.PersistableBundle;
+import android.os.Process;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Benchmarks for the delivery of ranging results through {@link RangingManager}. Each iteration
+ * delivers one result to one session while other threads deliver results to the other sessions
+ * of the same manager, as happens for an app with several concurrent sessions.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class RangingManagerPerfTest {
+    private static final int MAX_BACKGROUND_THREADS = 4;
+    private static final AttributionSource ATTRIBUTION_SOURCE =
+            new AttributionSource.Builder(Process.myUid()).setPackageName("android.uwb").build();
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    /** Records the handles of the opened sessions instead of talking to the service. */
+    private static class FakeAdapter extends IUwbAdapter.Default {
+        final List<SessionHandle> mSessionHandles = new ArrayList<>();
+
+        @Override
+        public void openRanging(AttributionSource attributionSource, SessionHandle sessionHandle,
+                IUwbRangingCallbacks rangingCallbacks, PersistableBundle parameters,
+                String chipId) {
+            mSessionHandles.add(sessionHandle);
+        }
+    }
+
+    private static class NoOpCallback implements RangingSession.Callback {
+        @Override
+        public void onOpened(RangingSession session) {}
+
+        @Override
+        public void onOpenFailed(int reason, PersistableBundle params) {}
+
+        @Override
+        public void onStarted(PersistableBundle sessionInfo) {}
+
+        @Override
+        public void onStartFailed(int reason, PersistableBundle params) {}
+
+        @Override
+        public void onReconfigured(PersistableBundle params) {}
+
+        @Override
+        public void onReconfigureFailed(int reason, PersistableBundle params) {}
+
+        @Override
+        public void onStopped(int reason, PersistableBundle params) {}
+
+        @Override
+        public void onStopFailed(int reason, PersistableBundle params) {}
+
+        @Override
+        public void onClosed(int reason, PersistableBundle parameters) {}
+
+        @Override
+        public void onReportReceived(RangingReport rangingReport) {}
+    }
+
+    private void runResultDelivery(int sessionCount) throws InterruptedException {
+        FakeAdapter adapter = new FakeAdapter();
+        RangingManager rangingManager = new RangingManager(adapter);
+        for (int i = 0; i < sessionCount; i++) {
+            rangingManager.openSession(ATTRIBUTION_SOURCE, new PersistableBundle(),
+                    DIRECT_EXECUTOR, new NoOpCallback(), /* chipId= */ null);
+        }
+        List<SessionHandle> handles = adapter.mSessionHandles;
+        for (SessionHandle handle : handles) {
+            rangingManager.onRangingOpened(handle);
+        }
+        RangingReport report = new RangingReport.Builder().build();
+
+        // The other sessions are shared among the background threads.
+        int threadCount = Math.min(sessionCount - 1, MAX_BACKGROUND_THREADS);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int firstSession = t + 1;
+            final int step = threadCount;
+            Thread thread = new Thread(() -> {
+                int i = firstSession;
+                while (!Thread.currentThread().isInterrupted()) {
+                    rangingManager.onRangingResult(handles.get(i), report);
+                    i += step;
+                    if (i >= sessionCount) {
+                        i = firstSession;
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        SessionHandle measuredHandle = handles.get(0);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            rangingManager.onRangingResult(measuredHandle, report);
+        }
+
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Test
+    public void onRangingResult_1Session() throws InterruptedException {
+        runResultDelivery(1);
+    }
+
+    @Test
+    public void onRangingResult_8Sessions() throws InterruptedException {
+        runResultDelivery(8);
+    }
+
+    @Test
+    public void onRangingResult_32Sessions() throws InterruptedException {
+        runResultDelivery(32);
+    }
+}
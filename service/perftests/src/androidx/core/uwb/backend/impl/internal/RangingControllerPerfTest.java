@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.core.uwb.backend.impl.internal;
+
+import static androidx.core.uwb.backend.impl.internal.Utils.CONFIG_MULTICAST_DS_TWR;
+import static androidx.core.uwb.backend.impl.internal.Utils.DURATION_2_MS;
+import static androidx.core.uwb.backend.impl.internal.Utils.INFREQUENT;
+import static androidx.core.uwb.backend.impl.internal.Utils.RANGE_DATA_NTF_ENABLE_PROXIMITY_LEVEL_TRIG;
+
+import android.content.AttributionSource;
+import android.os.PersistableBundle;
+import android.os.RemoteException;
+import android.uwb.DistanceMeasurement;
+import android.uwb.IUwbAdapter;
+import android.uwb.IUwbRangingCallbacks;
+import android.uwb.RangingMeasurement;
+import android.uwb.RangingReport;
+import android.uwb.RangingSession;
+import android.uwb.SessionHandle;
+import android.uwb.UwbManager;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Benchmarks for the matching of ranging measurements to their peer in the androidx backend. Each
+ * iteration delivers a report with one measurement, from each peer of the session in turn, so
+ * results are per measurement.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class RangingControllerPerfTest {
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    /** Opens and starts sessions as soon as asked, instead of talking to the service. */
+    private static class FakeAdapter extends IUwbAdapter.Default {
+        private IUwbRangingCallbacks mRangingCallbacks;
+
+        @Override
+        public List<PersistableBundle> getChipInfos() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void openRanging(AttributionSource attributionSource, SessionHandle sessionHandle,
+                IUwbRangingCallbacks rangingCallbacks, PersistableBundle parameters,
+                String chipId) throws RemoteException {
+            mRangingCallbacks = rangingCallbacks;
+            rangingCallbacks.onRangingOpened(sessionHandle);
+        }
+
+        @Override
+        public void startRanging(SessionHandle sessionHandle, PersistableBundle parameters)
+                throws RemoteException {
+            mRangingCallbacks.onRangingStarted(sessionHandle, parameters);
+        }
+    }
+
+    private static class NoOpCallback implements RangingSessionCallback {
+        @Override
+        public void onRangingInitialized(UwbDevice device) {}
+
+        @Override
+        public void onRangingResult(UwbDevice device, RangingPosition position) {}
+
+        @Override
+        public void onRangingSuspended(UwbDevice device, int reason) {}
+    }
+
+    private static RangingReport createRangingReport(android.uwb.UwbAddress peerAddress) {
+        return new RangingReport.Builder()
+                .addMeasurement(
+                        new RangingMeasurement.Builder()
+                                .setRemoteDeviceAddress(peerAddress)
+                                .setStatus(RangingMeasurement.RANGING_STATUS_SUCCESS)
+                                .setElapsedRealtimeNanos(1000)
+                                .setRangingMeasurementMetadata(new PersistableBundle())
+                                .setDistanceMeasurement(
+                                        new DistanceMeasurement.Builder()
+                                                .setMeters(1.0)
+                                                .setErrorMeters(0.1)
+                                                .setConfidenceLevel(1.0)
+                                                .build())
+                                .build())
+                .build();
+    }
+
+    private void runReportDelivery(int peerCount) {
+        UwbFeatureFlags uwbFeatureFlags = new UwbFeatureFlags.Builder().build();
+        RangingController rangingController = new RangingController(
+                new UwbManager(InstrumentationRegistry.getInstrumentation().getContext(),
+                        new FakeAdapter()),
+                DIRECT_EXECUTOR, new OpAsyncCallbackRunner<>(), uwbFeatureFlags);
+        rangingController.setLocalAddress(UwbAddress.fromShort((short) 0x7fff));
+        List<UwbAddress> peerAddresses = new ArrayList<>();
+        for (int i = 1; i <= peerCount; i++) {
+            peerAddresses.add(UwbAddress.fromShort((short) i));
+        }
+        rangingController.setRangingParameters(new RangingParameters(
+                CONFIG_MULTICAST_DS_TWR,
+                1,
+                0,
+                new byte[]{1, 2},
+                new byte[]{1, 2},
+                new UwbComplexChannel(Utils.channelForTesting, Utils.preambleIndexForTesting),
+                peerAddresses,
+                INFREQUENT,
+                new UwbRangeDataNtfConfig.Builder()
+                        .setRangeDataConfigType(RANGE_DATA_NTF_ENABLE_PROXIMITY_LEVEL_TRIG)
+                        .setNtfProximityNear(100)
+                        .setNtfProximityFar(300)
+                        .build(),
+                DURATION_2_MS,
+                false));
+        RangingSessionCallback callback = new NoOpCallback();
+        rangingController.startRanging(callback, MoreExecutors.newDirectExecutorService());
+        if (!rangingController.isRanging()) {
+            throw new IllegalStateException("Ranging didn't start");
+        }
+
+        // Delivered like the system API does, without the binder and session layers.
+        RangingSession.Callback systemCallback = rangingController.convertCallback(callback);
+        List<RangingReport> reports = new ArrayList<>();
+        for (UwbAddress peerAddress : peerAddresses) {
+            reports.add(createRangingReport(Conversions.convertUwbAddress(
+                    peerAddress, uwbFeatureFlags.isReversedByteOrderFiraParams())));
+        }
+
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            systemCallback.onReportReceived(reports.get(i));
+            i = (i + 1) % peerCount;
+        }
+    }
+
+    @Test
+    public void onReportReceived_1Peer() {
+        runReportDelivery(1);
+    }
+
+    @Test
+    public void onReportReceived_8Peers() {
+        runReportDelivery(8);
+    }
+
+    @Test
+    public void onReportReceived_64Peers() {
+        runReportDelivery(64);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.uwb.support.fira.FiraParams.MULTI_NODE_MODE_UNICAST;
+import static com.google.uwb.support.fira.FiraParams.PROTOCOL_VERSION_2_0;
+import static com.google.uwb.support.fira.FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_LEVEL_TRIG;
+import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_ROLE_INITIATOR;
+import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_TYPE_CONTROLLER;
+import static com.google.uwb.support.fira.FiraParams.RANGING_ROUND_USAGE_DS_TWR_DEFERRED_MODE;
+import static com.google.uwb.support.fira.FiraParams.SESSION_TYPE_RANGING;
+import static com.google.uwb.support.fira.FiraParams.STS_CONFIG_PROVISIONED;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.uwb.UwbAddress;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.server.uwb.params.FiraEncoder;
+
+import com.google.uwb.support.fira.FiraOpenSessionParams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Benchmarks for encoding the app configs of a FiRa session, with and without
+ * {@link SessionConfigTemplateCache}. Each iteration encodes the params of a session that only
+ * differs from the previous one by its session ID and session key, as for an app that keeps
+ * reopening the same session.
+ *
+ * <p>The injector is a mock, so the encoder benchmarks include two mocked calls per iteration.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class SessionConfigTemplateCachePerfTest {
+    private static final int SESSION_COUNT = 16;
+    private static final int MAX_TEMPLATES = 8;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private FiraEncoder mEncoder;
+    private final FiraOpenSessionParams[] mSessionParams =
+            new FiraOpenSessionParams[SESSION_COUNT];
+
+    @Before
+    public void setUp() {
+        UwbInjector uwbInjector = mock(UwbInjector.class);
+        DeviceConfigFacade deviceConfigFacade = mock(DeviceConfigFacade.class);
+        when(uwbInjector.getDeviceConfigFacade()).thenReturn(deviceConfigFacade);
+        mEncoder = new FiraEncoder(uwbInjector);
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            byte[] sessionKey = new byte[16];
+            Arrays.fill(sessionKey, (byte) i);
+            mSessionParams[i] = new FiraOpenSessionParams.Builder()
+                    .setProtocolVersion(PROTOCOL_VERSION_2_0)
+                    .setSessionId(i + 1)
+                    .setSessionType(SESSION_TYPE_RANGING)
+                    .setDeviceType(RANGING_DEVICE_TYPE_CONTROLLER)
+                    .setDeviceRole(RANGING_DEVICE_ROLE_INITIATOR)
+                    .setDeviceAddress(UwbAddress.fromBytes(new byte[] {0x4, 0x6}))
+                    .setDestAddressList(
+                            Arrays.asList(UwbAddress.fromBytes(new byte[] {0x5, 0x7})))
+                    .setMultiNodeMode(MULTI_NODE_MODE_UNICAST)
+                    .setRangingRoundUsage(RANGING_ROUND_USAGE_DS_TWR_DEFERRED_MODE)
+                    .setRangeDataNtfConfig(RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_LEVEL_TRIG)
+                    .setRangeDataNtfAoaAzimuthLower(-1.5)
+                    .setRangeDataNtfAoaAzimuthUpper(2.5)
+                    .setStsConfig(STS_CONFIG_PROVISIONED)
+                    .setSessionKey(sessionKey)
+                    .build();
+        }
+    }
+
+    @Test
+    public void encode_withoutTemplates() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mEncoder.getTlvBuffer(mSessionParams[i], PROTOCOL_VERSION_2_0);
+            i = (i + 1) % SESSION_COUNT;
+        }
+    }
+
+    @Test
+    public void encode_withTemplates() {
+        SessionConfigTemplateCache cache = new SessionConfigTemplateCache();
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            cache.getTlvBuffer(mEncoder, mSessionParams[i], PROTOCOL_VERSION_2_0,
+                    /* antennaModeConfigSupported= */ false, MAX_TEMPLATES);
+            i = (i + 1) % SESSION_COUNT;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.correction;
+
+import static java.lang.Math.toRadians;
+
+import androidx.annotation.NonNull;
+
+import com.android.server.uwb.correction.math.Pose;
+import com.android.server.uwb.correction.math.Quaternion;
+import com.android.server.uwb.correction.math.SphericalVector;
+import com.android.server.uwb.correction.math.Vector3;
+
+import java.util.Random;
+
+/**
+ * A reproducible sequence of UWB readings and device poses, replayed by the correction
+ * benchmarks. Everything is generated up front so that the benchmarks only measure the
+ * correction pipeline.
+ *
+ * <p>The traces are synthetic: no recorded capture of real sessions is checked in. They stand in
+ * for one by mimicking its shape, with noisy angles, readings missing elevation or everything,
+ * and a device that turns and moves. They exercise the same code paths, but results may differ
+ * from a replay of real hardware.
+ */
+public class MeasurementTrace {
+    /** Time between readings; a typical ranging interval. */
+    public static final int INTERVAL_MS = 200;
+
+    private static final float NOISE_RAD = (float) toRadians(5);
+    private static final float MISSING_ELEVATION_RATE = 0.2f;
+    private static final float BAD_READING_RATE = 0.02f;
+
+    @NonNull public final SphericalVector.Annotated[] readings;
+    @NonNull public final Pose[] poses;
+    @NonNull public final long[] timesMs;
+
+    private MeasurementTrace(int length) {
+        readings = new SphericalVector.Annotated[length];
+        poses = new Pose[length];
+        timesMs = new long[length];
+    }
+
+    /** Gets the number of readings in the trace. */
+    public int size() {
+        return readings.length;
+    }
+
+    /**
+     * Creates a trace of a tag walking around the device, with noisy readings. Some readings are
+     * missing elevation and a few are missing everything, as happens with real hardware.
+     *
+     * @param length The number of readings.
+     * @param seed The random seed, so runs can be compared.
+     * @param moving If true, the device turns and moves while ranging; otherwise its pose stays
+     *               at the identity.
+     * @return A new trace.
+     */
+    @NonNull
+    public static MeasurementTrace synthetic(int length, long seed, boolean moving) {
+        Random random = new Random(seed);
+        MeasurementTrace trace = new MeasurementTrace(length);
+        for (int i = 0; i < length; i++) {
+            float t = i / (float) length;
+            float azimuth = (float) (Math.PI * Math.sin(2 * Math.PI * t)) * 0.9f;
+            float elevation = (float) toRadians(20) * (float) Math.cos(6 * Math.PI * t);
+            float distance = 2f + (float) Math.sin(4 * Math.PI * t);
+
+            boolean bad = random.nextFloat() < BAD_READING_RATE;
+            boolean hasElevation = !bad && random.nextFloat() >= MISSING_ELEVATION_RATE;
+            SphericalVector.Annotated reading = SphericalVector.fromRadians(
+                    azimuth + (float) random.nextGaussian() * NOISE_RAD,
+                    elevation + (float) random.nextGaussian() * NOISE_RAD,
+                    distance + (float) random.nextGaussian() * 0.1f)
+                    .toAnnotated(!bad, hasElevation, !bad);
+            reading.azimuthFom = 0.5 + random.nextFloat() * 0.5;
+            reading.elevationFom = 0.5 + random.nextFloat() * 0.5;
+            trace.readings[i] = reading;
+
+            trace.poses[i] = moving
+                    ? new Pose(
+                            new Vector3(0.5f * t, 0, 0.1f * (float) Math.sin(8 * Math.PI * t)),
+                            Quaternion.yawPitchRoll(
+                                    (float) (2 * Math.PI * t),
+                                    (float) toRadians(10) * (float) Math.sin(10 * Math.PI * t),
+                                    0))
+                    : Pose.IDENTITY;
+            trace.timesMs[i] = (long) i * INTERVAL_MS;
+        }
+        return trace;
+    }
+}
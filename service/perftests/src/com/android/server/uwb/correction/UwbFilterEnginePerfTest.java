@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.correction;
+
+import static java.lang.Math.toRadians;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.server.uwb.correction.filtering.MedAvgFilter;
+import com.android.server.uwb.correction.filtering.MedAvgRotationFilter;
+import com.android.server.uwb.correction.filtering.PositionFilterImpl;
+import com.android.server.uwb.correction.math.Pose;
+import com.android.server.uwb.correction.math.SphericalVector;
+import com.android.server.uwb.correction.math.Vector3;
+import com.android.server.uwb.correction.pose.IPoseSource;
+import com.android.server.uwb.correction.pose.ScriptedPoseSource;
+import com.android.server.uwb.correction.pose.SharedPoseDelta;
+import com.android.server.uwb.correction.primers.AoaPrimer;
+import com.android.server.uwb.correction.primers.BackAzimuthPrimer;
+import com.android.server.uwb.correction.primers.ElevationPrimer;
+import com.android.server.uwb.correction.primers.FovPrimer;
+import com.android.server.uwb.correction.primers.IPrimer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks for the per-measurement UWB correction pipeline. Each iteration processes one
+ * reading from a {@link MeasurementTrace}, so results are per measurement. The benchmark runner
+ * reports the timing distribution and allocation count of each test.
+ *
+ * <p>The traces are generated by {@link MeasurementTrace#synthetic}, not recorded from real
+ * sessions.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class UwbFilterEnginePerfTest {
+    private static final int TRACE_LENGTH = 1000;
+    private static final long SEED = 42;
+    private static final int SESSION_CONTROLEES = 32;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final MeasurementTrace mStillTrace =
+            MeasurementTrace.synthetic(TRACE_LENGTH, SEED, false);
+    private final MeasurementTrace mMovingTrace =
+            MeasurementTrace.synthetic(TRACE_LENGTH, SEED, true);
+
+    /**
+     * Creates an engine configured like the default overlay configuration.
+     * See {@code UwbInjector#createFilterEngine}.
+     */
+    private static UwbFilterEngine createEngine(IPoseSource poseSource, boolean withPrimers) {
+        return createEngine(poseSource, null, withPrimers);
+    }
+
+    private static UwbFilterEngine createEngine(IPoseSource poseSource,
+            SharedPoseDelta sharedPoseDelta, boolean withPrimers) {
+        UwbFilterEngine.Builder builder = new UwbFilterEngine.Builder()
+                .setFilter(new PositionFilterImpl(
+                        new MedAvgRotationFilter(5, 0.5f),
+                        new MedAvgRotationFilter(5, 0.5f),
+                        new MedAvgFilter(3, 0f)));
+        if (poseSource != null) {
+            builder.setPoseSource(poseSource);
+            builder.setSharedPoseDelta(sharedPoseDelta);
+        }
+        if (withPrimers) {
+            builder.addPrimer(new ElevationPrimer())
+                    .addPrimer(new AoaPrimer())
+                    .addPrimer(new FovPrimer((float) toRadians(60)))
+                    .addPrimer(createBackAzimuthPrimer());
+        }
+        return builder.build();
+    }
+
+    private static BackAzimuthPrimer createBackAzimuthPrimer() {
+        return new BackAzimuthPrimer(
+                (float) toRadians(12),
+                (float) toRadians(10),
+                5,
+                true,
+                (float) toRadians(8),
+                0.08f);
+    }
+
+    private void runEngine(MeasurementTrace trace, boolean withPose, boolean withPrimers) {
+        ScriptedPoseSource poseSource = withPose ? new ScriptedPoseSource() : null;
+        UwbFilterEngine engine = createEngine(poseSource, withPrimers);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            if (poseSource != null) {
+                poseSource.setPose(trace.poses[i]);
+            }
+            engine.add(trace.readings[i], trace.timesMs[i]);
+            engine.compute(trace.timesMs[i]);
+            i = (i + 1) % trace.size();
+        }
+        engine.close();
+    }
+
+    @Test
+    public void engine_filterOnly() {
+        runEngine(mStillTrace, false, false);
+    }
+
+    @Test
+    public void engine_noPose() {
+        runEngine(mStillTrace, false, true);
+    }
+
+    @Test
+    public void engine_stillPose() {
+        runEngine(mStillTrace, true, true);
+    }
+
+    @Test
+    public void engine_movingPose() {
+        runEngine(mMovingTrace, true, true);
+    }
+
+    /**
+     * Measures a ranging round of a one-to-many session, in which the engines of all the
+     * controlees follow the same pose source. Results are per round, not per measurement.
+     */
+    private void runSession(boolean sharePoseDelta) {
+        MeasurementTrace trace = mMovingTrace;
+        ScriptedPoseSource poseSource = new ScriptedPoseSource();
+        SharedPoseDelta sharedPoseDelta = sharePoseDelta ? new SharedPoseDelta() : null;
+        UwbFilterEngine[] engines = new UwbFilterEngine[SESSION_CONTROLEES];
+        for (int c = 0; c < engines.length; c++) {
+            engines[c] = createEngine(poseSource, sharedPoseDelta, false);
+        }
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            poseSource.setPose(trace.poses[i]);
+            for (int c = 0; c < engines.length; c++) {
+                int reading = (i + c) % trace.size();
+                engines[c].add(trace.readings[reading], trace.timesMs[i]);
+                engines[c].compute(trace.timesMs[i]);
+            }
+            i = (i + 1) % trace.size();
+        }
+        for (UwbFilterEngine engine : engines) {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void session_perControleePoseDelta() {
+        runSession(false);
+    }
+
+    @Test
+    public void session_sharedPoseDelta() {
+        runSession(true);
+    }
+
+    private void runPrimer(IPrimer primer, boolean withPose) {
+        MeasurementTrace trace = withPose ? mMovingTrace : mStillTrace;
+        ScriptedPoseSource poseSource = withPose ? new ScriptedPoseSource() : null;
+        SphericalVector prediction = SphericalVector.fromRadians(0.1f, 0.1f, 2f);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            if (poseSource != null) {
+                poseSource.setPose(trace.poses[i]);
+            }
+            primer.prime(trace.readings[i], prediction, poseSource, trace.timesMs[i]);
+            i = (i + 1) % trace.size();
+        }
+    }
+
+    @Test
+    public void primer_aoa() {
+        runPrimer(new AoaPrimer(), false);
+    }
+
+    @Test
+    public void primer_elevation() {
+        runPrimer(new ElevationPrimer(), true);
+    }
+
+    @Test
+    public void primer_fov() {
+        runPrimer(new FovPrimer((float) toRadians(60)), false);
+    }
+
+    @Test
+    public void primer_backAzimuth() {
+        runPrimer(createBackAzimuthPrimer(), true);
+    }
+
+    /** Measures the filter history compensation done for every pose change. */
+    @Test
+    public void positionFilter_updatePose() {
+        MeasurementTrace trace = mMovingTrace;
+        ScriptedPoseSource poseSource = new ScriptedPoseSource();
+        PositionFilterImpl filter = new PositionFilterImpl(
+                new MedAvgRotationFilter(5, 0.5f),
+                new MedAvgRotationFilter(5, 0.5f),
+                new MedAvgFilter(3, 0f));
+        for (int i = 0; i < 5; i++) {
+            filter.add(trace.readings[i], trace.timesMs[i]);
+        }
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            poseSource.setPose(trace.poses[i]);
+            filter.updatePose(poseSource, trace.timesMs[i]);
+            i = (i + 1) % trace.size();
+        }
+    }
+
+    @Test
+    public void math_poseCompose() {
+        MeasurementTrace trace = mMovingTrace;
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            Pose.compose(trace.poses[i].inverted(), trace.poses[(i + 1) % trace.size()]);
+            i = (i + 1) % trace.size();
+        }
+    }
+
+    @Test
+    public void math_sphericalTransform() {
+        MeasurementTrace trace = mMovingTrace;
+        final BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            Vector3 point = trace.poses[i].transformPoint(trace.readings[i].toCartesian());
+            SphericalVector.fromCartesian(point);
+            i = (i + 1) % trace.size();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.correction.pose;
+
+import androidx.annotation.NonNull;
+
+import com.android.server.uwb.correction.math.Pose;
+
+import java.util.EnumSet;
+
+/**
+ * A pose source whose pose is set by the benchmark, so pose changes are replayed in step with
+ * UWB readings instead of arriving from sensors.
+ */
+public class ScriptedPoseSource extends PoseSourceBase {
+    @NonNull
+    @Override
+    public EnumSet<Capabilities> getCapabilities() {
+        return Capabilities.ALL;
+    }
+
+    @Override
+    protected void start() {
+    }
+
+    @Override
+    protected void stop() {
+    }
+
+    /**
+     * Publishes a new pose to all listeners.
+     * @param pose The new pose.
+     */
+    public void setPose(@NonNull Pose pose) {
+        publish(pose);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.params;
+
+import static com.google.uwb.support.fira.FiraParams.PROTOCOL_VERSION_2_0;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.server.uwb.DeviceConfigFacade;
+import com.android.server.uwb.UwbInjector;
+import com.android.server.uwb.util.UwbUtil;
+
+import com.google.uwb.support.ccc.CccSpecificationParams;
+import com.google.uwb.support.fira.FiraSpecificationParams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks for parsing and decoding the capability TLVs of a UWBS. The payloads are the FiRa
+ * 2.0 and CCC capabilities used by {@code FiraDecoderTest} and {@code CccDecoderTest}.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class TlvDecoderBufferPerfTest {
+    private static final byte[] FIRA_SPECIFICATION_TLV_DATA = UwbUtil.getByteArray(
+            "000120010110020401010102030401050103040101050203010602FF00070103080103090100"
+                    + "0A01000B01000C01010D01010E01090F010B1001031101011205030000000013010F"
+                    + "1401011501001601011801101901011A0100E30101E40401010101E50403000000"
+                    + "E601FFE70101E80401010101E90401000000");
+    private static final int FIRA_SPECIFICATION_TLV_NUM_PARAMS = 33;
+    private static final byte[] CCC_SPECIFICATION_TLV_DATA = UwbUtil.getByteArray(
+            "a00111a10400000082a20168a30103a4020102a50100a60112a7040a000000a80401000000"
+                    + "a90401000000");
+    private static final int CCC_SPECIFICATION_TLV_NUM_PARAMS = 10;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private FiraDecoder mFiraDecoder;
+    private CccDecoder mCccDecoder;
+
+    @Before
+    public void setUp() {
+        UwbInjector uwbInjector = mock(UwbInjector.class);
+        DeviceConfigFacade deviceConfigFacade = mock(DeviceConfigFacade.class);
+        when(uwbInjector.getDeviceConfigFacade()).thenReturn(deviceConfigFacade);
+        mFiraDecoder = new FiraDecoder(uwbInjector);
+        mCccDecoder = new CccDecoder(uwbInjector);
+    }
+
+    @Test
+    public void parse_firaSpecification() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            new TlvDecoderBuffer(FIRA_SPECIFICATION_TLV_DATA, FIRA_SPECIFICATION_TLV_NUM_PARAMS)
+                    .parse();
+        }
+    }
+
+    @Test
+    public void decode_firaSpecification() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            TlvDecoderBuffer tlvs = new TlvDecoderBuffer(
+                    FIRA_SPECIFICATION_TLV_DATA, FIRA_SPECIFICATION_TLV_NUM_PARAMS);
+            tlvs.parse();
+            mFiraDecoder.getParams(tlvs, FiraSpecificationParams.class, PROTOCOL_VERSION_2_0);
+        }
+    }
+
+    @Test
+    public void decode_cccSpecification() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            TlvDecoderBuffer tlvs = new TlvDecoderBuffer(
+                    CCC_SPECIFICATION_TLV_DATA, CCC_SPECIFICATION_TLV_NUM_PARAMS);
+            tlvs.parse();
+            mCccDecoder.getParams(tlvs, CccSpecificationParams.class, PROTOCOL_VERSION_2_0);
+        }
+    }
+}
@@ -154,6 +154,11 @@ public class FiraOpenSessionParams extends FiraParams {
     @Nullable private final int mReferenceSessionHandle;
     @Nullable private final int mSessionOffsetInMicroSeconds;
     private final int mApplicationDataEndpoint;
+    private final boolean mIsRawNtfDataReportingEnabled;
+    private final int mRangingReportBatchSize;
+    private final int mRangingReportBatchDelayMs;
+    @ReportDeliveryPolicy private final int mReportDeliveryPolicy;
+    private final int mMaxPendingReports;
 
     private static final int BUNDLE_VERSION_1 = 1;
     private static final int BUNDLE_VERSION_CURRENT = BUNDLE_VERSION_1;
@@ -265,6 +270,13 @@ public class FiraOpenSessionParams extends FiraParams {
     private static final String KEY_SESSION_OFFSET_IN_MICRO_SECONDS =
                 "session_offset_in_micro_seconds";
     private static final String KEY_APPLICATION_DATA_ENDPOINT = "application_data_endpoint";
+    private static final String KEY_IS_RAW_NTF_DATA_REPORTING_ENABLED =
+            "is_raw_ntf_data_reporting_enabled";
+    private static final String KEY_RANGING_REPORT_BATCH_SIZE = "ranging_report_batch_size";
+    private static final String KEY_RANGING_REPORT_BATCH_DELAY_MS = "ranging_report_batch_delay_ms";
+    // Read by android.uwb.RangingManager, the keys must match the ones of RangingSession.
+    private static final String KEY_REPORT_DELIVERY_POLICY = "report_delivery_policy";
+    private static final String KEY_MAX_PENDING_REPORTS = "max_pending_reports";
     private static final String KEY_ANTENNA_MODE = "antenna_mode";
 
     private FiraOpenSessionParams(
@@ -354,7 +366,12 @@ public class FiraOpenSessionParams extends FiraParams {
             int referenceTimeBase,
             int referenceSessionHandle,
             int sessionOffsetInMicroSecond,
-            int applicationDataEndpoint) {
+            int applicationDataEndpoint,
+            boolean isRawNtfDataReportingEnabled,
+            int rangingReportBatchSize,
+            int rangingReportBatchDelayMs,
+            @ReportDeliveryPolicy int reportDeliveryPolicy,
+            int maxPendingReports) {
         mProtocolVersion = protocolVersion;
         mSessionId = sessionId;
         mSessionType = sessionType;
@@ -442,6 +459,11 @@ public class FiraOpenSessionParams extends FiraParams {
         mReferenceSessionHandle = referenceSessionHandle;
         mSessionOffsetInMicroSeconds = sessionOffsetInMicroSecond;
         mApplicationDataEndpoint = applicationDataEndpoint;
+        mIsRawNtfDataReportingEnabled = isRawNtfDataReportingEnabled;
+        mRangingReportBatchSize = rangingReportBatchSize;
+        mRangingReportBatchDelayMs = rangingReportBatchDelayMs;
+        mReportDeliveryPolicy = reportDeliveryPolicy;
+        mMaxPendingReports = maxPendingReports;
     }
 
     @Override
@@ -824,6 +846,32 @@ public class FiraOpenSessionParams extends FiraParams {
         return mApplicationDataEndpoint;
     }
 
+    /** Returns true if the raw RANGE_DATA_NTF bytes are attached to each ranging report. */
+    public boolean isRawNtfDataReportingEnabled() {
+        return mIsRawNtfDataReportingEnabled;
+    }
+
+    /** Returns the maximum number of ranging reports delivered together. */
+    public int getRangingReportBatchSize() {
+        return mRangingReportBatchSize;
+    }
+
+    /** Returns how long a ranging report may be held back for batching, in ms. */
+    public int getRangingReportBatchDelayMs() {
+        return mRangingReportBatchDelayMs;
+    }
+
+    /** Returns how ranging reports are queued for the app's executor. */
+    @ReportDeliveryPolicy
+    public int getReportDeliveryPolicy() {
+        return mReportDeliveryPolicy;
+    }
+
+    /** Returns how many ranging reports may wait for the app's executor. */
+    public int getMaxPendingReports() {
+        return mMaxPendingReports;
+    }
+
     @Nullable
     private static int[] byteArrayToIntArray(@Nullable byte[] bytes) {
         if (bytes == null) {
@@ -968,6 +1016,30 @@ public class FiraOpenSessionParams extends FiraParams {
             bundle.putInt(KEY_SESSION_OFFSET_IN_MICRO_SECONDS, mSessionOffsetInMicroSeconds);
         }
         bundle.putInt(KEY_APPLICATION_DATA_ENDPOINT, mApplicationDataEndpoint);
+        bundle.putBoolean(KEY_IS_RAW_NTF_DATA_REPORTING_ENABLED, mIsRawNtfDataReportingEnabled);
+        bundle.putInt(KEY_RANGING_REPORT_BATCH_SIZE, mRangingReportBatchSize);
+        bundle.putInt(KEY_RANGING_REPORT_BATCH_DELAY_MS, mRangingReportBatchDelayMs);
+        bundle.putInt(KEY_REPORT_DELIVERY_POLICY, mReportDeliveryPolicy);
+        bundle.putInt(KEY_MAX_PENDING_REPORTS, mMaxPendingReports);
+        return bundle;
+    }
+
+    /**
+     * Gets a bundle of these params without the fields that usually differ between sessions
+     * opened with otherwise identical params: the session ID, the session and sub-session keys,
+     * the absolute initiation time and the reference session of the session time base. Only
+     * whether they are set, and the key lengths, are kept.
+     *
+     * <p>Two params with equal template bundles only differ in those fields.
+     */
+    public PersistableBundle toSessionTemplateBundle() {
+        PersistableBundle bundle = toBundle();
+        bundle.remove(KEY_SESSION_ID);
+        bundle.putInt(KEY_SESSION_KEY, mSessionKey != null ? mSessionKey.length : -1);
+        bundle.putInt(KEY_SUBSESSION_KEY, mSubSessionKey != null ? mSubSessionKey.length : -1);
+        bundle.putBoolean(KEY_ABSOLUTE_INITIATION_TIME_US, mAbsoluteInitiationTime > 0);
+        bundle.remove(KEY_REFERENCE_SESSION_HANDLE);
+        bundle.remove(KEY_SESSION_OFFSET_IN_MICRO_SECONDS);
         return bundle;
     }
 
@@ -1107,7 +1179,17 @@ public class FiraOpenSessionParams extends FiraParams {
                         bundle.getInt(KEY_REFERENCE_SESSION_HANDLE),
                         bundle.getInt(KEY_SESSION_OFFSET_IN_MICRO_SECONDS))
                 .setApplicationDataEndpoint(bundle.getInt(
-                        KEY_APPLICATION_DATA_ENDPOINT, APPLICATION_DATA_ENDPOINT_DEFAULT));
+                        KEY_APPLICATION_DATA_ENDPOINT, APPLICATION_DATA_ENDPOINT_DEFAULT))
+                .setIsRawNtfDataReportingEnabled(bundle.getBoolean(
+                        KEY_IS_RAW_NTF_DATA_REPORTING_ENABLED, false))
+                .setRangingReportBatchSize(bundle.getInt(
+                        KEY_RANGING_REPORT_BATCH_SIZE, RANGING_REPORT_BATCH_SIZE_DEFAULT))
+                .setRangingReportBatchDelayMs(bundle.getInt(
+                        KEY_RANGING_REPORT_BATCH_DELAY_MS, RANGING_REPORT_BATCH_DELAY_MS_DEFAULT))
+                .setReportDeliveryPolicy(bundle.getInt(
+                        KEY_REPORT_DELIVERY_POLICY, REPORT_DELIVERY_POLICY_ALL))
+                .setMaxPendingReports(bundle.getInt(
+                        KEY_MAX_PENDING_REPORTS, MAX_PENDING_REPORTS_DEFAULT));
 
         if (builder.isTimeScheduledTwrSession()) {
             long[] destAddresses = bundle.getLongArray(KEY_DEST_ADDRESS_LIST);
@@ -1381,6 +1463,16 @@ public class FiraOpenSessionParams extends FiraParams {
 
         private int mApplicationDataEndpoint = APPLICATION_DATA_ENDPOINT_DEFAULT;
 
+        private boolean mIsRawNtfDataReportingEnabled = false;
+
+        private int mRangingReportBatchSize = RANGING_REPORT_BATCH_SIZE_DEFAULT;
+
+        private int mRangingReportBatchDelayMs = RANGING_REPORT_BATCH_DELAY_MS_DEFAULT;
+
+        @ReportDeliveryPolicy private int mReportDeliveryPolicy = REPORT_DELIVERY_POLICY_ALL;
+
+        private int mMaxPendingReports = MAX_PENDING_REPORTS_DEFAULT;
+
         public Builder() {}
 
         public Builder(@NonNull Builder builder) {
@@ -1472,6 +1564,11 @@ public class FiraOpenSessionParams extends FiraParams {
             mReferenceSessionHandle = builder.mReferenceSessionHandle;
             mSessionOffsetInMicroSeconds = builder.mSessionOffsetInMicroSeconds;
             mApplicationDataEndpoint = builder.mApplicationDataEndpoint;
+            mIsRawNtfDataReportingEnabled = builder.mIsRawNtfDataReportingEnabled;
+            mRangingReportBatchSize = builder.mRangingReportBatchSize;
+            mRangingReportBatchDelayMs = builder.mRangingReportBatchDelayMs;
+            mReportDeliveryPolicy = builder.mReportDeliveryPolicy;
+            mMaxPendingReports = builder.mMaxPendingReports;
         }
 
         public Builder(@NonNull FiraOpenSessionParams params) {
@@ -1564,6 +1661,11 @@ public class FiraOpenSessionParams extends FiraParams {
             mReferenceSessionHandle = params.mReferenceSessionHandle;
             mSessionOffsetInMicroSeconds = params.mSessionOffsetInMicroSeconds;
             mApplicationDataEndpoint = params.mApplicationDataEndpoint;
+            mIsRawNtfDataReportingEnabled = params.mIsRawNtfDataReportingEnabled;
+            mRangingReportBatchSize = params.mRangingReportBatchSize;
+            mRangingReportBatchDelayMs = params.mRangingReportBatchDelayMs;
+            mReportDeliveryPolicy = params.mReportDeliveryPolicy;
+            mMaxPendingReports = params.mMaxPendingReports;
         }
 
         public FiraOpenSessionParams.Builder setProtocolVersion(FiraProtocolVersion version) {
@@ -2072,6 +2174,63 @@ public class FiraOpenSessionParams extends FiraParams {
             return this;
         }
 
+        /**
+         * Sets whether the raw RANGE_DATA_NTF bytes are attached to each ranging report metadata.
+         * Defaults to false, since copying the notification for every report is costly at high
+         * ranging rates.
+         */
+        public FiraOpenSessionParams.Builder setIsRawNtfDataReportingEnabled(
+                boolean isRawNtfDataReportingEnabled) {
+            mIsRawNtfDataReportingEnabled = isRawNtfDataReportingEnabled;
+            return this;
+        }
+
+        /**
+         * Sets how many ranging reports may be delivered to the app in a single callback delivery,
+         * between 1 and {@link #RANGING_REPORT_BATCH_SIZE_MAX}. Defaults to 1, which delivers
+         * every report as soon as it arrives. Pending reports are always delivered before the
+         * session is stopped or closed.
+         */
+        public FiraOpenSessionParams.Builder setRangingReportBatchSize(
+                int rangingReportBatchSize) {
+            mRangingReportBatchSize = rangingReportBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the longest time, in ms, that a ranging report may be held back while a batch is
+         * filled. Only used when the batch size is above 1, and must then be positive. Defaults to
+         * {@link #RANGING_REPORT_BATCH_DELAY_MS_DEFAULT}.
+         */
+        public FiraOpenSessionParams.Builder setRangingReportBatchDelayMs(
+                int rangingReportBatchDelayMs) {
+            mRangingReportBatchDelayMs = rangingReportBatchDelayMs;
+            return this;
+        }
+
+        /**
+         * Sets how ranging reports are queued for the app's executor. Defaults to
+         * {@link #REPORT_DELIVERY_POLICY_ALL}. With the other policies, a slow executor gets
+         * fewer, fresher reports instead of a growing backlog, and each delivered report carries
+         * the number of reports dropped so far in its metadata, under
+         * {@link #REPORT_METADATA_KEY_DROPPED_REPORT_COUNT}.
+         */
+        public FiraOpenSessionParams.Builder setReportDeliveryPolicy(
+                @ReportDeliveryPolicy int reportDeliveryPolicy) {
+            mReportDeliveryPolicy = reportDeliveryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets how many ranging reports, or remote devices with
+         * {@link #REPORT_DELIVERY_POLICY_LATEST_PER_PEER}, may wait for the app's executor.
+         * Defaults to {@link #MAX_PENDING_REPORTS_DEFAULT}.
+         */
+        public FiraOpenSessionParams.Builder setMaxPendingReports(int maxPendingReports) {
+            mMaxPendingReports = maxPendingReports;
+            return this;
+        }
+
         private void checkAddress() {
             checkArgument(
                     mMacAddressMode == MAC_ADDRESS_MODE_2_BYTES
@@ -2192,6 +2351,21 @@ public class FiraOpenSessionParams extends FiraParams {
                             != RANGE_DATA_NTF_AOA_ELEVATION_UPPER_DEFAULT);
             }
         }
+        private void checkRangingReportBatching() {
+            checkArgument(mRangingReportBatchSize >= 1
+                    && mRangingReportBatchSize <= RANGING_REPORT_BATCH_SIZE_MAX);
+            checkArgument(mRangingReportBatchDelayMs >= 0);
+            // A partial batch must not be held until the session stops.
+            checkArgument(mRangingReportBatchSize == 1 || mRangingReportBatchDelayMs > 0);
+        }
+
+        private void checkReportDelivery() {
+            checkArgument(mReportDeliveryPolicy == REPORT_DELIVERY_POLICY_ALL
+                    || mReportDeliveryPolicy == REPORT_DELIVERY_POLICY_DROP_OLDEST
+                    || mReportDeliveryPolicy == REPORT_DELIVERY_POLICY_LATEST_PER_PEER);
+            checkArgument(mMaxPendingReports >= 1);
+        }
+
         private void checkDlTdoaParameters() {
             if (mDeviceRole.get() == RANGING_DEVICE_DT_TAG) {
                 checkArgument(mStsConfig == STS_CONFIG_STATIC
@@ -2228,6 +2402,8 @@ public class FiraOpenSessionParams extends FiraParams {
             checkInterleavingRatio();
             checkRangeDataNtfConfig();
             checkDlTdoaParameters();
+            checkRangingReportBatching();
+            checkReportDelivery();
             return new FiraOpenSessionParams(
                     mProtocolVersion.get(),
                     mSessionId.get(),
@@ -2315,7 +2491,12 @@ public class FiraOpenSessionParams extends FiraParams {
                     mReferenceTimeBase,
                     mReferenceSessionHandle,
                     mSessionOffsetInMicroSeconds,
-                    mApplicationDataEndpoint);
+                    mApplicationDataEndpoint,
+                    mIsRawNtfDataReportingEnabled,
+                    mRangingReportBatchSize,
+                    mRangingReportBatchDelayMs,
+                    mReportDeliveryPolicy,
+                    mMaxPendingReports);
         }
     }
 }
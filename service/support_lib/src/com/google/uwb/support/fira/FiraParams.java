@@ -1149,6 +1149,39 @@ public abstract class FiraParams extends Params {
     // Default value (Host as the both secure & non-secure endpoint).
     public static final int APPLICATION_DATA_ENDPOINT_DEFAULT = 0;
 
+    // Ranging report batching (Android-specific). A batch size of 1 delivers every report as soon
+    // as it arrives. Otherwise a batch is delivered once full, or once its oldest report has
+    // waited for the batch delay, whichever comes first.
+    public static final int RANGING_REPORT_BATCH_SIZE_DEFAULT = 1;
+    public static final int RANGING_REPORT_BATCH_SIZE_MAX = 64;
+    public static final int RANGING_REPORT_BATCH_DELAY_MS_DEFAULT = 200;
+
+    /**
+     * How ranging reports are queued for the app's executor (Android-specific). The values must
+     * match the ones of android.uwb.RangingSession.
+     */
+    @IntDef(
+            value = {
+                REPORT_DELIVERY_POLICY_ALL,
+                REPORT_DELIVERY_POLICY_DROP_OLDEST,
+                REPORT_DELIVERY_POLICY_LATEST_PER_PEER,
+            })
+    public @interface ReportDeliveryPolicy {}
+
+    /** Every report is delivered, however long the app's executor takes. */
+    public static final int REPORT_DELIVERY_POLICY_ALL = 0;
+    /** At most the max pending reports are queued; the oldest ones are dropped. */
+    public static final int REPORT_DELIVERY_POLICY_DROP_OLDEST = 1;
+    /**
+     * Only the latest queued measurement of each remote device is delivered. Queued reports whose
+     * measurements have all been superseded are dropped.
+     */
+    public static final int REPORT_DELIVERY_POLICY_LATEST_PER_PEER = 2;
+
+    public static final int MAX_PENDING_REPORTS_DEFAULT = 16;
+    /** Key of the number of reports dropped so far, in the metadata of a delivered report. */
+    public static final String REPORT_METADATA_KEY_DROPPED_REPORT_COUNT = "dropped_report_count";
+
     //Reference time base feature mask.
     public static final int SESSION_TIME_BASE_REFERENCE_FEATURE_ENABLED = 1;
     /**
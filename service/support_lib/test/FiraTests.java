@@ -34,6 +34,7 @@ import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_ROLE_INITIAT
 import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_TYPE_CONTROLEE;
 import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_TYPE_CONTROLLER;
 import static com.google.uwb.support.fira.FiraParams.RANGING_ROUND_USAGE_SS_TWR_DEFERRED_MODE;
+import static com.google.uwb.support.fira.FiraParams.REPORT_DELIVERY_POLICY_LATEST_PER_PEER;
 import static com.google.uwb.support.fira.FiraParams.RFRAME_CONFIG_SP1;
 import static com.google.uwb.support.fira.FiraParams.SESSION_TYPE_RANGING;
 import static com.google.uwb.support.fira.FiraParams.SFD_ID_VALUE_3;
@@ -149,6 +150,10 @@ public class FiraTests {
         byte[] ulTdoaDeviceId = new byte[] {(byte) 0x0C, (byte) 0x0B};
         int ulTdoaTxTimestampType = TX_TIMESTAMP_40_BIT;
         int maxNumberOfMeasurements = 1;
+        int rangingReportBatchSize = 8;
+        int rangingReportBatchDelayMs = 500;
+        int reportDeliveryPolicy = REPORT_DELIVERY_POLICY_LATEST_PER_PEER;
+        int maxPendingReports = 4;
 
         FiraOpenSessionParams params =
                 new FiraOpenSessionParams.Builder()
@@ -218,6 +223,11 @@ public class FiraTests {
                         .setUlTdoaDeviceId(ulTdoaDeviceId)
                         .setUlTdoaTxTimestampType(ulTdoaTxTimestampType)
                         .setMaxNumberOfMeasurements(maxNumberOfMeasurements)
+                        .setIsRawNtfDataReportingEnabled(true)
+                        .setRangingReportBatchSize(rangingReportBatchSize)
+                        .setRangingReportBatchDelayMs(rangingReportBatchDelayMs)
+                        .setReportDeliveryPolicy(reportDeliveryPolicy)
+                        .setMaxPendingReports(maxPendingReports)
                         .build();
 
         assertEquals(params.getProtocolVersion(), protocolVersion);
@@ -292,6 +302,11 @@ public class FiraTests {
         assertArrayEquals(params.getUlTdoaDeviceId(), ulTdoaDeviceId);
         assertEquals(params.getUlTdoaTxTimestampType(), ulTdoaTxTimestampType);
         assertEquals(params.getMaxNumberOfMeasurements(), maxNumberOfMeasurements);
+        assertTrue(params.isRawNtfDataReportingEnabled());
+        assertEquals(params.getRangingReportBatchSize(), rangingReportBatchSize);
+        assertEquals(params.getRangingReportBatchDelayMs(), rangingReportBatchDelayMs);
+        assertEquals(params.getReportDeliveryPolicy(), reportDeliveryPolicy);
+        assertEquals(params.getMaxPendingReports(), maxPendingReports);
 
         FiraOpenSessionParams fromBundle = FiraOpenSessionParams.fromBundle(params.toBundle());
 
@@ -366,6 +381,11 @@ public class FiraTests {
         assertArrayEquals(fromBundle.getUlTdoaDeviceId(), ulTdoaDeviceId);
         assertEquals(fromBundle.getUlTdoaTxTimestampType(), ulTdoaTxTimestampType);
         assertEquals(fromBundle.getMaxNumberOfMeasurements(), maxNumberOfMeasurements);
+        assertTrue(fromBundle.isRawNtfDataReportingEnabled());
+        assertEquals(fromBundle.getRangingReportBatchSize(), rangingReportBatchSize);
+        assertEquals(fromBundle.getRangingReportBatchDelayMs(), rangingReportBatchDelayMs);
+        assertEquals(fromBundle.getReportDeliveryPolicy(), reportDeliveryPolicy);
+        assertEquals(fromBundle.getMaxPendingReports(), maxPendingReports);
 
         verifyProtocolPresent(fromBundle);
         verifyBundlesEqual(params, fromBundle);
@@ -443,6 +463,11 @@ public class FiraTests {
         assertArrayEquals(fromCopy.getUlTdoaDeviceId(), ulTdoaDeviceId);
         assertEquals(fromCopy.getUlTdoaTxTimestampType(), ulTdoaTxTimestampType);
         assertEquals(fromCopy.getMaxNumberOfMeasurements(), maxNumberOfMeasurements);
+        assertTrue(fromCopy.isRawNtfDataReportingEnabled());
+        assertEquals(fromCopy.getRangingReportBatchSize(), rangingReportBatchSize);
+        assertEquals(fromCopy.getRangingReportBatchDelayMs(), rangingReportBatchDelayMs);
+        assertEquals(fromCopy.getReportDeliveryPolicy(), reportDeliveryPolicy);
+        assertEquals(fromCopy.getMaxPendingReports(), maxPendingReports);
 
         verifyProtocolPresent(fromCopy);
         verifyBundlesEqual(params, fromCopy);
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.params.TlvBuffer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.AppConfigCache}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class AppConfigCacheTest {
+    private static final int TAG_A = 0x01;
+    private static final int TAG_B = 0x09;
+    private static final int TAG_C = 0xE3;
+
+    private final AppConfigCache mCache = new AppConfigCache();
+
+    private static TlvBuffer buildTlvs(int a, short b, byte[] c) {
+        return new TlvBuffer.Builder()
+                .putByte(TAG_A, (byte) a)
+                .putShort(TAG_B, b)
+                .putByteArray(TAG_C, c)
+                .build();
+    }
+
+    @Test
+    public void testGetDelta_nothingAppliedReturnsAll() {
+        TlvBuffer tlvs = buildTlvs(1, (short) 2, new byte[] {3, 4});
+
+        assertThat(mCache.getDelta(tlvs)).isSameInstanceAs(tlvs);
+    }
+
+    @Test
+    public void testGetDelta_returnsChangedTlvsOnly() {
+        mCache.onApplied(buildTlvs(1, (short) 2, new byte[] {3, 4}));
+
+        TlvBuffer delta = mCache.getDelta(buildTlvs(1, (short) 5, new byte[] {3}));
+
+        assertThat(delta.getNoOfParams()).isEqualTo(2);
+        assertThat(delta.getByteArray()).isEqualTo(new TlvBuffer.Builder()
+                .putShort(TAG_B, (short) 5)
+                .putByteArray(TAG_C, new byte[] {3})
+                .build().getByteArray());
+    }
+
+    @Test
+    public void testGetDelta_unchangedReturnsEmpty() {
+        mCache.onApplied(buildTlvs(1, (short) 2, new byte[] {3, 4}));
+
+        TlvBuffer delta = mCache.getDelta(buildTlvs(1, (short) 2, new byte[] {3, 4}));
+
+        assertThat(delta.getNoOfParams()).isEqualTo(0);
+        assertThat(delta.getByteArray()).isEmpty();
+    }
+
+    @Test
+    public void testOnApplied_mergesPartialTlvs() {
+        mCache.onApplied(buildTlvs(1, (short) 2, new byte[] {3, 4}));
+        mCache.onApplied(new TlvBuffer.Builder().putByte(TAG_A, (byte) 7).build());
+
+        TlvBuffer delta = mCache.getDelta(buildTlvs(7, (short) 2, new byte[] {3, 4}));
+
+        assertThat(delta.getNoOfParams()).isEqualTo(0);
+    }
+
+    @Test
+    public void testInvalidate_forgetsAppliedTlvs() {
+        TlvBuffer tlvs = buildTlvs(1, (short) 2, new byte[] {3, 4});
+        mCache.onApplied(tlvs);
+        mCache.invalidate();
+
+        assertThat(mCache.getDelta(tlvs)).isSameInstanceAs(tlvs);
+    }
+
+    @Test
+    public void testRecordCommand_countsBytesSaved() {
+        mCache.recordCommand(20, 20, 1000);
+        mCache.recordCommand(20, 5, 500);
+        mCache.recordCommand(20, 0, 0);
+
+        assertThat(mCache.getBytesSaved()).isEqualTo(35);
+        assertThat(mCache.getSkippedCommandCount()).isEqualTo(1);
+    }
+}
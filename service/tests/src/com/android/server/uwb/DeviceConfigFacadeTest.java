@@ -141,6 +141,10 @@ public class DeviceConfigFacadeTest {
                 .thenReturn(12);
         when(mResources.getInteger(R.integer.rx_data_max_packets_to_store))
                 .thenReturn(10);
+        when(mResources.getInteger(R.integer.ranging_data_reorder_window))
+                .thenReturn(0);
+        when(mResources.getInteger(R.integer.ranging_data_reorder_max_delay_ms))
+                .thenReturn(20);
         when(mResources.getBoolean(R.bool.background_ranging_enabled))
                 .thenReturn(false);
         when(mResources.getBoolean(R.bool.ranging_error_streak_timer_enabled))
@@ -159,6 +163,10 @@ public class DeviceConfigFacadeTest {
                 .thenReturn(false);
         when(mResources.getBoolean(R.bool.is_antenna_mode_config_supported))
                 .thenReturn(false);
+        when(mResources.getBoolean(R.bool.app_config_delta_enabled))
+                .thenReturn(false);
+        when(mResources.getInteger(R.integer.session_config_template_cache_size))
+                .thenReturn(0);
 
         when(mContext.getResources()).thenReturn(mResources);
 
@@ -231,6 +239,8 @@ public class DeviceConfigFacadeTest {
         assertEquals(7, mDeviceConfigFacade.getAdvertiseArrayEndIndexToCalVariance());
         assertEquals(12, mDeviceConfigFacade.getAdvertiseTrustedVarianceValue());
         assertEquals(10, mDeviceConfigFacade.getRxDataMaxPacketsToStore());
+        assertEquals(0, mDeviceConfigFacade.getRangingDataReorderWindow());
+        assertEquals(20, mDeviceConfigFacade.getRangingDataReorderMaxDelayMs());
         assertEquals(false, mDeviceConfigFacade.isBackgroundRangingEnabled());
         assertEquals(true, mDeviceConfigFacade.isRangingErrorStreakTimerEnabled());
         assertEquals(false, mDeviceConfigFacade.isCccRangingStoppedParamsSendEnabled());
@@ -240,6 +250,8 @@ public class DeviceConfigFacadeTest {
         assertEquals(false, mDeviceConfigFacade.isPersistentCacheUseForCountryCodeEnabled());
         assertEquals(false, mDeviceConfigFacade.isHwIdleTurnOffEnabled());
         assertEquals(false, mDeviceConfigFacade.isAntennaModeConfigSupported());
+        assertEquals(false, mDeviceConfigFacade.isAppConfigDeltaEnabled());
+        assertEquals(0, mDeviceConfigFacade.getSessionConfigTemplateCacheSize());
     }
 
     /**
@@ -337,6 +349,10 @@ public class DeviceConfigFacadeTest {
                 .thenReturn(12);
         when(DeviceConfig.getInt(anyString(), eq("rx_data_max_packets_to_store"),
                 anyInt())).thenReturn(20);
+        when(DeviceConfig.getInt(anyString(), eq("ranging_data_reorder_window"),
+                anyInt())).thenReturn(8);
+        when(DeviceConfig.getInt(anyString(), eq("ranging_data_reorder_max_delay_ms"),
+                anyInt())).thenReturn(40);
         when(DeviceConfig.getBoolean(anyString(), eq("background_ranging_enabled"),
                 anyBoolean())).thenReturn(true);
         when(DeviceConfig.getBoolean(anyString(), eq("ranging_error_streak_timer_enabled"),
@@ -356,6 +372,10 @@ public class DeviceConfigFacadeTest {
                 anyBoolean())).thenReturn(true);
         when(DeviceConfig.getBoolean(anyString(), eq("is_antenna_mode_config_supported"),
                 anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("app_config_delta_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getInt(anyString(), eq("session_config_template_cache_size"),
+                anyInt())).thenReturn(4);
 
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
         assertEquals(0, mDeviceConfigFacade.getPrimerFovDegree());
@@ -369,6 +389,8 @@ public class DeviceConfigFacadeTest {
         assertEquals(7 , mDeviceConfigFacade.getAdvertiseArrayEndIndexToCalVariance());
         assertEquals(12, mDeviceConfigFacade.getAdvertiseTrustedVarianceValue());
         assertEquals(20, mDeviceConfigFacade.getRxDataMaxPacketsToStore());
+        assertEquals(8, mDeviceConfigFacade.getRangingDataReorderWindow());
+        assertEquals(40, mDeviceConfigFacade.getRangingDataReorderMaxDelayMs());
         assertEquals(true, mDeviceConfigFacade.isBackgroundRangingEnabled());
         assertEquals(false, mDeviceConfigFacade.isRangingErrorStreakTimerEnabled());
         assertEquals(true, mDeviceConfigFacade.isCccRangingStoppedParamsSendEnabled());
@@ -378,6 +400,8 @@ public class DeviceConfigFacadeTest {
         assertEquals(true, mDeviceConfigFacade.isPersistentCacheUseForCountryCodeEnabled());
         assertEquals(true, mDeviceConfigFacade.isHwIdleTurnOffEnabled());
         assertEquals(true, mDeviceConfigFacade.isAntennaModeConfigSupported());
+        assertEquals(true, mDeviceConfigFacade.isAppConfigDeltaEnabled());
+        assertEquals(4, mDeviceConfigFacade.getSessionConfigTemplateCacheSize());
         when(DeviceConfig.getString(anyString(), eq("pose_source_type"),
                 anyString())).thenReturn("NONE");
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
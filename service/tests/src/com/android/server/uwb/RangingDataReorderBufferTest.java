@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Handler;
+import android.os.test.TestLooper;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.data.UwbRangingData;
+import com.android.server.uwb.data.UwbTwoWayMeasurement;
+import com.android.server.uwb.data.UwbUciConstants;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.RangingDataReorderBuffer}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RangingDataReorderBufferTest {
+    private static final int WINDOW_SIZE = 4;
+    private static final long DELAY_MS = 50;
+
+    private final List<Long> mDelivered = new ArrayList<>();
+    private TestLooper mTestLooper;
+    private RangingDataReorderBuffer mBuffer;
+
+    @Before
+    public void setUp() {
+        mTestLooper = new TestLooper();
+        mBuffer = new RangingDataReorderBuffer(WINDOW_SIZE, DELAY_MS,
+                new Handler(mTestLooper.getLooper()),
+                rangingData -> mDelivered.add(rangingData.getSequenceCounter()));
+    }
+
+    private void add(long seq) {
+        mBuffer.add(new UwbRangingData(seq, 1, 0, 200,
+                UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                UwbUciConstants.MAC_ADDRESSING_MODE_SHORT, 0, new UwbTwoWayMeasurement[0],
+                null));
+    }
+
+    private void moveTimeForward(long ms) {
+        mTestLooper.moveTimeForward(ms);
+        mTestLooper.dispatchAll();
+    }
+
+    @Test
+    public void testAdd_inOrderIsDeliveredImmediately() {
+        add(10);
+        add(11);
+        add(12);
+
+        assertThat(mDelivered).containsExactly(10L, 11L, 12L).inOrder();
+        assertThat(mBuffer.getHeldCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAdd_restoresOrder() {
+        add(10);
+        add(12);
+        add(13);
+        assertThat(mDelivered).containsExactly(10L);
+        assertThat(mBuffer.getHeldCount()).isEqualTo(2);
+
+        add(11);
+        assertThat(mDelivered).containsExactly(10L, 11L, 12L, 13L).inOrder();
+        assertThat(mBuffer.getReorderedCount()).isEqualTo(2);
+        assertThat(mBuffer.getGapCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAdd_dropsDuplicatesAndStale() {
+        add(10);
+        add(12);
+        add(12);
+        add(10);
+
+        assertThat(mDelivered).containsExactly(10L);
+        assertThat(mBuffer.getDroppedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAdd_skipsGapAfterDelay() {
+        add(10);
+        add(12);
+        moveTimeForward(DELAY_MS - 1);
+        assertThat(mDelivered).containsExactly(10L);
+
+        moveTimeForward(1);
+        assertThat(mDelivered).containsExactly(10L, 12L).inOrder();
+        assertThat(mBuffer.getGapCount()).isEqualTo(1);
+
+        // The missing notification is now stale.
+        add(11);
+        assertThat(mDelivered).containsExactly(10L, 12L).inOrder();
+        assertThat(mBuffer.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdd_slidesWindowWhenFull() {
+        add(10);
+        add(12);
+        add(15);
+
+        assertThat(mDelivered).containsExactly(10L, 12L).inOrder();
+        assertThat(mBuffer.getGapCount()).isEqualTo(1);
+        assertThat(mBuffer.getHeldCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdd_handlesCounterWrap() {
+        add(0xFFFFFFFEL);
+        add(0L);
+        add(0xFFFFFFFFL);
+
+        assertThat(mDelivered).containsExactly(0xFFFFFFFEL, 0xFFFFFFFFL, 0L).inOrder();
+        assertThat(mBuffer.getResyncCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAdd_resyncsOnCounterReset() {
+        add(1000);
+        add(1002);
+        add(0);
+
+        assertThat(mDelivered).containsExactly(1000L, 1002L, 0L).inOrder();
+        assertThat(mBuffer.getResyncCount()).isEqualTo(1);
+        assertThat(mBuffer.getHeldCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDrain_returnsHeldAndStartsNewSequence() {
+        add(10);
+        add(13);
+        add(12);
+        List<UwbRangingData> drained = mBuffer.drain();
+        assertThat(mDelivered).containsExactly(10L);
+        assertThat(drained).hasSize(2);
+        assertThat(drained.get(0).getSequenceCounter()).isEqualTo(12L);
+        assertThat(drained.get(1).getSequenceCounter()).isEqualTo(13L);
+        assertThat(mBuffer.getHeldCount()).isEqualTo(0);
+
+        add(3);
+        assertThat(mDelivered).containsExactly(10L, 3L).inOrder();
+        assertThat(mBuffer.getResyncCount()).isEqualTo(0);
+
+        // No timeout is left behind by the drain.
+        moveTimeForward(DELAY_MS);
+        assertThat(mDelivered).hasSize(2);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.os.Handler;
+import android.os.test.TestLooper;
+import android.uwb.RangingReport;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.RangingReportBatcher}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RangingReportBatcherTest {
+    private static final int BATCH_SIZE = 3;
+    private static final long DELAY_MS = 100;
+
+    private final List<List<RangingReport>> mBatches = new ArrayList<>();
+    private TestLooper mTestLooper;
+    private RangingReportBatcher mBatcher;
+
+    @Before
+    public void setUp() {
+        mTestLooper = new TestLooper();
+        mBatcher = new RangingReportBatcher(BATCH_SIZE, DELAY_MS,
+                new Handler(mTestLooper.getLooper()), mBatches::add);
+    }
+
+    private static RangingReport newReport() {
+        return new RangingReport.Builder().build();
+    }
+
+    @Test
+    public void testAdd_deliversFullBatchInOrder() {
+        RangingReport first = newReport();
+        RangingReport second = newReport();
+        RangingReport third = newReport();
+
+        mBatcher.add(first);
+        mBatcher.add(second);
+        assertThat(mBatches).isEmpty();
+
+        mBatcher.add(third);
+        assertThat(mBatches).hasSize(1);
+        assertThat(mBatches.get(0)).containsExactly(first, second, third).inOrder();
+        assertThat(mBatcher.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAdd_deliversPartialBatchAfterDelay() {
+        mBatcher.add(newReport());
+        mTestLooper.moveTimeForward(DELAY_MS - 1);
+        mTestLooper.dispatchAll();
+        assertThat(mBatches).isEmpty();
+
+        mTestLooper.moveTimeForward(1);
+        mTestLooper.dispatchAll();
+        assertThat(mBatches).hasSize(1);
+        assertThat(mBatches.get(0)).hasSize(1);
+    }
+
+    @Test
+    public void testAdd_fullBatchCancelsDelayedDelivery() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mBatcher.add(newReport());
+        }
+        mTestLooper.moveTimeForward(DELAY_MS);
+        mTestLooper.dispatchAll();
+
+        assertThat(mBatches).hasSize(1);
+    }
+
+    @Test
+    public void testFlush() {
+        mBatcher.flush();
+        assertThat(mBatches).isEmpty();
+
+        mBatcher.add(newReport());
+        mBatcher.flush();
+        assertThat(mBatches).hasSize(1);
+
+        mTestLooper.moveTimeForward(DELAY_MS);
+        mTestLooper.dispatchAll();
+        assertThat(mBatches).hasSize(1);
+    }
+
+    @Test
+    public void testNoDelay_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new RangingReportBatcher(BATCH_SIZE, 0,
+                new Handler(mTestLooper.getLooper()), mBatches::add));
+    }
+}
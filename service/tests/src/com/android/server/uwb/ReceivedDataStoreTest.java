@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.UwbSessionManager.ReceivedDataInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.ReceivedDataStore}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ReceivedDataStoreTest {
+    private static final long MAC_ADDRESS_1 = 0x1122L;
+    private static final long MAC_ADDRESS_2 = 0x3344L;
+    private static final int MAX_PACKETS = 3;
+    private static final int EXPIRY_MS = 1000;
+
+    private long mNowMs = 0;
+    private final ReceivedDataStore mStore =
+            new ReceivedDataStore(() -> MAX_PACKETS, () -> EXPIRY_MS, () -> mNowMs);
+
+    private static ReceivedDataInfo buildInfo(long macAddress, long sequenceNum, int length) {
+        ReceivedDataInfo info = new ReceivedDataInfo();
+        info.address = macAddress;
+        info.sequenceNum = sequenceNum;
+        info.payload = new byte[length];
+        return info;
+    }
+
+    private static ReceivedDataInfo buildInfo(long macAddress, long sequenceNum) {
+        return buildInfo(macAddress, sequenceNum, 8);
+    }
+
+    @Test
+    public void testDrain_inSequenceNumberOrder() {
+        ReceivedDataInfo info1 = buildInfo(MAC_ADDRESS_1, 1);
+        ReceivedDataInfo info2 = buildInfo(MAC_ADDRESS_1, 2);
+        ReceivedDataInfo info3 = buildInfo(MAC_ADDRESS_1, 3);
+        ReceivedDataInfo info4 = buildInfo(MAC_ADDRESS_1, 4);
+
+        mStore.add(info3);
+        mStore.add(info1);
+        mStore.add(info4);
+        mStore.add(info2);
+        mStore.add(info3);
+
+        assertThat(mStore.drain(MAC_ADDRESS_1)).isEqualTo(List.of(info2, info3, info4));
+        assertThat(mStore.drain(MAC_ADDRESS_1)).isEmpty();
+        assertThat(mStore.getPacketCount()).isEqualTo(0);
+        assertThat(mStore.getMacAddresses()).isEmpty();
+    }
+
+    @Test
+    public void testAdd_fullOfHigherSequenceNumbers_dropsPacket() {
+        ReceivedDataInfo info2 = buildInfo(MAC_ADDRESS_1, 2);
+        ReceivedDataInfo info3 = buildInfo(MAC_ADDRESS_1, 3);
+        ReceivedDataInfo info4 = buildInfo(MAC_ADDRESS_1, 4);
+
+        mStore.add(info2);
+        mStore.add(info3);
+        mStore.add(info4);
+        mStore.add(buildInfo(MAC_ADDRESS_1, 1));
+
+        assertThat(mStore.drain(MAC_ADDRESS_1)).isEqualTo(List.of(info2, info3, info4));
+    }
+
+    @Test
+    public void testAdd_expiresAdvertisersNotHeard() {
+        mStore.add(buildInfo(MAC_ADDRESS_1, 1));
+        mNowMs += EXPIRY_MS / 2;
+        mStore.add(buildInfo(MAC_ADDRESS_2, 1));
+        mNowMs += EXPIRY_MS / 2 + 1;
+
+        ReceivedDataInfo info = buildInfo(MAC_ADDRESS_2, 2);
+        mStore.add(info);
+
+        assertThat(mStore.getMacAddresses()).containsExactly(MAC_ADDRESS_2);
+        assertThat(mStore.getExpiredDropCount()).isEqualTo(1);
+        assertThat(mStore.drain(MAC_ADDRESS_1)).isEmpty();
+        assertThat(mStore.drain(MAC_ADDRESS_2)).hasSize(2);
+    }
+
+    @Test
+    public void testOnMeasurement_keepsPacketsFromExpiring() {
+        ReceivedDataInfo info = buildInfo(MAC_ADDRESS_1, 1);
+        mStore.add(info);
+        mNowMs += EXPIRY_MS / 2;
+        mStore.onMeasurement(MAC_ADDRESS_1);
+        mNowMs += EXPIRY_MS / 2 + 1;
+
+        // Past the expiry since the packet, but not since the measurement.
+        assertThat(mStore.drain(MAC_ADDRESS_1)).isEqualTo(List.of(info));
+        assertThat(mStore.getExpiredDropCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGetHeardMacAddresses_keepsAdvertisersWithoutPackets() {
+        long measuredMacAddress = 0x5566L;
+        mStore.add(buildInfo(MAC_ADDRESS_1, 1));
+        mStore.add(buildInfo(MAC_ADDRESS_2, 1));
+        mStore.drain(MAC_ADDRESS_1);
+        mNowMs += EXPIRY_MS + 1;
+        mStore.onMeasurement(measuredMacAddress);
+
+        // The first advertiser was drained and the second one expired.
+        assertThat(mStore.getMacAddresses()).isEmpty();
+        assertThat(mStore.getExpiredDropCount()).isEqualTo(1);
+        assertThat(mStore.getHeardMacAddresses())
+                .containsExactly(MAC_ADDRESS_1, MAC_ADDRESS_2, measuredMacAddress);
+
+        mStore.clear();
+        assertThat(mStore.getHeardMacAddresses()).isEmpty();
+    }
+
+    @Test
+    public void testAdd_evictsLeastRecentlyHeardAdvertiser() {
+        for (int i = 0; i <= ReceivedDataStore.MAX_ADVERTISERS; i++) {
+            mStore.add(buildInfo(MAC_ADDRESS_1 + i, 1));
+            // Keep the first advertiser the most recently heard.
+            mStore.add(buildInfo(MAC_ADDRESS_1, 2));
+        }
+
+        assertThat(mStore.getMacAddresses()).hasSize(ReceivedDataStore.MAX_ADVERTISERS);
+        assertThat(mStore.getMacAddresses()).contains(MAC_ADDRESS_1);
+        assertThat(mStore.getMacAddresses()).doesNotContain(MAC_ADDRESS_1 + 1);
+        assertThat(mStore.getEvictedDropCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdd_payloadLimit() {
+        int length = ReceivedDataStore.MAX_PAYLOAD_BYTES / 2;
+        mStore.add(buildInfo(MAC_ADDRESS_1, 1, length));
+        mStore.add(buildInfo(MAC_ADDRESS_2, 1, length));
+        mStore.add(buildInfo(MAC_ADDRESS_2, 2, length));
+
+        assertThat(mStore.getMacAddresses()).containsExactly(MAC_ADDRESS_2);
+        assertThat(mStore.getPacketCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testClear() {
+        mStore.add(buildInfo(MAC_ADDRESS_1, 1));
+        mStore.add(buildInfo(MAC_ADDRESS_2, 1));
+
+        mStore.clear();
+
+        assertThat(mStore.getPacketCount()).isEqualTo(0);
+        assertThat(mStore.drain(MAC_ADDRESS_1)).isEmpty();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.app.AlarmManager;
+import android.os.Handler;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.SessionAlarmScheduler}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SessionAlarmSchedulerTest {
+    private static final String TAG_1 = "tag1";
+    private static final String TAG_2 = "tag2";
+    private static final long TIMEOUT_MS = 1000;
+
+    private final AlarmManager mAlarmManager = mock(AlarmManager.class);
+    private final Handler mHandler = mock(Handler.class);
+    private final List<String> mExpired = new ArrayList<>();
+    private long mNowMs = 100;
+    private final SessionAlarmScheduler mScheduler =
+            new SessionAlarmScheduler(mAlarmManager, mHandler, () -> mNowMs);
+
+    private Runnable expire(String key) {
+        return () -> mExpired.add(key);
+    }
+
+    @Test
+    public void testStartIfNotSet_armsAlarmForEarliestDeadline() {
+        assertThat(mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"))).isTrue();
+        assertThat(mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"))).isFalse();
+        mNowMs += 10;
+        mScheduler.startIfNotSet("b", TAG_2, TIMEOUT_MS, expire("b"));
+        mScheduler.startIfNotSet("c", TAG_2, TIMEOUT_MS / 2, expire("c"));
+
+        verify(mAlarmManager).setExact(eq(AlarmManager.ELAPSED_REALTIME_WAKEUP),
+                eq(100 + TIMEOUT_MS), eq(TAG_1), any(), eq(mHandler));
+        verify(mAlarmManager).setExact(eq(AlarmManager.ELAPSED_REALTIME_WAKEUP),
+                eq(110 + TIMEOUT_MS / 2), eq(TAG_2), any(), eq(mHandler));
+        assertThat(mScheduler.getAlarmSetCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStopIfSet_doesNotCancelAlarm() {
+        mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"));
+        for (int i = 0; i < 10; i++) {
+            assertThat(mScheduler.stopIfSet("a")).isTrue();
+            mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"));
+        }
+        assertThat(mScheduler.stopIfSet("b")).isFalse();
+
+        verify(mAlarmManager, never()).cancel(any(AlarmManager.OnAlarmListener.class));
+        assertThat(mScheduler.getAlarmSetCount()).isEqualTo(1);
+        assertThat(mScheduler.isSet("a")).isTrue();
+    }
+
+    @Test
+    public void testOnAlarm_runsExpiredTimersAndRearms() {
+        mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"));
+        mScheduler.startIfNotSet("b", TAG_1, TIMEOUT_MS, expire("b"));
+        mNowMs += 10;
+        mScheduler.startIfNotSet("c", TAG_2, TIMEOUT_MS, expire("c"));
+
+        mNowMs = 100 + TIMEOUT_MS;
+        mScheduler.onAlarm();
+
+        assertThat(mExpired).containsExactly("a", "b");
+        assertThat(mScheduler.isSet("c")).isTrue();
+        verify(mAlarmManager).setExact(anyInt(), eq(110 + TIMEOUT_MS), eq(TAG_2), any(),
+                eq(mHandler));
+    }
+
+    @Test
+    public void testOnAlarm_stoppedTimerDoesNotExpire() {
+        mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"));
+        mScheduler.stopIfSet("a");
+        mNowMs += 10;
+        mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"));
+
+        mNowMs = 100 + TIMEOUT_MS;
+        mScheduler.onAlarm();
+        assertThat(mExpired).isEmpty();
+        verify(mAlarmManager).setExact(anyInt(), eq(110 + TIMEOUT_MS), eq(TAG_1), any(),
+                eq(mHandler));
+
+        mNowMs = 110 + TIMEOUT_MS;
+        mScheduler.onAlarm();
+        assertThat(mExpired).containsExactly("a");
+        assertThat(mScheduler.getAlarmSetCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStopAll_cancelsAlarm() {
+        mScheduler.startIfNotSet("a", TAG_1, TIMEOUT_MS, expire("a"));
+        mScheduler.startIfNotSet(1, TAG_1, TIMEOUT_MS, expire("1"));
+        assertThat(mScheduler.getKeys(Integer.class)).containsExactly(1);
+
+        mScheduler.stopAll();
+        mScheduler.stopAll();
+
+        verify(mAlarmManager, times(1)).cancel(any(AlarmManager.OnAlarmListener.class));
+        assertThat(mScheduler.getAlarmCancelCount()).isEqualTo(1);
+        assertThat(mScheduler.getKeys(Object.class)).isEmpty();
+        verify(mAlarmManager, times(1)).setExact(anyInt(), anyLong(), any(), any(),
+                any(Handler.class));
+    }
+}
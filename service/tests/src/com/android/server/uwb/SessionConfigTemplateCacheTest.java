@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.uwb.support.fira.FiraParams.MULTI_NODE_MODE_UNICAST;
+import static com.google.uwb.support.fira.FiraParams.PROTOCOL_VERSION_1_1;
+import static com.google.uwb.support.fira.FiraParams.PROTOCOL_VERSION_2_0;
+import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_ROLE_INITIATOR;
+import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_ROLE_RESPONDER;
+import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_TYPE_CONTROLEE;
+import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_TYPE_CONTROLLER;
+import static com.google.uwb.support.fira.FiraParams.RANGING_ROUND_USAGE_DS_TWR_DEFERRED_MODE;
+import static com.google.uwb.support.fira.FiraParams.SESSION_TIME_BASE_REFERENCE_FEATURE_ENABLED;
+import static com.google.uwb.support.fira.FiraParams.SESSION_TYPE_RANGING;
+import static com.google.uwb.support.fira.FiraParams.STS_CONFIG_PROVISIONED;
+import static com.google.uwb.support.fira.FiraParams.STS_CONFIG_PROVISIONED_FOR_CONTROLEE_INDIVIDUAL_KEY;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.os.PersistableBundle;
+import android.uwb.UwbAddress;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.params.FiraEncoder;
+import com.android.server.uwb.params.TlvBuffer;
+
+import com.google.uwb.support.fira.FiraOpenSessionParams;
+import com.google.uwb.support.fira.FiraProtocolVersion;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.SessionConfigTemplateCache}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SessionConfigTemplateCacheTest {
+    private static final int MAX_TEMPLATES = 2;
+    private static final FiraOpenSessionParams.Builder TEST_PARAMS =
+            new FiraOpenSessionParams.Builder()
+                    .setProtocolVersion(PROTOCOL_VERSION_2_0)
+                    .setSessionId(1)
+                    .setSessionType(SESSION_TYPE_RANGING)
+                    .setDeviceType(RANGING_DEVICE_TYPE_CONTROLLER)
+                    .setDeviceRole(RANGING_DEVICE_ROLE_INITIATOR)
+                    .setDeviceAddress(UwbAddress.fromBytes(new byte[]{0x4, 0x6}))
+                    .setDestAddressList(Arrays.asList(UwbAddress.fromBytes(new byte[]{0x5, 0x7})))
+                    .setMultiNodeMode(MULTI_NODE_MODE_UNICAST)
+                    .setRangingRoundUsage(RANGING_ROUND_USAGE_DS_TWR_DEFERRED_MODE)
+                    .setStsConfig(STS_CONFIG_PROVISIONED)
+                    .setSessionKey(new byte[16])
+                    .setAbsoluteInitiationTime(20_000_000L)
+                    .setSessionTimeBase(SESSION_TIME_BASE_REFERENCE_FEATURE_ENABLED, 5, 100);
+
+    private FiraEncoder mEncoder;
+    private final SessionConfigTemplateCache mCache = new SessionConfigTemplateCache();
+
+    @Before
+    public void setUp() {
+        UwbInjector uwbInjector = mock(UwbInjector.class);
+        DeviceConfigFacade deviceConfigFacade = mock(DeviceConfigFacade.class);
+        when(uwbInjector.getDeviceConfigFacade()).thenReturn(deviceConfigFacade);
+        mEncoder = new FiraEncoder(uwbInjector);
+    }
+
+    private TlvBuffer getTlvBuffer(FiraOpenSessionParams params,
+            FiraProtocolVersion protocolVersion) {
+        return mCache.getTlvBuffer(mEncoder, params, protocolVersion,
+                /* antennaModeConfigSupported= */ false, MAX_TEMPLATES);
+    }
+
+    private void assertSameAsEncoder(TlvBuffer tlvBuffer, FiraOpenSessionParams params,
+            FiraProtocolVersion protocolVersion) {
+        TlvBuffer expected = mEncoder.getTlvBuffer(params, protocolVersion);
+        assertThat(tlvBuffer.getByteArray()).isEqualTo(expected.getByteArray());
+        assertThat(tlvBuffer.getNoOfParams()).isEqualTo(expected.getNoOfParams());
+    }
+
+    @Test
+    public void testGetTlvBuffer_patchesSessionSpecificConfigs() {
+        getTlvBuffer(TEST_PARAMS.build(), PROTOCOL_VERSION_2_0);
+
+        byte[] sessionKey = new byte[16];
+        Arrays.fill(sessionKey, (byte) 0x5A);
+        FiraOpenSessionParams params = new FiraOpenSessionParams.Builder(TEST_PARAMS)
+                .setSessionId(2)
+                .setSessionKey(sessionKey)
+                .setAbsoluteInitiationTime(30_000_000L)
+                .setSessionTimeBase(SESSION_TIME_BASE_REFERENCE_FEATURE_ENABLED, 6, 200)
+                .build();
+        TlvBuffer tlvBuffer = getTlvBuffer(params, PROTOCOL_VERSION_2_0);
+
+        assertSameAsEncoder(tlvBuffer, params, PROTOCOL_VERSION_2_0);
+        assertThat(mCache.getHitCount()).isEqualTo(1);
+        assertThat(mCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetTlvBuffer_templatesHoldNoSessionKeys() {
+        byte[] sessionKey = new byte[16];
+        Arrays.fill(sessionKey, (byte) 0x5A);
+        byte[] subsessionKey = new byte[16];
+        Arrays.fill(subsessionKey, (byte) 0xA5);
+        FiraOpenSessionParams params = new FiraOpenSessionParams.Builder(TEST_PARAMS)
+                .setDeviceType(RANGING_DEVICE_TYPE_CONTROLEE)
+                .setDeviceRole(RANGING_DEVICE_ROLE_RESPONDER)
+                .setStsConfig(STS_CONFIG_PROVISIONED_FOR_CONTROLEE_INDIVIDUAL_KEY)
+                .setSubSessionId(3)
+                .setSessionKey(sessionKey)
+                .setSubsessionKey(subsessionKey)
+                .build();
+        TlvBuffer tlvBuffer = getTlvBuffer(params, PROTOCOL_VERSION_2_0);
+
+        // The caller gets the keys, but the cached template doesn't keep them.
+        assertSameAsEncoder(tlvBuffer, params, PROTOCOL_VERSION_2_0);
+        assertThat(mCache.getTemplates()).hasSize(1);
+        byte[] template = mCache.getTemplates().get(0).getByteArray();
+        assertThat(indexOf(template, sessionKey)).isEqualTo(-1);
+        assertThat(indexOf(template, subsessionKey)).isEqualTo(-1);
+
+        // The zeroed template still patches to the same bytes as a full encode.
+        TlvBuffer patched = getTlvBuffer(params, PROTOCOL_VERSION_2_0);
+        assertSameAsEncoder(patched, params, PROTOCOL_VERSION_2_0);
+        assertThat(mCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetTlvBuffer_otherParamsMiss() {
+        getTlvBuffer(TEST_PARAMS.build(), PROTOCOL_VERSION_2_0);
+
+        FiraOpenSessionParams params = new FiraOpenSessionParams.Builder(TEST_PARAMS)
+                .setRangingIntervalMs(400)
+                .build();
+        TlvBuffer tlvBuffer = getTlvBuffer(params, PROTOCOL_VERSION_2_0);
+
+        assertSameAsEncoder(tlvBuffer, params, PROTOCOL_VERSION_2_0);
+        assertThat(mCache.getHitCount()).isEqualTo(0);
+        assertThat(mCache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetTlvBuffer_keyedByProtocolVersion() {
+        FiraOpenSessionParams params = TEST_PARAMS.build();
+        getTlvBuffer(params, PROTOCOL_VERSION_2_0);
+
+        TlvBuffer tlvBuffer = getTlvBuffer(params, PROTOCOL_VERSION_1_1);
+
+        assertSameAsEncoder(tlvBuffer, params, PROTOCOL_VERSION_1_1);
+        assertThat(mCache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetTlvBuffer_keyCollisionMisses() {
+        SessionConfigTemplateCache cache = new SessionConfigTemplateCache() {
+            @Override
+            long getKey(String protocolVersion, boolean antennaModeConfigSupported,
+                    PersistableBundle templateBundle) {
+                return 0;
+            }
+        };
+        FiraOpenSessionParams first = TEST_PARAMS.build();
+        FiraOpenSessionParams second = new FiraOpenSessionParams.Builder(TEST_PARAMS)
+                .setRangingIntervalMs(400)
+                .build();
+        cache.getTlvBuffer(mEncoder, first, PROTOCOL_VERSION_2_0,
+                /* antennaModeConfigSupported= */ false, MAX_TEMPLATES);
+
+        TlvBuffer tlvBuffer = cache.getTlvBuffer(mEncoder, second, PROTOCOL_VERSION_2_0,
+                /* antennaModeConfigSupported= */ false, MAX_TEMPLATES);
+
+        assertSameAsEncoder(tlvBuffer, second, PROTOCOL_VERSION_2_0);
+        assertThat(cache.getHitCount()).isEqualTo(0);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getTemplates()).hasSize(1);
+    }
+
+    @Test
+    public void testGetTlvBuffer_evictsLeastRecentlyUsed() {
+        FiraOpenSessionParams first = TEST_PARAMS.build();
+        FiraOpenSessionParams second = new FiraOpenSessionParams.Builder(TEST_PARAMS)
+                .setRangingIntervalMs(400)
+                .build();
+        FiraOpenSessionParams third = new FiraOpenSessionParams.Builder(TEST_PARAMS)
+                .setRangingIntervalMs(800)
+                .build();
+        getTlvBuffer(first, PROTOCOL_VERSION_2_0);
+        getTlvBuffer(second, PROTOCOL_VERSION_2_0);
+        getTlvBuffer(first, PROTOCOL_VERSION_2_0);
+        getTlvBuffer(third, PROTOCOL_VERSION_2_0);
+
+        getTlvBuffer(first, PROTOCOL_VERSION_2_0);
+        getTlvBuffer(second, PROTOCOL_VERSION_2_0);
+
+        assertThat(mCache.getHitCount()).isEqualTo(2);
+        assertThat(mCache.getMissCount()).isEqualTo(4);
+    }
+
+    private static int indexOf(byte[] array, byte[] target) {
+        for (int i = 0; i + target.length <= array.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(array, i, i + target.length), target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.data.UwbDeviceInfoResponse;
+
+import com.google.uwb.support.generic.GenericSpecificationParams;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.UwbCapabilityCache}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class UwbCapabilityCacheTest {
+    private static final String CHIP_ID_1 = "chipIdString1";
+    private static final String CHIP_ID_2 = "chipIdString2";
+
+    private final UwbCapabilityCache mCache = new UwbCapabilityCache();
+    private final GenericSpecificationParams mParams1 = mock(GenericSpecificationParams.class);
+    private final GenericSpecificationParams mParams2 = mock(GenericSpecificationParams.class);
+
+    private void put(String chipId, GenericSpecificationParams params) {
+        mCache.putSpecificationParams(chipId, params, mCache.getGeneration());
+    }
+
+    @Test
+    public void testGetSpecificationParams_keyedByChipId() {
+        assertThat(mCache.getSpecificationParams(CHIP_ID_1)).isNull();
+        put(CHIP_ID_1, mParams1);
+        put(CHIP_ID_2, mParams2);
+
+        assertThat(mCache.getSpecificationParams(CHIP_ID_1)).isEqualTo(mParams1);
+        assertThat(mCache.getSpecificationParams(CHIP_ID_2)).isEqualTo(mParams2);
+        assertThat(mCache.getHitCount()).isEqualTo(2);
+        assertThat(mCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidateSpecificationParams_oneChip() {
+        put(CHIP_ID_1, mParams1);
+        put(CHIP_ID_2, mParams2);
+
+        mCache.invalidateSpecificationParams(CHIP_ID_1);
+
+        assertThat(mCache.getSpecificationParams(CHIP_ID_1)).isNull();
+        assertThat(mCache.getSpecificationParams(CHIP_ID_2)).isEqualTo(mParams2);
+    }
+
+    @Test
+    public void testInvalidateSpecificationParams_allChips() {
+        put(CHIP_ID_1, mParams1);
+        put(CHIP_ID_2, mParams2);
+
+        mCache.invalidateSpecificationParams();
+
+        assertThat(mCache.getSpecificationParams(CHIP_ID_1)).isNull();
+        assertThat(mCache.getSpecificationParams(CHIP_ID_2)).isNull();
+    }
+
+    @Test
+    public void testPutSpecificationParams_droppedIfInvalidatedWhileFetching() {
+        long generation = mCache.getGeneration();
+        mCache.invalidateSpecificationParams();
+
+        mCache.putSpecificationParams(CHIP_ID_1, mParams1, generation);
+
+        assertThat(mCache.getSpecificationParams(CHIP_ID_1)).isNull();
+    }
+
+    @Test
+    public void testOnChipsInitialized() {
+        UwbDeviceInfoResponse deviceInfo = mock(UwbDeviceInfoResponse.class);
+        put(CHIP_ID_1, mParams1);
+
+        mCache.onChipsInitialized(Map.of(CHIP_ID_1, deviceInfo));
+
+        assertThat(mCache.getDeviceInfoResponse(CHIP_ID_1)).isEqualTo(deviceInfo);
+        assertThat(mCache.getDeviceInfoResponse(CHIP_ID_2)).isNull();
+        assertThat(mCache.getSpecificationParams(CHIP_ID_1)).isNull();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.UwbCommandExecutor}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class UwbCommandExecutorTest {
+    private static final String CHIP_A = "chipA";
+    private static final String CHIP_B = "chipB";
+
+    private final UwbCommandExecutor mExecutor = new UwbCommandExecutor(1);
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void testExecute_returnsResultAndReusesThread() throws Exception {
+        AtomicReference<Thread> first = new AtomicReference<>();
+        AtomicReference<Thread> second = new AtomicReference<>();
+
+        assertThat(mExecutor.execute(CHIP_A, new FutureTask<>(() -> {
+            first.set(Thread.currentThread());
+            return 1;
+        }), 1000)).isEqualTo(1);
+        assertThat(mExecutor.execute(CHIP_A, new FutureTask<>(() -> {
+            second.set(Thread.currentThread());
+            return 2;
+        }), 1000)).isEqualTo(2);
+
+        assertThat(second.get()).isSameInstanceAs(first.get());
+        UwbCommandExecutor.Stats stats = mExecutor.getStats(CHIP_A);
+        assertThat(stats.mSubmitted.get()).isEqualTo(2);
+        assertThat(stats.mCompleted.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testExecute_timeoutCancelsTask() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        FutureTask<Integer> task = new FutureTask<>(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return 0;
+        });
+
+        assertThrows(TimeoutException.class, () -> mExecutor.execute(CHIP_A, task, 50));
+
+        assertThat(task.isCancelled()).isTrue();
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(mExecutor.getStats(CHIP_A).mTimedOut.get()).isEqualTo(1);
+        // The executor is still usable after a timeout.
+        assertThat(mExecutor.execute(CHIP_A, new FutureTask<>(() -> 3), 1000)).isEqualTo(3);
+    }
+
+    @Test
+    public void testExecute_queueFullIsRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread blocker = new Thread(() -> {
+            try {
+                mExecutor.execute(CHIP_A, new FutureTask<>(() -> {
+                    started.countDown();
+                    release.await();
+                    return 0;
+                }), 5000);
+            } catch (Exception e) {
+                // Ignored.
+            }
+        });
+        blocker.start();
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        Thread queued = new Thread(() -> {
+            try {
+                mExecutor.execute(CHIP_A, new FutureTask<>(() -> 0), 5000);
+            } catch (Exception e) {
+                // Ignored.
+            }
+        });
+        queued.start();
+        while (mExecutor.getStats(CHIP_A).mSubmitted.get() < 2) {
+            Thread.sleep(5);
+        }
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> mExecutor.execute(CHIP_A, new FutureTask<>(() -> 0), 1000));
+        assertThat(e).hasCauseThat().isInstanceOf(RejectedExecutionException.class);
+        assertThat(mExecutor.getStats(CHIP_A).mRejected.get()).isEqualTo(1);
+
+        release.countDown();
+        blocker.join();
+        queued.join();
+    }
+
+    @Test
+    public void testExecute_chipsDoNotBlockEachOther() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread blocker = new Thread(() -> {
+            try {
+                mExecutor.execute(CHIP_A, new FutureTask<>(() -> {
+                    started.countDown();
+                    release.await();
+                    return 0;
+                }), 5000);
+            } catch (Exception e) {
+                // Ignored.
+            }
+        });
+        blocker.start();
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(mExecutor.execute(CHIP_B, new FutureTask<>(() -> 7), 1000)).isEqualTo(7);
+
+        release.countDown();
+        blocker.join();
+    }
+}
@@ -44,6 +44,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -69,6 +70,7 @@ import com.google.uwb.support.radar.RadarParams;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -155,6 +157,71 @@ public class UwbConfigurationManagerTest {
         assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
     }
 
+    @Test
+    public void testSetAppConfigurations_withAppConfigCache_sendsChangedOnly() throws Exception {
+        byte[] cfgStatus = {0x01, UwbUciConstants.STATUS_CODE_OK};
+        UwbConfigStatusData appConfig = new UwbConfigStatusData(UwbUciConstants.STATUS_CODE_OK,
+                1, cfgStatus);
+        when(mNativeUwbManager.setAppConfigurations(anyInt(), anyInt(), anyInt(),
+                any(byte[].class), anyString())).thenReturn(appConfig);
+        DeviceConfigFacade mockDeviceConfig = mock(DeviceConfigFacade.class);
+        when(mUwbInjector.getDeviceConfigFacade()).thenReturn(mockDeviceConfig);
+        AppConfigCache appConfigCache = new AppConfigCache();
+
+        mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(), mFiraParams,
+                TEST_CHIP_ID, PROTOCOL_VERSION_1_1, appConfigCache);
+        FiraOpenSessionParams changedParams = mFiraParams.toBuilder()
+                .setRangingIntervalMs(mFiraParams.getRangingIntervalMs() * 2)
+                .build();
+        int status = mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(),
+                changedParams, TEST_CHIP_ID, PROTOCOL_VERSION_1_1, appConfigCache);
+
+        assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
+        ArgumentCaptor<Integer> noOfParamsCaptor = ArgumentCaptor.forClass(Integer.class);
+        verify(mNativeUwbManager, times(2)).setAppConfigurations(anyInt(),
+                noOfParamsCaptor.capture(), anyInt(), any(byte[].class), eq(TEST_CHIP_ID));
+        assertEquals(1, (int) noOfParamsCaptor.getAllValues().get(1));
+
+        // Nothing changed, nothing is sent.
+        status = mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(),
+                changedParams, TEST_CHIP_ID, PROTOCOL_VERSION_1_1, appConfigCache);
+
+        assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
+        verify(mNativeUwbManager, times(2)).setAppConfigurations(anyInt(), anyInt(), anyInt(),
+                any(byte[].class), eq(TEST_CHIP_ID));
+    }
+
+    @Test
+    public void testSetAppConfigurations_withAppConfigCache_fallsBackToAll() throws Exception {
+        byte[] cfgStatus = {0x01, UwbUciConstants.STATUS_CODE_OK};
+        UwbConfigStatusData okAppConfig = new UwbConfigStatusData(
+                UwbUciConstants.STATUS_CODE_OK, 1, cfgStatus);
+        UwbConfigStatusData failedAppConfig = new UwbConfigStatusData(
+                UwbUciConstants.STATUS_CODE_FAILED, 1, cfgStatus);
+        when(mNativeUwbManager.setAppConfigurations(anyInt(), anyInt(), anyInt(),
+                any(byte[].class), anyString()))
+                .thenReturn(okAppConfig, failedAppConfig, okAppConfig);
+        DeviceConfigFacade mockDeviceConfig = mock(DeviceConfigFacade.class);
+        when(mUwbInjector.getDeviceConfigFacade()).thenReturn(mockDeviceConfig);
+        AppConfigCache appConfigCache = new AppConfigCache();
+
+        mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(), mFiraParams,
+                TEST_CHIP_ID, PROTOCOL_VERSION_1_1, appConfigCache);
+        FiraOpenSessionParams changedParams = mFiraParams.toBuilder()
+                .setRangingIntervalMs(mFiraParams.getRangingIntervalMs() * 2)
+                .build();
+        int status = mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(),
+                changedParams, TEST_CHIP_ID, PROTOCOL_VERSION_1_1, appConfigCache);
+
+        assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
+        ArgumentCaptor<Integer> noOfParamsCaptor = ArgumentCaptor.forClass(Integer.class);
+        verify(mNativeUwbManager, times(3)).setAppConfigurations(anyInt(),
+                noOfParamsCaptor.capture(), anyInt(), any(byte[].class), eq(TEST_CHIP_ID));
+        List<Integer> noOfParams = noOfParamsCaptor.getAllValues();
+        assertEquals(1, (int) noOfParams.get(1));
+        assertEquals(noOfParams.get(0), noOfParams.get(2));
+    }
+
     @Test
     public void testSetAppConfigurations_radarSession() throws Exception {
         byte[] cfgStatus = {0x01, UwbUciConstants.STATUS_CODE_OK};
@@ -31,6 +31,7 @@ import android.uwb.UwbAddress;
 
 import com.android.server.uwb.correction.TestHelpers;
 import com.android.server.uwb.correction.UwbFilterEngine;
+import com.android.server.uwb.correction.math.SphericalVector;
 
 import org.junit.After;
 import org.junit.Before;
@@ -113,4 +114,28 @@ public class UwbControleeTest {
         RangingMeasurement newMeasure = rm.build();
         assertThat(newMeasure.getAngleOfArrivalMeasurement()).isNull();
     }
+
+    @Test
+    public void testFilterPosition() {
+        final float testRads = 0.1f;
+        final float testDist = 2;
+        SphericalVector.Annotated raw = SphericalVector.fromRadians(testRads, 0, testDist)
+                .toAnnotated(true, false, true);
+
+        // Filtering a single position should just yield that same position.
+        SphericalVector.Annotated result = mControlee.filterPosition(true, raw);
+
+        TestHelpers.assertClose(result.azimuth, testRads);
+        TestHelpers.assertClose(result.distance, testDist);
+    }
+
+    @Test
+    public void testFilterPosition_noEngine() {
+        UwbControlee controlee = new UwbControlee(UWB_ADDRESS, null, mUwbInjector);
+        SphericalVector.Annotated raw = SphericalVector.fromRadians(0.1f, 0, 2)
+                .toAnnotated(true, false, true);
+
+        assertThat(controlee.hasFilterEngine()).isFalse();
+        assertThat(controlee.filterPosition(true, raw)).isNull();
+    }
 }
@@ -19,7 +19,13 @@ package com.android.server.uwb;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.verify;
 import static com.android.server.uwb.DeviceConfigFacade.DEFAULT_RANGING_RESULT_LOG_INTERVAL_MS;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.when;
@@ -449,6 +455,43 @@ public class UwbMetricsTest {
         ));
     }
 
+    @Test
+    public void testLoggingRangingResultMultipleControlees() throws Exception {
+        UwbTwoWayMeasurement otherTwoWayMeasurement = mock(UwbTwoWayMeasurement.class);
+        when(mTwoWayMeasurement.getMacAddress()).thenReturn(new byte[] {0x01, 0x02});
+        when(otherTwoWayMeasurement.getMacAddress()).thenReturn(new byte[] {0x03, 0x04});
+        when(otherTwoWayMeasurement.isStatusCodeOk()).thenReturn(true);
+        when(otherTwoWayMeasurement.getDistance()).thenReturn(DISTANCE_DEFAULT_CM * 3);
+        when(otherTwoWayMeasurement.getNLoS()).thenReturn(0);
+        when(otherTwoWayMeasurement.getRssi()).thenReturn(RSSI_DEFAULT_DBM);
+        when(mRangingData.getNoOfRangingMeasures()).thenReturn(2);
+        when(mRangingData.getRangingTwoWayMeasures()).thenReturn(
+                new UwbTwoWayMeasurement[] {mTwoWayMeasurement, otherTwoWayMeasurement});
+
+        mUwbMetrics.logRangingInitEvent(mUwbSession, UwbUciConstants.STATUS_CODE_OK);
+        mUwbMetrics.logRangingResult(UwbStatsLog.UWB_SESSION_INITIATED__PROFILE__FIRA,
+                mRangingData, mFilteredRangingMeasurement);
+        mUwbMetrics.logRangingResult(UwbStatsLog.UWB_SESSION_INITIATED__PROFILE__FIRA,
+                mRangingData, mFilteredRangingMeasurement);
+
+        // Both controlees are aggregated, but nothing is sampled within the logging interval.
+        ExtendedMockito.verify(() -> UwbStatsLog.write(
+                eq(UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED), anyInt(), anyInt(),
+                anyBoolean(), anyInt(), anyInt(), anyInt(),
+                anyBoolean(), anyInt(), anyInt(), anyInt(),
+                anyBoolean(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt()), times(0));
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(stream);
+        mUwbMetrics.dump(null, writer, null);
+        writer.flush();
+        String dump = stream.toString();
+        assertThat(dump).contains("controlee=201, measurementCount=2, validMeasurementCount=2,"
+                + " nlosCount=2, distanceCm={100:2}");
+        assertThat(dump).contains("controlee=403, measurementCount=2, validMeasurementCount=2,"
+                + " nlosCount=0, distanceCm={300:2}");
+    }
+
     @Test
     public void testReportDeviceSuccessErrorCount() throws Exception {
         mUwbMetrics.logUwbStateChangeEvent(true, false, true);
@@ -277,7 +277,8 @@ public class UwbServiceCoreTest {
             FutureTask t = invocation.getArgument(0);
             t.run();
             return t.get();
-        }).when(mUwbInjector).runTaskOnSingleThreadExecutor(any(FutureTask.class), anyInt());
+        }).when(mUwbInjector).runTaskOnSingleThreadExecutor(any(FutureTask.class), anyInt(),
+                any());
         mUwbServiceCore = new UwbServiceCore(mContext, mNativeUwbManager, mUwbMetrics,
                 mUwbCountryCode, mUwbSessionManager, mUwbConfigurationManager,
                 mUwbInjector, mTestLooper.getLooper());
@@ -439,6 +440,43 @@ public class UwbServiceCoreTest {
         verifyGetCachedSpecificationInfoSuccess();
     }
 
+    @Test
+    public void testCachedSpecificationKeyedByChipId() throws Exception {
+        enableUwbWithCountryCodeChangedCallback();
+        GenericSpecificationParams defaultChipParams = mock(GenericSpecificationParams.class);
+        GenericSpecificationParams otherChipParams = mock(GenericSpecificationParams.class);
+        when(mUwbConfigurationManager.getCapsInfo(
+                eq(GenericParams.PROTOCOL_NAME), any(), eq(TEST_DEFAULT_CHIP_ID), any()))
+                .thenReturn(Pair.create(UwbUciConstants.STATUS_CODE_OK, defaultChipParams));
+        when(mUwbConfigurationManager.getCapsInfo(
+                eq(GenericParams.PROTOCOL_NAME), any(), eq(TEST_CHIP_ONE_CHIP_ID), any()))
+                .thenReturn(Pair.create(UwbUciConstants.STATUS_CODE_OK, otherChipParams));
+
+        assertThat(mUwbServiceCore.getCachedSpecificationParams(TEST_DEFAULT_CHIP_ID))
+                .isEqualTo(defaultChipParams);
+        assertThat(mUwbServiceCore.getCachedSpecificationParams(TEST_CHIP_ONE_CHIP_ID))
+                .isEqualTo(otherChipParams);
+        assertThat(mUwbServiceCore.getCachedSpecificationParams(TEST_DEFAULT_CHIP_ID))
+                .isEqualTo(defaultChipParams);
+        assertThat(mUwbServiceCore.getCachedSpecificationParams(TEST_CHIP_ONE_CHIP_ID))
+                .isEqualTo(otherChipParams);
+
+        verify(mUwbConfigurationManager, times(2))
+                .getCapsInfo(eq(GenericParams.PROTOCOL_NAME), any(), anyString(), any());
+    }
+
+    @Test
+    public void testCachedSpecificationResetOnDeviceError() throws Exception {
+        enableUwbWithCountryCodeChangedCallback();
+        verifyGetCachedSpecificationInfoSuccess();
+
+        clearInvocations(mUwbConfigurationManager);
+        mUwbServiceCore.onDeviceStatusNotificationReceived(
+                UwbUciConstants.DEVICE_STATE_ERROR, TEST_DEFAULT_CHIP_ID);
+
+        verifyGetCachedSpecificationInfoSuccess();
+    }
+
     @Test
     public void testEnable_failure() throws Exception {
         IUwbAdapterStateCallbacks cb = mock(IUwbAdapterStateCallbacks.class);
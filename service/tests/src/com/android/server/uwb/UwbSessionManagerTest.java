@@ -112,6 +112,17 @@ import com.android.modules.utils.build.SdkLevel;
 import com.android.server.uwb.UwbSessionManager.UwbSession;
 import com.android.server.uwb.UwbSessionManager.WaitObj;
 import com.android.server.uwb.advertisement.UwbAdvertiseManager;
+import com.android.server.uwb.correction.TestHelpers;
+import com.android.server.uwb.correction.UwbFilterEngine;
+import com.android.server.uwb.correction.filtering.MedAvgRotationFilter;
+import com.android.server.uwb.correction.filtering.NullFilter;
+import com.android.server.uwb.correction.filtering.PositionFilterImpl;
+import com.android.server.uwb.correction.math.Pose;
+import com.android.server.uwb.correction.math.Quaternion;
+import com.android.server.uwb.correction.math.SphericalVector;
+import com.android.server.uwb.correction.math.Vector3;
+import com.android.server.uwb.correction.pose.IPoseSource;
+import com.android.server.uwb.correction.pose.NullPoseSource;
 import com.android.server.uwb.data.DtTagUpdateRangingRoundsStatus;
 import com.android.server.uwb.data.UwbDeviceInfoResponse;
 import com.android.server.uwb.data.UwbMulticastListUpdateStatus;
@@ -350,7 +361,8 @@ public class UwbSessionManagerTest {
             FutureTask t = invocation.getArgument(0);
             t.run();
             return t.get();
-        }).when(mUwbInjector).runTaskOnSingleThreadExecutor(any(FutureTask.class), anyInt());
+        }).when(mUwbInjector).runTaskOnSingleThreadExecutor(any(FutureTask.class), anyInt(),
+                any());
         mSpecificationParamsBuilder = new GenericSpecificationParams.Builder()
                 .setAliroSpecificationParams(mAliroSpecificationParams)
                 .setCccSpecificationParams(mCccSpecificationParams)
@@ -467,6 +479,23 @@ public class UwbSessionManagerTest {
                 .onRangingResult(eq(mockUwbSession), eq(uwbRangingData));
     }
 
+    @Test
+    public void onRangeDataNotificationReceived_withReorderBuffer_goesThroughBuffer() {
+        UwbRangingData uwbRangingData = UwbTestUtils.generateRangingData(
+                RANGING_MEASUREMENT_TYPE_TWO_WAY, MAC_ADDRESSING_MODE_EXTENDED,
+                UwbUciConstants.STATUS_CODE_OK);
+        UwbSession mockUwbSession = mock(UwbSession.class);
+        RangingDataReorderBuffer reorderBuffer = mock(RangingDataReorderBuffer.class);
+        when(mockUwbSession.getRangingDataReorderBuffer()).thenReturn(reorderBuffer);
+        doReturn(mockUwbSession)
+                .when(mUwbSessionManager).getUwbSession(eq(TEST_SESSION_ID));
+
+        mUwbSessionManager.onRangeDataNotificationReceived(uwbRangingData);
+
+        verify(reorderBuffer).add(uwbRangingData);
+        verify(mUwbSessionNotificationManager, never()).onRangingResult(any(), any());
+    }
+
     @Test
     public void onRangeDataNotificationReceivedWithInvalidSession_twoWay() {
         UwbRangingData uwbRangingData = UwbTestUtils.generateRangingData(
@@ -519,6 +548,7 @@ public class UwbSessionManagerTest {
         verify(mUwbSessionNotificationManager)
                 .onRangingResult(eq(mockUwbSession), eq(uwbRangingData));
         verify(mUwbAdvertiseManager).updateAdvertiseTarget(uwbRangingData.mRangingOwrAoaMeasure);
+        verify(mockUwbSession).onOwrAoaMeasurement(PEER_EXTENDED_MAC_ADDRESS_LONG);
         verify(mUwbSessionNotificationManager)
                 .onDataReceived(eq(mockUwbSession), eq(PEER_EXTENDED_UWB_ADDRESS),
                         isA(PersistableBundle.class), eq(DATA_PAYLOAD));
@@ -1104,7 +1134,8 @@ public class UwbSessionManagerTest {
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         when(mNativeUwbManager.deInitSession(anyInt(), anyString()))
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         // Init session for 3rd party FG app
@@ -1174,7 +1205,7 @@ public class UwbSessionManagerTest {
         mTestLooper.dispatchAll();
 
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_1_1));
+                anyInt(), any(), any(), eq(FIRA_VERSION_1_1), any());
     }
 
     @Test
@@ -1653,7 +1684,6 @@ public class UwbSessionManagerTest {
         UwbAddress uwbAddress = (macAddressingMode == MAC_ADDRESSING_MODE_SHORT)
                 ? PEER_SHORT_UWB_ADDRESS : PEER_EXTENDED_UWB_ADDRESS;
 
-        session.mMulticastRangingErrorStreakTimerListeners = spy(new ConcurrentHashMap<>());
         session.mControlees = spy(new ConcurrentHashMap<>());
         session.addControlee(uwbAddress);
         return uwbAddress;
@@ -1907,7 +1937,8 @@ public class UwbSessionManagerTest {
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         doReturn(UwbUciConstants.UWB_SESSION_STATE_INIT,
                 UwbUciConstants.UWB_SESSION_STATE_IDLE).when(uwbSession).getSessionState();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         mUwbSessionManager.initSession(ATTRIBUTION_SOURCE, uwbSession.getSessionHandle(),
@@ -1918,7 +1949,7 @@ public class UwbSessionManagerTest {
         // Verifications related to Open Ranging.
         verify(mNativeUwbManager).initSession(eq(TEST_SESSION_ID), anyByte(), eq(TEST_CHIP_ID));
         verify(mUwbConfigurationManager).setAppConfigurations(
-                eq(TEST_SESSION_ID), any(), eq(TEST_CHIP_ID), eq(uwbsFiraVersion));
+                eq(TEST_SESSION_ID), any(), eq(TEST_CHIP_ID), eq(uwbsFiraVersion), any());
         verify(mUwbSessionNotificationManager).onRangingOpened(eq(uwbSession));
         verify(mUwbMetrics).logRangingInitEvent(
                 eq(uwbSession), eq(UwbUciConstants.STATUS_CODE_OK));
@@ -1989,7 +2020,8 @@ public class UwbSessionManagerTest {
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         doReturn(UwbUciConstants.UWB_SESSION_STATE_INIT,
                 UwbUciConstants.UWB_SESSION_STATE_IDLE).when(uwbSession).getSessionState();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         mUwbSessionManager.initSession(ATTRIBUTION_SOURCE, uwbSession.getSessionHandle(),
@@ -2002,7 +2034,7 @@ public class UwbSessionManagerTest {
         verify(mNativeUwbManager).initSession(eq(TEST_SESSION_ID), anyByte(), eq(TEST_CHIP_ID));
         verify(mUwbServiceCore).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                eq(TEST_SESSION_ID), any(), eq(TEST_CHIP_ID), eq(FIRA_VERSION_2_0));
+                eq(TEST_SESSION_ID), any(), eq(TEST_CHIP_ID), eq(FIRA_VERSION_2_0), any());
         verify(mUwbSessionNotificationManager).onRangingOpened(eq(uwbSession));
         verify(mUwbMetrics).logRangingInitEvent(
                 eq(uwbSession), eq(UwbUciConstants.STATUS_CODE_OK));
@@ -2016,7 +2048,8 @@ public class UwbSessionManagerTest {
                 .thenThrow(new IllegalStateException());
         doReturn(UwbUciConstants.UWB_SESSION_STATE_INIT,
                 UwbUciConstants.UWB_SESSION_STATE_IDLE).when(uwbSession).getSessionState();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
 
@@ -2040,7 +2073,8 @@ public class UwbSessionManagerTest {
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_FAILED);
         doReturn(UwbUciConstants.UWB_SESSION_STATE_INIT,
                 UwbUciConstants.UWB_SESSION_STATE_IDLE).when(uwbSession).getSessionState();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
 
@@ -2064,7 +2098,8 @@ public class UwbSessionManagerTest {
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         doReturn(UwbUciConstants.UWB_SESSION_STATE_INIT,
                 UwbUciConstants.UWB_SESSION_STATE_IDLE).when(uwbSession).getSessionState();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_FAILED);
 
 
@@ -2088,7 +2123,8 @@ public class UwbSessionManagerTest {
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         doReturn(UwbUciConstants.UWB_SESSION_STATE_ERROR,
                 UwbUciConstants.UWB_SESSION_STATE_IDLE).when(uwbSession).getSessionState();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_FAILED);
 
 
@@ -2112,7 +2148,8 @@ public class UwbSessionManagerTest {
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         doReturn(UwbUciConstants.UWB_SESSION_STATE_INIT,
                 UwbUciConstants.UWB_SESSION_STATE_ERROR).when(uwbSession).getSessionState();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_FAILED);
 
 
@@ -2263,7 +2300,7 @@ public class UwbSessionManagerTest {
         ArgumentCaptor<Params> paramsArgumentCaptor = ArgumentCaptor.forClass(Params.class);
         verify(mUwbConfigurationManager).setAppConfigurations(
                 eq(TEST_SESSION_ID), paramsArgumentCaptor.capture(), eq(TEST_CHIP_ID),
-                eq(FIRA_VERSION_1_1));
+                eq(FIRA_VERSION_1_1), any());
         FiraRangingReconfigureParams firaParams =
                 (FiraRangingReconfigureParams) paramsArgumentCaptor.getValue();
         assertThat(firaParams.getRangeDataNtfConfig()).isEqualTo(
@@ -2321,7 +2358,7 @@ public class UwbSessionManagerTest {
         ArgumentCaptor<Params> paramsArgumentCaptor = ArgumentCaptor.forClass(Params.class);
         verify(mUwbConfigurationManager).setAppConfigurations(
                 eq(TEST_SESSION_ID), paramsArgumentCaptor.capture(), eq(TEST_CHIP_ID),
-                eq(FIRA_VERSION_1_1));
+                eq(FIRA_VERSION_1_1), any());
         FiraRangingReconfigureParams firaParams =
                 (FiraRangingReconfigureParams) paramsArgumentCaptor.getValue();
         assertThat(firaParams.getRangeDataNtfConfig()).isEqualTo(
@@ -2361,7 +2398,7 @@ public class UwbSessionManagerTest {
         ArgumentCaptor<Params> paramsArgumentCaptor = ArgumentCaptor.forClass(Params.class);
         verify(mUwbConfigurationManager).setAppConfigurations(
                 eq(TEST_SESSION_ID), paramsArgumentCaptor.capture(), eq(TEST_CHIP_ID),
-                eq(FIRA_VERSION_1_1));
+                eq(FIRA_VERSION_1_1), any());
         FiraRangingReconfigureParams firaParams =
                 (FiraRangingReconfigureParams) paramsArgumentCaptor.getValue();
         assertThat(firaParams.getRangeDataNtfConfig()).isEqualTo(
@@ -2388,7 +2425,7 @@ public class UwbSessionManagerTest {
         ArgumentCaptor<Params> paramsArgumentCaptor = ArgumentCaptor.forClass(Params.class);
         verify(mUwbConfigurationManager).setAppConfigurations(
                 eq(TEST_SESSION_ID), paramsArgumentCaptor.capture(), eq(TEST_CHIP_ID),
-                eq(FIRA_VERSION_1_1));
+                eq(FIRA_VERSION_1_1), any());
         FiraRangingReconfigureParams firaParams =
                 (FiraRangingReconfigureParams) paramsArgumentCaptor.getValue();
         assertThat(firaParams.getRangeDataNtfConfig()).isEqualTo(
@@ -2402,7 +2439,7 @@ public class UwbSessionManagerTest {
         paramsArgumentCaptor = ArgumentCaptor.forClass(Params.class);
         verify(mUwbConfigurationManager, times(2)).setAppConfigurations(
                 eq(TEST_SESSION_ID), paramsArgumentCaptor.capture(), eq(TEST_CHIP_ID),
-                eq(FIRA_VERSION_1_1));
+                eq(FIRA_VERSION_1_1), any());
         firaParams = (FiraRangingReconfigureParams) paramsArgumentCaptor.getValue();
         assertThat(firaParams.getRangeDataNtfConfig()).isEqualTo(
                 FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE);
@@ -2616,7 +2653,7 @@ public class UwbSessionManagerTest {
         // "params.mInitiationTime" field is not set, and so no re-configuration is needed
         // before the UWB ranging is started.
         verify(mUwbConfigurationManager, never()).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_1_1));
+                anyInt(), any(), any(), eq(FIRA_VERSION_1_1), any());
     }
 
     @Test
@@ -2716,7 +2753,7 @@ public class UwbSessionManagerTest {
         // is not set, and so no re-configuration is needed for a Fira session, before the
         // UWB ranging is started.
         verify(mUwbConfigurationManager, never()).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
     }
 
     @Test
@@ -2777,7 +2814,8 @@ public class UwbSessionManagerTest {
                 .when(uwbSession).getSessionState();
         when(mNativeUwbManager.startRanging(eq(TEST_SESSION_ID), anyString()))
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
         when(mUwbConfigurationManager.getAppConfigurations(
                 eq(TEST_SESSION_ID), anyString(), any(), any(), eq(TEST_CHIP_ID),
@@ -2818,7 +2856,8 @@ public class UwbSessionManagerTest {
         when(mNativeUwbManager.startRanging(eq(TEST_SESSION_ID), anyString()))
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         when(mUwbServiceCore.queryUwbsTimestampMicros()).thenReturn(UWBS_TIMESTAMP);
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         mUwbSessionManager.startRanging(uwbSession.getSessionHandle(), params);
@@ -2829,7 +2868,7 @@ public class UwbSessionManagerTest {
         // equals() is not implemented.
         verify(mUwbServiceCore).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
         verify(mUwbSessionNotificationManager).onRangingStarted(eq(uwbSession), any());
         verify(mUwbMetrics).longRangingStartEvent(
                 eq(uwbSession), eq(UwbUciConstants.STATUS_CODE_OK));
@@ -2867,7 +2906,7 @@ public class UwbSessionManagerTest {
         // equals() is not implemented.
         verify(mUwbServiceCore).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
     }
 
     // Test ALIRO StartRanging on a Fira UCI version 2.0+ device, when the App configures a relative
@@ -2906,7 +2945,7 @@ public class UwbSessionManagerTest {
         // equals() is not implemented.
         verify(mUwbServiceCore).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
     }
 
     // Test CCC StartRanging on a Fira UCI version 2.0+ device, when the App configures a relative
@@ -2939,7 +2978,7 @@ public class UwbSessionManagerTest {
         // Verify that queryUwbsTimestampMicros() is not called.
         verify(mUwbServiceCore, never()).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
     }
 
     // Test ALIRO StartRanging on a Fira UCI version 2.0+ device, when the App configures a relative
@@ -2976,7 +3015,7 @@ public class UwbSessionManagerTest {
         // Verify that queryUwbsTimestampMicros() is not called.
         verify(mUwbServiceCore, never()).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
     }
 
     // Test FiRa StartRanging on a Fira UCI version 2.0+ device, when the App configures an absolute
@@ -3032,7 +3071,7 @@ public class UwbSessionManagerTest {
         // CccStartRangingParams
         verify(mUwbServiceCore, never()).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
     }
 
     // Test ALIRO StartRanging on a Fira UCI version 2.0+ device, when the App configures an
@@ -3070,7 +3109,7 @@ public class UwbSessionManagerTest {
         // AliroStartRangingParams.
         verify(mUwbServiceCore, never()).queryUwbsTimestampMicros();
         verify(mUwbConfigurationManager).setAppConfigurations(
-                anyInt(), any(), any(), eq(FIRA_VERSION_2_0));
+                anyInt(), any(), any(), eq(FIRA_VERSION_2_0), any());
     }
 
     private void do_execStartRanging_success_uwbs_2_0(UwbSession uwbSession,
@@ -3086,7 +3125,8 @@ public class UwbSessionManagerTest {
         when(mNativeUwbManager.startRanging(eq(TEST_SESSION_ID), anyString()))
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
         when(mUwbServiceCore.queryUwbsTimestampMicros()).thenReturn(UWBS_TIMESTAMP);
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
         when(mUwbConfigurationManager.getAppConfigurations(
                 eq(TEST_SESSION_ID), anyString(), any(), any(), eq(TEST_CHIP_ID),
@@ -3145,17 +3185,13 @@ public class UwbSessionManagerTest {
         mUwbSessionManager.onRangeDataNotificationReceived(uwbRangingData);
         verify(mUwbSessionNotificationManager).onRangingResult(uwbSession, uwbRangingData);
 
-        // Verify that an alarm is started for the controlee
-        ArgumentCaptor<UwbAddress> addressCaptor = ArgumentCaptor.forClass(UwbAddress.class);
+        // Verify that a timer is started for the controlee
         ArgumentCaptor<AlarmManager.OnAlarmListener> alarmListenerCaptor =
                 ArgumentCaptor.forClass(AlarmManager.OnAlarmListener.class);
-        verify(uwbSession.mMulticastRangingErrorStreakTimerListeners).put(
-                addressCaptor.capture(),
-                alarmListenerCaptor.capture()
-        );
         verify(mAlarmManager).setExact(
-                anyInt(), anyLong(), anyString(), eq(alarmListenerCaptor.getValue()), any());
-        assertThat(addressCaptor.getValue()).isEqualTo(controleeAddr);
+                anyInt(), anyLong(), anyString(), alarmListenerCaptor.capture(), any());
+        assertThat(uwbSession.getControleesWithOngoingRangingErrorStreak())
+                .containsExactly(controleeAddr);
         assertThat(alarmListenerCaptor.getValue()).isNotNull();
 
         // Send one more error
@@ -3261,31 +3297,55 @@ public class UwbSessionManagerTest {
 
         mUwbSessionManager.onRangeDataNotificationReceived(uwbRangingData);
         verify(mUwbSessionNotificationManager).onRangingResult(uwbSession, uwbRangingData);
-        // Verify that an alarm is started for the controlee.
-        ArgumentCaptor<UwbAddress> addressCaptor = ArgumentCaptor.forClass(UwbAddress.class);
+        // Verify that a timer is started for the controlee.
         ArgumentCaptor<AlarmManager.OnAlarmListener> alarmListenerCaptor =
                 ArgumentCaptor.forClass(AlarmManager.OnAlarmListener.class);
-        verify(uwbSession.mMulticastRangingErrorStreakTimerListeners).put(
-                addressCaptor.capture(),
-                alarmListenerCaptor.capture()
-        );
         verify(mAlarmManager).setExact(
-                anyInt(), anyLong(), anyString(), eq(alarmListenerCaptor.getValue()), any());
-        assertThat(addressCaptor.getValue()).isEqualTo(controleeAddr);
+                anyInt(), anyLong(), anyString(), alarmListenerCaptor.capture(), any());
+        assertThat(uwbSession.getControleesWithOngoingRangingErrorStreak())
+                .containsExactly(controleeAddr);
         assertThat(alarmListenerCaptor.getValue()).isNotNull();
-        // Actually do the putting so that we can check for removal later.
-        uwbSession.mMulticastRangingErrorStreakTimerListeners.put(addressCaptor.getValue(),
-                alarmListenerCaptor.getValue());
 
-        // Send successful data and ensure that the controlee's timer is cancelled.
+        // Send successful data and ensure that the controlee's timer is stopped, without a call
+        // to the alarm service.
         uwbRangingData = UwbTestUtils.generateRangingData(
                 RANGING_MEASUREMENT_TYPE_TWO_WAY, MAC_ADDRESSING_MODE_SHORT,
                 UwbUciConstants.STATUS_CODE_OK);
         mUwbSessionManager.onRangeDataNotificationReceived(uwbRangingData);
         verify(mUwbSessionNotificationManager).onRangingResult(eq(uwbSession), eq(uwbRangingData));
-        verify(mAlarmManager).cancel(eq(alarmListenerCaptor.getValue()));
-        verify(uwbSession.mMulticastRangingErrorStreakTimerListeners)
-                .remove(eq(addressCaptor.getValue()));
+        assertThat(uwbSession.getControleesWithOngoingRangingErrorStreak()).isEmpty();
+        verify(mAlarmManager, never()).cancel(any(AlarmManager.OnAlarmListener.class));
+
+        // The alarm still fires, but doesn't stop the session.
+        alarmListenerCaptor.getValue().onAlarm();
+        mTestLooper.dispatchAll();
+        verify(mNativeUwbManager, never()).stopRanging(anyInt(), anyString());
+    }
+
+    @Test
+    public void execStartRanging_onRangeDataNotificationFlappingResults_armsAlarmOnce()
+            throws Exception {
+        UwbSession uwbSession = prepareExistingUwbSession();
+        UwbAddress controleeAddr = setUpControlee(uwbSession, MAC_ADDRESSING_MODE_SHORT);
+        startRanging(uwbSession);
+
+        UwbRangingData errorRangingData = UwbTestUtils.generateRangingData(
+                RANGING_MEASUREMENT_TYPE_TWO_WAY, MAC_ADDRESSING_MODE_SHORT,
+                UwbUciConstants.STATUS_CODE_RANGING_RX_TIMEOUT);
+        UwbRangingData successRangingData = UwbTestUtils.generateRangingData(
+                RANGING_MEASUREMENT_TYPE_TWO_WAY, MAC_ADDRESSING_MODE_SHORT,
+                UwbUciConstants.STATUS_CODE_OK);
+        for (int i = 0; i < 10; i++) {
+            mUwbSessionManager.onRangeDataNotificationReceived(errorRangingData);
+            mUwbSessionManager.onRangeDataNotificationReceived(successRangingData);
+        }
+        mUwbSessionManager.onRangeDataNotificationReceived(errorRangingData);
+
+        // A single alarm is set for the whole streak of flapping results.
+        verify(mAlarmManager).setExact(anyInt(), anyLong(), anyString(), any(), any());
+        verify(mAlarmManager, never()).cancel(any(AlarmManager.OnAlarmListener.class));
+        assertThat(uwbSession.getControleesWithOngoingRangingErrorStreak())
+                .containsExactly(controleeAddr);
     }
 
     @Test
@@ -3326,6 +3386,25 @@ public class UwbSessionManagerTest {
                 List.of());
     }
 
+    @Test
+    public void session_remoteMacAddressList_keepsAdvertisersWithoutData() throws Exception {
+        UwbSession uwbSession = prepareExistingUwbSession();
+        when(mDeviceConfigFacade.getRxDataMaxPacketsToStore())
+                .thenReturn(MAX_RX_DATA_PACKETS_TO_STORE);
+
+        // One advertiser's data is delivered, the other one was only measured.
+        uwbSession.addReceivedDataInfo(buildReceivedDataInfo(PEER_EXTENDED_MAC_ADDRESS_LONG));
+        uwbSession.getAllReceivedDataInfo(PEER_EXTENDED_MAC_ADDRESS_LONG);
+        uwbSession.onOwrAoaMeasurement(PEER_EXTENDED_MAC_ADDRESS_2_LONG);
+
+        // Both advertise targets are removed when the session is removed.
+        assertThat(uwbSession.getRemoteMacAddressList()).containsExactly(
+                PEER_EXTENDED_MAC_ADDRESS_LONG, PEER_EXTENDED_MAC_ADDRESS_2_LONG);
+        mUwbSessionManager.removeSession(uwbSession);
+        verify(mUwbAdvertiseManager).removeAdvertiseTarget(PEER_EXTENDED_MAC_ADDRESS_LONG);
+        verify(mUwbAdvertiseManager).removeAdvertiseTarget(PEER_EXTENDED_MAC_ADDRESS_2_LONG);
+    }
+
     @Test
     public void session_receivedDataInfo_maxCapacity() throws Exception {
         UwbSession uwbSession = prepareExistingUwbSession();
@@ -3986,7 +4065,7 @@ public class UwbSessionManagerTest {
         mTestLooper.dispatchNext();
 
         verify(mUwbInjector).runTaskOnSingleThreadExecutor(
-                any(), eq(IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS));
+                any(), eq(IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS), any());
         verify(mUwbSessionNotificationManager)
                 .onRangingStoppedWithApiReasonCode(eq(uwbSession),
                         eq(RangingChangeReason.LOCAL_API), any());
@@ -4166,7 +4245,8 @@ public class UwbSessionManagerTest {
         when(uwbMulticastListUpdateStatus.getStatus()).thenReturn(
                 new int[] { UwbUciConstants.STATUS_CODE_OK });
         doReturn(uwbMulticastListUpdateStatus).when(uwbSession).getMulticastListUpdateStatus();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         mUwbSessionManager.reconfigure(uwbSession.getSessionHandle(), reconfigureParams);
@@ -4223,7 +4303,8 @@ public class UwbSessionManagerTest {
         when(uwbMulticastListUpdateStatus.getStatus()).thenReturn(
                 new int[] { UwbUciConstants.STATUS_CODE_OK });
         doReturn(uwbMulticastListUpdateStatus).when(uwbSession).getMulticastListUpdateStatus();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         // Make sure the address exists in the first place. This should have been set up by
@@ -4287,7 +4368,8 @@ public class UwbSessionManagerTest {
         when(uwbMulticastListUpdateStatus.getStatus()).thenReturn(
                 new int[] { UwbUciConstants.STATUS_CODE_OK });
         doReturn(uwbMulticastListUpdateStatus).when(uwbSession).getMulticastListUpdateStatus();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         mUwbSessionManager.reconfigure(uwbSession.getSessionHandle(), reconfigureParams);
@@ -4337,7 +4419,8 @@ public class UwbSessionManagerTest {
         when(uwbMulticastListUpdateStatus.getStatus()).thenReturn(
                 new int[] { UwbUciConstants.STATUS_CODE_OK });
         doReturn(uwbMulticastListUpdateStatus).when(uwbSession).getMulticastListUpdateStatus();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         mUwbSessionManager.reconfigure(uwbSession.getSessionHandle(), reconfigureParams);
@@ -4520,7 +4603,8 @@ public class UwbSessionManagerTest {
                 new FiraRangingReconfigureParams.Builder()
                         .setBlockStrideLength(10)
                         .build();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_OK);
 
         mUwbSessionManager.reconfigure(uwbSession.getSessionHandle(), reconfigureParams);
@@ -4537,7 +4621,7 @@ public class UwbSessionManagerTest {
         mTestLooper.dispatchNext();
 
         verify(mUwbInjector).runTaskOnSingleThreadExecutor(
-                any(), eq(TEST_RANGING_INTERVAL_MS * 4 * 11));
+                any(), eq(TEST_RANGING_INTERVAL_MS * 4 * 11), any());
         verify(mUwbSessionNotificationManager)
                 .onRangingStoppedWithApiReasonCode(eq(uwbSession),
                         eq(RangingChangeReason.LOCAL_API), any());
@@ -4567,7 +4651,8 @@ public class UwbSessionManagerTest {
         when(uwbMulticastListUpdateStatus.getStatus()).thenReturn(
                 new int[] { UwbUciConstants.STATUS_CODE_OK });
         doReturn(uwbMulticastListUpdateStatus).when(uwbSession).getMulticastListUpdateStatus();
-        when(mUwbConfigurationManager.setAppConfigurations(anyInt(), any(), anyString(), any()))
+        when(mUwbConfigurationManager.setAppConfigurations(
+                anyInt(), any(), anyString(), any(), any()))
                 .thenReturn(UwbUciConstants.STATUS_CODE_FAILED);
 
         mUwbSessionManager.reconfigure(uwbSession.getSessionHandle(), reconfigureParams);
@@ -5639,6 +5724,43 @@ public class UwbSessionManagerTest {
                 .onRadarDataMessageReceived(uwbSession, uwbRadarData);
     }
 
+    @Test
+    public void testDlTDoAAnchorFilter_ignoresPoseChanges() throws Exception {
+        NullPoseSource poseSource = new NullPoseSource();
+        poseSource.changePose(Pose.IDENTITY);
+        when(mUwbInjector.acquirePoseSource()).thenReturn(poseSource);
+        when(mUwbInjector.createFilterEngine(any(), any())).thenAnswer(invocation -> {
+            UwbFilterEngine.Builder builder = new UwbFilterEngine.Builder()
+                    .setFilter(new PositionFilterImpl(
+                            new MedAvgRotationFilter(5, 1f),
+                            new MedAvgRotationFilter(5, 1f),
+                            new NullFilter()));
+            IPoseSource source = invocation.getArgument(0);
+            if (source != null) {
+                builder.setPoseSource(source);
+            }
+            return builder.build();
+        });
+        UwbSession uwbSession = setUpUwbSessionForExecution(ATTRIBUTION_SOURCE);
+        UwbControlee anchor = uwbSession.getOrCreateDlTDoAAnchor(PEER_SHORT_UWB_ADDRESS);
+        verify(mUwbInjector).createFilterEngine(null, null);
+
+        // DL-TDoA has no distance, so rotating the device must not pull the anchor's angles
+        // toward 0.
+        SphericalVector.Annotated raw = SphericalVector.fromRadians(0.5f, 0.2f, 0)
+                .toAnnotated(true, true, false);
+        SphericalVector.Annotated result = null;
+        for (int i = 1; i <= 10; i++) {
+            poseSource.changePose(new Pose(Vector3.ORIGIN,
+                    Quaternion.yawPitchRoll(0.1f * i, 0.05f * i, 0)));
+            result = anchor.filterPosition(true, raw);
+        }
+
+        assertNotNull(result);
+        TestHelpers.assertClose(result.azimuth, 0.5f);
+        TestHelpers.assertClose(result.elevation, 0.2f);
+    }
+
     private UwbSessionManager.ReceivedDataInfo buildReceivedDataInfo(long macAddress) {
         return buildReceivedDataInfo(macAddress, DATA_SEQUENCE_NUM);
     }
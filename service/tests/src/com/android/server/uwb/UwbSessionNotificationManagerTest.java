@@ -35,6 +35,8 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.verify;
@@ -49,6 +51,7 @@ import android.platform.test.annotations.RequiresFlagsEnabled;
 import android.platform.test.flag.junit.CheckFlagsRule;
 import android.platform.test.flag.junit.DeviceFlagsValueProvider;
 import android.util.Pair;
+import android.uwb.AngleOfArrivalMeasurement;
 import android.uwb.IUwbOemExtensionCallback;
 import android.uwb.IUwbRangingCallbacks;
 import android.uwb.RangingChangeReason;
@@ -59,6 +62,7 @@ import android.uwb.UwbAddress;
 import androidx.test.filters.SmallTest;
 import androidx.test.runner.AndroidJUnit4;
 
+import com.android.server.uwb.correction.math.SphericalVector;
 import com.android.server.uwb.data.UwbRadarData;
 import com.android.server.uwb.data.UwbRangingData;
 import com.android.server.uwb.data.UwbUciConstants;
@@ -77,9 +81,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -105,6 +111,8 @@ public class UwbSessionNotificationManagerTest {
     @Mock private UwbServiceCore mUwbServiceCore;
     @Mock private UwbMetrics mUwbMetrics;
     @Mock private IUwbOemExtensionCallback mIOemExtensionCallback;
+    @Mock private RangingReportBatcher mRangingReportBatcher;
+    @Mock private RangingDataReorderBuffer mRangingDataReorderBuffer;
     @Rule
     public final CheckFlagsRule mCheckFlagsRule = DeviceFlagsValueProvider.createCheckFlagsRule();
 
@@ -393,6 +401,34 @@ public class UwbSessionNotificationManagerTest {
                 eq(testRangingDataAndRangingReport.second.getMeasurements().get(0)));
     }
 
+    @Test
+    public void testOnRangingResult_forDlTDoA_filtered() throws Exception {
+        UwbControlee anchor = mock(UwbControlee.class);
+        SphericalVector.Annotated filtered =
+                SphericalVector.fromRadians(0.5f, 0.25f, 0).toAnnotated(true, true, false);
+        filtered.azimuthFom = 0.9;
+        filtered.elevationFom = 0.8;
+        when(anchor.hasFilterEngine()).thenReturn(true);
+        when(anchor.filterPosition(eq(true), any())).thenReturn(filtered);
+        when(mUwbSession.getOrCreateDlTDoAAnchor(any())).thenReturn(anchor);
+        Pair<UwbRangingData, RangingReport> testRangingDataAndRangingReport =
+                UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_DL_TDOA,
+                        true, true, false, false, TEST_ELAPSED_NANOS);
+        mUwbSessionNotificationManager.onRangingResult(
+                mUwbSession, testRangingDataAndRangingReport.first);
+
+        ArgumentCaptor<RangingReport> reportCaptor = ArgumentCaptor.forClass(RangingReport.class);
+        verify(mIUwbRangingCallbacks).onRangingResult(eq(mSessionHandle), reportCaptor.capture());
+        AngleOfArrivalMeasurement aoa =
+                reportCaptor.getValue().getMeasurements().get(0).getAngleOfArrivalMeasurement();
+        assertThat(aoa.getAzimuth().getRadians()).isEqualTo(0.5f);
+        assertThat(aoa.getAzimuth().getConfidenceLevel()).isEqualTo(0.9);
+        assertThat(aoa.getAltitude().getRadians()).isEqualTo(0.25f);
+        assertThat(aoa.getAltitude().getConfidenceLevel()).isEqualTo(0.8);
+    }
+
     @Test
     public void testOnRangingResult_badRangingDataForOwrAoa() throws Exception {
         UwbRangingData testRangingData = UwbTestUtils.generateBadOwrAoaMeasurementRangingData(
@@ -521,6 +557,77 @@ public class UwbSessionNotificationManagerTest {
                 isA(PersistableBundle.class));
     }
 
+    @Test
+    public void testOnRangingResult_batched() throws Exception {
+        Pair<UwbRangingData, RangingReport> testRangingDataAndRangingReport =
+                UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS);
+        when(mUwbSession.getRangingReportBatcher()).thenReturn(mRangingReportBatcher);
+        mUwbSessionNotificationManager.onRangingResult(
+                mUwbSession, testRangingDataAndRangingReport.first);
+
+        verify(mRangingReportBatcher).add(any(RangingReport.class));
+        verify(mIUwbRangingCallbacks, never()).onRangingResult(any(), any());
+        verify(mUwbMetrics).logRangingResult(anyInt(), any(), any());
+    }
+
+    @Test
+    public void testOnRangingResultBatch() throws Exception {
+        List<RangingReport> reports = List.of(
+                UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS).second);
+        mUwbSessionNotificationManager.onRangingResultBatch(mUwbSession, reports);
+
+        verify(mIUwbRangingCallbacks).onRangingResultBatch(mSessionHandle, reports);
+    }
+
+    @Test
+    public void testOnRangingStopped_flushesBatchedReports() throws Exception {
+        when(mUwbSession.getRangingReportBatcher()).thenReturn(mRangingReportBatcher);
+        int status = UwbUciConstants.REASON_STATE_CHANGE_WITH_SESSION_MANAGEMENT_COMMANDS;
+        mUwbSessionNotificationManager.onRangingStopped(mUwbSession, status);
+
+        InOrder inOrder = inOrder(mRangingReportBatcher, mIUwbRangingCallbacks);
+        inOrder.verify(mRangingReportBatcher).flush();
+        inOrder.verify(mIUwbRangingCallbacks).onRangingStopped(eq(mSessionHandle), anyInt(),
+                any());
+    }
+
+    @Test
+    public void testOnRangingClosed_flushesBatchedReports() throws Exception {
+        when(mUwbSession.getRangingReportBatcher()).thenReturn(mRangingReportBatcher);
+        mUwbSessionNotificationManager.onRangingClosed(mUwbSession, STATUS_CODE_FAILED);
+
+        InOrder inOrder = inOrder(mRangingReportBatcher, mIUwbRangingCallbacks);
+        inOrder.verify(mRangingReportBatcher).flush();
+        inOrder.verify(mIUwbRangingCallbacks).onRangingClosed(eq(mSessionHandle), anyInt(),
+                any());
+    }
+
+    @Test
+    public void testOnRangingStopped_deliversHeldReportsToTheApp() throws Exception {
+        Pair<UwbRangingData, RangingReport> testRangingDataAndRangingReport =
+                UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS);
+        when(mUwbSession.getRangingDataReorderBuffer()).thenReturn(mRangingDataReorderBuffer);
+        when(mRangingDataReorderBuffer.drain())
+                .thenReturn(List.of(testRangingDataAndRangingReport.first));
+        int status = UwbUciConstants.REASON_STATE_CHANGE_WITH_SESSION_MANAGEMENT_COMMANDS;
+        mUwbSessionNotificationManager.onRangingStopped(mUwbSession, status);
+
+        InOrder inOrder = inOrder(mIUwbRangingCallbacks);
+        inOrder.verify(mIUwbRangingCallbacks).onRangingResult(eq(mSessionHandle),
+                isA(RangingReport.class));
+        inOrder.verify(mIUwbRangingCallbacks).onRangingStopped(eq(mSessionHandle), anyInt(),
+                any());
+    }
+
     @Test
     public void testOnRangingStopped() throws Exception {
         int status = UwbUciConstants.REASON_STATE_CHANGE_WITH_SESSION_MANAGEMENT_COMMANDS;
@@ -18,6 +18,7 @@ package com.android.server.uwb.advertisement;
 
 import static com.android.server.uwb.util.DataTypeConversionUtil.macAddressByteArrayToLong;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -349,6 +350,88 @@ public class UwbAdvertiseManagerTest {
         assertNull(mUwbAdvertiseManager.getAdvertiseTarget(TEST_MAC_ADDRESS_B_INT));
     }
 
+    @Test
+    public void testUpdateAdvertiseTarget_evictsExpiredTargets() throws Exception {
+        setupOwrAoaMeasurements(TEST_MAC_ADDRESS_A, NUM_REQUIRED_OWR_AOA_MEASUREMENTS,
+                TEST_AOA_AZIMUTH_Q97_FORMAT, TEST_DELTA_AOA_INSIDE_VARIANCE,
+                TEST_AOA_ELEVATION_Q97_FORMAT, TEST_DELTA_AOA_INSIDE_VARIANCE);
+        assertEquals(1, mUwbAdvertiseManager.getAdvertiseTargetCount());
+
+        // A measurement from another device, after device A went stale, evicts device A.
+        when(mUwbInjector.getElapsedSinceBootMillis()).thenReturn(
+                OWR_AOA_MEASUREMENT_TIME_OUTSIDE_THRESHOLD_MILLIS);
+        mUwbAdvertiseManager.updateAdvertiseTarget(new UwbOwrAoaMeasurement(TEST_MAC_ADDRESS_B,
+                TEST_STATUS, TEST_LOS, TEST_FRAME_SEQ_NUMBER, TEST_BLOCK_INDEX,
+                TEST_AOA_AZIMUTH_Q97_FORMAT, TEST_AOA_AZIMUTH_FOM,
+                TEST_AOA_ELEVATION_Q97_FORMAT, TEST_AOA_ELEVATION_FOM));
+
+        assertNull(mUwbAdvertiseManager.getAdvertiseTarget(TEST_MAC_ADDRESS_A_LONG));
+        assertNotNull(mUwbAdvertiseManager.getAdvertiseTarget(TEST_MAC_ADDRESS_B_INT));
+        assertEquals(1, mUwbAdvertiseManager.getAdvertiseTargetCount());
+        assertEquals(1, mUwbAdvertiseManager.getExpiredEvictionCount());
+    }
+
+    @Test
+    public void testUpdateAdvertiseTarget_evictsLeastRecentlyUpdatedWhenFull() throws Exception {
+        UwbOwrAoaMeasurement uwbOwrAoaMeasurement = new UwbOwrAoaMeasurement(TEST_MAC_ADDRESS_A,
+                TEST_STATUS, TEST_LOS, TEST_FRAME_SEQ_NUMBER, TEST_BLOCK_INDEX,
+                TEST_AOA_AZIMUTH_Q97_FORMAT, TEST_AOA_AZIMUTH_FOM,
+                TEST_AOA_ELEVATION_Q97_FORMAT, TEST_AOA_ELEVATION_FOM);
+        for (int i = 0; i < UwbAdvertiseManager.MAX_ADVERTISE_TARGETS; i++) {
+            uwbOwrAoaMeasurement.mMacAddress = new byte[] {0x01, (byte) i};
+            mUwbAdvertiseManager.updateAdvertiseTarget(uwbOwrAoaMeasurement);
+        }
+        // Refresh the first device, so the second one becomes the least recently updated.
+        uwbOwrAoaMeasurement.mMacAddress = new byte[] {0x01, 0x00};
+        mUwbAdvertiseManager.updateAdvertiseTarget(uwbOwrAoaMeasurement);
+        assertEquals(0, mUwbAdvertiseManager.getCapacityEvictionCount());
+
+        uwbOwrAoaMeasurement.mMacAddress = TEST_MAC_ADDRESS_C;
+        mUwbAdvertiseManager.updateAdvertiseTarget(uwbOwrAoaMeasurement);
+
+        assertEquals(UwbAdvertiseManager.MAX_ADVERTISE_TARGETS,
+                mUwbAdvertiseManager.getAdvertiseTargetCount());
+        assertEquals(1, mUwbAdvertiseManager.getCapacityEvictionCount());
+        assertNotNull(mUwbAdvertiseManager.getAdvertiseTarget(
+                macAddressByteArrayToLong(new byte[] {0x01, 0x00})));
+        assertNull(mUwbAdvertiseManager.getAdvertiseTarget(
+                macAddressByteArrayToLong(new byte[] {0x01, 0x01})));
+        assertNotNull(mUwbAdvertiseManager.getAdvertiseTarget(
+                macAddressByteArrayToLong(TEST_MAC_ADDRESS_C)));
+    }
+
+    // Slide the window well past its length, and check the running variance still matches the
+    // variance computed over the stored measurements.
+    @Test
+    public void testIsTarget_slidingWindowVariance() throws Exception {
+        UwbOwrAoaMeasurement uwbOwrAoaMeasurement = new UwbOwrAoaMeasurement(TEST_MAC_ADDRESS_A,
+                TEST_STATUS, TEST_LOS, TEST_FRAME_SEQ_NUMBER, TEST_BLOCK_INDEX,
+                TEST_AOA_AZIMUTH_Q97_FORMAT, TEST_AOA_AZIMUTH_FOM,
+                TEST_AOA_ELEVATION_Q97_FORMAT, TEST_AOA_ELEVATION_FOM);
+        // Angles far from each other first, then a stable run once the window has slid enough.
+        int[] azimuths = {-10, 10, -10, 10, -10, 10, -10, 10, -10, 10, -10, 10,
+                3, 4, 3, 4, 3, 4, 3, 4, 3, 4};
+        for (int i = 0; i < azimuths.length; i++) {
+            uwbOwrAoaMeasurement.mAoaAzimuth = azimuths[i];
+            uwbOwrAoaMeasurement.mAoaElevation = -azimuths[i];
+            mUwbAdvertiseManager.updateAdvertiseTarget(uwbOwrAoaMeasurement);
+            // The variance sub-range holds values of both signs until index 12 has gone past
+            // its start.
+            boolean stable = i - NUM_REQUIRED_OWR_AOA_MEASUREMENTS + 1
+                    + OVERLAY_ARRAY_START_INDEX_TO_CAL_VARIANCE >= 12;
+            assertEquals(stable, mUwbAdvertiseManager.isPointedTarget(TEST_MAC_ADDRESS_A));
+        }
+        // Then an angle outside the criterion angle is kept in the window for its whole length.
+        uwbOwrAoaMeasurement.mAoaAzimuth = OVERLAY_CRITERIA_ANGLE + 1;
+        mUwbAdvertiseManager.updateAdvertiseTarget(uwbOwrAoaMeasurement);
+        uwbOwrAoaMeasurement.mAoaAzimuth = 3;
+        for (int i = 0; i < NUM_REQUIRED_OWR_AOA_MEASUREMENTS; i++) {
+            assertFalse(mUwbAdvertiseManager.isPointedTarget(TEST_MAC_ADDRESS_A));
+            mUwbAdvertiseManager.updateAdvertiseTarget(uwbOwrAoaMeasurement);
+        }
+        assertTrue(mUwbAdvertiseManager.isPointedTarget(TEST_MAC_ADDRESS_A));
+    }
+
     private UwbOwrAoaMeasurement setupOwrAoaMeasurements(byte[] macAddress, int numMeasurements,
             int aoaAzimuth, int aoaAzimuthVariance,
             int aoaElevation, int aoaElevationVariance) {
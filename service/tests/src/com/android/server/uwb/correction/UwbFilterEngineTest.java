@@ -29,6 +29,7 @@ import com.android.server.uwb.correction.math.SphericalVector;
 import com.android.server.uwb.correction.math.SphericalVector.Annotated;
 import com.android.server.uwb.correction.math.Vector3;
 import com.android.server.uwb.correction.pose.NullPoseSource;
+import com.android.server.uwb.correction.pose.SharedPoseDelta;
 import com.android.server.uwb.correction.primers.NullPrimer;
 
 import org.junit.Test;
@@ -120,6 +121,41 @@ public class UwbFilterEngineTest {
         engine.close();
     }
 
+    @Test
+    public void sharedPoseDelta() {
+        NullPoseSource poseSource = new NullPoseSource();
+        SharedPoseDelta sharedPoseDelta = new SharedPoseDelta();
+        UwbFilterEngine[] engines = new UwbFilterEngine[3];
+        for (int i = 0; i < engines.length; i++) {
+            UwbFilterEngine.Builder builder = new UwbFilterEngine.Builder()
+                    .setFilter(new PositionFilterImpl(
+                            new NullFilter(), new NullFilter(), new NullFilter()))
+                    .setPoseSource(poseSource);
+            // The last engine computes its own pose changes.
+            if (i < engines.length - 1) {
+                builder.setSharedPoseDelta(sharedPoseDelta);
+            }
+            engines[i] = builder.build();
+        }
+
+        poseSource.changePose(Pose.IDENTITY);
+        for (int i = 0; i < engines.length; i++) {
+            engines[i].add(SphericalVector.fromRadians(0.1f * i, 0.2f, 1.3f).toAnnotated(), 0);
+        }
+
+        // Turn left; every engine should see its target move to the right by the same amount.
+        poseSource.changePose(
+                new Pose(Vector3.ORIGIN, Quaternion.yawPitchRoll(-0.5f, 0, 0))
+        );
+        for (int i = 0; i < engines.length; i++) {
+            SphericalVector currentVector = engines[i].compute(0);
+            assertClose(currentVector.azimuth, 0.1f * i - 0.5f);
+            assertClose(currentVector.elevation, 0.2f);
+            assertClose(currentVector.distance, 1.3f);
+            engines[i].close();
+        }
+    }
+
     @Test
     public void primerTest() {
         NullPoseSource poseSource = new NullPoseSource();
@@ -21,6 +21,9 @@ import android.platform.test.annotations.Presubmit;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 @Presubmit
 public class MedAvgFilterTest {
 
@@ -113,4 +116,56 @@ public class MedAvgFilterTest {
                 / (0.5f + 0.5f + 0.25f + 1f + 0.25f);
         assertThat(filter.getResult().value).isWithin(0.000001f).of(weightedResult);
     }
+
+    // Ensures that the incrementally sorted window matches a fresh sort of the window, including
+    // duplicate values and compensation.
+    @Test
+    public void slidingMedianTest() {
+        Random random = new Random(1);
+        int windowSize = 7;
+        MedAvgFilter filter = new MedAvgFilter(windowSize, 0);
+        float[] history = new float[100];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = random.nextInt(5);
+            filter.add(history[i], i, 1);
+            if (i % 10 == 9) {
+                filter.compensate(1);
+                for (int j = 0; j <= i; j++) {
+                    history[j] += 1;
+                }
+            }
+            int from = Math.max(0, i + 1 - windowSize);
+            float[] window = Arrays.copyOfRange(history, from, i + 1);
+            Arrays.sort(window);
+            float median = window.length % 2 == 1
+                    ? window[window.length / 2]
+                    : (window[window.length / 2 - 1] + window[window.length / 2]) / 2;
+            assertThat(filter.getResult().value).isEqualTo(median);
+        }
+    }
+
+    // Ensures that shrinking the window keeps the newest samples.
+    @Test
+    public void shrinkWindowTest() {
+        MedAvgFilter filter = new MedAvgFilter(5, 1);
+        filter.add(1, 0, 1);
+        filter.add(2, 0, 1);
+        filter.add(3, 0, 1);
+        filter.add(4, 0, 1);
+        filter.setWindowSize(2);
+        filter.add(5, 0, 1);
+        assertThat(filter.getResult().value).isEqualTo((4f + 5f) / 2);
+    }
+
+    // Ensures that readings with no confidence leave the last result in place.
+    @Test
+    public void zeroFomTest() {
+        MedAvgFilter filter = new MedAvgFilter(2, 1);
+        filter.add(1, 0, 1);
+        filter.add(2, 0, 1);
+        filter.add(5, 0, 0);
+        assertThat(filter.getResult().value).isEqualTo(2);
+        filter.add(6, 0, 0);
+        assertThat(filter.getResult().value).isEqualTo(2);
+    }
 }
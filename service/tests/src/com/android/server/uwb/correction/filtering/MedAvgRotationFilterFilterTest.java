@@ -21,6 +21,9 @@ import static com.android.server.uwb.correction.math.MathHelper.F_PI;
 
 import static java.lang.Math.toRadians;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
 import android.platform.test.annotations.Presubmit;
 
 import org.junit.Test;
@@ -54,4 +57,35 @@ public class MedAvgRotationFilterFilterTest {
                 toRadians((175 + (360 - 175) + 5) / 3f) + F_HALF_PI - 2 * F_PI
         );
     }
+
+    // Ensures that a median across the +/-180 boundary picks the center angle on the circle.
+    @Test
+    public void wrappedMedianTest() {
+        MedAvgRotationFilter filter = new MedAvgRotationFilter(5, 0);
+        filter.add((float) toRadians(170), 0, 1);
+        filter.add((float) toRadians(-170), 0, 1);
+        filter.add((float) toRadians(179), 0, 1);
+        filter.add((float) toRadians(-175), 0, 1);
+        filter.add((float) toRadians(175), 0, 1);
+        assertClose(filter.getResult().value, toRadians(179));
+
+        // Slide the window; the oldest sample (170) leaves.
+        filter.add((float) toRadians(-165), 0, 1);
+        assertClose(filter.getResult().value, toRadians(-175));
+    }
+
+    // An invalid window size must leave the filter untouched.
+    @Test
+    public void invalidWindowSizeTest() {
+        MedAvgRotationFilter filter = new MedAvgRotationFilter(3, 1);
+        filter.add((float) toRadians(175), 0, 1);
+        filter.add((float) toRadians(-175), 0, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> filter.setWindowSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> filter.setWindowSize(256));
+
+        filter.add((float) toRadians(5), 0, 1);
+        assertClose(filter.getResult().value, toRadians((175 + (360 - 175) + 5) / 3f));
+        assertEquals(3, filter.getWindowSize());
+    }
 }
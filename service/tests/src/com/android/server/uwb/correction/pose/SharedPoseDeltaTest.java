@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.correction.pose;
+
+import static com.android.server.uwb.correction.TestHelpers.assertClose;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.platform.test.annotations.Presubmit;
+
+import com.android.server.uwb.correction.math.Pose;
+import com.android.server.uwb.correction.math.Quaternion;
+import com.android.server.uwb.correction.math.Vector3;
+
+import org.junit.Test;
+
+@Presubmit
+public class SharedPoseDeltaTest {
+    private static final Pose FROM = new Pose(new Vector3(1, 2, 3),
+            Quaternion.yawPitchRoll(0.3f, 0.1f, 0));
+    private static final Pose TO = new Pose(new Vector3(-1, 0, 2),
+            Quaternion.yawPitchRoll(-0.2f, 0, 0.4f));
+
+    @Test
+    public void testGetDelta() {
+        SharedPoseDelta sharedPoseDelta = new SharedPoseDelta();
+        Pose delta = sharedPoseDelta.getDelta(FROM, TO);
+        Pose expected = Pose.compose(TO.inverted(), FROM);
+
+        assertClose(delta.translation.x, expected.translation.x);
+        assertClose(delta.translation.y, expected.translation.y);
+        assertClose(delta.translation.z, expected.translation.z);
+        assertClose(delta.rotation.x, expected.rotation.x);
+        assertClose(delta.rotation.y, expected.rotation.y);
+        assertClose(delta.rotation.z, expected.rotation.z);
+        assertClose(delta.rotation.w, expected.rotation.w);
+    }
+
+    @Test
+    public void testGetDelta_reusedForSamePoses() {
+        SharedPoseDelta sharedPoseDelta = new SharedPoseDelta();
+        Pose delta = sharedPoseDelta.getDelta(FROM, TO);
+
+        assertThat(sharedPoseDelta.getDelta(FROM, TO)).isSameInstanceAs(delta);
+        assertThat(sharedPoseDelta.getDelta(TO, FROM)).isNotSameInstanceAs(delta);
+    }
+}
@@ -72,6 +72,7 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.concurrent.Executor;
 
@@ -886,4 +887,162 @@ public class GattTransportClientProviderTest {
                         eq(expectedInPacket.toBytes()),
                         eq(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT));
     }
+
+    @Test
+    public void testStartProcessing_requestMaxMtu() {
+        startProcessing();
+
+        verify(mMockBluetoothGatt, times(1)).requestMtu(517);
+    }
+
+    @Test
+    public void testSendMessage_queuedUntilPreviousPacketWritten() {
+        startProcessing();
+        doReturn(BluetoothStatusCodes.SUCCESS)
+                .when(mMockBluetoothGatt)
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)), any(), anyInt());
+
+        assertThat(mGattTransportClientProvider.sendMessage(SECID, MESSAGE)).isTrue();
+        assertThat(mGattTransportClientProvider.sendMessage(SECID, MESSAGE)).isTrue();
+
+        verify(mMockBluetoothGatt, times(1))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)), any(), anyInt());
+
+        mBluetoothGattCallback.onCharacteristicWrite(
+                mMockBluetoothGatt, IN_CHARACTERSTIC, BluetoothGatt.GATT_SUCCESS);
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockBluetoothGatt, times(2))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)),
+                        captor.capture(),
+                        anyInt());
+        assertThat(captor.getAllValues().get(0)).isEqualTo(DATA_PACKET_BYTES);
+        assertThat(captor.getAllValues().get(1)).isEqualTo(DATA_PACKET_BYTES);
+    }
+
+    /**
+     * Loops the data packets written to the "IN" characteristic back to the client through the
+     * "OUT" characteristic, as if the remote GATT server echoed them.
+     */
+    private void setupLoopbackTransport() {
+        ArrayDeque<byte[]> outDataPackets = new ArrayDeque<>();
+        Answer loopbackGattCharacteristicWrite =
+                new Answer() {
+                    public Integer answer(InvocationOnMock invocation) {
+                        byte[] bytes = invocation.getArgument(/*index=*/ 1);
+                        outDataPackets.add(bytes);
+                        EXECUTOR.execute(
+                                () ->
+                                        mBluetoothGattCallback.onCharacteristicChanged(
+                                                (BluetoothGatt) invocation.getMock(),
+                                                mOutCharacterstic,
+                                                bytes));
+                        EXECUTOR.execute(
+                                () ->
+                                        mBluetoothGattCallback.onCharacteristicWrite(
+                                                (BluetoothGatt) invocation.getMock(),
+                                                (BluetoothGattCharacteristic)
+                                                        invocation.getArgument(/*index=*/ 0),
+                                                BluetoothGatt.GATT_SUCCESS));
+                        return BluetoothStatusCodes.SUCCESS;
+                    }
+                };
+        doAnswer(loopbackGattCharacteristicWrite)
+                .when(mMockBluetoothGatt)
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)), any(), anyInt());
+        Answer notifyGattCharacteristicRead =
+                new Answer() {
+                    public Boolean answer(InvocationOnMock invocation) {
+                        EXECUTOR.execute(
+                                () ->
+                                        mBluetoothGattCallback.onCharacteristicRead(
+                                                (BluetoothGatt) invocation.getMock(),
+                                                (BluetoothGattCharacteristic)
+                                                        invocation.getArgument(/*index=*/ 0),
+                                                outDataPackets.poll(),
+                                                BluetoothGatt.GATT_SUCCESS));
+                        return true;
+                    }
+                };
+        doAnswer(notifyGattCharacteristicRead)
+                .when(mMockBluetoothGatt)
+                .readCharacteristic(argThat(new CharacteristicMatcher(mOutCharacterstic)));
+    }
+
+    @Test
+    public void testSendMessage_loopbackThreePackets() {
+        byte[] messagePayload = new byte[51];
+        Arrays.fill(messagePayload, (byte) 3);
+        FiraConnectorMessage message =
+                new FiraConnectorMessage(
+                        MessageType.EVENT, InstructionCode.DATA_EXCHANGE, messagePayload);
+
+        startProcessing();
+        setupLoopbackTransport();
+
+        assertThat(mGattTransportClientProvider.sendMessage(SECID, message)).isTrue();
+        assertThat(mGattTransportClientProvider.sendMessage(SECID, MESSAGE)).isTrue();
+
+        verify(mMockBluetoothGatt, times(4))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)), any(), anyInt());
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockDataReceiver, times(2)).onDataReceived(captor.capture());
+        assertThat(captor.getAllValues().get(0)).isEqualTo(message.payload);
+        assertThat(captor.getAllValues().get(1)).isEqualTo(MESSAGE.payload);
+    }
+
+    @Test
+    public void testOutCharactersticNotifyAndRead_concurrentSessions() {
+        FiraConnectorCapabilities capabilities =
+                new FiraConnectorCapabilities.Builder()
+                        .setOptimizedDataPacketSize(OPTIMIZED_DATA_PACKET_SIZE)
+                        .setMaxConcurrentFragmentedMessageSessionSupported(2)
+                        .build();
+        byte[] messagePayload = new byte[24];
+        Arrays.fill(messagePayload, (byte) 3);
+        FiraConnectorMessage message =
+                new FiraConnectorMessage(
+                        MessageType.COMMAND, InstructionCode.DATA_EXCHANGE, messagePayload);
+        byte[] messageBytes = message.toBytes();
+        int payloadSize = OPTIMIZED_DATA_PACKET_SIZE - 1;
+        byte[] firstPayload = Arrays.copyOf(messageBytes, payloadSize);
+        byte[] lastPayload = Arrays.copyOfRange(messageBytes, payloadSize, messageBytes.length);
+        FiraConnectorDataPacket expectedInPacket =
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ true,
+                        TransportProvider.ADMIN_SECID,
+                        new AdminErrorMessage(ErrorType.SECID_INVALID).toBytes());
+
+        startProcessing();
+        assertThat(mGattTransportClientProvider.setCapabilites(capabilities)).isTrue();
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(/*lastChainingPacket=*/ false, SECID, firstPayload)
+                        .toBytes());
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(/*lastChainingPacket=*/ false, SECID2, firstPayload)
+                        .toBytes());
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(/*lastChainingPacket=*/ true, SECID, lastPayload)
+                        .toBytes());
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(/*lastChainingPacket=*/ true, SECID2, lastPayload)
+                        .toBytes());
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockDataReceiver, times(1)).onDataReceived(captor.capture());
+        assertThat(captor.getValue()).isEqualTo(message.payload);
+        // The message of SECID2 was reassembled too, and rejected since it isn't this client's.
+        ArgumentCaptor<byte[]> inCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockBluetoothGatt, times(1))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)),
+                        inCaptor.capture(),
+                        anyInt());
+        assertThat(inCaptor.getValue()).isEqualTo(expectedInPacket.toBytes());
+    }
 }
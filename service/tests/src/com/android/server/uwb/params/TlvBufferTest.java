@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.params;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.util.UwbUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.params.TlvBuffer}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class TlvBufferTest {
+    @Test
+    public void testBuild_writesLittleEndianValues() {
+        TlvBuffer tlvBuffer = new TlvBuffer.Builder()
+                .putByte(0x01, (byte) 0x02)
+                .putShort(0x02, (short) 0x0304)
+                .putInt(0x03, 0x05060708)
+                .putLong(0x2B, 0x090A0B0C0D0E0F10L)
+                .putShortArray(0xE3, new short[] {(short) 0xFFFE, 0x0102})
+                .putByteArray(0xE4, new byte[] {0x11, 0x12})
+                .build();
+
+        assertThat(tlvBuffer.getNoOfParams()).isEqualTo(6);
+        assertThat(tlvBuffer.getByteArray()).isEqualTo(UwbUtil.getByteArray(
+                "010102" + "02020403" + "030408070605" + "2B08100F0E0D0C0B0A09"
+                        + "E304FEFF0201" + "E4021112"));
+    }
+
+    @Test
+    public void testBuild_growsPastInitialSize() {
+        TlvBuffer.Builder builder = new TlvBuffer.Builder();
+        for (int i = 0; i < 200; i++) {
+            builder.putInt(i, i);
+        }
+        TlvBuffer tlvBuffer = builder.build();
+
+        assertThat(tlvBuffer.getNoOfParams()).isEqualTo(200);
+        assertThat(tlvBuffer.getByteArray()).hasLength(200 * (2 + Integer.BYTES));
+        TlvDecoderBuffer tlvs = new TlvDecoderBuffer(tlvBuffer.getByteArray(), 200);
+        assertThat(tlvs.parse()).isTrue();
+        assertThat(tlvs.getInt(199)).isEqualTo(199);
+    }
+
+    @Test
+    public void testBuild_recyclesScratchBuffer() {
+        new TlvBuffer.Builder().putByte(0x01, (byte) 0x01).build();
+        int pooledBufferCount = TlvBuffer.getPooledBufferCount();
+
+        TlvBuffer.Builder builder = new TlvBuffer.Builder().putByte(0x01, (byte) 0x01);
+        assertThat(TlvBuffer.getPooledBufferCount()).isEqualTo(pooledBufferCount - 1);
+        builder.build();
+        assertThat(TlvBuffer.getPooledBufferCount()).isEqualTo(pooledBufferCount);
+    }
+
+    @Test
+    public void testBuild_clearsRecycledScratchBuffer() {
+        TlvBuffer.Builder builder = new TlvBuffer.Builder()
+                .putByteArray(0xA0, new byte[] {0x11, 0x22, 0x33, 0x44});
+        byte[] scratchBuffer = builder.mBuffer;
+        builder.build();
+
+        assertThat(scratchBuffer).isEqualTo(new byte[scratchBuffer.length]);
+    }
+
+    @Test
+    public void testBuild_putAfterBuildDoesNotChangeBuiltBuffer() {
+        TlvBuffer.Builder builder = new TlvBuffer.Builder().putByte(0x01, (byte) 0x01);
+        TlvBuffer first = builder.build();
+        TlvBuffer second = builder.putByte(0x02, (byte) 0x02).build();
+
+        assertThat(first.getByteArray()).isEqualTo(UwbUtil.getByteArray("010101"));
+        assertThat(second.getByteArray()).isEqualTo(UwbUtil.getByteArray("010101020102"));
+    }
+
+    @Test
+    public void testPutByteArray_tooLongThrows() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TlvBuffer.Builder().putByteArray(0x01, new byte[256]));
+    }
+}
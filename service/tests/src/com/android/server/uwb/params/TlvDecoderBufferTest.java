@@ -20,6 +20,8 @@ import static com.android.server.uwb.params.TlvDecoderBuffer.Tlv;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.junit.Assert.assertThrows;
+
 import android.platform.test.annotations.Presubmit;
 
 import androidx.test.filters.SmallTest;
@@ -96,4 +98,44 @@ public class TlvDecoderBufferTest {
         assertThat(tlvDecoderBuffer.getByteArray(40)).isEqualTo(UwbUtil.getByteArray(
                 "010203040506"));
     }
+
+    @Test
+    public void testHasTagAndGetLength() throws Exception {
+        TlvDecoderBuffer tlvDecoderBuffer =
+                new TlvDecoderBuffer(TEST_TLV_DATA, TEST_TLV_NUM_PARAMS);
+        assertThat(tlvDecoderBuffer.parse()).isTrue();
+
+        assertThat(tlvDecoderBuffer.hasTag(40)).isTrue();
+        assertThat(tlvDecoderBuffer.hasTag(41)).isFalse();
+        assertThat(tlvDecoderBuffer.getLength(40)).isEqualTo(6);
+    }
+
+    @Test
+    public void testGetLongAndNegativeValues() throws Exception {
+        TlvDecoderBuffer tlvDecoderBuffer = new TlvDecoderBuffer(
+                UwbUtil.getByteArray("2B080102030405060708" + "E502FEFF" + "E60480FFFFFF"), 3);
+        assertThat(tlvDecoderBuffer.parse()).isTrue();
+
+        assertThat(tlvDecoderBuffer.getLong(0x2B)).isEqualTo(0x0807060504030201L);
+        assertThat(tlvDecoderBuffer.getShort(0xE5)).isEqualTo((short) -2);
+        assertThat(tlvDecoderBuffer.getInt(0xE6)).isEqualTo(0xFFFFFF80);
+    }
+
+    @Test
+    public void testGetters_wrongLengthOrMissingTagThrows() throws Exception {
+        TlvDecoderBuffer tlvDecoderBuffer =
+                new TlvDecoderBuffer(TEST_TLV_DATA, TEST_TLV_NUM_PARAMS);
+        assertThat(tlvDecoderBuffer.parse()).isTrue();
+
+        assertThrows(IllegalArgumentException.class, () -> tlvDecoderBuffer.getShort(1));
+        assertThrows(IllegalArgumentException.class, () -> tlvDecoderBuffer.getByte(41));
+    }
+
+    @Test
+    public void testParse_truncatedValueFails() throws Exception {
+        TlvDecoderBuffer tlvDecoderBuffer =
+                new TlvDecoderBuffer(UwbUtil.getByteArray("0101010204C800"), 2);
+
+        assertThat(tlvDecoderBuffer.parse()).isFalse();
+    }
 }
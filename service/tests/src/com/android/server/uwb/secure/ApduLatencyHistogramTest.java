@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.secure;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class ApduLatencyHistogramTest {
+    private final ApduLatencyHistogram mHistogram = new ApduLatencyHistogram();
+
+    @Test
+    public void getBucket_powersOfTwoMillis() {
+        assertThat(ApduLatencyHistogram.getBucket(TimeUnit.MICROSECONDS.toNanos(500)))
+                .isEqualTo(0);
+        assertThat(ApduLatencyHistogram.getBucket(TimeUnit.MILLISECONDS.toNanos(1))).isEqualTo(1);
+        assertThat(ApduLatencyHistogram.getBucket(TimeUnit.MILLISECONDS.toNanos(3))).isEqualTo(2);
+        assertThat(ApduLatencyHistogram.getBucket(TimeUnit.SECONDS.toNanos(10)))
+                .isEqualTo(ApduLatencyHistogram.BUCKET_COUNT - 1);
+    }
+
+    @Test
+    public void record_countsPerInstruction() {
+        mHistogram.recordApdu((byte) 0xA5, TimeUnit.MILLISECONDS.toNanos(3));
+        mHistogram.recordApdu((byte) 0xA5, TimeUnit.MILLISECONDS.toNanos(5));
+        mHistogram.recordApdu((byte) 0xC2, TimeUnit.MILLISECONDS.toNanos(1));
+        mHistogram.recordOpenChannel(TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertThat(mHistogram.getApduCount((byte) 0xA5)).isEqualTo(2);
+        assertThat(mHistogram.getApduCount((byte) 0xC2)).isEqualTo(1);
+        assertThat(mHistogram.getApduCount((byte) 0xCB)).isEqualTo(0);
+        assertThat(mHistogram.getOpenChannelCount()).isEqualTo(1);
+        assertThat(mHistogram.toString()).isEqualTo("ApduLatencyHistogram:"
+                + " [INS A5 n=2 totalMs=8 <4ms:1 <8ms:1]"
+                + " [INS C2 n=1 totalMs=1 <2ms:1]"
+                + " [open channel n=1 totalMs=40 <64ms:1]");
+    }
+}
@@ -39,6 +39,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.Random;
 
 public class SecureElementChannelTest {
     @Mock private OmapiConnection mMockOmapiConnection;
@@ -305,6 +306,41 @@ public class SecureElementChannelTest {
         assertThat(mSecureElementChannel.isOpened()).isFalse();
     }
 
+    @Test
+    public void getRetryDelayMillis_doublesWithJitterUpToMax() {
+        Random random = new Random(/* seed= */ 42);
+
+        for (int i = 0; i < 100; i++) {
+            long firstDelay = SecureElementChannel.getRetryDelayMillis(0, random);
+            long secondDelay = SecureElementChannel.getRetryDelayMillis(1, random);
+            long maxDelay = SecureElementChannel.getRetryDelayMillis(10, random);
+
+            assertThat(firstDelay).isAtLeast(5L);
+            assertThat(firstDelay).isAtMost(10L);
+            assertThat(secondDelay).isAtLeast(10L);
+            assertThat(secondDelay).isAtMost(20L);
+            assertThat(maxDelay).isAtLeast(40L);
+            assertThat(maxDelay).isAtMost(80L);
+        }
+    }
+
+    @Test
+    public void transmit_recordsLatencyOfEachAttempt() throws Exception {
+        init();
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockCommandApdu.getIns()).thenReturn((byte) 0xCB);
+        when(mMockOmapiConnection.transmit(eq(mMockCommandApdu)))
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_CONDITIONS_NOT_SATISFIED))
+                .thenReturn(mMockResponseApdu);
+        mSecureElementChannel.openChannel();
+
+        mSecureElementChannel.transmit(mMockCommandApdu);
+
+        ApduLatencyHistogram histogram = mSecureElementChannel.getApduLatencyHistogram();
+        assertThat(histogram.getOpenChannelCount()).isEqualTo(1);
+        assertThat(histogram.getApduCount((byte) 0xCB)).isEqualTo(2);
+    }
+
     private void init() {
         mSecureElementChannel =
                 new SecureElementChannel(
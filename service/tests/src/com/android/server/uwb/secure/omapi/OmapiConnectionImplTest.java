@@ -21,6 +21,8 @@ import static com.android.server.uwb.util.Constants.FIRA_APPLET_AID;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -61,6 +63,7 @@ public class OmapiConnectionImplTest {
     @Before
     public void setup() throws Exception {
         MockitoAnnotations.initMocks(this);
+        OmapiConnectionImpl.clearFiRaAppletReaderName();
 
         mOmapiConnection = new OmapiConnectionImpl(mMockContext);
         mOmapiConnection.mSeService = mMockSeService;
@@ -99,4 +102,42 @@ public class OmapiConnectionImplTest {
         assertThat(responseApdu.getStatusWord())
                 .isEqualTo(StatusWord.SW_NO_SPECIFIC_DIAGNOSTIC.toInt());
     }
+
+    @Test
+    public void openChannel_laterConnectionReusesFiRaAppletReader() throws IOException {
+        when(mMockChannel.getSelectResponse())
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_NO_ERROR).toByteArray());
+        mOmapiConnection.openChannel();
+        // Once to find the reader with the FiRa applet, once to open the channel.
+        verify(mMockSeSession, times(2)).openLogicalChannel(eq(FIRA_APPLET_AID));
+
+        ResponseApdu selectResponse = newOmapiConnection().openChannel();
+
+        assertThat(selectResponse).isEqualTo(ResponseApdu.fromStatusWord(StatusWord.SW_NO_ERROR));
+        verify(mMockSeSession, times(3)).openLogicalChannel(eq(FIRA_APPLET_AID));
+    }
+
+    @Test
+    public void openChannel_failureForgetsFiRaAppletReader() throws IOException {
+        when(mMockChannel.getSelectResponse())
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_NO_ERROR).toByteArray());
+        mOmapiConnection.openChannel();
+        when(mMockChannel.getSelectResponse())
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_FILE_NOT_FOUND)
+                        .toByteArray());
+        newOmapiConnection().openChannel();
+        verify(mMockSeSession, times(3)).openLogicalChannel(eq(FIRA_APPLET_AID));
+
+        when(mMockChannel.getSelectResponse())
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_NO_ERROR).toByteArray());
+        newOmapiConnection().openChannel();
+
+        verify(mMockSeSession, times(5)).openLogicalChannel(eq(FIRA_APPLET_AID));
+    }
+
+    private OmapiConnectionImpl newOmapiConnection() {
+        OmapiConnectionImpl omapiConnection = new OmapiConnectionImpl(mMockContext);
+        omapiConnection.mSeService = mMockSeService;
+        return omapiConnection;
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.util.RateLimitedLog}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RateLimitedLogTest {
+    private static final String TAG = "RateLimitedLogTest";
+    private static final String KEY = "key";
+    private static final long WINDOW_MS = 1000;
+
+    private final RateLimitedLog mLog =
+            new RateLimitedLog("test", /* maxMessagesPerWindow= */ 2, WINDOW_MS,
+                    /* ringBufferSize= */ 3);
+
+    private String dump() {
+        StringWriter sw = new StringWriter();
+        mLog.dump(new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    @Test
+    public void testIsLoggable_limitedPerWindow() {
+        assertThat(mLog.isLoggable(KEY, 0)).isTrue();
+        assertThat(mLog.isLoggable(KEY, 10)).isTrue();
+        assertThat(mLog.isLoggable(KEY, 20)).isFalse();
+        assertThat(mLog.isLoggable(KEY, WINDOW_MS - 1)).isFalse();
+
+        assertThat(mLog.isLoggable(KEY, WINDOW_MS)).isTrue();
+        assertThat(mLog.getSuppressedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testIsLoggable_limitedPerKey() {
+        assertThat(mLog.isLoggable(KEY, 0)).isTrue();
+        assertThat(mLog.isLoggable(KEY, 0)).isTrue();
+
+        assertThat(mLog.isLoggable("otherKey", 0)).isTrue();
+    }
+
+    @Test
+    public void testRecord_appendsSuppressedCount() {
+        mLog.isLoggable(KEY, 0);
+        mLog.isLoggable(KEY, 0);
+        mLog.isLoggable(KEY, 0);
+        mLog.isLoggable(KEY, 0);
+
+        assertThat(mLog.isLoggable(KEY, WINDOW_MS)).isTrue();
+        assertThat(mLog.record(TAG, KEY, "message", WINDOW_MS))
+                .isEqualTo("message (2 suppressed)");
+        assertThat(mLog.record(TAG, KEY, "message", WINDOW_MS)).isEqualTo("message");
+    }
+
+    @Test
+    public void testDump_keepsLastMessages() {
+        mLog.record(TAG, KEY, "message1", 1);
+        mLog.record(TAG, KEY, "message2", 2);
+        mLog.record(TAG, KEY, "message3", 3);
+        mLog.record(TAG, KEY, "message4", 4);
+
+        String dump = dump();
+        assertThat(dump).doesNotContain("message1");
+        assertThat(dump).containsMatch("(?s)message2.*message3.*message4");
+    }
+}